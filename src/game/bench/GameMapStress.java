@@ -0,0 +1,143 @@
+package game.bench;
+
+import game.core.GameEntity;
+import game.map.GameMap;
+import game.map.Position;
+import game.storage.StorageBackend;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers {@link GameMap} from many threads. Movers shuffle tokens between
+ * neighboring cells, blocking on other tokens; readers take whole-map
+ * snapshots and check that every token appears exactly once and that no cell
+ * ever holds two tokens. Exits with status 1 on the first violation.
+ * <p>
+ * Run with: {@code java -cp out game.bench.GameMapStress [movers] [readers] [seconds] [heap|offheap]}
+ */
+public class GameMapStress {
+    private static final int SIZE = 32;
+    private static final int TOKENS = 256;
+
+    private static final class Token implements GameEntity {
+        final int id;
+        volatile Position position;
+
+        Token(int id, Position position) {
+            this.id = id;
+            this.position = position;
+        }
+
+        @Override public Position getPosition() { return position; }
+        @Override public boolean setPosition(Position newPos) { position = newPos; return true; }
+        @Override public String getDisplaySymbol() { return "t"; }
+        @Override public void setVisible(boolean visible) { }
+        @Override public boolean isVisible() { return true; }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int movers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        StorageBackend backend = args.length > 3 ? StorageBackend.named(args[3]) : StorageBackend.HEAP;
+
+        GameMap map = new GameMap(SIZE, backend.newCells(SIZE * SIZE));
+        Token[] tokens = new Token[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            // Spread the tokens over distinct cells
+            Position pos = new Position((i * 4) / SIZE, (i * 4) % SIZE);
+            tokens[i] = new Token(i, pos);
+            map.addEntity(pos, tokens[i]);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong moves = new AtomicLong();
+        AtomicLong blocked = new AtomicLong();
+        AtomicLong snapshots = new AtomicLong();
+        AtomicLong cellReads = new AtomicLong();
+        Thread[] threads = new Thread[movers + readers];
+
+        for (int t = 0; t < movers; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long moved = 0;
+                long refused = 0;
+                while (running.get()) {
+                    Token token = tokens[random.nextInt(TOKENS)];
+                    // Several movers may pick the same token; only one finds it at 'from'
+                    Position from = token.getPosition();
+                    Position to = new Position(
+                        Math.floorMod(from.getRow() + random.nextInt(3) - 1, SIZE),
+                        Math.floorMod(from.getCol() + random.nextInt(3) - 1, SIZE));
+                    if (map.moveEntity(token, from, to, e -> e instanceof Token)) {
+                        moved++;
+                    } else {
+                        refused++;
+                    }
+                }
+                moves.addAndGet(moved);
+                blocked.addAndGet(refused);
+            }, "mover-" + t);
+        }
+
+        for (int t = movers; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long taken = 0;
+                long reads = 0;
+                while (running.get()) {
+                    List<GameEntity> all = map.getAllEntities();
+                    check(all.size() == TOKENS, "snapshot holds " + all.size() + " tokens");
+                    boolean[] seen = new boolean[TOKENS];
+                    for (GameEntity e : all) {
+                        Token token = (Token) e;
+                        check(!seen[token.id], "token " + token.id + " appears twice");
+                        seen[token.id] = true;
+                    }
+                    taken++;
+
+                    for (int i = 0; i < 1000; i++) {
+                        Position pos = new Position(random.nextInt(SIZE), random.nextInt(SIZE));
+                        check(map.getEntitiesAt(pos).size() <= 1, "two tokens share " + pos);
+                        check(map.getEntityCount(pos) <= 1, "occupancy of " + pos + " above one");
+                        reads++;
+                    }
+                }
+                snapshots.addAndGet(taken);
+                cellReads.addAndGet(reads);
+            }, "reader-" + t);
+        }
+
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) thread.join();
+
+        // Final check: every token is exactly where it thinks it is
+        for (Token token : tokens) {
+            check(map.getEntitiesAt(token.getPosition()).contains(token), "token " + token.id + " lost");
+        }
+        check(map.getAllEntities().size() == TOKENS, "token count changed");
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                Position pos = new Position(row, col);
+                check(map.getEntityCount(pos) == map.getEntitiesAt(pos).size(), "occupancy of " + pos + " is stale");
+            }
+        }
+        map.getCellStorage().close();
+
+        System.out.printf("%s storage, %d movers, %d readers, %ds: %d moves, %d refused, %d snapshots, %d cell reads - OK%n",
+            backend, movers, readers, seconds, moves.get(), blocked.get(), snapshots.get(), cellReads.get());
+        System.exit(0);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
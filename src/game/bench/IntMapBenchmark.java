@@ -0,0 +1,135 @@
+package game.bench;
+
+import game.collections.ConcurrentIntObjectMap;
+import game.collections.IntObjectMap;
+import game.engine.EntityHandles;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the int-keyed registries against {@code ConcurrentHashMap<Integer, ...>}
+ * on the access patterns the server uses: lookups by handle, iteration over all
+ * values, and join/leave churn. Reports throughput and bytes allocated per operation.
+ * <p>
+ * Run with: {@code java -cp out game.bench.IntMapBenchmark [entries] [rounds]}
+ */
+public class IntMapBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        EntityHandles handles = new EntityHandles();
+        int[] keys = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = handles.allocate();
+        }
+
+        System.out.printf("%d entries, %d rounds (the last round is reported)%n", entries, rounds);
+        for (int r = 0; r < rounds; r++) {
+            boolean report = r == rounds - 1;
+            run("CHM<Integer> get", report, 2_000_000, () -> chmGet(keys, 2_000_000));
+            run("ConcurrentIntObjectMap get", report, 2_000_000, () -> concurrentGet(keys, 2_000_000));
+            run("IntObjectMap get", report, 2_000_000, () -> plainGet(keys, 2_000_000));
+            run("CHM<Integer> iterate", report, 200_000, () -> chmIterate(keys, 200_000));
+            run("ConcurrentIntObjectMap iterate", report, 200_000, () -> concurrentIterate(keys, 200_000));
+            run("CHM<Integer> put/remove", report, 200_000, () -> chmChurn(keys, 200_000));
+            run("ConcurrentIntObjectMap put/remove", report, 200_000, () -> concurrentChurn(keys, 200_000));
+        }
+    }
+
+    private static void run(String name, boolean report, int ops, Runnable body) {
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        body.run();
+        long elapsed = System.nanoTime() - start;
+        long bytes = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (report) {
+            System.out.printf("%-36s %8.1f ns/op %8.2f B/op%n",
+                name, (double) elapsed / ops, (double) bytes / ops);
+        }
+    }
+
+    private static void chmGet(int[] keys, int ops) {
+        Map<Integer, Object> map = new ConcurrentHashMap<>();
+        for (int key : keys) map.put(key, key);
+        long found = 0;
+        for (int i = 0; i < ops; i++) {
+            // Handles lie outside the Integer cache, so every lookup boxes
+            if (map.get(keys[i % keys.length]) != null) found++;
+        }
+        sink = found;
+    }
+
+    private static void concurrentGet(int[] keys, int ops) {
+        ConcurrentIntObjectMap<Object> map = new ConcurrentIntObjectMap<>();
+        for (int key : keys) map.put(key, key);
+        long found = 0;
+        for (int i = 0; i < ops; i++) {
+            if (map.get(keys[i % keys.length]) != null) found++;
+        }
+        sink = found;
+    }
+
+    private static void plainGet(int[] keys, int ops) {
+        IntObjectMap<Object> map = new IntObjectMap<>();
+        for (int key : keys) map.put(key, key);
+        long found = 0;
+        for (int i = 0; i < ops; i++) {
+            if (map.get(keys[i % keys.length]) != null) found++;
+        }
+        sink = found;
+    }
+
+    private static void chmIterate(int[] keys, int ops) {
+        Map<Integer, Object> map = new ConcurrentHashMap<>();
+        for (int key : keys) map.put(key, key);
+        long seen = 0;
+        for (int i = 0; i < ops; i++) {
+            for (Object v : map.values()) {
+                if (v != null) seen++;
+            }
+        }
+        sink = seen;
+    }
+
+    private static void concurrentIterate(int[] keys, int ops) {
+        ConcurrentIntObjectMap<Object> map = new ConcurrentIntObjectMap<>();
+        for (int key : keys) map.put(key, key);
+        long seen = 0;
+        for (int i = 0; i < ops; i++) {
+            for (Object v : map.values()) {
+                if (v != null) seen++;
+            }
+        }
+        sink = seen;
+    }
+
+    private static void chmChurn(int[] keys, int ops) {
+        Map<Integer, Object> map = new ConcurrentHashMap<>();
+        for (int key : keys) map.put(key, key);
+        for (int i = 0; i < ops; i++) {
+            int key = keys[i % keys.length];
+            Object v = map.remove(key);
+            map.put(key, v);
+        }
+        sink = map;
+    }
+
+    private static void concurrentChurn(int[] keys, int ops) {
+        ConcurrentIntObjectMap<Object> map = new ConcurrentIntObjectMap<>();
+        for (int key : keys) map.put(key, key);
+        for (int i = 0; i < ops; i++) {
+            int key = keys[i % keys.length];
+            Object v = map.remove(key);
+            map.put(key, v);
+        }
+        sink = map;
+    }
+}
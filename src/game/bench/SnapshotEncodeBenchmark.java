@@ -0,0 +1,236 @@
+package game.bench;
+
+import game.engine.WorldSnapshot;
+import game.map.Position;
+import game.nav.NavGrid;
+import game.network.MessageCodec;
+import game.network.StateFrameCodec;
+import game.vision.ShadowCaster;
+import game.vision.VisibilitySet;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what state replication allocates per tick: building the world
+ * snapshot with a reused builder, encoding every client's view as a binary
+ * state frame, and, for comparison, the old path of building a
+ * {@code GameMessage} per client and serializing it.
+ * <p>
+ * Bytes are read from the thread allocation counter. With {@code --jfr} the
+ * run is also recorded with JFR allocation sampling, and the sampled bytes
+ * of each phase are printed next to the counter, as a cross-check.
+ * <p>
+ * Run with: {@code java -cp out game.bench.SnapshotEncodeBenchmark [--jfr] [players] [enemies] [ticks]}
+ */
+public class SnapshotEncodeBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final int BOARD_SIZE = 15;
+    private static final int VISION_RADIUS = 2;
+
+    private static volatile Object sink;
+
+    private static final class Phase {
+        final String name;
+        Instant start;
+        Instant end;
+        long bytes;
+        long nanos;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean jfr = args.length > 0 && args[0].equals("--jfr");
+        int offset = jfr ? 1 : 0;
+        int playerCount = args.length > offset ? Integer.parseInt(args[offset]) : 10;
+        int enemyCount = args.length > offset + 1 ? Integer.parseInt(args[offset + 1]) : 30;
+        int ticks = args.length > offset + 2 ? Integer.parseInt(args[offset + 2]) : 5000;
+
+        World world = new World(playerCount, enemyCount, BOARD_SIZE * BOARD_SIZE / 10);
+        StateFrameCodec codec = new StateFrameCodec();
+
+        Recording recording = null;
+        if (jfr) {
+            recording = new Recording();
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", "off");
+            recording.start();
+        }
+
+        List<Phase> phases = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            // Earlier rounds warm up the JIT; the last one is reported
+            boolean report = round == 2;
+            Phase build = run("snapshot build (reused builder)", ticks, () -> world.tick());
+            Phase binary = run("binary state frames, all clients", ticks, () -> {
+                WorldSnapshot snapshot = world.snapshot;
+                for (int viewer = 1; viewer <= playerCount; viewer++) {
+                    sink = snapshot.encodeFor(viewer, codec);
+                }
+            });
+            Phase legacy = run("GameMessage + serialization, all clients", ticks / 10, () -> {
+                WorldSnapshot snapshot = world.snapshot;
+                for (int viewer = 1; viewer <= playerCount; viewer++) {
+                    try {
+                        sink = MessageCodec.encode(snapshot.toStateMessage(viewer));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            if (report) {
+                phases.add(build);
+                phases.add(binary);
+                phases.add(legacy);
+            }
+        }
+
+        System.out.printf("%d players, %d enemies, %d items on %dx%d%n",
+            playerCount, enemyCount, world.itemCount, BOARD_SIZE, BOARD_SIZE);
+        int[] repeats = {ticks, ticks, ticks / 10};
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            System.out.printf("%-42s %9.1f us/tick %10.1f B/tick%n",
+                phase.name, phase.nanos / 1e3 / repeats[i], (double) phase.bytes / repeats[i]);
+        }
+
+        if (recording != null) {
+            recording.stop();
+            Path file = Files.createTempFile("snapshot-bench", ".jfr");
+            recording.dump(file);
+            recording.close();
+            String thread = Thread.currentThread().getName();
+            long[] sampled = new long[phases.size()];
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getThread() == null || !thread.equals(event.getThread().getJavaName())) continue;
+                Instant at = event.getStartTime();
+                for (int i = 0; i < phases.size(); i++) {
+                    Phase phase = phases.get(i);
+                    if (!at.isBefore(phase.start) && !at.isAfter(phase.end)) {
+                        sampled[i] += event.getLong("weight");
+                    }
+                }
+            }
+            Files.deleteIfExists(file);
+            System.out.println("JFR allocation samples (jdk.ObjectAllocationSample weight):");
+            for (int i = 0; i < phases.size(); i++) {
+                System.out.printf("%-42s %10.1f B/tick%n", phases.get(i).name, (double) sampled[i] / repeats[i]);
+            }
+        }
+    }
+
+    private static Phase run(String name, int ticks, Runnable body) {
+        Phase phase = new Phase(name);
+        phase.start = Instant.now();
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int t = 0; t < ticks; t++) {
+            body.run();
+        }
+        phase.nanos = System.nanoTime() - start;
+        phase.bytes = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        phase.end = Instant.now();
+        return phase;
+    }
+
+    /**
+     * A synthetic world: players stand still, one enemy in ten steps each tick.
+     */
+    private static final class World {
+        final int itemCount;
+        final String[] playerNames;
+        final Position[] playerPositions;
+        final Position[] enemyPositions;
+        final Position[] itemPositions;
+        final NavGrid grid = new NavGrid(BOARD_SIZE);
+        final WorldSnapshot.Builder builder = new WorldSnapshot.Builder();
+        final Random random = new Random(42);
+        final Position[][] cells = new Position[BOARD_SIZE][BOARD_SIZE];
+        WorldSnapshot snapshot = WorldSnapshot.empty(BOARD_SIZE);
+        long tick;
+
+        World(int players, int enemies, int items) {
+            for (int r = 0; r < BOARD_SIZE; r++) {
+                for (int c = 0; c < BOARD_SIZE; c++) {
+                    cells[r][c] = new Position(r, c);
+                }
+            }
+            itemCount = items;
+            playerNames = new String[players];
+            playerPositions = new Position[players];
+            for (int i = 0; i < players; i++) {
+                playerNames[i] = "Player" + (i + 1);
+                playerPositions[i] = randomCell();
+            }
+            enemyPositions = new Position[enemies];
+            for (int i = 0; i < enemies; i++) {
+                enemyPositions[i] = randomCell();
+            }
+            itemPositions = new Position[items];
+            for (int i = 0; i < items; i++) {
+                itemPositions[i] = randomCell();
+            }
+        }
+
+        private Position randomCell() {
+            return cells[random.nextInt(BOARD_SIZE)][random.nextInt(BOARD_SIZE)];
+        }
+
+        void tick() {
+            tick++;
+            for (int i = (int) (tick % 10); i < enemyPositions.length; i += 10) {
+                Position p = enemyPositions[i];
+                int row = Math.floorMod(p.getRow() + (tick % 2 == 0 ? 1 : -1), BOARD_SIZE);
+                enemyPositions[i] = cells[row][p.getCol()];
+            }
+
+            WorldSnapshot.Builder next = builder.begin(snapshot, tick);
+            for (int i = 0; i < playerPositions.length; i++) {
+                int id = i + 1;
+                next.player(id, playerNames[i], playerPositions[i], 100, 10, "Warrior", 1, 1, 0);
+                VisibilitySetCache.ensure(grid, playerPositions[i]);
+                next.view(id, VisibilitySetCache.get(playerPositions[i]));
+            }
+            for (int i = 0; i < enemyPositions.length; i++) {
+                next.enemy(1000 + i, "Goblin", enemyPositions[i], 50, true);
+            }
+            for (int i = 0; i < itemPositions.length; i++) {
+                next.item(5000 + i, "Treasure", itemPositions[i], true);
+            }
+            snapshot = next.build();
+        }
+    }
+
+    /**
+     * Fields of view per origin cell; the server caches them the same way
+     * in its vision system, so they are not part of the per-tick cost.
+     */
+    private static final class VisibilitySetCache {
+        private static final VisibilitySet[] BY_CELL =
+            new VisibilitySet[BOARD_SIZE * BOARD_SIZE];
+
+        static void ensure(NavGrid grid, Position pos) {
+            int cell = grid.cellOf(pos);
+            if (BY_CELL[cell] == null) {
+                BY_CELL[cell] = ShadowCaster.compute(grid, cell, VISION_RADIUS);
+            }
+        }
+
+        static VisibilitySet get(Position pos) {
+            return BY_CELL[pos.getRow() * BOARD_SIZE + pos.getCol()];
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package game.builder;
 
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.characters.Enemy;
 import game.map.Position;
 import java.lang.reflect.Constructor;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class EnemyBuilder {
     private int health = 30; // Default health
@@ -11,6 +12,14 @@ public class EnemyBuilder {
     private int loot = 5;    // Default loot value
     private Position position = new Position(0, 0); // Default starting position
     private Class<? extends Enemy> type; // Enemy type to instantiate
+    private final RandomStreams random;
+
+    /**
+     * @param random The streams the enemy's random stats are drawn from
+     */
+    public EnemyBuilder(RandomStreams random) {
+        this.random = random;
+    }
 
     public EnemyBuilder setType(Class<? extends Enemy> type) {
         this.type = type;
@@ -38,9 +47,10 @@ public class EnemyBuilder {
     }
 
     public EnemyBuilder setRandom() {
-        this.health = ThreadLocalRandom.current().nextInt(1, 51);
-        this.power = ThreadLocalRandom.current().nextInt(4, 15);
-        this.loot = ThreadLocalRandom.current().nextInt(10, 51);
+        RandomStreams.Generator spawn = random.get(Stream.SPAWN);
+        this.health = spawn.nextInt(1, 51);
+        this.power = spawn.nextInt(4, 15);
+        this.loot = spawn.nextInt(10, 51);
         return this;
     }
 
@@ -48,9 +58,9 @@ public class EnemyBuilder {
         try {
             // Simplified constructor - just loot and position
             Constructor<? extends Enemy> constructor = 
-                type.getConstructor(int.class, Position.class);
+                type.getConstructor(int.class, Position.class, RandomStreams.class);
             
-            Enemy enemy = constructor.newInstance(loot, position);
+            Enemy enemy = constructor.newInstance(loot, position, random);
             enemy.setHealth(health);
             enemy.setPower(power);
             
@@ -1,9 +1,12 @@
 package game.builder;
 import game.characters.*;
+import game.combat.MagicElement;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
+import game.map.Position;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Random;
 
 public class PlayerBuilder {
     private String name;
@@ -13,6 +16,14 @@ public class PlayerBuilder {
     private Class<? extends PlayerCharacter> type;
     private double accuracy;
     private String magicElement;
+    private final RandomStreams random;
+
+    /**
+     * @param random The streams the player's random stats are drawn from
+     */
+    public PlayerBuilder(RandomStreams random) {
+        this.random = random;
+    }
 
     public PlayerBuilder setName(String name) {
         this.name = name;
@@ -49,12 +60,21 @@ public class PlayerBuilder {
 
     public PlayerCharacter build() {
         try {
-            if (name == null || type == null )
+            if (name == null || type == null || (type == Mage.class && magicElement == null))
                 throw new IllegalStateException("Missing parameters in PlayerBuilder");
 
-            PlayerCharacter player = type.getDeclaredConstructor(String.class).newInstance(name);
+            // The stats were picked in the dialog; only the spawn position is drawn here
+            RandomStreams.Generator spawn = random.get(Stream.SPAWN);
+            Position position = new Position(spawn.nextInt(10), spawn.nextInt(10));
+            PlayerCharacter player;
+            if (type == Mage.class) {
+                player = new Mage(name, position, power, MagicElement.valueOf(magicElement), random);
+            } else if (type == Archer.class) {
+                player = new Archer(name, position, power, accuracy, random);
+            } else {
+                player = new Warrior(name, position, power, defence, random);
+            }
             player.setHealth(health); // ׳×׳�׳™׳“ 100
-            player.setPower(power);
             return player;
 
         } catch (Exception e) {
@@ -63,16 +83,22 @@ public class PlayerBuilder {
     }
 
 
-    public static PlayerCharacter showDialog() {
+    /**
+     * Lets the user pick a name, class and stats around randomly drawn defaults.
+     *
+     * @param random The world's streams; the defaults and the spawn position are drawn from them
+     * @return The new player, or null if the dialog was cancelled
+     */
+    public static PlayerCharacter showDialog(RandomStreams random) {
         JPanel panel = new JPanel(new GridLayout(0, 2));
 
-        Random rand = new Random();
+        RandomStreams.Generator rand = random.get(Stream.SPAWN);
 
         // Default values
         int defaultPower = rand.nextInt(4, 15);
         int defaultHealth = 100;
         int defaultDefence = rand.nextInt(121);
-        double defaultAccuracy = Math.random() * 0.8;
+        double defaultAccuracy = rand.nextDouble() * 0.8;
 
         int totalPoints = defaultPower + defaultHealth;
 
@@ -191,7 +217,7 @@ public class PlayerBuilder {
                 default -> Warrior.class;
             };
 
-            PlayerBuilder builder = new PlayerBuilder()
+            PlayerBuilder builder = new PlayerBuilder(random)
                     .setName(name)
                     .setType(typeClass)
                     .setPower(power)
@@ -1,12 +1,15 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.Combatant;
 import game.combat.MagicElement;
 import game.core.GameEntity;
+import game.ecs.EntityComponents;
+import game.effects.StatusEffects;
 import game.logging.LogManager;
 import game.map.Position;
-import java.util.Random;
 
 /**
  * Abstract base class for all characters (players and enemies) in the game.
@@ -18,23 +21,41 @@ public abstract class AbstractCharacter implements Combatant, GameEntity {
     private int power;
     private final double evasionChance = 0.25;
     private boolean visible = false;
+    private final StatusEffects effects = new StatusEffects();
+    private volatile EntityComponents components;
+    private final RandomStreams random;
 
-    public AbstractCharacter(Position position) {
+    /**
+     * @param random The world's streams; the character's stats and its
+     *               combat rolls are drawn from them
+     */
+    public AbstractCharacter(Position position, RandomStreams random) {
         this.position = position;
+        this.random = random;
         this.health = 100;
-        this.power = (int)(Math.random() * 11) + 4; //4-14
+        this.power = random.get(Stream.SPAWN).nextInt(11) + 4; //4-14
 }
 
+    /**
+     * Creates a character whose power is already known, e.g. one restored from
+     * a checkpoint; nothing is drawn from the streams.
+     */
+    public AbstractCharacter(Position position, int power, RandomStreams random) {
+        this.position = position;
+        this.random = random;
+        this.health = 100;
+        this.power = power;
+    }
+
 
     /**
      * Randomly selects one of the four magic elements.
      *
      * @return A random MagicElement (FIRE, ICE, LIGHTNING, or ACID)
      */
-    public static MagicElement getRandomElement()
+    public MagicElement getRandomElement()
     {
-        Random rand = new Random();
-        int randInt = rand.nextInt(4);
+        int randInt = random.get(Stream.SPAWN).nextInt(4);
         MagicElement element;
 
 
@@ -82,7 +103,7 @@ public abstract class AbstractCharacter implements Combatant, GameEntity {
     public void receiveDamage(int amount, Combatant source){
         if(source instanceof Archer)
         {
-            if(Math.random() > evasionChance * (1 - ((Archer)source).getAccuracy()))
+            if(random.get(Stream.COMBAT).nextDouble() > evasionChance * (1 - ((Archer)source).getAccuracy()))
             {
                 setHealth(this.health - amount);
             }
@@ -114,6 +135,38 @@ public abstract class AbstractCharacter implements Combatant, GameEntity {
 
     // Power getter and setter
     public int getPower(){return power;}
+
+    /**
+     * Returns the status effects (buffs) currently attached to this character.
+     */
+    public StatusEffects getEffects(){return effects;}
+
+    /**
+     * Returns the power used in combat: base power with all active effects applied.
+     */
+    public int getEffectivePower(){return effects.modifyPower(getPower());}
+
+    /**
+     * Returns the resolved capabilities of this character.
+     * Resolved on first use if {@link #resolveComponents()} was not called at creation.
+     */
+    public EntityComponents getComponents() {
+        EntityComponents c = components;
+        if (c == null) {
+            c = resolveComponents();
+        }
+        return c;
+    }
+
+    /**
+     * Resolves and caches the capabilities of this character.
+     * Must be called again if decorators are added around it afterwards.
+     */
+    public EntityComponents resolveComponents() {
+        EntityComponents c = EntityComponents.resolve(this);
+        components = c;
+        return c;
+    }
     
     public void setPower(int power){ this.power = Math.max(1, power);}
 
@@ -126,7 +179,12 @@ public abstract class AbstractCharacter implements Combatant, GameEntity {
      *
      * @return true if evaded, false otherwise
      */
-    public Boolean tryEvade(){return Math.random() <= evasionChance;}
+    public Boolean tryEvade(){return random.get(Stream.COMBAT).nextDouble() <= evasionChance;}
+
+    /**
+     * Returns the streams this character draws from.
+     */
+    public RandomStreams getRandomStreams() { return random; }
 
     /**
      * Updates the character's visibility state.
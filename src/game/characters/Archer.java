@@ -1,6 +1,8 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.Combatant;
 import game.combat.PhysicalAttacker;
 import game.combat.RangedFighter;
@@ -16,10 +18,20 @@ public class Archer extends PlayerCharacter implements PhysicalAttacker, RangedF
      * Constructs an Archer with a name and randomized accuracy (0.0 to 0.8).
      *
      * @param name The name of the player character
+     * @param random The world's random streams
      */
-    public Archer(String name) {
-        super(name);
-        this.accuracy = Math.random() * 0.8;
+    public Archer(String name, RandomStreams random) {
+        super(name, random);
+        this.accuracy = random.get(Stream.SPAWN).nextDouble() * 0.8;
+    }
+
+    /**
+     * Constructs an Archer with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Archer(String name, Position position, int power, double accuracy, RandomStreams random) {
+        super(name, position, power, random);
+        this.accuracy = accuracy;
     }
 
     // --- Getters and Setters ---
@@ -67,7 +79,7 @@ public class Archer extends PlayerCharacter implements PhysicalAttacker, RangedF
     /**
      * Determines whether the current attack is a critical hit (10% chance).
      */
-    public boolean isCriticalHit(){return Math.random() < 0.1;}
+    public boolean isCriticalHit(){return getRandomStreams().get(Stream.COMBAT).nextDouble() < 0.1;}
 
     // --- RangedFighter Implementation ---
     /**
@@ -1,6 +1,8 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.*;
 import game.map.Position;
 
@@ -18,12 +20,22 @@ public class Dragon extends Enemy implements MagicAttacker, PhysicalAttacker, Me
      *
      * @param loot     Treasure value dropped upon defeat
      * @param position The dragon's starting location
+     * @param random   The world's random streams
      */
-    public Dragon(int loot, Position position){
-        super(loot, position);
+    public Dragon(int loot, Position position, RandomStreams random){
+        super(loot, position, random);
         this.element = getRandomElement();
     }
 
+    /**
+     * Constructs a Dragon with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Dragon(int loot, Position position, int power, MagicElement element, RandomStreams random) {
+        super(loot, position, power, random);
+        this.element = element;
+    }
+
     /**
      * Calculates and applies magic damage to a target.
      * Damage is increased or decreased based on elemental strengths.
@@ -82,7 +94,7 @@ public class Dragon extends Enemy implements MagicAttacker, PhysicalAttacker, Me
      * Determines if the current physical attack is a critical hit (10% chance).
      */
     @Override
-    public boolean isCriticalHit(){return Math.random() < 0.1;}
+    public boolean isCriticalHit(){return getRandomStreams().get(Stream.COMBAT).nextDouble() < 0.1;}
 
 
     /**
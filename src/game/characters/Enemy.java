@@ -4,6 +4,8 @@ package game.characters;
 
 
 
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.map.GameMap;
 import game.map.Position;
 import game.network.NetworkIdentifiable;
@@ -17,11 +19,19 @@ public abstract class Enemy extends AbstractCharacter implements NetworkIdentifi
     private final AtomicBoolean active = new AtomicBoolean(false);
     private int networkId = -1;
     
-    public Enemy(int loot, Position position) {
-        super(position);
+    public Enemy(int loot, Position position, RandomStreams random) {
+        super(position, random);
         this.loot = loot;
         // Health is set separately via setInitialRandomHealth or builder
     }
+
+    /**
+     * Creates an enemy whose power is already known; nothing is drawn from the streams.
+     */
+    public Enemy(int loot, Position position, int power, RandomStreams random) {
+        super(position, power, random);
+        this.loot = loot;
+    }
     
     @Override
     public int getNetworkId() {
@@ -37,7 +47,7 @@ public abstract class Enemy extends AbstractCharacter implements NetworkIdentifi
 
     // Used when we want randomized health on creation
     public void setInitialRandomHealth() {
-        setHealth(new Random().nextInt(50) + 1);
+        setHealth(getRandomStreams().get(Stream.SPAWN).nextInt(50) + 1);
     }
 
     public int getLoot() {
@@ -62,11 +72,6 @@ public abstract class Enemy extends AbstractCharacter implements NetworkIdentifi
         this.active.set(active);
     }
 
-    // Determines whether the player is near enough to activate the enemy
-    public void onPlayerMoved(Position pos) {
-        active.set(getPosition().distanceTo(pos) <= 2);
-    }
-
     public void takeAction() {
 		
 	}
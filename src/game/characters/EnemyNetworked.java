@@ -2,6 +2,7 @@ package game.characters;
 
 import java.io.Serializable;
 
+import game.core.RandomStreams;
 import game.map.Position;
 import game.network.NetworkIdentifiable;
 
@@ -13,8 +14,8 @@ public abstract class EnemyNetworked extends Enemy implements NetworkIdentifiabl
     private static final long serialVersionUID = 1L;
     private int networkId = -1;
     
-    public EnemyNetworked(int loot, Position position) {
-        super(loot, position);
+    public EnemyNetworked(int loot, Position position, RandomStreams random) {
+        super(loot, position, random);
     }
     
     @Override
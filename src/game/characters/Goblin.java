@@ -1,11 +1,12 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.Combatant;
 import game.combat.MeleeFighter;
 import game.combat.PhysicalAttacker;
 import game.map.Position;
-import java.util.Random;
 /**
  * Represents a Goblin enemy character.
  * Goblins are agile melee physical attackers with a chance to dodge attacks.
@@ -19,10 +20,20 @@ public class Goblin extends Enemy implements MeleeFighter, PhysicalAttacker {
      *
      * @param loot     The value of treasure dropped on defeat
      * @param position The goblin's initial location on the board
+     * @param random   The world's random streams
      */
-    public Goblin(int loot, Position position) {
-        super(loot, position);
-        this.agility = new Random().nextInt(81);
+    public Goblin(int loot, Position position, RandomStreams random) {
+        super(loot, position, random);
+        this.agility = random.get(Stream.SPAWN).nextInt(81);
+    }
+
+    /**
+     * Constructs a Goblin with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Goblin(int loot, Position position, int power, int agility, RandomStreams random) {
+        super(loot, position, power, random);
+        this.agility = agility;
     }
 
 
@@ -39,7 +50,7 @@ public class Goblin extends Enemy implements MeleeFighter, PhysicalAttacker {
      */
     @Override
     public Boolean tryEvade(){
-        return Math.random() <= Math.min(0.8,this.agility/100.0);
+        return getRandomStreams().get(Stream.COMBAT).nextDouble() <= Math.min(0.8,this.agility/100.0);
     }
 
     /**
@@ -70,7 +81,7 @@ public class Goblin extends Enemy implements MeleeFighter, PhysicalAttacker {
      * Determines if the current attack is a critical hit (10% chance).
      */
     @Override
-    public boolean isCriticalHit(){return Math.random() < 0.1;}
+    public boolean isCriticalHit(){return getRandomStreams().get(Stream.COMBAT).nextDouble() < 0.1;}
 
     /**
      * Returns the goblin's agility value.
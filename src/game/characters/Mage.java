@@ -2,6 +2,7 @@
 //Shahar Dahan: 207336355
 package game.characters;
 import game.combat.Combatant;
+import game.core.RandomStreams;
 import game.combat.MagicAttacker;
 import game.combat.MagicElement;
 import game.combat.RangedFighter;
@@ -17,12 +18,22 @@ public class Mage extends PlayerCharacter implements MagicAttacker, RangedFighte
      * Constructs a Mage with a random magic element.
      *
      * @param name The name of the player-controlled Mage
+     * @param random The world's random streams
      */
-    public Mage(String name){
-        super(name);
+    public Mage(String name, RandomStreams random){
+        super(name, random);
         this.element = getRandomElement();
     }
 
+    /**
+     * Constructs a Mage with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Mage(String name, Position position, int power, MagicElement element, RandomStreams random) {
+        super(name, position, power, random);
+        this.element = element;
+    }
+
     /**
      * Calculates the magical damage based on element and power.
      * Applies elemental strengths and weaknesses if the target is also a magic attacker.
@@ -70,6 +81,8 @@ public class Mage extends PlayerCharacter implements MagicAttacker, RangedFighte
     @Override
     public MagicElement getElement(){return element; }
 
+    public void setElement(MagicElement element){this.element = element; }
+
     /**
      * Determines if this Mage's element is stronger than another's.
      */
@@ -1,6 +1,8 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.Combatant;
 import game.combat.MagicAttacker;
 import game.combat.MeleeFighter;
@@ -19,10 +21,27 @@ public class Orc extends Enemy implements MeleeFighter, PhysicalAttacker {
      *
      * @param loot     The amount of treasure dropped on defeat
      * @param position Initial position of the Orc on the board
+     * @param random   The world's random streams
      */
-    public Orc(int loot, Position position) {
-        super(loot, position);
-        this.resistance = Math.random() * 0.5;
+    public Orc(int loot, Position position, RandomStreams random) {
+        super(loot, position, random);
+        this.resistance = random.get(Stream.SPAWN).nextDouble() * 0.5;
+    }
+
+    /**
+     * Constructs an Orc with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Orc(int loot, Position position, int power, double resistance, RandomStreams random) {
+        super(loot, position, power, random);
+        this.resistance = resistance;
+    }
+
+    /**
+     * Returns the Orc's resistance to magic damage (0.0 to 0.5).
+     */
+    public double getResistance() {
+        return resistance;
     }
 
     /**
@@ -56,7 +75,7 @@ public class Orc extends Enemy implements MeleeFighter, PhysicalAttacker {
      * Determines whether the attack is a critical hit (10% chance).
      */
     @Override
-    public boolean isCriticalHit(){return Math.random() < 0.1;}
+    public boolean isCriticalHit(){return getRandomStreams().get(Stream.COMBAT).nextDouble() < 0.1;}
 
     /**
      * Returns the symbol that represents the Orc on the map.
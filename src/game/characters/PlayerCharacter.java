@@ -2,12 +2,13 @@
 //Shahar Dahan: 207336355
 package game.characters;
 
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.core.Inventory;
 import game.gui.GameObserver;
 import game.items.*;
 import game.map.Position;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
 import game.network.NetworkIdentifiable;
 import java.io.Serializable;
@@ -27,8 +28,20 @@ public abstract class PlayerCharacter extends AbstractCharacter implements Netwo
     /**
      * Constructs a new PlayerCharacter with a given name and random starting position on the board.
      */
-    public PlayerCharacter(String name) {
-        super(new Position(new Random().nextInt(10),new Random().nextInt(10)));
+    public PlayerCharacter(String name, RandomStreams random) {
+        super(new Position(random.get(Stream.SPAWN).nextInt(10),random.get(Stream.SPAWN).nextInt(10)), random);
+        this.name = name;
+        this.inventory = new Inventory();
+        this.treasurePoints = 0;
+        this.setVisible(true);
+    }
+
+    /**
+     * Constructs a PlayerCharacter with a known position and power, e.g. one
+     * restored from a checkpoint. Nothing is drawn from the streams.
+     */
+    public PlayerCharacter(String name, Position position, int power, RandomStreams random) {
+        super(position, power, random);
         this.name = name;
         this.inventory = new Inventory();
         this.treasurePoints = 0;
@@ -181,6 +194,32 @@ public abstract class PlayerCharacter extends AbstractCharacter implements Netwo
         return counter;
     }
 
+    /**
+     * Strengths of the life potions in the inventory, in the order they will be used.
+     */
+    public int[] getLifePotionStrengths() {
+        int[] strengths = new int[getLifePotionCount()];
+        int n = 0;
+        for (GameItem i : inventory.getItems()) {
+            if (i instanceof Potion && !(i instanceof PowerPotion))
+                strengths[n++] = ((Potion) i).getIncreaseAmount();
+        }
+        return strengths;
+    }
+
+    /**
+     * Strengths of the power potions in the inventory, in the order they will be used.
+     */
+    public int[] getPowerPotionStrengths() {
+        int[] strengths = new int[getPowerPotionCount()];
+        int n = 0;
+        for (GameItem i : inventory.getItems()) {
+            if (i instanceof PowerPotion)
+                strengths[n++] = ((PowerPotion) i).getIncreaseAmount();
+        }
+        return strengths;
+    }
+
 
     
     public String getImagePath() {
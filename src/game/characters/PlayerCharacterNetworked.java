@@ -1,5 +1,6 @@
 package game.characters;
 
+import game.core.RandomStreams;
 import game.map.Position;
 import game.network.NetworkIdentifiable;
 import java.io.Serializable;
@@ -15,8 +16,8 @@ public abstract class PlayerCharacterNetworked extends PlayerCharacter implement
     private static final long serialVersionUID = 1L;
     private int networkId = -1;
     
-    public PlayerCharacterNetworked(String name) {
-        super(name);
+    public PlayerCharacterNetworked(String name, RandomStreams random) {
+        super(name, random);
     }
     
     @Override
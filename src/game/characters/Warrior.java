@@ -1,11 +1,12 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.characters;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.combat.Combatant;
 import game.combat.MeleeFighter;
 import game.combat.PhysicalAttacker;
 import game.map.Position;
-import java.util.Random;
 
 /**
  * Represents a Warrior player character.
@@ -17,10 +18,20 @@ public class Warrior extends PlayerCharacter implements PhysicalAttacker, MeleeF
      * Constructs a Warrior with a randomized defence value (0–120).
      *
      * @param name The name of the Warrior
+     * @param random The world's random streams
      */
-    public  Warrior(String name) {
-        super(name);
-        this.defence = new Random().nextInt(121);
+    public  Warrior(String name, RandomStreams random) {
+        super(name, random);
+        this.defence = random.get(Stream.SPAWN).nextInt(121);
+    }
+
+    /**
+     * Constructs a Warrior with known stats, e.g. one restored from a checkpoint.
+     * Nothing is drawn from the streams.
+     */
+    public Warrior(String name, Position position, int power, int defence, RandomStreams random) {
+        super(name, position, power, random);
+        this.defence = defence;
     }
 
     /**
@@ -69,7 +80,7 @@ public class Warrior extends PlayerCharacter implements PhysicalAttacker, MeleeF
      */
     @Override
     public boolean isCriticalHit(){
-        return Math.random() <= 0.1;
+        return getRandomStreams().get(Stream.COMBAT).nextDouble() <= 0.1;
     }
 
     /**
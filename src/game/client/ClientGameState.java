@@ -1,5 +1,6 @@
 package game.client;
 
+import game.collections.ConcurrentIntObjectMap;
 import game.network.*;
 import game.map.Position;
 
@@ -14,10 +15,16 @@ import java.util.concurrent.ConcurrentHashMap;
  * @author Shahar Dahan:207336355
  */
 public class ClientGameState {
-    private final Map<Integer, PlayerState> players = new ConcurrentHashMap<>();
-    private final Map<Integer, EnemyState> enemies = new ConcurrentHashMap<>();
+    private final ConcurrentIntObjectMap<PlayerState> players = new ConcurrentIntObjectMap<>();
+    private final ConcurrentIntObjectMap<EnemyState> enemies = new ConcurrentIntObjectMap<>();
     private final Map<Position, List<ItemState>> items = new ConcurrentHashMap<>();
     
+    // Fog of war as replicated by the server; null until the first update
+    private long[] visibleCells;
+    private long[] exploredCells;
+    private int fogBoardSize;
+    private final Set<Position> knownWalls = ConcurrentHashMap.newKeySet();
+    
     /**
      * Updates the entire game state from a server message.
      */
@@ -43,10 +50,60 @@ public class ClientGameState {
             items.clear();
             for (ItemState item : message.getItemStates()) {
                 items.computeIfAbsent(item.getPosition(), k -> new ArrayList<>()).add(item);
+                if ("Wall".equals(item.getType())) {
+                    knownWalls.add(item.getPosition());
+                }
             }
         }
     }
     
+    /**
+     * Applies a fog of war change from the server.
+     */
+    public synchronized void applyFogDelta(FogDelta delta) {
+        int size = delta.getBoardSize();
+        if (visibleCells == null || fogBoardSize != size) {
+            int words = (size * size + 63) >>> 6;
+            visibleCells = new long[words];
+            exploredCells = new long[words];
+            fogBoardSize = size;
+        }
+        FogDelta.applyRuns(visibleCells, delta.getVisibleRuns());
+        FogDelta.applyRuns(exploredCells, delta.getExploredRuns());
+    }
+    
+    /**
+     * Checks if a cell is currently in view. Everything counts as visible
+     * until the server has sent the first fog update.
+     */
+    public synchronized boolean isCellVisible(Position pos) {
+        return visibleCells == null || testCell(visibleCells, pos);
+    }
+    
+    /**
+     * Checks if a cell has ever been seen.
+     */
+    public synchronized boolean isCellExplored(Position pos) {
+        return exploredCells == null || testCell(exploredCells, pos);
+    }
+    
+    /**
+     * Checks if a wall was seen at a position, even if it is out of view now.
+     */
+    public boolean isKnownWall(Position pos) {
+        return knownWalls.contains(pos);
+    }
+    
+    private boolean testCell(long[] bits, Position pos) {
+        int row = pos.getRow();
+        int col = pos.getCol();
+        if (row < 0 || col < 0 || row >= fogBoardSize || col >= fogBoardSize) {
+            return false;
+        }
+        int cell = row * fogBoardSize + col;
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+    
     public synchronized void updatePlayerFull(PlayerState playerState) {
         players.put(playerState.getPlayerId(), playerState);
     }
@@ -23,8 +23,8 @@ public class GameClient {
     private static final int DEFAULT_PORT = 62222;
     
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private DataOutputStream out;
+    private DataInputStream in;
     private boolean connected = false;
     
     private int playerId = -1;
@@ -53,8 +53,8 @@ public class GameClient {
     public boolean connect(String host, int port) {
         try {
             socket = new Socket(host, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
             connected = true;
             
             // Start message receiver thread
@@ -89,13 +89,18 @@ public class GameClient {
      * Main message receiving loop.
      */
     private void receiveMessages() {
-        while (connected) {
+        // A redirect replaces the connection; this loop keeps reading the one it started on
+        Socket current = socket;
+        DataInputStream input = in;
+        while (connected && socket == current) {
             try {
-                GameMessage message = (GameMessage) in.readObject();
+                GameMessage message = MessageCodec.read(input);
                 handleServerMessage(message);
             } catch (EOFException | SocketException e) {
-                // Server disconnected
-                handleDisconnect();
+                // Server disconnected, unless we left it for another node
+                if (socket == current) {
+                    handleDisconnect();
+                }
                 break;
             } catch (Exception e) {
                 System.err.println("Error receiving message: " + e.getMessage());
@@ -114,15 +119,26 @@ public class GameClient {
                     playerId = message.getPlayerId();
                     System.out.println("Assigned player ID: " + playerId);
                     
-                    // Create and show game GUI
-                    gameFrame = new ClientGameFrame(this, playerName);
-                    gameFrame.setVisible(true);
+                    // Create and show game GUI, unless we were redirected and have it already
+                    if (gameFrame == null) {
+                        gameFrame = new ClientGameFrame(this, playerName);
+                        gameFrame.setVisible(true);
+                    }
+                    break;
+                    
+                case REDIRECT:
+                    handleRedirect(message);
                     break;
                     
                 case FULL_STATE:
                     updateFullGameState(message);
                     break;
                     
+                case FOG_UPDATE:
+                    // The state message that follows repaints the board
+                    gameState.applyFogDelta(message.getFogDelta());
+                    break;
+                    
                 case PLAYER_MOVED:
                     handlePlayerMoved(message);
                     break;
@@ -147,6 +163,11 @@ public class GameClient {
                     handleAbilityActivated(message);
                     break;
                     
+                case EFFECT_APPLIED:
+                case EFFECT_EXPIRED:
+                    handleEffectUpdate(message);
+                    break;
+                    
                 case ERROR:
                 case MOVE_FAILED:
                     JOptionPane.showMessageDialog(gameFrame, 
@@ -395,6 +416,24 @@ public class GameClient {
         }
     }
     
+    /**
+     * Handles a status effect being applied to or expiring from our player.
+     */
+    private void handleEffectUpdate(GameMessage message) {
+        gameState.updatePlayerStats(message.getPlayerId(), message.getHealth(), message.getPower());
+        
+        if (gameFrame != null) {
+            PlayerState myPlayer = gameState.getPlayer(playerId);
+            if (myPlayer != null) {
+                gameFrame.updatePlayerStatus(myPlayer);
+            }
+            
+            if (message.getType() == MessageType.EFFECT_EXPIRED) {
+                gameFrame.addChatMessage("System", "Your " + message.getMessage() + " effect wore off", true);
+            }
+        }
+    }
+    
     /**
      * Sends a movement request to the server.
      */
@@ -437,8 +476,7 @@ public class GameClient {
     public synchronized void sendMessage(GameMessage message) {
         if (connected && out != null) {
             try {
-                out.writeObject(message);
-                out.flush();
+                MessageCodec.write(out, message);
             } catch (IOException e) {
                 System.err.println("Failed to send message: " + e.getMessage());
                 handleDisconnect();
@@ -446,6 +484,26 @@ public class GameClient {
         }
     }
     
+    /**
+     * Moves to the server node that now owns our player and joins it again under the same name.
+     */
+    private void handleRedirect(GameMessage message) {
+        String[] target = message.getMessage().split(":");
+        Socket previous = socket;
+        synchronized (this) {
+            connected = false;
+        }
+        try {
+            previous.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        System.out.println("Redirected to " + message.getMessage());
+        if (connect(target[0], Integer.parseInt(target[1]))) {
+            joinGame(playerName, playerType);
+        }
+    }
+    
     /**
      * Handles disconnection from server.
      */
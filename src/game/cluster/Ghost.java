@@ -0,0 +1,96 @@
+package game.cluster;
+
+import game.engine.EntityHandles;
+import game.map.Position;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only copy of an entity owned by a neighbouring node, kept near the
+ * border so local players can see it and attack it. Refreshed every tick
+ * by its owner and dropped when the owner stops sending it.
+ */
+public final class Ghost {
+    public static final byte PLAYER = 1;
+    public static final byte ENEMY = 2;
+
+    private final int ownerZone;
+    private final int handle;
+    private final byte kind;
+    private final String name;
+    private final String type;
+    private final Position position;
+    private final int health;
+    private final int power;
+
+    public Ghost(int ownerZone, int handle, byte kind, String name, String type, Position position,
+                 int health, int power) {
+        this.ownerZone = ownerZone;
+        this.handle = handle;
+        this.kind = kind;
+        this.name = name;
+        this.type = type;
+        this.position = position;
+        this.health = health;
+        this.power = power;
+    }
+
+    public int getOwnerZone() { return ownerZone; }
+
+    /**
+     * The entity's id on its owner node.
+     */
+    public int getHandle() { return handle; }
+    public byte getKind() { return kind; }
+
+    public String getName() { return name; }
+
+    /**
+     * The player's class, or the enemy's type.
+     */
+    public String getType() { return type; }
+    public Position getPosition() { return position; }
+    public int getHealth() { return health; }
+    public int getPower() { return power; }
+
+    /**
+     * An id for the ghost that cannot clash with the local node's handles,
+     * which are positive: the sign bit, the owner's zone and the handle's index.
+     */
+    public int localId() {
+        return Integer.MIN_VALUE | (ownerZone + 1) << EntityHandles.INDEX_BITS | handle & EntityHandles.MAX_INDEX;
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putInt(handle).put(kind);
+        putString(out, name);
+        putString(out, type);
+        out.putInt(position.getRow()).putInt(position.getCol()).putInt(health).putInt(power);
+    }
+
+    static Ghost readFrom(int ownerZone, ByteBuffer in) {
+        int handle = in.getInt();
+        byte kind = in.get();
+        String name = getString(in);
+        String type = getString(in);
+        Position position = new Position(in.getInt(), in.getInt());
+        return new Ghost(ownerZone, handle, kind, name, type, position, in.getInt(), in.getInt());
+    }
+
+    int byteSize() {
+        return 4 + 1 + 2 + name.getBytes(StandardCharsets.UTF_8).length
+            + 2 + type.getBytes(StandardCharsets.UTF_8).length + 16;
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,277 @@
+package game.cluster;
+
+import game.logging.LogManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Socket links between the nodes of a cluster on one machine.
+ * <p>
+ * Node {@code z} listens on the loopback address at {@code basePort + z}.
+ * Each node opens one outgoing connection per peer the first time it sends
+ * to it and introduces itself with a {@link #HELLO} carrying its zone, its
+ * game port and its gateway port (0 if it takes no gateway links). Frames are a 4-byte length, a type byte and the body. Incoming
+ * frames are queued and taken by the tick thread with {@link #drain(List)};
+ * sends are synchronous and report failure instead of queueing, so a handoff
+ * to a node that is down can be kept and retried.
+ */
+public class NodeTransport implements Closeable {
+    public static final byte HELLO = 1;
+    public static final byte HANDOFF_PLAYER = 2;
+    public static final byte HANDOFF_ENEMY = 3;
+    public static final byte GHOSTS = 4;
+    public static final byte ATTACK = 5;
+    public static final byte ATTACK_RESULT = 6;
+
+    private static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final long RETRY_MILLIS = 1000;
+
+    /**
+     * A frame received from a peer.
+     */
+    public static final class Message {
+        private final int fromZone;
+        private final byte type;
+        private final ByteBuffer body;
+
+        Message(int fromZone, byte type, ByteBuffer body) {
+            this.fromZone = fromZone;
+            this.type = type;
+            this.body = body;
+        }
+
+        public int getFromZone() { return fromZone; }
+        public byte getType() { return type; }
+        public ByteBuffer getBody() { return body; }
+    }
+
+    private final class Peer {
+        final int zone;
+        Socket socket;
+        DataOutputStream out;
+        long retryAt;
+
+        Peer(int zone) {
+            this.zone = zone;
+        }
+
+        synchronized boolean send(byte type, ByteBuffer body) {
+            if (out == null && !connect()) {
+                return false;
+            }
+            try {
+                writeFrame(out, type, body);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                LogManager.log("Lost link to zone " + zone + ": " + e.getMessage());
+                disconnect();
+                return false;
+            }
+        }
+
+        private boolean connect() {
+            long now = System.currentTimeMillis();
+            if (now < retryAt) {
+                return false;
+            }
+            try {
+                socket = new Socket(InetAddress.getLoopbackAddress(), basePort + zone);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                ByteBuffer hello = ByteBuffer.allocate(12).putInt(localZone).putInt(gamePort).putInt(gatewayPort).flip();
+                writeFrame(out, HELLO, hello);
+                LogManager.log("Linked zone " + localZone + " to zone " + zone);
+                return true;
+            } catch (IOException e) {
+                retryAt = now + RETRY_MILLIS;
+                disconnect();
+                return false;
+            }
+        }
+
+        void disconnect() {
+            out = null;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+                socket = null;
+            }
+        }
+    }
+
+    private final int localZone;
+    private final int basePort;
+    private final int gamePort;
+    private final int gatewayPort;
+    private final Peer[] peers;
+    private final AtomicIntegerArray peerGamePorts;
+    private final AtomicIntegerArray peerGatewayPorts;
+    private final Queue<Message> inbound = new ConcurrentLinkedQueue<>();
+    private final ServerSocket serverSocket;
+    private final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "cluster-link");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = true;
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong failedSends = new AtomicLong();
+
+    public NodeTransport(int localZone, int zoneCount, int basePort, int gamePort, int gatewayPort) throws IOException {
+        this.localZone = localZone;
+        this.basePort = basePort;
+        this.gamePort = gamePort;
+        this.gatewayPort = gatewayPort;
+        this.peers = new Peer[zoneCount];
+        this.peerGamePorts = new AtomicIntegerArray(zoneCount);
+        this.peerGatewayPorts = new AtomicIntegerArray(zoneCount);
+        for (int z = 0; z < zoneCount; z++) {
+            peers[z] = new Peer(z);
+            peerGamePorts.set(z, -1);
+        }
+        this.serverSocket = new ServerSocket(basePort + localZone, 50, InetAddress.getLoopbackAddress());
+        readers.execute(this::acceptLoop);
+        LogManager.log("Zone " + localZone + " of " + zoneCount + " listening for peers on port " + (basePort + localZone));
+    }
+
+    /**
+     * Sends a frame to a peer.
+     *
+     * @return false if the peer could not be reached
+     */
+    public boolean send(int zone, byte type, ByteBuffer body) {
+        if (peers[zone].send(type, body)) {
+            framesSent.incrementAndGet();
+            return true;
+        }
+        failedSends.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Moves every frame received so far into {@code into}, in arrival order per peer.
+     */
+    public void drain(List<Message> into) {
+        Message message;
+        while ((message = inbound.poll()) != null) {
+            into.add(message);
+        }
+    }
+
+    /**
+     * The port players connect to on a peer, or -1 if it has not introduced itself yet.
+     */
+    public int getGamePort(int zone) {
+        return peerGamePorts.get(zone);
+    }
+
+    /**
+     * The port gateways link to on a peer, 0 if it takes no gateway links.
+     */
+    public int getGatewayPort(int zone) {
+        return peerGatewayPorts.get(zone);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                readers.execute(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LogManager.log("Error accepting peer: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        int from = -1;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (running) {
+                int length = in.readInt();
+                if (length < 1 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte type = in.readByte();
+                byte[] body = new byte[length - 1];
+                in.readFully(body);
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                if (type == HELLO) {
+                    from = buffer.getInt();
+                    if (from < 0 || from >= peers.length || from == localZone) {
+                        throw new IOException("Peer introduced itself as zone " + from);
+                    }
+                    peerGamePorts.set(from, buffer.getInt());
+                    peerGatewayPorts.set(from, buffer.getInt());
+                    continue;
+                }
+                if (from < 0) {
+                    throw new IOException("Peer sent data before introducing itself");
+                }
+                framesReceived.incrementAndGet();
+                inbound.add(new Message(from, type, buffer));
+            }
+        } catch (IOException e) {
+            if (running && from >= 0) {
+                LogManager.log("Zone " + from + " disconnected: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, ByteBuffer body) throws IOException {
+        ByteBuffer frame = body.duplicate();
+        out.writeInt(1 + frame.remaining());
+        out.writeByte(type);
+        if (frame.hasArray()) {
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        } else {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    public String summary() {
+        return "cluster frames sent=" + framesSent.get() + ", received=" + framesReceived.get()
+            + ", failed sends=" + failedSends.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Peer peer : peers) {
+            synchronized (peer) {
+                peer.disconnect();
+            }
+        }
+        readers.shutdownNow();
+    }
+}
@@ -0,0 +1,62 @@
+package game.cluster;
+
+import game.map.Position;
+
+/**
+ * Splits the board into vertical strips of columns, one per node.
+ * Zone {@code z} owns columns {@code [firstCol(z), firstCol(z + 1))}; the
+ * cells within {@link #getGhostMargin()} columns of a border are mirrored to
+ * the zone across it as ghosts.
+ */
+public final class ZoneLayout {
+    private final int boardSize;
+    private final int zoneCount;
+    private final int ghostMargin;
+
+    public ZoneLayout(int boardSize, int zoneCount, int ghostMargin) {
+        if (zoneCount < 1 || zoneCount > boardSize) {
+            throw new IllegalArgumentException("Cannot split a " + boardSize + " board into " + zoneCount + " zones");
+        }
+        this.boardSize = boardSize;
+        this.zoneCount = zoneCount;
+        this.ghostMargin = ghostMargin;
+    }
+
+    public int getBoardSize() { return boardSize; }
+    public int getZoneCount() { return zoneCount; }
+    public int getGhostMargin() { return ghostMargin; }
+
+    public int firstCol(int zone) {
+        return zone * boardSize / zoneCount;
+    }
+
+    public int zoneOf(int col) {
+        int zone = Math.max(0, Math.min(zoneCount - 1, (int) ((long) col * zoneCount / boardSize)));
+        while (zone + 1 < zoneCount && firstCol(zone + 1) <= col) zone++;
+        while (zone > 0 && firstCol(zone) > col) zone--;
+        return zone;
+    }
+
+    public int zoneOf(Position pos) {
+        return zoneOf(pos.getCol());
+    }
+
+    public boolean owns(int zone, Position pos) {
+        return pos.getCol() >= firstCol(zone) && pos.getCol() < firstCol(zone + 1);
+    }
+
+    /**
+     * Returns the neighbouring zone that should see a ghost of an entity of
+     * {@code zone} at {@code pos}, or -1 if it is not near a border. In a
+     * strip narrower than two margins the left border wins.
+     */
+    public int ghostTarget(int zone, Position pos) {
+        if (zone > 0 && pos.getCol() < firstCol(zone) + ghostMargin) {
+            return zone - 1;
+        }
+        if (zone < zoneCount - 1 && pos.getCol() >= firstCol(zone + 1) - ghostMargin) {
+            return zone + 1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,299 @@
+package game.cluster;
+
+import game.combat.Strike;
+import game.logging.LogManager;
+import game.map.Position;
+import game.persistence.WorldCheckpoint;
+
+import java.io.Closeable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One node's part in a world split across processes.
+ * <p>
+ * The node owns the entities in its zone of the board. An entity that steps
+ * out of the zone is handed to the zone it entered: enemies as a checkpoint
+ * record the new owner spawns at once, players as the record they resume from
+ * when their client reconnects there. Every tick the node also sends each
+ * neighbour ghosts of its entities within the ghost margin of their border,
+ * and keeps the ghosts it receives, so players near a border see across it
+ * and can attack enemies on the other side. The attacker's node rolls the
+ * strike, the owner lands it on the enemy and sends back what happened.
+ * <p>
+ * Apart from {@link #getGhosts()}, methods are meant to be called from the
+ * world's tick thread.
+ */
+public class ZoneNode implements Closeable {
+    // Ghosts of a neighbour that stopped sending are dropped after this long
+    private static final long GHOST_EXPIRY_NANOS = 1_000_000_000L;
+
+    /**
+     * What a node needs from the world it runs in.
+     */
+    public interface Host {
+        /**
+         * Takes over a player that crossed into this zone; they resume from
+         * the record when their client connects here.
+         */
+        void adoptPlayer(WorldCheckpoint.PlayerRecord record);
+
+        void adoptEnemy(WorldCheckpoint.EnemyRecord record);
+
+        /**
+         * Lands a strike from a player in another zone on an enemy this node
+         * owns and reports the outcome with {@link #reportAttack}.
+         *
+         * @param attackerClass The attacking player's class, e.g. "Archer"
+         */
+        void attackEnemy(int fromZone, int handle, int attackerId, String attackerClass, Strike strike);
+
+        /**
+         * Tells a local player how their strike on an enemy in another zone went.
+         */
+        void attackLanded(int attackerId, Position target, byte outcome, int damage, boolean killed);
+    }
+
+    // Outcomes of a strike across a border
+    public static final byte ATTACK_HIT = 1;
+    public static final byte ATTACK_CRITICAL = 2;
+    public static final byte ATTACK_EVADED = 3;
+    public static final byte ATTACK_BLOCKED = 4;
+    public static final byte ATTACK_GONE = 5; // The enemy died or moved on before the strike arrived
+
+    private final ZoneLayout layout;
+    private final int zone;
+    private final NodeTransport transport;
+    private final List<NodeTransport.Message> received = new ArrayList<>();
+    private final List<List<Ghost>> outgoing = new ArrayList<>();
+    // Replaced whole per neighbour; snapshots may be published off the tick thread
+    private final List<List<Ghost>> ghostsByZone = new CopyOnWriteArrayList<>();
+    private final long[] ghostsReceivedAt;
+    private final AtomicLong playersOut = new AtomicLong();
+    private final AtomicLong enemiesOut = new AtomicLong();
+    private final AtomicLong entitiesIn = new AtomicLong();
+
+    public ZoneNode(ZoneLayout layout, int zone, NodeTransport transport) {
+        this.layout = layout;
+        this.zone = zone;
+        this.transport = transport;
+        this.ghostsReceivedAt = new long[layout.getZoneCount()];
+        for (int z = 0; z < layout.getZoneCount(); z++) {
+            outgoing.add(new ArrayList<>());
+            ghostsByZone.add(Collections.emptyList());
+        }
+    }
+
+    public int getZone() { return zone; }
+    public ZoneLayout getLayout() { return layout; }
+
+    public boolean owns(Position pos) {
+        return layout.owns(zone, pos);
+    }
+
+    /**
+     * The port players of the zone owning {@code pos} connect to, or -1 if that node is unknown.
+     */
+    public int gamePortFor(Position pos) {
+        return transport.getGamePort(layout.zoneOf(pos));
+    }
+
+    /**
+     * The port gateways link to on the node owning {@code pos}, or 0 if it takes no gateway links.
+     */
+    public int gatewayPortFor(Position pos) {
+        return transport.getGatewayPort(layout.zoneOf(pos));
+    }
+
+    /**
+     * Applies everything neighbours sent since the last call.
+     */
+    public void receive(Host host) {
+        received.clear();
+        transport.drain(received);
+        for (NodeTransport.Message message : received) {
+            ByteBuffer body = message.getBody();
+            try {
+                switch (message.getType()) {
+                    case NodeTransport.HANDOFF_PLAYER -> {
+                        host.adoptPlayer(WorldCheckpoint.PlayerRecord.readFrom(body));
+                        entitiesIn.incrementAndGet();
+                    }
+                    case NodeTransport.HANDOFF_ENEMY -> {
+                        host.adoptEnemy(WorldCheckpoint.EnemyRecord.readFrom(body));
+                        entitiesIn.incrementAndGet();
+                    }
+                    case NodeTransport.GHOSTS -> readGhosts(message.getFromZone(), body);
+                    case NodeTransport.ATTACK -> {
+                        int handle = body.getInt();
+                        int attackerId = body.getInt();
+                        String attackerClass = getString(body);
+                        host.attackEnemy(message.getFromZone(), handle, attackerId, attackerClass,
+                            Strike.readFrom(body));
+                    }
+                    case NodeTransport.ATTACK_RESULT -> host.attackLanded(body.getInt(),
+                        new Position(body.getInt(), body.getInt()), body.get(), body.getInt(), body.get() != 0);
+                    default -> LogManager.log("Unknown cluster message " + message.getType()
+                        + " from zone " + message.getFromZone());
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                LogManager.log("Malformed cluster message from zone " + message.getFromZone() + ": " + e);
+            }
+        }
+        long now = System.nanoTime();
+        for (int z = 0; z < ghostsByZone.size(); z++) {
+            if (!ghostsByZone.get(z).isEmpty() && now - ghostsReceivedAt[z] > GHOST_EXPIRY_NANOS) {
+                ghostsByZone.set(z, Collections.emptyList());
+            }
+        }
+    }
+
+    private void readGhosts(int from, ByteBuffer body) {
+        int count = body.getInt();
+        if (count < 0 || count > body.remaining()) {
+            throw new IllegalArgumentException("Invalid ghost count " + count);
+        }
+        List<Ghost> ghosts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ghosts.add(Ghost.readFrom(from, body));
+        }
+        ghostsByZone.set(from, ghosts);
+        ghostsReceivedAt[from] = System.nanoTime();
+    }
+
+    /**
+     * Sends a player who stepped out of this zone to its new owner.
+     *
+     * @return false if the owner could not be reached and the player should stay
+     */
+    public boolean handOffPlayer(WorldCheckpoint.PlayerRecord record) {
+        // Every potion is written with its strength
+        int potions = record.getLifePotions().length + record.getPowerPotions().length;
+        ByteBuffer body = ByteBuffer.allocate(1024 + potions * Integer.BYTES);
+        record.writeTo(body);
+        int to = layout.zoneOf(record.getCol());
+        if (!transport.send(to, NodeTransport.HANDOFF_PLAYER, body.flip())) {
+            return false;
+        }
+        playersOut.incrementAndGet();
+        LogManager.log("Handed player " + record.getName() + " to zone " + to);
+        return true;
+    }
+
+    /**
+     * Sends an enemy that stepped out of this zone to its new owner.
+     *
+     * @return false if the owner could not be reached and the enemy should stay
+     */
+    public boolean handOffEnemy(WorldCheckpoint.EnemyRecord record) {
+        ByteBuffer body = ByteBuffer.allocate(256);
+        record.writeTo(body);
+        if (!transport.send(layout.zoneOf(record.getCol()), NodeTransport.HANDOFF_ENEMY, body.flip())) {
+            return false;
+        }
+        enemiesOut.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Offers a local entity as a ghost; it is sent to the neighbour it is near, if any.
+     */
+    public void offerGhost(int handle, byte kind, String name, String type, Position pos, int health, int power) {
+        int to = layout.ghostTarget(zone, pos);
+        if (to >= 0) {
+            outgoing.get(to).add(new Ghost(zone, handle, kind, name, type, pos, health, power));
+        }
+    }
+
+    /**
+     * Sends this tick's ghosts to every neighbour, an empty set included so
+     * that ghosts which left the margin disappear.
+     */
+    public void flushGhosts() {
+        for (int to = Math.max(0, zone - 1); to <= Math.min(layout.getZoneCount() - 1, zone + 1); to++) {
+            if (to == zone) continue;
+            List<Ghost> ghosts = outgoing.get(to);
+            int size = 4;
+            for (Ghost ghost : ghosts) size += ghost.byteSize();
+            ByteBuffer body = ByteBuffer.allocate(size).putInt(ghosts.size());
+            for (Ghost ghost : ghosts) ghost.writeTo(body);
+            transport.send(to, NodeTransport.GHOSTS, body.flip());
+            ghosts.clear();
+        }
+    }
+
+    /**
+     * Every ghost currently received from the neighbours.
+     */
+    public List<Ghost> getGhosts() {
+        List<Ghost> all = new ArrayList<>();
+        for (List<Ghost> ghosts : ghostsByZone) {
+            all.addAll(ghosts);
+        }
+        return all;
+    }
+
+    public Ghost enemyGhostAt(Position pos) {
+        for (List<Ghost> ghosts : ghostsByZone) {
+            for (Ghost ghost : ghosts) {
+                if (ghost.getKind() == Ghost.ENEMY && ghost.getPosition().equals(pos)) {
+                    return ghost;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends a local player's strike to the owner of an enemy ghost, which lands it.
+     */
+    public boolean attackGhost(Ghost ghost, int attackerId, String attackerClass, Strike strike) {
+        ByteBuffer body = ByteBuffer.allocate(256).putInt(ghost.getHandle()).putInt(attackerId);
+        putString(body, attackerClass);
+        strike.writeTo(body);
+        return transport.send(ghost.getOwnerZone(), NodeTransport.ATTACK, body.flip());
+    }
+
+    /**
+     * Sends the outcome of a strike back to the attacker's node.
+     */
+    public void reportAttack(int toZone, int attackerId, Position target, byte outcome, int damage, boolean killed) {
+        ByteBuffer body = ByteBuffer.allocate(22).putInt(attackerId)
+            .putInt(target.getRow()).putInt(target.getCol())
+            .put(outcome).putInt(damage).put((byte) (killed ? 1 : 0));
+        transport.send(toZone, NodeTransport.ATTACK_RESULT, body.flip());
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String summary() {
+        int ghosts = 0;
+        for (List<Ghost> list : ghostsByZone) ghosts += list.size();
+        return "zone " + zone + ": players out=" + playersOut.get() + ", enemies out=" + enemiesOut.get()
+            + ", entities in=" + entitiesIn.get() + ", ghosts=" + ghosts + ", " + transport.summary();
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
@@ -0,0 +1,322 @@
+package game.collections;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe int-keyed map for registries that are read far more often than written.
+ * Keys are spread over a fixed number of stripes, each an open-addressing
+ * table that writers change in place under the stripe's lock. A slot keeps
+ * the key it was first given for the life of its table, and a removal leaves
+ * a tombstone, so entries never move under a reader: reads and iteration take
+ * no lock. A new table is published through a volatile field only when the
+ * old one runs out of free slots. Iteration is weakly consistent, like
+ * {@code ConcurrentHashMap}.
+ *
+ * @param <V> The value type
+ */
+public class ConcurrentIntObjectMap<V> {
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int MIN_CAPACITY = 4;
+    // Value of a slot whose key was removed; the slot keeps the key and can take it again
+    private static final Object REMOVED = new Object();
+
+    /**
+     * Slots of one stripe. A key is written before the value that makes its
+     * slot used, so a reader that sees the value also sees the key.
+     */
+    private static final class Table {
+        final int[] keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private static final class Stripe {
+        volatile Table table = new Table(MIN_CAPACITY);
+        // Written under the stripe's lock; used also counts tombstones
+        volatile int size;
+        int used;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public ConcurrentIntObjectMap() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeFor(int key) {
+        // High bits pick the stripe; the low bits index the table inside it
+        return stripes[IntObjectMap.mix(key) >>> (32 - STRIPE_BITS)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Table table = stripeFor(key).table;
+        int i = IntObjectMap.mix(key) & table.mask;
+        Object v;
+        while ((v = table.values.get(i)) != null) {
+            if (table.keys[i] == key) {
+                return v != REMOVED ? (V) v : null;
+            }
+            i = (i + 1) & table.mask;
+        }
+        return null;
+    }
+
+    public V getOrDefault(int key, V defaultValue) {
+        V v = get(key);
+        return v != null ? v : defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public V put(int key, V value) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            return insert(stripe, key, value, false);
+        }
+    }
+
+    /**
+     * Inserts the value only if the key is absent.
+     *
+     * @return The existing value, or null if the value was inserted
+     */
+    public V putIfAbsent(int key, V value) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            return insert(stripe, key, value, true);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Table table = stripe.table;
+            int i = IntObjectMap.mix(key) & table.mask;
+            Object v;
+            while ((v = table.values.get(i)) != null) {
+                if (table.keys[i] == key) {
+                    if (v == REMOVED) {
+                        return null;
+                    }
+                    table.values.set(i, REMOVED);
+                    stripe.size--;
+                    return (V) v;
+                }
+                i = (i + 1) & table.mask;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Puts a value into the slot that has or last had the key, or into a
+     * free slot. The caller holds the stripe's lock.
+     */
+    @SuppressWarnings("unchecked")
+    private V insert(Stripe stripe, int key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        Table table = stripe.table;
+        int i = IntObjectMap.mix(key) & table.mask;
+        Object v;
+        while ((v = table.values.get(i)) != null) {
+            if (table.keys[i] == key) {
+                if (v == REMOVED) {
+                    table.values.set(i, value);
+                    stripe.size++;
+                    return null;
+                }
+                if (!onlyIfAbsent) {
+                    table.values.set(i, value);
+                }
+                return (V) v;
+            }
+            i = (i + 1) & table.mask;
+        }
+
+        // Keep at least half the slots free so probes stay short and always end
+        if (stripe.used + 1 > (table.mask + 1) / 2) {
+            table = rebuild(stripe, stripe.size + 1);
+            i = IntObjectMap.mix(key) & table.mask;
+            while (table.values.get(i) != null) {
+                i = (i + 1) & table.mask;
+            }
+        }
+        table.keys[i] = key;
+        table.values.set(i, value);
+        stripe.used++;
+        stripe.size++;
+        return null;
+    }
+
+    /**
+     * Copies the live entries of a stripe into a new table that is at most a
+     * quarter full, leaving the tombstones behind, and publishes it. Readers
+     * still probing the old table find every entry they would have found.
+     */
+    private static Table rebuild(Stripe stripe, int entries) {
+        Table old = stripe.table;
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(entries * 4 - 1) << 1);
+        Table table = new Table(capacity);
+        int live = 0;
+        for (int j = 0; j <= old.mask; j++) {
+            Object v = old.values.get(j);
+            if (v != null && v != REMOVED) {
+                int i = IntObjectMap.mix(old.keys[j]) & table.mask;
+                while (table.values.get(i) != null) {
+                    i = (i + 1) & table.mask;
+                }
+                table.keys[i] = old.keys[j];
+                table.values.set(i, v);
+                live++;
+            }
+        }
+        stripe.table = table;
+        stripe.used = live;
+        return table;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Stripe stripe : stripes) {
+            if (stripe.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.table = new Table(MIN_CAPACITY);
+                stripe.used = 0;
+                stripe.size = 0;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(IntObjectConsumer<? super V> consumer) {
+        for (Stripe stripe : stripes) {
+            Table table = stripe.table;
+            for (int i = 0; i <= table.mask; i++) {
+                Object v = table.values.get(i);
+                if (v != null && v != REMOVED) {
+                    consumer.accept(table.keys[i], (V) v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the keys.
+     */
+    public int[] keys() {
+        int[] result = new int[size()];
+        int n = 0;
+        for (Stripe stripe : stripes) {
+            Table table = stripe.table;
+            for (int i = 0; i <= table.mask; i++) {
+                Object v = table.values.get(i);
+                if (v != null && v != REMOVED) {
+                    if (n == result.length) {
+                        result = Arrays.copyOf(result, n * 2 + 1);
+                    }
+                    result[n++] = table.keys[i];
+                }
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns a weakly consistent, read-only view of the values.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentIntObjectMap.this.size();
+            }
+        };
+    }
+
+    private class ValueIterator implements Iterator<V> {
+        private int stripe = -1;
+        private Table table;
+        private int slot;
+        private Object next;
+
+        ValueIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (true) {
+                if (table != null) {
+                    while (slot <= table.mask) {
+                        Object v = table.values.get(slot++);
+                        if (v != null && v != REMOVED) {
+                            next = v;
+                            return;
+                        }
+                    }
+                }
+                if (++stripe >= STRIPES) {
+                    return;
+                }
+                table = stripes[stripe].table;
+                slot = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            V v = (V) next;
+            advance();
+            return v;
+        }
+    }
+}
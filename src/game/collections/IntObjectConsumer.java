@@ -0,0 +1,9 @@
+package game.collections;
+
+/**
+ * Callback for iterating int-keyed maps without boxing the key.
+ */
+@FunctionalInterface
+public interface IntObjectConsumer<V> {
+    void accept(int key, V value);
+}
@@ -0,0 +1,50 @@
+package game.combat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The attacker's half of an attack: the damage it swings with, after its
+ * critical hit roll and boosts but before the defender's element, effects
+ * and evasion. It can be landed on a defender held by another node.
+ */
+public final class Strike {
+    private final double damage;
+    private final boolean critical;
+    private final MagicElement element;
+    private final double accuracy;
+
+    /**
+     * @param element  The attacker's element for a magic attack, null for a physical one
+     * @param accuracy The attacker's accuracy if it is an archer, otherwise 0
+     */
+    public Strike(double damage, boolean critical, MagicElement element, double accuracy) {
+        this.damage = damage;
+        this.critical = critical;
+        this.element = element;
+        this.accuracy = accuracy;
+    }
+
+    public double getDamage() { return damage; }
+    public boolean isCritical() { return critical; }
+    public MagicElement getElement() { return element; }
+    public double getAccuracy() { return accuracy; }
+
+    public void writeTo(ByteBuffer out) {
+        out.putDouble(damage).put((byte) (critical ? 1 : 0));
+        out.put((byte) (element != null ? element.ordinal() : -1));
+        out.putDouble(accuracy);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the element is unknown
+     */
+    public static Strike readFrom(ByteBuffer in) {
+        double damage = in.getDouble();
+        boolean critical = in.get() != 0;
+        int element = in.get();
+        if (element >= MagicElement.values().length) {
+            throw new IllegalArgumentException("Unknown element " + element);
+        }
+        return new Strike(damage, critical, element >= 0 ? MagicElement.values()[element] : null, in.getDouble());
+    }
+}
@@ -49,10 +49,10 @@ public class Inventory {
         if (other != null && other.items != null) {
             // Deep copy each item
             for (GameItem item : other.items) {
-                if (item instanceof Potion) {
-                    this.items.add(new Potion(item.getPosition()));
-                } else if (item instanceof PowerPotion) {
-                    this.items.add(new PowerPotion(item.getPosition()));
+                if (item instanceof PowerPotion) {
+                    this.items.add(new PowerPotion((PowerPotion) item));
+                } else if (item instanceof Potion) {
+                    this.items.add(new Potion((Potion) item));
                 } else if (item instanceof Treasure) {
                     Treasure t = (Treasure) item;
                     this.items.add(new Treasure(t.getPosition(), t.isVisible(), t.getValue()));
@@ -0,0 +1,118 @@
+package game.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The simulation's source of randomness: one seed, split into an independent
+ * stream per subsystem, so that e.g. an extra combat roll does not change
+ * where the next enemy spawns. Each stream is a SplitMix64 generator whose
+ * state is a single counter, so it is cheap to advance, safe to share without
+ * locks, and can be saved in a checkpoint and restored exactly.
+ * <p>
+ * The server world creates the streams from its seed and hands them to every
+ * character and item it creates, which draw from them. Given the same seed,
+ * stream states and input, a session makes the same random choices.
+ */
+public final class RandomStreams {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The subsystems that draw random numbers.
+     */
+    public enum Stream {
+        /** Spawn positions and the stats a new character starts with. */
+        SPAWN,
+        /** Items placed on the map and what they are worth. */
+        LOOT,
+        /** Critical hits and evasion. */
+        COMBAT,
+        /** Enemy timing, decorators and teleports. */
+        AI
+    }
+
+    /**
+     * One stream. Draws are lock-free; they are reproducible as long as the
+     * stream is drawn from in a deterministic order.
+     */
+    public static final class Generator {
+        private final AtomicLong state;
+
+        Generator(long state) {
+            this.state = new AtomicLong(state);
+        }
+
+        public long nextLong() {
+            return mix(state.addAndGet(GOLDEN_GAMMA));
+        }
+
+        /**
+         * Returns a value in [0, bound).
+         */
+        public int nextInt(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("bound must be positive: " + bound);
+            }
+            return (int) (((nextLong() >>> 33) * bound) >>> 31);
+        }
+
+        /**
+         * Returns a value in [origin, bound).
+         */
+        public int nextInt(int origin, int bound) {
+            return origin + nextInt(bound - origin);
+        }
+
+        /**
+         * Returns a value in [0, 1).
+         */
+        public double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        long getState() { return state.get(); }
+        void setState(long value) { state.set(value); }
+    }
+
+    private final long seed;
+    private final Generator[] streams = new Generator[Stream.values().length];
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+        for (Stream s : Stream.values()) {
+            streams[s.ordinal()] = new Generator(mix(seed + (s.ordinal() + 1) * GOLDEN_GAMMA));
+        }
+    }
+
+    public long getSeed() { return seed; }
+
+    public Generator get(Stream s) {
+        return streams[s.ordinal()];
+    }
+
+    /**
+     * Returns the position of every stream, in {@link Stream} order.
+     */
+    public long[] saveState() {
+        long[] state = new long[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            state[i] = streams[i].getState();
+        }
+        return state;
+    }
+
+    /**
+     * Puts the streams back where {@link #saveState()} found them. Streams
+     * missing from {@code state}, e.g. ones added since, keep their position.
+     */
+    public void restoreState(long[] state) {
+        for (int i = 0; i < Math.min(state.length, streams.length); i++) {
+            streams[i].setState(state[i]);
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
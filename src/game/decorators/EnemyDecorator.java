@@ -3,6 +3,7 @@ package game.decorators;
 import game.characters.Enemy;
 import game.characters.PlayerCharacter;
 import game.combat.RangedFighter;
+import game.effects.StatusEffects;
 import game.map.GameMap;
 import game.map.Position;
 
@@ -16,7 +17,7 @@ public abstract class EnemyDecorator extends Enemy {
     protected final Enemy wrapped;
 
     public EnemyDecorator(Enemy wrapped) {
-	    	super(wrapped.getLoot(),wrapped.getPosition());
+	    	super(wrapped.getLoot(),wrapped.getPosition(),wrapped.getRandomStreams());
         setPosition(wrapped.getPosition());
         setHealth(wrapped.getHealth());
         this.wrapped = wrapped;
@@ -75,6 +76,15 @@ public abstract class EnemyDecorator extends Enemy {
         super.setHealth(health);
     }
 
+    @Override
+    public StatusEffects getEffects() {
+	    	if(wrapped == null)
+	    	{    		
+	    		return super.getEffects();
+	    	}
+        return wrapped.getEffects();
+    }
+
     @Override
     public int getLoot() {
 	    	if(wrapped == null)
@@ -106,16 +116,6 @@ public abstract class EnemyDecorator extends Enemy {
     }
 
 
-    @Override
-    public void onPlayerMoved(Position pos) {
-	    	if(wrapped == null)
-	    	{    		
-	    		super.onPlayerMoved(pos);
-	    		return ;
-	    	}
-        wrapped.onPlayerMoved(pos);
-    }
-
     @Override
     public String getOriginalName() {
 	    	if(wrapped == null)
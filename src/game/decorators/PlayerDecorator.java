@@ -2,6 +2,7 @@ package game.decorators;
 
 import game.characters.PlayerCharacter;
 import game.combat.Combatant;
+import game.effects.StatusEffects;
 import game.gui.GameObserver;
 import game.items.GameItem;
 import game.map.Position;
@@ -14,7 +15,7 @@ public abstract class PlayerDecorator extends PlayerCharacter {
     protected PlayerCharacter wrapped;
 
     public PlayerDecorator(PlayerCharacter player) {
-        super(player.getName());
+        super(player.getName(), player.getRandomStreams());
         setPosition(player.getPosition());
         this.wrapped = player;
     }
@@ -139,6 +140,13 @@ public abstract class PlayerDecorator extends PlayerCharacter {
         wrapped.setHealth(health);
     }
 
+    @Override
+    public StatusEffects getEffects() {
+    		if(wrapped == null)
+			return super.getEffects();
+        return wrapped.getEffects();
+    }
+
     @Override
     public int getPower() {
     		if(wrapped == null)
@@ -1,5 +1,6 @@
 package game.decorators;
 
+import game.core.RandomStreams.Stream;
 import game.characters.Dragon;
 import game.characters.Enemy;
 import game.characters.PlayerCharacter;
@@ -79,7 +80,7 @@ public class VampireEnemyDecorator extends EnemyDecorator implements PhysicalAtt
 
 	@Override
 	public boolean isCriticalHit() {
-		return Math.random() < 0.1;
+		return getRandomStreams().get(Stream.COMBAT).nextDouble() < 0.1;
 	}
 }
 
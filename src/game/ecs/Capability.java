@@ -0,0 +1,37 @@
+package game.ecs;
+
+/**
+ * Bit flags describing what an entity is able to do.
+ * Flags are resolved once when the entity is created (see {@link EntityComponents})
+ * so combat and AI code can test them without walking decorator chains.
+ */
+public final class Capability {
+    public static final int PLAYER      = 1;
+    public static final int ENEMY       = 1 << 1;
+    public static final int PHYSICAL    = 1 << 2;
+    public static final int MAGIC       = 1 << 3;
+    public static final int MELEE       = 1 << 4;
+    public static final int RANGED      = 1 << 5;
+    public static final int EXPLODING   = 1 << 6;
+    public static final int TELEPORTING = 1 << 7;
+    public static final int VAMPIRE     = 1 << 8;
+
+    private Capability() {
+    }
+
+    /**
+     * Returns a readable list of the flags set in the given mask, e.g. "ENEMY|MELEE".
+     */
+    public static String describe(int flags) {
+        String[] names = {"PLAYER", "ENEMY", "PHYSICAL", "MAGIC", "MELEE", "RANGED",
+                "EXPLODING", "TELEPORTING", "VAMPIRE"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if ((flags & (1 << i)) != 0) {
+                if (sb.length() > 0) sb.append('|');
+                sb.append(names[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package game.ecs;
+
+import game.characters.AbstractCharacter;
+import game.characters.Enemy;
+import game.characters.PlayerCharacter;
+import game.combat.Combatant;
+import game.combat.MagicAttacker;
+import game.combat.MeleeFighter;
+import game.combat.PhysicalAttacker;
+import game.combat.RangedFighter;
+import game.decorators.EnemyDecorator;
+import game.decorators.ExplodingEnemyDecorator;
+import game.decorators.PlayerDecorator;
+import game.decorators.TeleportingEnemyDecorator;
+import game.decorators.VampireEnemyDecorator;
+
+/**
+ * Flattened view of an entity's capabilities.
+ * The decorator chain is walked once when the entity is created; afterwards
+ * capability checks are a bit test and component lookups are a field read.
+ */
+public final class EntityComponents {
+    private final int flags;
+    private final String baseClassName;
+    private final int range;
+    private final PhysicalAttacker physical;
+    private final MagicAttacker magic;
+    private final ExplodingEnemyDecorator exploding;
+    private final TeleportingEnemyDecorator teleporter;
+
+    private EntityComponents(int flags, String baseClassName, int range, PhysicalAttacker physical,
+                             MagicAttacker magic, ExplodingEnemyDecorator exploding,
+                             TeleportingEnemyDecorator teleporter) {
+        this.flags = flags;
+        this.baseClassName = baseClassName;
+        this.range = range;
+        this.physical = physical;
+        this.magic = magic;
+        this.exploding = exploding;
+        this.teleporter = teleporter;
+    }
+
+    /**
+     * Returns the components of a combatant, using the cached copy when available.
+     */
+    public static EntityComponents of(Combatant combatant) {
+        if (combatant instanceof AbstractCharacter character) {
+            return character.getComponents();
+        }
+        return resolve(combatant);
+    }
+
+    /**
+     * Walks the decorator chain of an entity and resolves its capabilities.
+     * Attack and range capabilities come from the undecorated base entity,
+     * special behaviours from the decorators wrapped around it.
+     */
+    public static EntityComponents resolve(Combatant entity) {
+        int flags = 0;
+        ExplodingEnemyDecorator exploding = null;
+        TeleportingEnemyDecorator teleporter = null;
+
+        Combatant base = entity;
+        while (base instanceof PlayerDecorator decorator) {
+            base = decorator.getWrapped();
+        }
+        while (base instanceof EnemyDecorator decorator) {
+            if (decorator instanceof ExplodingEnemyDecorator e && exploding == null) {
+                exploding = e;
+                flags |= Capability.EXPLODING;
+            } else if (decorator instanceof TeleportingEnemyDecorator t && teleporter == null) {
+                teleporter = t;
+                flags |= Capability.TELEPORTING;
+            } else if (decorator instanceof VampireEnemyDecorator) {
+                flags |= Capability.VAMPIRE;
+            }
+            base = decorator.getWrapped();
+        }
+
+        if (base instanceof PlayerCharacter) flags |= Capability.PLAYER;
+        if (base instanceof Enemy) flags |= Capability.ENEMY;
+
+        PhysicalAttacker physical = null;
+        MagicAttacker magic = null;
+        if (base instanceof PhysicalAttacker p) {
+            physical = p;
+            flags |= Capability.PHYSICAL;
+        }
+        if (base instanceof MagicAttacker m) {
+            magic = m;
+            flags |= Capability.MAGIC;
+        }
+
+        int range = -1;
+        if (base instanceof MeleeFighter) {
+            flags |= Capability.MELEE;
+            range = 1;
+        }
+        if (base instanceof RangedFighter r) {
+            flags |= Capability.RANGED;
+            range = r.getRange();
+        }
+
+        return new EntityComponents(flags, base.getClass().getSimpleName(), range,
+                physical, magic, exploding, teleporter);
+    }
+
+    public boolean has(int capability) {
+        return (flags & capability) != 0;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns the class name of the undecorated entity (e.g. "Warrior", "Goblin").
+     */
+    public String getBaseClassName() {
+        return baseClassName;
+    }
+
+    /**
+     * Returns the attack range in tiles, or -1 if the entity cannot attack.
+     */
+    public int getRange() {
+        return range;
+    }
+
+    /**
+     * Checks whether a target at the given distance can be attacked.
+     */
+    public boolean canReach(int distance) {
+        return range >= 0 && distance <= range;
+    }
+
+    public PhysicalAttacker getPhysical() {
+        return physical;
+    }
+
+    public MagicAttacker getMagic() {
+        return magic;
+    }
+
+    public ExplodingEnemyDecorator getExploding() {
+        return exploding;
+    }
+
+    public TeleportingEnemyDecorator getTeleporter() {
+        return teleporter;
+    }
+
+    @Override
+    public String toString() {
+        return baseClassName + "[" + Capability.describe(flags) + ", range " + range + "]";
+    }
+}
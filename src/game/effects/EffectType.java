@@ -0,0 +1,57 @@
+package game.effects;
+
+/**
+ * The kinds of status effects a character can carry.
+ * Declaration order is the fixed order in which effects are evaluated
+ * during power and damage calculation.
+ */
+public enum EffectType {
+    BOOST(10, 0, 150, StackingRule.REFRESH, 1),
+    SHIELD(5, 1, 150, StackingRule.REFRESH, 1),
+    REGEN(2, 0, 150, StackingRule.STACK, 3);
+
+    /** Ticks between two regeneration pulses (10 seconds at 100 ms per tick). */
+    public static final int REGEN_INTERVAL_TICKS = 100;
+
+    private final int magnitude;
+    private final int charges;
+    private final int durationTicks;
+    private final StackingRule stacking;
+    private final int maxStacks;
+
+    EffectType(int magnitude, int charges, int durationTicks, StackingRule stacking, int maxStacks) {
+        this.magnitude = magnitude;
+        this.charges = charges;
+        this.durationTicks = durationTicks;
+        this.stacking = stacking;
+        this.maxStacks = maxStacks;
+    }
+
+    /**
+     * Creates a new instance of this effect with the default magnitude and duration.
+     *
+     * @param currentTick The world tick at which the effect starts
+     */
+    public StatusEffect create(long currentTick) {
+        return new StatusEffect(this, magnitude, charges, currentTick, currentTick + durationTicks, stacking);
+    }
+
+    public int getMaxStacks() {
+        return maxStacks;
+    }
+
+    /**
+     * Maps an ability name sent by the client (BOOST, SHIELD, REGEN) to its effect type.
+     *
+     * @return The matching type, or null for unknown abilities
+     */
+    public static EffectType fromAbility(String ability) {
+        if (ability == null) return null;
+        return switch (ability) {
+            case "BOOST" -> BOOST;
+            case "SHIELD" -> SHIELD;
+            case "REGEN" -> REGEN;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package game.effects;
+
+/**
+ * Defines what happens when an effect is applied to a character
+ * that already carries an effect of the same type.
+ */
+public enum StackingRule {
+    /** The existing effect is replaced and its timer restarts. */
+    REFRESH,
+    /** A new instance is added next to the existing ones, up to the type's stack limit. */
+    STACK,
+    /** The new effect is rejected while one of the same type is active. */
+    IGNORE
+}
@@ -0,0 +1,47 @@
+package game.effects;
+
+/**
+ * A single buff attached to a character.
+ * Instances are immutable; consuming a charge produces a new instance.
+ */
+public final class StatusEffect {
+    private final EffectType type;
+    private final int magnitude;
+    private final int charges;
+    private final long startTick;
+    private final long expiryTick;
+    private final StackingRule stacking;
+
+    public StatusEffect(EffectType type, int magnitude, int charges, long startTick, long expiryTick,
+                        StackingRule stacking) {
+        this.type = type;
+        this.magnitude = magnitude;
+        this.charges = charges;
+        this.startTick = startTick;
+        this.expiryTick = expiryTick;
+        this.stacking = stacking;
+    }
+
+    public EffectType getType() { return type; }
+    public int getMagnitude() { return magnitude; }
+    public int getCharges() { return charges; }
+    public long getStartTick() { return startTick; }
+    public long getExpiryTick() { return expiryTick; }
+    public StackingRule getStacking() { return stacking; }
+
+    public boolean isExpired(long currentTick) {
+        return currentTick >= expiryTick;
+    }
+
+    /**
+     * Returns a copy of this effect with one charge removed.
+     */
+    StatusEffect withChargeConsumed() {
+        return new StatusEffect(type, magnitude, charges - 1, startTick, expiryTick, stacking);
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + magnitude + ", until tick " + expiryTick + ")";
+    }
+}
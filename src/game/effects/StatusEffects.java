@@ -0,0 +1,149 @@
+package game.effects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The set of status effects currently attached to one character.
+ * Effects are kept sorted by type so that every calculation walks them
+ * in the same order. All methods are safe to call from combat and tick threads.
+ */
+public class StatusEffects {
+    private final List<StatusEffect> active = new ArrayList<>(2);
+
+    /**
+     * Attaches an effect, honouring its stacking rule.
+     *
+     * @return true if the effect was attached, false if the stacking rule rejected it
+     */
+    public synchronized boolean apply(StatusEffect effect) {
+        EffectType type = effect.getType();
+        int sameType = count(type);
+
+        if (sameType > 0) {
+            switch (effect.getStacking()) {
+                case IGNORE:
+                    return false;
+                case REFRESH:
+                    active.removeIf(e -> e.getType() == type);
+                    break;
+                case STACK:
+                    if (sameType >= type.getMaxStacks()) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+
+        // Insert after the last effect of the same or an earlier type
+        int index = 0;
+        while (index < active.size() && active.get(index).getType().ordinal() <= type.ordinal()) {
+            index++;
+        }
+        active.add(index, effect);
+        return true;
+    }
+
+    /**
+     * Applies power modifiers to a base power value.
+     */
+    public synchronized int modifyPower(int basePower) {
+        int power = basePower;
+        for (int i = 0; i < active.size(); i++) {
+            StatusEffect effect = active.get(i);
+            if (effect.getType() == EffectType.BOOST) {
+                power += effect.getMagnitude();
+            }
+        }
+        return power;
+    }
+
+    /**
+     * Lets a blocking effect absorb an incoming hit, consuming one of its charges.
+     *
+     * @return true if the hit was absorbed completely
+     */
+    public synchronized boolean absorbHit() {
+        for (int i = 0; i < active.size(); i++) {
+            StatusEffect effect = active.get(i);
+            if (effect.getType() == EffectType.SHIELD && effect.getCharges() > 0) {
+                active.set(i, effect.withChargeConsumed());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies damage reduction to an incoming damage amount.
+     */
+    public synchronized int modifyIncomingDamage(int damage) {
+        double result = damage;
+        for (int i = 0; i < active.size(); i++) {
+            StatusEffect effect = active.get(i);
+            if (effect.getType() == EffectType.SHIELD) {
+                result *= (100 - effect.getMagnitude()) / 100.0;
+            }
+        }
+        return (int) result;
+    }
+
+    /**
+     * Returns the amount of health regenerated on the given tick.
+     */
+    public synchronized int regenerationAt(long currentTick) {
+        int heal = 0;
+        for (int i = 0; i < active.size(); i++) {
+            StatusEffect effect = active.get(i);
+            if (effect.getType() == EffectType.REGEN) {
+                long elapsed = currentTick - effect.getStartTick();
+                if (elapsed > 0 && elapsed % EffectType.REGEN_INTERVAL_TICKS == 0) {
+                    heal += effect.getMagnitude();
+                }
+            }
+        }
+        return heal;
+    }
+
+    /**
+     * Removes every effect that has expired by the given tick.
+     *
+     * @return The removed effects (empty when nothing expired)
+     */
+    public synchronized List<StatusEffect> removeExpired(long currentTick) {
+        List<StatusEffect> expired = null;
+        for (int i = active.size() - 1; i >= 0; i--) {
+            StatusEffect effect = active.get(i);
+            if (effect.isExpired(currentTick)) {
+                if (expired == null) expired = new ArrayList<>(1);
+                expired.add(effect);
+                active.remove(i);
+            }
+        }
+        return expired != null ? expired : List.of();
+    }
+
+    public synchronized boolean has(EffectType type) {
+        return count(type) > 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return active.isEmpty();
+    }
+
+    public synchronized List<StatusEffect> getActive() {
+        return new ArrayList<>(active);
+    }
+
+    public synchronized void clear() {
+        active.clear();
+    }
+
+    private int count(EffectType type) {
+        int n = 0;
+        for (int i = 0; i < active.size(); i++) {
+            if (active.get(i).getType() == type) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,235 @@
+package game.engine;
+
+import game.characters.Enemy;
+import game.map.Position;
+import game.storage.ColumnStorage;
+import game.storage.StorageBackend;
+
+import java.util.Arrays;
+
+/**
+ * Packed column storage for enemy simulation state.
+ * Hot fields live in parallel primitive columns, one per field, indexed by a
+ * dense slot order, so the AI sweep reads memory linearly instead of chasing
+ * decorator chains. The columns live in a {@link ColumnStorage}, on the heap
+ * by default or off it. Enemies are addressed by their entity handle (see
+ * {@link EntityHandles}), which stays valid while slots are compacted and
+ * detects use after removal.
+ * <p>
+ * An unpacked store keeps only the schedule columns and reads position,
+ * health, power and loot from the {@link Enemy} views, for comparison.
+ * <p>
+ * All methods synchronize on the store; callers doing a multi-step sweep
+ * should hold the store's monitor for the whole pass.
+ */
+public class EnemyStore {
+    public static final byte AI_IDLE = 0;
+    public static final byte AI_ACTIVE = 1;
+    public static final byte AI_COMBAT = 2;
+
+    // Schedule columns, kept by every store; the next action tick is a long and takes two
+    private static final int HANDLE = 0;
+    private static final int AI_STATE = 1;
+    private static final int ACTION_INTERVAL = 2;
+    private static final int NEXT_ACTION_TICK = 3;
+    private static final int SCHEDULE_COLUMNS = 5;
+    // Copies of the hot entity fields, kept only by a packed store
+    private static final int ROW = 5;
+    private static final int COL = 6;
+    private static final int HEALTH = 7;
+    private static final int POWER = 8;
+    private static final int LOOT = 9;
+    private static final int PACKED_COLUMNS = 10;
+
+    // Dense per-slot state
+    private int count;
+    private final boolean packed;
+    private final ColumnStorage columns;
+    private Enemy[] views;
+
+    // Handle index -> dense slot, -1 if absent
+    private int[] slotOfIndex;
+
+    public EnemyStore(int initialCapacity) {
+        this(initialCapacity, StorageBackend.HEAP, true);
+    }
+
+    /**
+     * @param packed Whether to copy the hot entity fields into columns, or read them from the views
+     */
+    public EnemyStore(int initialCapacity, StorageBackend backend, boolean packed) {
+        int capacity = Math.max(4, initialCapacity);
+        this.packed = packed;
+        columns = backend.newColumns(packed ? PACKED_COLUMNS : SCHEDULE_COLUMNS, capacity);
+        views = new Enemy[capacity];
+
+        slotOfIndex = new int[capacity];
+        Arrays.fill(slotOfIndex, -1);
+    }
+
+    /**
+     * Adds an enemy under its network id and copies its current state into the packed columns.
+     *
+     * @param interval Ticks between two AI decisions of this enemy
+     */
+    public synchronized void add(Enemy enemy, long firstActionTick, int interval) {
+        int handle = enemy.getNetworkId();
+        if (slotOf(handle) >= 0) {
+            return;
+        }
+        if (count == views.length) {
+            grow(views.length * 2);
+        }
+        int index = EntityHandles.indexOf(handle);
+        if (index >= slotOfIndex.length) {
+            int old = slotOfIndex.length;
+            slotOfIndex = Arrays.copyOf(slotOfIndex, Math.max(index + 1, old * 2));
+            Arrays.fill(slotOfIndex, old, slotOfIndex.length, -1);
+        }
+
+        int slot = count++;
+        columns.setInt(HANDLE, slot, handle);
+        columns.setInt(AI_STATE, slot, AI_IDLE);
+        columns.setInt(ACTION_INTERVAL, slot, Math.max(1, interval));
+        columns.setLong(NEXT_ACTION_TICK, slot, firstActionTick);
+        if (packed) {
+            Position pos = enemy.getPosition();
+            columns.setInt(ROW, slot, pos.getRow());
+            columns.setInt(COL, slot, pos.getCol());
+            columns.setInt(HEALTH, slot, enemy.getHealth());
+            columns.setInt(POWER, slot, enemy.getPower());
+            columns.setInt(LOOT, slot, enemy.getLoot());
+        }
+        views[slot] = enemy;
+        slotOfIndex[index] = slot;
+    }
+
+    /**
+     * Removes an enemy. The last slot is moved into the hole so the columns stay dense.
+     *
+     * @return true if the handle was valid
+     */
+    public synchronized boolean remove(int handle) {
+        int slot = slotOf(handle);
+        if (slot < 0) {
+            return false;
+        }
+
+        int last = --count;
+        if (slot != last) {
+            columns.copyRow(last, slot);
+            views[slot] = views[last];
+            slotOfIndex[EntityHandles.indexOf(columns.getInt(HANDLE, slot))] = slot;
+        }
+        views[last] = null;
+        slotOfIndex[EntityHandles.indexOf(handle)] = -1;
+        return true;
+    }
+
+    /**
+     * Returns the dense slot of a handle, or -1 if the handle is stale or unknown.
+     */
+    public synchronized int slotOf(int handle) {
+        if (handle <= 0) {
+            return -1;
+        }
+        int index = EntityHandles.indexOf(handle);
+        if (index >= slotOfIndex.length) {
+            return -1;
+        }
+        int slot = slotOfIndex[index];
+        return slot >= 0 && columns.getInt(HANDLE, slot) == handle ? slot : -1;
+    }
+
+    public synchronized boolean isValid(int handle) {
+        return slotOf(handle) >= 0;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // --- Per-handle updates ---
+
+    public synchronized void setPosition(int handle, Position pos) {
+        int slot = slotOf(handle);
+        if (slot >= 0 && packed) {
+            columns.setInt(ROW, slot, pos.getRow());
+            columns.setInt(COL, slot, pos.getCol());
+        }
+    }
+
+    public synchronized void setHealth(int handle, int value) {
+        int slot = slotOf(handle);
+        if (slot >= 0 && packed) {
+            columns.setInt(HEALTH, slot, value);
+        }
+    }
+
+    public synchronized void setAiState(int handle, byte state) {
+        int slot = slotOf(handle);
+        if (slot >= 0) {
+            columns.setInt(AI_STATE, slot, state);
+        }
+    }
+
+    // --- Per-slot access for linear sweeps (hold the store monitor) ---
+
+    public int handleAt(int slot) {
+        return columns.getInt(HANDLE, slot);
+    }
+
+    public int rowAt(int slot) { return packed ? columns.getInt(ROW, slot) : views[slot].getPosition().getRow(); }
+    public int colAt(int slot) { return packed ? columns.getInt(COL, slot) : views[slot].getPosition().getCol(); }
+    public int healthAt(int slot) { return packed ? columns.getInt(HEALTH, slot) : views[slot].getHealth(); }
+    public int powerAt(int slot) { return packed ? columns.getInt(POWER, slot) : views[slot].getPower(); }
+    public int lootAt(int slot) { return packed ? columns.getInt(LOOT, slot) : views[slot].getLoot(); }
+    public byte aiStateAt(int slot) { return (byte) columns.getInt(AI_STATE, slot); }
+    public long nextActionTickAt(int slot) { return columns.getLong(NEXT_ACTION_TICK, slot); }
+    public int intervalAt(int slot) { return columns.getInt(ACTION_INTERVAL, slot); }
+
+    public void setAiStateAt(int slot, byte state) {
+        columns.setInt(AI_STATE, slot, state);
+    }
+
+    /**
+     * Schedules the next decision of the enemy in a slot one interval after the given tick.
+     */
+    public void scheduleNextAt(int slot, long currentTick) {
+        columns.setLong(NEXT_ACTION_TICK, slot, currentTick + columns.getInt(ACTION_INTERVAL, slot));
+    }
+
+    /**
+     * Materializes the object view of a slot for code that still works with {@link Enemy}.
+     */
+    public Enemy viewAt(int slot) {
+        return views[slot];
+    }
+
+    /**
+     * Returns the object view for a handle, or null if the handle is stale.
+     */
+    public synchronized Enemy view(int handle) {
+        int slot = slotOf(handle);
+        return slot >= 0 ? views[slot] : null;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(views, 0, count, null);
+        Arrays.fill(slotOfIndex, -1);
+        count = 0;
+    }
+
+    /**
+     * Frees the column storage; the store must not be used afterwards.
+     */
+    public synchronized void close() {
+        clear();
+        columns.close();
+    }
+
+    private void grow(int capacity) {
+        columns.resize(capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+}
@@ -0,0 +1,182 @@
+package game.engine;
+
+import java.util.Arrays;
+
+/**
+ * Allocates entity handles for players, enemies and items.
+ * A handle packs a dense index (low bits) with a generation counter (high bits).
+ * Indices of released handles are recycled, so they stay small enough to index
+ * arrays directly, while the bumped generation makes old handles detectably stale.
+ * <p>
+ * Generations start at 1, so a valid handle is always a positive int and
+ * 0 / -1 remain free to mean "no entity" on the wire.
+ */
+public class EntityHandles {
+    public static final int INDEX_BITS = 20;
+    public static final int MAX_INDEX = (1 << INDEX_BITS) - 1;
+    private static final int MAX_GENERATION = (1 << (31 - INDEX_BITS)) - 1;
+
+    private final int firstIndex;
+    private final int indices;
+    private int[] generation;
+    private boolean[] live;
+    private int[] freeIndices;
+    private int freeCount;
+    private int indexCount;
+    private int liveCount;
+
+    public EntityHandles() {
+        this(64);
+    }
+
+    public EntityHandles(int initialCapacity) {
+        this(initialCapacity, 0, MAX_INDEX + 1);
+    }
+
+    /**
+     * Creates an allocator that hands out only the {@code indices} indices
+     * starting at {@code firstIndex}, so that allocators given disjoint ranges
+     * never issue the same handle.
+     */
+    public EntityHandles(int initialCapacity, int firstIndex, int indices) {
+        if (firstIndex < 0 || indices <= 0 || firstIndex + indices > MAX_INDEX + 1) {
+            throw new IllegalArgumentException("Invalid index range " + firstIndex + " + " + indices);
+        }
+        this.firstIndex = firstIndex;
+        this.indices = indices;
+        int capacity = Math.min(Math.max(4, initialCapacity), indices);
+        generation = new int[capacity];
+        live = new boolean[capacity];
+        freeIndices = new int[capacity];
+    }
+
+    /**
+     * Issues a new handle, reusing the index of a released one when possible.
+     */
+    public synchronized int allocate() {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (indexCount == indices) {
+                throw new IllegalStateException("Entity handle space exhausted");
+            }
+            if (indexCount == generation.length) {
+                int capacity = Math.min(generation.length * 2, indices);
+                generation = Arrays.copyOf(generation, capacity);
+                live = Arrays.copyOf(live, capacity);
+                freeIndices = Arrays.copyOf(freeIndices, capacity);
+            }
+            index = indexCount++;
+            generation[index] = 1;
+        }
+        live[index] = true;
+        liveCount++;
+        return (generation[index] << INDEX_BITS) | (firstIndex + index);
+    }
+
+    /**
+     * Releases a handle. Its index becomes available again under a new generation.
+     *
+     * @return false if the handle was already stale
+     */
+    public synchronized boolean release(int handle) {
+        if (!isValid(handle)) {
+            return false;
+        }
+        int index = indexOf(handle) - firstIndex;
+        live[index] = false;
+        int next = (generation[index] + 1) & MAX_GENERATION;
+        generation[index] = next == 0 ? 1 : next;
+        freeIndices[freeCount++] = index;
+        liveCount--;
+        return true;
+    }
+
+    /**
+     * Checks that a handle refers to an entity that has not been released since.
+     */
+    public synchronized boolean isValid(int handle) {
+        if (handle <= 0) {
+            return false;
+        }
+        int index = indexOf(handle) - firstIndex;
+        return index >= 0 && index < indexCount && live[index] && generation[index] == generationOf(handle);
+    }
+
+    /**
+     * Returns one past the highest index handed out so far, for sizing arrays.
+     */
+    public synchronized int capacity() {
+        return firstIndex + indexCount;
+    }
+
+    public synchronized int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Returns what {@link #restoreState(int[])} needs to hand out the same
+     * handles from here on: the number of indices used, their generations,
+     * then the stack of released indices.
+     */
+    public synchronized int[] saveState() {
+        int[] state = new int[1 + indexCount + freeCount];
+        state[0] = indexCount;
+        System.arraycopy(generation, 0, state, 1, indexCount);
+        System.arraycopy(freeIndices, 0, state, 1 + indexCount, freeCount);
+        return state;
+    }
+
+    /**
+     * Replaces the allocator's state with one returned by {@link #saveState()}.
+     * Every index that is not on the released stack is live again.
+     *
+     * @throws IllegalArgumentException if the state does not fit this allocator
+     */
+    public synchronized void restoreState(int[] state) {
+        int count = state.length > 0 ? state[0] : -1;
+        if (count < 0 || count > indices || state.length < 1 + count || state.length - 1 - count > count) {
+            throw new IllegalArgumentException("Invalid handle state of " + state.length + " ints");
+        }
+        int capacity = Math.min(Math.max(generation.length, count), indices);
+        int[] restoredGeneration = new int[capacity];
+        boolean[] restoredLive = new boolean[capacity];
+        int[] restoredFree = new int[capacity];
+        for (int index = 0; index < count; index++) {
+            int g = state[1 + index];
+            if (g <= 0 || g > MAX_GENERATION) {
+                throw new IllegalArgumentException("Invalid generation " + g + " of index " + index);
+            }
+            restoredGeneration[index] = g;
+            restoredLive[index] = true;
+        }
+        int free = state.length - 1 - count;
+        for (int i = 0; i < free; i++) {
+            int index = state[1 + count + i];
+            if (index < 0 || index >= count || !restoredLive[index]) {
+                throw new IllegalArgumentException("Invalid released index " + index);
+            }
+            restoredLive[index] = false;
+            restoredFree[i] = index;
+        }
+        generation = restoredGeneration;
+        live = restoredLive;
+        freeIndices = restoredFree;
+        indexCount = count;
+        freeCount = free;
+        liveCount = count - free;
+    }
+
+    public static int indexOf(int handle) {
+        return handle & MAX_INDEX;
+    }
+
+    public static int generationOf(int handle) {
+        return handle >>> INDEX_BITS;
+    }
+
+    public static String describe(int handle) {
+        return indexOf(handle) + "#" + generationOf(handle);
+    }
+}
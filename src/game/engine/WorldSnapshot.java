@@ -0,0 +1,314 @@
+package game.engine;
+
+import game.collections.IntObjectMap;
+import game.map.Position;
+import game.network.EnemyState;
+import game.network.GameMessage;
+import game.network.ItemState;
+import game.network.MessageType;
+import game.network.PlayerState;
+import game.network.StateFrameCodec;
+import game.vision.VisibilitySet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable view of the world at the end of one tick.
+ * The world publishes a new snapshot through a single volatile reference, and
+ * readers (state encoders, fog updates, metrics, persistence) use it without
+ * locks while the next tick runs. Consecutive snapshots share every entity
+ * state, list and field of view that did not change.
+ */
+public final class WorldSnapshot {
+    /**
+     * Viewer id that sees every entity, visible to a player or not; used for replays.
+     */
+    public static final int OMNISCIENT = Integer.MIN_VALUE;
+
+    private final long tick;
+    private final int boardSize;
+    private final List<PlayerState> players;
+    private final List<EnemyState> enemies;
+    private final List<ItemState> items;
+    private final IntObjectMap<PlayerState> playersById;
+    private final IntObjectMap<EnemyState> enemiesById;
+    private final IntObjectMap<ItemState> itemsById;
+    private final IntObjectMap<VisibilitySet> views;
+    private final VisibilitySet anyView;
+
+    private WorldSnapshot(long tick, int boardSize,
+                          List<PlayerState> players, IntObjectMap<PlayerState> playersById,
+                          List<EnemyState> enemies, IntObjectMap<EnemyState> enemiesById,
+                          List<ItemState> items, IntObjectMap<ItemState> itemsById,
+                          IntObjectMap<VisibilitySet> views, VisibilitySet anyView) {
+        this.tick = tick;
+        this.boardSize = boardSize;
+        this.players = players;
+        this.playersById = playersById;
+        this.enemies = enemies;
+        this.enemiesById = enemiesById;
+        this.items = items;
+        this.itemsById = itemsById;
+        this.views = views;
+        this.anyView = anyView;
+    }
+
+    public static WorldSnapshot empty(int boardSize) {
+        return new WorldSnapshot(0, boardSize,
+            Collections.emptyList(), new IntObjectMap<>(2),
+            Collections.emptyList(), new IntObjectMap<>(2),
+            Collections.emptyList(), new IntObjectMap<>(2),
+            new IntObjectMap<>(2), VisibilitySet.empty(boardSize * boardSize));
+    }
+
+    public long getTick() { return tick; }
+    public int getBoardSize() { return boardSize; }
+    public List<PlayerState> getPlayers() { return players; }
+    public List<EnemyState> getEnemies() { return enemies; }
+    public List<ItemState> getItems() { return items; }
+
+    public PlayerState getPlayer(int playerId) {
+        return playersById.get(playerId);
+    }
+
+    public EnemyState getEnemy(int enemyId) {
+        return enemiesById.get(enemyId);
+    }
+
+    /**
+     * Returns what a player saw at this tick, or an empty set for an unknown player.
+     */
+    public VisibilitySet visibleTo(int playerId) {
+        VisibilitySet view = views.get(playerId);
+        return view != null ? view : VisibilitySet.empty(boardSize * boardSize);
+    }
+
+    public boolean isVisibleTo(int playerId, Position pos) {
+        VisibilitySet view = views.get(playerId);
+        return view != null && inBounds(pos) && view.contains(cellOf(pos));
+    }
+
+    public boolean isVisibleToAny(Position pos) {
+        return inBounds(pos) && anyView.contains(cellOf(pos));
+    }
+
+    private boolean inBounds(Position pos) {
+        return pos.getRow() >= 0 && pos.getCol() >= 0 && pos.getRow() < boardSize && pos.getCol() < boardSize;
+    }
+
+    private int cellOf(Position pos) {
+        return pos.getRow() * boardSize + pos.getCol();
+    }
+
+    /**
+     * Builds a state message with the part of the snapshot a viewer can see.
+     * The viewer's own player is always included; a negative viewer means
+     * everything visible to any player.
+     */
+    public GameMessage toStateMessage(int viewerId) {
+        GameMessage msg = new GameMessage(MessageType.FULL_STATE);
+        
+        List<PlayerState> playerStates = new ArrayList<>();
+        for (PlayerState state : players) {
+            if (viewerId < 0 || state.getPlayerId() == viewerId || isVisibleTo(viewerId, state.getPosition())) {
+                playerStates.add(state);
+            }
+        }
+        msg.setPlayerStates(playerStates);
+        
+        List<EnemyState> enemyStates = new ArrayList<>();
+        for (EnemyState state : enemies) {
+            if (isVisible(viewerId, state.getPosition())) {
+                enemyStates.add(state);
+            }
+        }
+        msg.setEnemyStates(enemyStates);
+        
+        List<ItemState> itemStates = new ArrayList<>();
+        for (ItemState state : items) {
+            if (isVisible(viewerId, state.getPosition())) {
+                itemStates.add(state);
+            }
+        }
+        msg.setItemStates(itemStates);
+        return msg;
+    }
+
+    /**
+     * Encodes the same view as {@link #toStateMessage(int)} as a binary state
+     * frame, without building intermediate lists or messages.
+     */
+    public byte[] encodeFor(int viewerId, StateFrameCodec codec) {
+        codec.begin();
+        codec.startList();
+        for (int i = 0, n = players.size(); i < n; i++) {
+            PlayerState state = players.get(i);
+            if (viewerId < 0 || state.getPlayerId() == viewerId || isVisibleTo(viewerId, state.getPosition())) {
+                codec.player(state);
+            }
+        }
+        codec.startList();
+        for (int i = 0, n = enemies.size(); i < n; i++) {
+            EnemyState state = enemies.get(i);
+            if (isVisible(viewerId, state.getPosition())) {
+                codec.enemy(state);
+            }
+        }
+        codec.startList();
+        for (int i = 0, n = items.size(); i < n; i++) {
+            ItemState state = items.get(i);
+            if (isVisible(viewerId, state.getPosition())) {
+                codec.item(state);
+            }
+        }
+        return codec.finish();
+    }
+
+    private boolean isVisible(int viewerId, Position pos) {
+        if (viewerId == OMNISCIENT) {
+            return true;
+        }
+        return viewerId < 0 ? isVisibleToAny(pos) : isVisibleTo(viewerId, pos);
+    }
+
+    /**
+     * Starts the next snapshot on top of this one.
+     */
+    public Builder next(long tick) {
+        return new Builder().begin(this, tick);
+    }
+
+    /**
+     * Collects the state of one tick. Entity states equal to the previous
+     * snapshot's are reused, and whole lists are reused when nothing in them
+     * changed. The scratch lists are kept between ticks, so a builder that is
+     * reused allocates only for what actually changed. Not thread-safe.
+     */
+    public static final class Builder {
+        private WorldSnapshot previous;
+        private long tick;
+        private final List<PlayerState> players = new ArrayList<>();
+        private final List<EnemyState> enemies = new ArrayList<>();
+        private final List<ItemState> items = new ArrayList<>();
+        private final IntObjectMap<VisibilitySet> views = new IntObjectMap<>();
+        private boolean playersChanged;
+        private boolean enemiesChanged;
+        private boolean itemsChanged;
+        private boolean viewsChanged;
+        private VisibilitySet anyView;
+
+        /**
+         * Starts collecting the snapshot that follows {@code previous}.
+         */
+        public Builder begin(WorldSnapshot previous, long tick) {
+            this.previous = previous;
+            this.tick = tick;
+            players.clear();
+            enemies.clear();
+            items.clear();
+            views.clear();
+            playersChanged = false;
+            enemiesChanged = false;
+            itemsChanged = false;
+            viewsChanged = false;
+            anyView = null;
+            return this;
+        }
+
+        public Builder player(int playerId, String name, Position position, int health, int power,
+                              String characterClass, int lifePotions, int powerPotions, int treasure) {
+            PlayerState old = previous.playersById.get(playerId);
+            if (old != null && old.getHealth() == health && old.getPower() == power
+                    && old.getLifePotionCount() == lifePotions && old.getPowerPotionCount() == powerPotions
+                    && old.getTreasurePoints() == treasure && Objects.equals(old.getPosition(), position)
+                    && Objects.equals(old.getName(), name) && Objects.equals(old.getCharacterClass(), characterClass)) {
+                playersChanged |= players.size() >= previous.players.size() || previous.players.get(players.size()) != old;
+                players.add(old);
+            } else {
+                playersChanged = true;
+                players.add(new PlayerState(playerId, name, position, health, power,
+                    characterClass, lifePotions, powerPotions, treasure));
+            }
+            return this;
+        }
+
+        public Builder enemy(int enemyId, String type, Position position, int health, boolean visible) {
+            EnemyState old = previous.enemiesById.get(enemyId);
+            if (old != null && old.getHealth() == health && old.isVisible() == visible
+                    && Objects.equals(old.getPosition(), position) && Objects.equals(old.getType(), type)) {
+                enemiesChanged |= enemies.size() >= previous.enemies.size() || previous.enemies.get(enemies.size()) != old;
+                enemies.add(old);
+            } else {
+                enemiesChanged = true;
+                enemies.add(new EnemyState(enemyId, type, position, health, visible));
+            }
+            return this;
+        }
+
+        public Builder item(int itemId, String type, Position position, boolean visible) {
+            ItemState old = previous.itemsById.get(itemId);
+            if (old != null && old.isVisible() == visible
+                    && Objects.equals(old.getPosition(), position) && Objects.equals(old.getType(), type)) {
+                itemsChanged |= items.size() >= previous.items.size() || previous.items.get(items.size()) != old;
+                items.add(old);
+            } else {
+                itemsChanged = true;
+                items.add(new ItemState(itemId, type, position, visible));
+            }
+            return this;
+        }
+
+        /**
+         * Records a player's field of view. The sets are immutable and shared as is.
+         */
+        public Builder view(int playerId, VisibilitySet visible) {
+            viewsChanged |= previous.views.get(playerId) != visible;
+            views.put(playerId, visible);
+            return this;
+        }
+
+        public Builder anyView(VisibilitySet visible) {
+            this.anyView = visible;
+            return this;
+        }
+
+        public WorldSnapshot build() {
+            playersChanged |= players.size() != previous.players.size();
+            enemiesChanged |= enemies.size() != previous.enemies.size();
+            itemsChanged |= items.size() != previous.items.size();
+            viewsChanged |= views.size() != previous.views.size();
+
+            List<PlayerState> playerList = previous.players;
+            IntObjectMap<PlayerState> playerIndex = previous.playersById;
+            if (playersChanged) {
+                playerList = List.copyOf(players);
+                playerIndex = new IntObjectMap<>(players.size());
+                for (PlayerState state : players) playerIndex.put(state.getPlayerId(), state);
+            }
+
+            List<EnemyState> enemyList = previous.enemies;
+            IntObjectMap<EnemyState> enemyIndex = previous.enemiesById;
+            if (enemiesChanged) {
+                enemyList = List.copyOf(enemies);
+                enemyIndex = new IntObjectMap<>(enemies.size());
+                for (EnemyState state : enemies) enemyIndex.put(state.getEnemyId(), state);
+            }
+
+            List<ItemState> itemList = previous.items;
+            IntObjectMap<ItemState> itemIndex = previous.itemsById;
+            if (itemsChanged) {
+                itemList = List.copyOf(items);
+                itemIndex = new IntObjectMap<>(items.size());
+                for (ItemState state : items) itemIndex.put(state.getItemId(), state);
+            }
+
+            return new WorldSnapshot(tick, previous.boardSize,
+                playerList, playerIndex, enemyList, enemyIndex, itemList, itemIndex,
+                viewsChanged ? new IntObjectMap<>(views) : previous.views,
+                anyView != null ? anyView : previous.anyView);
+        }
+    }
+}
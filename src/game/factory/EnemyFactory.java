@@ -1,10 +1,13 @@
 package game.factory;
 
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.builder.EnemyBuilder;
 import game.characters.Enemy;
 import game.characters.Goblin;
 import game.characters.Orc;
 import game.characters.Dragon;
+import game.combat.MagicElement;
 import game.map.Position;
 import game.decorators.ExplodingEnemyDecorator;
 import game.decorators.TeleportingEnemyDecorator;
@@ -12,7 +15,6 @@ import game.decorators.VampireEnemyDecorator;
 import java.util.*;
 
 public class EnemyFactory {
-    private static final Random random = new Random();
     private static final Map<String, Class<? extends Enemy>> enemyTypes = new HashMap<>();
 
     static {
@@ -21,14 +23,14 @@ public class EnemyFactory {
         enemyTypes.put("Dragon", Dragon.class);
     }
 
-    public static Enemy createRandomEnemy(Position position) {
+    public static Enemy createRandomEnemy(Position position, RandomStreams random) {
         // Choose enemy type
         List<String> types = new ArrayList<>(enemyTypes.keySet());
-        String selectedType = types.get(random.nextInt(types.size()));
+        String selectedType = types.get(random.get(Stream.SPAWN).nextInt(types.size()));
         Class<? extends Enemy> enemyClass = enemyTypes.get(selectedType);
         
         // Use builder to create enemy with random stats
-        Enemy baseEnemy = new EnemyBuilder()
+        Enemy baseEnemy = new EnemyBuilder(random)
                 .setType(enemyClass)
                 .setPosition(position)
                 .setRandom()  // Random health, power, loot
@@ -37,14 +39,52 @@ public class EnemyFactory {
         return baseEnemy;
     }
     
-    private static String chooseEnemyType() {
+    /**
+     * Rebuilds an enemy of a known type with the given stats, e.g. from a checkpoint.
+     * Nothing is drawn from the streams.
+     *
+     * @param trait The stat its type rolled, as returned by {@link #traitOf(Enemy)}
+     * @return null if the type is unknown
+     */
+    public static Enemy createEnemy(String type, Position position, int health, int power, int loot,
+                                    double trait, RandomStreams random) {
+        Enemy enemy = switch (type) {
+            case "Goblin" -> new Goblin(loot, position, power, (int) trait, random);
+            case "Orc" -> new Orc(loot, position, power, trait, random);
+            case "Dragon" -> new Dragon(loot, position, power, MagicElement.values()[(int) trait], random);
+            default -> null;
+        };
+        if (enemy != null) {
+            enemy.setHealth(health);
+        }
+        return enemy;
+    }
+
+    /**
+     * Returns the stat an enemy's type rolls when it is created: a goblin's
+     * agility, an orc's resistance or the ordinal of a dragon's element.
+     */
+    public static double traitOf(Enemy enemy) {
+        if (enemy instanceof Goblin goblin) {
+            return goblin.getAgility();
+        }
+        if (enemy instanceof Orc orc) {
+            return orc.getResistance();
+        }
+        if (enemy instanceof Dragon dragon) {
+            return dragon.getElement().ordinal();
+        }
+        return 0;
+    }
+    
+    private static String chooseEnemyType(RandomStreams random) {
         // Simple random selection
         List<String> types = Arrays.asList("Goblin", "Orc", "Dragon");
-        return types.get(random.nextInt(types.size()));
+        return types.get(random.get(Stream.SPAWN).nextInt(types.size()));
     }
 
     public static Enemy wrapWithRandomDecorator(Enemy enemy) {
-        int type = random.nextInt(3);
+        int type = enemy.getRandomStreams().get(Stream.AI).nextInt(3);
         
         Enemy decorated = switch (type) {
             case 0 -> new ExplodingEnemyDecorator(enemy);
@@ -55,9 +95,7 @@ public class EnemyFactory {
         
         // Preserve position and active state
         decorated.setPosition(enemy.getPosition());
-        if (enemy.isActive()) {
-            decorated.onPlayerMoved(enemy.getPosition()); // Preserve active state
-        }
+        decorated.setActive(enemy.isActive());
         
         return decorated;
     }
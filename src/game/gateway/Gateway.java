@@ -0,0 +1,434 @@
+package game.gateway;
+
+import game.collections.ConcurrentIntObjectMap;
+import game.logging.LogManager;
+import game.network.MessageCodec;
+import game.network.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands between game clients and game servers.
+ * <p>
+ * Clients connect to the gateway exactly as they would to a server. The
+ * gateway keeps their sockets and buffers, and carries their frames to the
+ * server over a few persistent {@link MuxLink}s, one stream per client, so
+ * the server handles a handful of links instead of a socket and two threads
+ * per player. Links are compressed and kept alive with pings; a link that
+ * goes quiet is dropped along with its clients.
+ * <p>
+ * When a server hands a player to another zone it tells the gateway, which
+ * opens a stream to the new server and replays the client's join there. The
+ * client stays connected and just gets a new welcome.
+ * <p>
+ * Run a gateway with: {@code java -cp out game.gateway.Gateway <port> <serverHost>:<serverGatewayPort>}
+ */
+public class Gateway {
+    // Links kept to each server; -Dgame.gatewayLinks=<n>
+    private static final int LINKS_PER_SERVER = Math.max(1, Integer.getInteger("game.gatewayLinks", 2));
+    // Deflate the links; -Dgame.gatewayCompression=false to send them as is
+    private static final boolean COMPRESS =
+        Boolean.parseBoolean(System.getProperty("game.gatewayCompression", "true"));
+    // Most clients one gateway serves
+    private static final int MAX_CLIENTS = Integer.getInteger("game.maxGatewayClients", 5000);
+    // Frames waiting for a client's writer; a client that lets this fill up is dropped
+    private static final int CLIENT_QUEUE = 256;
+    private static final long KEEPALIVE_MILLIS = 5000;
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+
+    private final ServerSocket serverSocket;
+    private final String home;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "gateway");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "gateway-keepalive");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = true;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong migrations = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The links to one server, used round robin.
+     */
+    private final class Upstream {
+        private final String target;
+        private final String host;
+        private final int port;
+        private final Link[] links = new Link[LINKS_PER_SERVER];
+        private int next;
+
+        Upstream(String target) {
+            int colon = target.lastIndexOf(':');
+            this.target = target;
+            this.host = target.substring(0, colon);
+            this.port = Integer.parseInt(target.substring(colon + 1));
+        }
+
+        synchronized Link pick() throws IOException {
+            int slot = next;
+            next = (next + 1) % links.length;
+            Link link = links[slot];
+            if (link == null || !link.mux.isOpen()) {
+                link = new Link(target, MuxLink.connect(host, port, COMPRESS));
+                link.mux.setReadTimeout((int) (3 * KEEPALIVE_MILLIS));
+                links[slot] = link;
+                threads.execute(link::readLoop);
+                LogManager.log("Gateway linked to " + target);
+            }
+            return link;
+        }
+    }
+
+    /**
+     * One link and the clients whose streams it carries.
+     */
+    private final class Link {
+        private final String target;
+        private final MuxLink mux;
+        private final ConcurrentIntObjectMap<Client> streams = new ConcurrentIntObjectMap<>();
+        private final AtomicInteger nextStream = new AtomicInteger(1);
+
+        Link(String target, MuxLink mux) {
+            this.target = target;
+            this.mux = mux;
+        }
+
+        void readLoop() {
+            try {
+                while (running) {
+                    MuxLink.Frame frame = mux.read();
+                    switch (frame.getKind()) {
+                        case MuxLink.DATA -> {
+                            Client client = streams.get(frame.getStream());
+                            if (client != null) {
+                                client.offer(frame.getPayload());
+                            }
+                        }
+                        case MuxLink.CLOSE -> {
+                            Client client = streams.remove(frame.getStream());
+                            if (client != null) {
+                                client.close(false);
+                            }
+                        }
+                        case MuxLink.MIGRATE -> {
+                            Client client = streams.remove(frame.getStream());
+                            if (client != null) {
+                                String to = new String(frame.getPayload(), StandardCharsets.UTF_8);
+                                threads.execute(() -> client.migrate(to));
+                            }
+                        }
+                        case MuxLink.PONG -> {
+                            // Only resets the read timeout
+                        }
+                        default -> LogManager.log("Unexpected frame " + frame.getKind() + " from " + target);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LogManager.log("Lost link to " + target + ": " + e.getMessage());
+                }
+            } finally {
+                mux.close();
+                for (Client client : streams.values()) {
+                    client.close(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * The stream a client's frames currently go to.
+     */
+    private static final class Route {
+        final Link link;
+        final int stream;
+
+        Route(Link link, int stream) {
+            this.link = link;
+            this.stream = stream;
+        }
+    }
+
+    /**
+     * A connected game client, with its own writer so a slow one only holds itself up.
+     */
+    private final class Client implements Runnable {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<byte[]> outbound = new ArrayBlockingQueue<>(CLIENT_QUEUE);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Route route;
+        // The client's join, replayed when it moves to another server
+        private volatile byte[] join;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void attach(Link link) {
+            int stream = link.nextStream.getAndIncrement();
+            link.streams.put(stream, this);
+            route = new Route(link, stream);
+            link.mux.send(stream, MuxLink.OPEN);
+        }
+
+        @Override
+        public void run() {
+            threads.execute(this::writeLoop);
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (running && !closed.get()) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MessageCodec.MAX_FRAME_BYTES) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+                    byte[] frame = new byte[4 + length];
+                    frame[0] = (byte) (length >>> 24);
+                    frame[1] = (byte) (length >>> 16);
+                    frame[2] = (byte) (length >>> 8);
+                    frame[3] = (byte) length;
+                    in.readFully(frame, 4, length);
+                    if (join == null && isJoin(frame)) {
+                        join = frame;
+                    }
+                    Route current = route;
+                    if (!current.link.mux.send(current.stream, MuxLink.DATA, frame)) {
+                        throw new IOException("link to " + current.link.target + " is down");
+                    }
+                }
+            } catch (EOFException e) {
+                // Client left
+            } catch (IOException e) {
+                if (running && !closed.get()) {
+                    LogManager.log("Gateway client " + socket.getRemoteSocketAddress() + " dropped: " + e.getMessage());
+                }
+            } finally {
+                close(true);
+            }
+        }
+
+        /**
+         * Client frames are only decoded until the join has been seen.
+         */
+        private boolean isJoin(byte[] frame) {
+            try {
+                return MessageCodec.decode(frame).getType() == MessageType.JOIN_GAME;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void offer(byte[] frame) {
+            if (!outbound.offer(frame)) {
+                dropped.incrementAndGet();
+                LogManager.log("Gateway client " + socket.getRemoteSocketAddress() + " is not keeping up, disconnecting");
+                close(true);
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (!closed.get()) {
+                    byte[] frame = outbound.poll(100, TimeUnit.MILLISECONDS);
+                    if (frame == null) continue;
+                    do {
+                        out.write(frame);
+                    } while ((frame = outbound.poll()) != null);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Opens a stream on the server that now owns the player and joins again there.
+         */
+        void migrate(String target) {
+            try {
+                attach(upstream(target).pick());
+                byte[] joined = join;
+                if (joined != null) {
+                    Route current = route;
+                    current.link.mux.send(current.stream, MuxLink.DATA, joined);
+                }
+                migrations.incrementAndGet();
+            } catch (IOException | IllegalArgumentException e) {
+                LogManager.log("Cannot move gateway client to " + target + ": " + e.getMessage());
+                close(false);
+            }
+        }
+
+        /**
+         * Disconnects the client, telling its server unless the server closed the stream.
+         */
+        void close(boolean tellServer) {
+            if (closed.getAndSet(true)) return;
+            clients.remove(this);
+            Route current = route;
+            if (current != null) {
+                current.link.streams.remove(current.stream);
+                if (tellServer) {
+                    current.link.mux.send(current.stream, MuxLink.CLOSE);
+                }
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Starts accepting clients on {@code port} for the server at {@code home} (host:port of its gateway listener).
+     */
+    public Gateway(int port, String home) throws IOException {
+        this.home = home;
+        upstream(home).pick();
+        this.serverSocket = new ServerSocket(port);
+        // The one thread that is not a daemon, so the gateway runs until shut down
+        new Thread(this::acceptLoop, "gateway-accept").start();
+        timer.scheduleAtFixedRate(this::ping, KEEPALIVE_MILLIS, KEEPALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        timer.scheduleAtFixedRate(() -> LogManager.log("Gateway: " + summary()),
+            REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        LogManager.log("Gateway listening on port " + port + " for " + home);
+    }
+
+    private Upstream upstream(String target) {
+        return upstreams.computeIfAbsent(target, Upstream::new);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (clients.size() >= MAX_CLIENTS) {
+                    refused.incrementAndGet();
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                Client client = new Client(socket);
+                try {
+                    client.attach(upstream(home).pick());
+                } catch (IOException e) {
+                    LogManager.log("Refusing client, cannot reach " + home + ": " + e.getMessage());
+                    refused.incrementAndGet();
+                    socket.close();
+                    continue;
+                }
+                clients.add(client);
+                accepted.incrementAndGet();
+                threads.execute(client);
+            } catch (IOException e) {
+                if (running) {
+                    LogManager.log("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void ping() {
+        for (Upstream upstream : upstreams.values()) {
+            synchronized (upstream) {
+                for (Link link : upstream.links) {
+                    if (link != null && link.mux.isOpen()) {
+                        link.mux.send(0, MuxLink.PING);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder("clients=" + clients.size() + ", accepted=" + accepted.get()
+            + ", refused=" + refused.get() + ", migrated=" + migrations.get() + ", dropped=" + dropped.get());
+        for (Upstream upstream : upstreams.values()) {
+            synchronized (upstream) {
+                for (Link link : upstream.links) {
+                    if (link != null && link.mux.isOpen()) {
+                        summary.append("; ").append(upstream.target).append(' ').append(link.mux.summary());
+                    }
+                }
+            }
+        }
+        return summary.toString();
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Client client : clients) {
+            client.close(true);
+        }
+        for (Upstream upstream : upstreams.values()) {
+            synchronized (upstream) {
+                for (Link link : upstream.links) {
+                    if (link != null) {
+                        link.mux.close();
+                    }
+                }
+            }
+        }
+        timer.shutdownNow();
+        threads.shutdownNow();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args[1].lastIndexOf(':') < 0) {
+            System.err.println("Usage: Gateway <port> <serverHost>:<serverGatewayPort>");
+            System.exit(1);
+        }
+        try {
+            Gateway gateway = new Gateway(Integer.parseInt(args[0]), args[1]);
+            Runtime.getRuntime().addShutdownHook(new Thread(gateway::shutdown));
+            System.out.println("Gateway on port " + args[0] + " for " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Failed to start gateway: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
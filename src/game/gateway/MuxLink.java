@@ -0,0 +1,270 @@
+package game.gateway;
+
+import game.network.MessageCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A persistent link between a gateway and a game server that carries the
+ * traffic of many clients, each on its own stream id.
+ * <p>
+ * The gateway opens the link with a handshake: magic, version and the flags
+ * it asks for; the server answers with the same magic, its version and the
+ * flags it accepted. After that both directions carry frames of a 4-byte
+ * stream id, a kind byte, a 4-byte payload length and the payload. A
+ * {@link #DATA} payload is one whole client frame, length prefix included,
+ * so either side can pass it on without decoding it. With {@link #FLAG_DEFLATE}
+ * the frames after the handshake go through one deflate stream per direction,
+ * flushed once per batch; consecutive state frames of a client share most of
+ * their bytes, so they compress far better together than one by one.
+ * <p>
+ * Sends are queued and written by the link's own thread, which flushes once
+ * per batch, so callers never block on the socket. Frames are read by the
+ * owner's thread with {@link #read()}.
+ */
+public final class MuxLink implements Closeable {
+    public static final int MAGIC = 0x44444757; // "DDGW"
+    public static final short VERSION = 1;
+    public static final byte FLAG_DEFLATE = 1;
+
+    public static final byte OPEN = 1;     // gateway to server: a client connected
+    public static final byte DATA = 2;     // either way: one client frame
+    public static final byte CLOSE = 3;    // either way: the client is gone
+    public static final byte PING = 4;     // gateway to server, stream 0
+    public static final byte PONG = 5;     // server to gateway, stream 0
+    public static final byte MIGRATE = 6;  // server to gateway: host:port that now owns the client
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int SEND_CAPACITY = 8192;
+
+    /**
+     * A frame read from the link.
+     */
+    public static final class Frame {
+        private final int stream;
+        private final byte kind;
+        private final byte[] payload;
+
+        Frame(int stream, byte kind, byte[] payload) {
+            this.stream = stream;
+            this.kind = kind;
+            this.payload = payload;
+        }
+
+        public int getStream() { return stream; }
+        public byte getKind() { return kind; }
+        public byte[] getPayload() { return payload; }
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    private final BlockingQueue<Frame> outbound = new ArrayBlockingQueue<>(SEND_CAPACITY);
+    private final Thread writer;
+    private volatile boolean open = true;
+
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong rawBytesOut = new AtomicLong();
+    private final AtomicLong wireBytesOut = new AtomicLong();
+
+    private MuxLink(Socket socket, InputStream socketIn, OutputStream socketOut, boolean deflate) {
+        this.socket = socket;
+        OutputStream counted = new FilterOutputStream(socketOut) {
+            @Override
+            public void write(int b) throws IOException {
+                super.out.write(b);
+                wireBytesOut.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                super.out.write(b, off, len);
+                wireBytesOut.addAndGet(len);
+            }
+        };
+        if (deflate) {
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.out = new DataOutputStream(new DeflaterOutputStream(counted, deflater, 8192, true));
+            this.in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(socketIn, new Inflater(), 8192)));
+        } else {
+            this.deflater = null;
+            this.out = new DataOutputStream(counted);
+            this.in = new DataInputStream(socketIn);
+        }
+        this.writer = new Thread(this::writeLoop, "mux-link-send");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens a link to a game server's gateway port, asking for compression if {@code deflate}.
+     */
+    public static MuxLink connect(String host, int port, boolean deflate) throws IOException {
+        Socket socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            DataOutputStream hello = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            hello.writeInt(MAGIC);
+            hello.writeShort(VERSION);
+            hello.writeByte(deflate ? FLAG_DEFLATE : 0);
+            hello.flush();
+            InputStream socketIn = new BufferedInputStream(socket.getInputStream());
+            DataInputStream reply = new DataInputStream(socketIn);
+            if (reply.readInt() != MAGIC) {
+                throw new IOException(host + ":" + port + " is not a gateway port");
+            }
+            short version = reply.readShort();
+            if (version != VERSION) {
+                throw new IOException("Server speaks gateway version " + version + ", expected " + VERSION);
+            }
+            boolean accepted = (reply.readByte() & FLAG_DEFLATE) != 0;
+            return new MuxLink(socket, socketIn, new BufferedOutputStream(socket.getOutputStream()), accepted);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers the handshake of a gateway that connected to a server.
+     */
+    public static MuxLink accept(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        InputStream socketIn = new BufferedInputStream(socket.getInputStream());
+        DataInputStream hello = new DataInputStream(socketIn);
+        if (hello.readInt() != MAGIC) {
+            throw new IOException("Not a gateway");
+        }
+        short version = hello.readShort();
+        boolean deflate = (hello.readByte() & FLAG_DEFLATE) != 0;
+        OutputStream socketOut = new BufferedOutputStream(socket.getOutputStream());
+        DataOutputStream reply = new DataOutputStream(socketOut);
+        reply.writeInt(MAGIC);
+        reply.writeShort(VERSION);
+        reply.writeByte(deflate ? FLAG_DEFLATE : 0);
+        reply.flush();
+        if (version != VERSION) {
+            throw new IOException("Gateway speaks version " + version + ", expected " + VERSION);
+        }
+        return new MuxLink(socket, socketIn, socketOut, deflate);
+    }
+
+    /**
+     * Queues a frame.
+     *
+     * @return false if the link is closed or so far behind that its queue is full
+     */
+    public boolean send(int stream, byte kind, byte[] payload) {
+        return open && outbound.offer(new Frame(stream, kind, payload));
+    }
+
+    public boolean send(int stream, byte kind) {
+        return send(stream, kind, EMPTY);
+    }
+
+    /**
+     * Blocks until the next frame arrives.
+     */
+    public Frame read() throws IOException {
+        int stream = in.readInt();
+        byte kind = in.readByte();
+        int length = in.readInt();
+        if (length < 0 || length > MessageCodec.MAX_FRAME_BYTES + 4) {
+            throw new IOException("Invalid link frame length " + length);
+        }
+        byte[] payload = length == 0 ? EMPTY : new byte[length];
+        in.readFully(payload);
+        framesIn.incrementAndGet();
+        return new Frame(stream, kind, payload);
+    }
+
+    /**
+     * Writes queued frames, flushing once per batch.
+     */
+    private void writeLoop() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (open) {
+                Frame first = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                outbound.drainTo(batch);
+                for (Frame frame : batch) {
+                    out.writeInt(frame.stream);
+                    out.writeByte(frame.kind);
+                    out.writeInt(frame.payload.length);
+                    out.write(frame.payload);
+                    rawBytesOut.addAndGet(9 + frame.payload.length);
+                }
+                framesOut.addAndGet(batch.size());
+                batch.clear();
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Only this thread uses the deflater; the stream around it is not
+            // closed, which would flush into the closed socket
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public String getRemote() {
+        return socket.getRemoteSocketAddress().toString();
+    }
+
+    /**
+     * Fails reads that wait longer than this; the gateway pings well within it.
+     */
+    public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    public String summary() {
+        long raw = rawBytesOut.get();
+        long wire = wireBytesOut.get();
+        return "frames out=" + framesOut.get() + ", in=" + framesIn.get() + ", bytes out=" + wire
+            + (deflater != null && wire > 0 ? String.format(" (%.1fx compressed)", (double) raw / wire) : "");
+    }
+
+    @Override
+    public void close() {
+        if (!open) return;
+        open = false;
+        writer.interrupt();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
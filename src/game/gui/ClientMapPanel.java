@@ -60,8 +60,8 @@ class ClientMapPanel extends JPanel {
                             Position clickedPos = new Position(r, c);
                             PlayerState myPlayer = gameState.getPlayer(frame.getClient().getPlayerId());
                             if (myPlayer != null) {
-                                // Only show popup if within 2 tiles (visibility range)
-                                if (myPlayer.getPosition().distanceTo(clickedPos) <= 2) {
+                                // Only show popup for cells currently in view
+                                if (gameState.isCellVisible(clickedPos)) {
                                     PopupPanel.quickPopup(gameState, clickedPos, frame);
                                 }
                             }
@@ -112,6 +112,20 @@ class ClientMapPanel extends JPanel {
         
         if (gameState == null) return;
         
+        // Never-seen cells are dark; seen but out-of-view cells show remembered walls only
+        if (!gameState.isCellExplored(pos)) {
+            cell.setBackground(Color.DARK_GRAY);
+            return;
+        }
+        if (!gameState.isCellVisible(pos)) {
+            if (gameState.isKnownWall(pos)) {
+                ImageIcon icon = loadImageIcon(getImagePath("W"));
+                if (icon != null) cell.setIcon(icon);
+            }
+            cell.setBackground(Color.LIGHT_GRAY);
+            return;
+        }
+        
         int myPlayerId = frame.getClient().getPlayerId();
         
         // Check for entities at this position
@@ -16,6 +16,7 @@ public abstract class GameItem implements GameEntity {
     private String description;
     private boolean visible;
     private String displaySymbol;
+    private int id = -1;
 
     // Added field for type
     protected String type;
@@ -50,6 +51,17 @@ public abstract class GameItem implements GameEntity {
         return false;
     }
 
+    /**
+     * Returns the entity handle assigned by the server, or -1 if none.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public boolean isBlocksMovement() {
         return blocksMovement;
     }
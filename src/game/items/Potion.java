@@ -1,8 +1,9 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.items;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import java.io.Serializable;
-import java.util.Random;
 
 import game.characters.PlayerCharacter;
 import game.map.Position;
@@ -18,13 +19,35 @@ public class Potion extends GameItem implements Interactable,Serializable{
      * Constructs a healing potion and places it at a given position.
      *
      * @param position The position where the potion is placed on the board.
+     * @param random   The streams its strength is drawn from.
      */
-    public Potion(Position position) {
+    public Potion(Position position, RandomStreams random) {
         super(position, true, "Potion",false,"P");
-        this.increaseAmount = new Random().nextInt(41) + 10;
+        this.increaseAmount = random.get(Stream.LOOT).nextInt(41) + 10;
         this.isUsed = false;
     }
 
+    /**
+     * Constructs a healing potion of a known strength, e.g. one restored from a save.
+     *
+     * @param position       The position where the potion is placed on the board.
+     * @param increaseAmount The health it restores.
+     */
+    public Potion(Position position, int increaseAmount) {
+        super(position, true, "Potion",false,"P");
+        this.increaseAmount = increaseAmount;
+        this.isUsed = false;
+    }
+
+    /**
+     * Copies a potion, strength included.
+     */
+    public Potion(Potion other) {
+        super(other.getPosition(), true, "Potion",false,"P");
+        this.increaseAmount = other.increaseAmount;
+        this.isUsed = other.isUsed;
+    }
+
 
     public boolean getIsUsed() {
         return isUsed;
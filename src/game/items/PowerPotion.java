@@ -1,22 +1,39 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.items;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.characters.PlayerCharacter;
 import game.items.Potion;
 import game.map.Position;
 
 import java.io.Serializable;
-import java.util.Random;
 /**
  * Represents a power-enhancing potion.
  * When used, it increases the player's attack power.
  */
 public class PowerPotion extends Potion implements Serializable{
 	private static final long serialVersionUID = 1L;
-    public PowerPotion(Position position) {
-        super(position);
+    public PowerPotion(Position position, RandomStreams random) {
+        super(position, random);
+        this.setDescription("Power Potion");
+        setIncreaseAmount(random.get(Stream.LOOT).nextInt(5) + 1);
+    }
+
+    /**
+     * Constructs a power potion of a known strength, e.g. one restored from a save.
+     */
+    public PowerPotion(Position position, int increaseAmount) {
+        super(position, increaseAmount);
+        this.setDescription("Power Potion");
+    }
+
+    /**
+     * Copies a power potion, strength included.
+     */
+    public PowerPotion(PowerPotion other) {
+        super(other);
         this.setDescription("Power Potion");
-        setIncreaseAmount(new Random().nextInt(5) + 1);
     }
 
     /**
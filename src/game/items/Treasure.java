@@ -1,13 +1,14 @@
 //Artiom Bondar:332692730
 //Shahar Dahan: 207336355
 package game.items;
+import game.core.RandomStreams;
+import game.core.RandomStreams.Stream;
 import game.characters.PlayerCharacter;
 import game.items.GameItem;
 import game.items.Interactable;
 import game.map.Position;
 
 import java.io.Serializable;
-import java.util.Random;
 /**
  * Represents a treasure item placed on the map.
  * When interacted with, it adds points to the player's score.
@@ -42,17 +43,18 @@ public class Treasure extends GameItem implements Interactable,Serializable{
      */
     @Override
     public void interact(PlayerCharacter c) {
-        int randomNumber = new Random().nextInt(3);
+        RandomStreams.Generator random = c.getRandomStreams().get(Stream.LOOT);
+        int randomNumber = random.nextInt(3);
         if(randomNumber == 0){
-            c.addToInventory(new Potion(new Position(0,0)));
+            c.addToInventory(new Potion(new Position(0,0), c.getRandomStreams()));
         }
-        randomNumber = new Random().nextInt(2);
+        randomNumber = random.nextInt(2);
         if(randomNumber == 0){
             c.updateTreasurePoint(this.value);
         }
-        randomNumber = new Random().nextInt(6);
+        randomNumber = random.nextInt(6);
         if(randomNumber == 0){
-            c.addToInventory(new PowerPotion(new Position(0,0)));
+            c.addToInventory(new PowerPotion(new Position(0,0), c.getRandomStreams()));
         }
         this.collected = true;
     }
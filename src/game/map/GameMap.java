@@ -4,59 +4,139 @@ package game.map;
 import game.core.GameEntity;
 import game.items.Wall;
 import game.logging.LogManager;
+import game.storage.CellStorage;
+import game.storage.HeapCellStorage;
 import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
 
 /**
  * Represents the 2D grid-based game board.
  * Stores a mapping between positions and the list of entities (items, players, enemies) at each cell.
+ * <p>
+ * Thread-safe. Each cell holds an immutable array that is swapped on every
+ * change, so single-cell reads never lock. Cells are grouped into square
+ * regions, and writers take the write lock of every region they touch, in
+ * region order. Multi-cell queries read optimistically and fall back to read
+ * locks if a writer got in the way.
+ * <p>
+ * Terrain and entity counts per cell are mirrored into a {@link CellStorage}
+ * under the same region locks, so wall checks and occupancy reads never walk
+ * the entity arrays, and the storage can keep those layers off the heap.
  */
 public class GameMap {
-    private Map<Position, List<GameEntity>> grid = new HashMap<>();
+    // 4x4 cells per lock region
+    private static final int REGION_BITS = 2;
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+    private static final GameEntity[] EMPTY = new GameEntity[0];
 
+    private final int size;
+    private final AtomicReferenceArray<GameEntity[]> cells;
+    private final int regionsPerRow;
+    private final StampedLock[] regionLocks;
+    private final CellStorage layers;
 
-    private int size;
     /**
      * Adds an entity to a specific position on the map.
-     * If no entities exist at that position yet, a new list is created.
      *
      * @param pos    The position to place the entity at.
      * @param entity The entity to be added.
+     * @return false if the entity or position is invalid.
      */
-
     public boolean addEntity(Position pos, GameEntity entity) {
-        if (pos == null || entity == null) return false;
-        grid.computeIfAbsent(pos, k -> new ArrayList<>()).add(entity);
+        if (pos == null || entity == null || !isValidPosition(pos)) return false;
+        int cell = cellOf(pos);
+        StampedLock lock = lockFor(cell);
+        long stamp = lock.writeLock();
+        try {
+            store(cell, with(cells.get(cell), entity));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
         return true;
     }
 
 
     /**
      * Removes a specific entity from a position on the map.
-     * If the list becomes empty after removal, the entry is removed from the map.
      *
      * @param pos    The position from which to remove the entity.
      * @param entity The entity to be removed.
      */
-
     public void removeEntity(Position pos, GameEntity entity) {
-        List<GameEntity> entities = grid.get(pos);
-        if (entities != null && entity != null) {
-            entities.remove(entity);
-            if (entities.isEmpty()) grid.remove(pos);
+        if (pos == null || entity == null || !isValidPosition(pos)) return;
+        int cell = cellOf(pos);
+        StampedLock lock = lockFor(cell);
+        long stamp = lock.writeLock();
+        try {
+            GameEntity[] entities = cells.get(cell);
+            int i = indexOf(entities, entity);
+            if (i >= 0) {
+                store(cell, without(entities, i));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
 
     /**
-     * Returns the list of entities at a given position.
-     * If no entities exist there, returns an empty list.
+     * Moves an entity between two cells as one step and updates its position.
+     * No reader ever sees it in both cells or in neither.
+     *
+     * @param entity  The entity to move.
+     * @param from    The cell it is expected to be in.
+     * @param to      The destination cell.
+     * @param blocker Entities at the destination that forbid the move, or null.
+     * @return false if the entity was not at {@code from} or the destination was blocked.
+     */
+    public boolean moveEntity(GameEntity entity, Position from, Position to, Predicate<? super GameEntity> blocker) {
+        if (entity == null || from == null || to == null || !isValidPosition(from) || !isValidPosition(to)) {
+            return false;
+        }
+        int source = cellOf(from);
+        int target = cellOf(to);
+        int a = regionOf(source);
+        int b = regionOf(target);
+        StampedLock first = regionLocks[Math.min(a, b)];
+        StampedLock second = regionLocks[Math.max(a, b)];
+        long firstStamp = first.writeLock();
+        long secondStamp = a != b ? second.writeLock() : 0;
+        try {
+            GameEntity[] destination = cells.get(target);
+            if (blocker != null) {
+                for (GameEntity e : destination) {
+                    if (e != entity && blocker.test(e)) return false;
+                }
+            }
+            GameEntity[] origin = cells.get(source);
+            int i = indexOf(origin, entity);
+            if (i < 0) return false;
+            if (source != target) {
+                store(source, without(origin, i));
+                store(target, with(destination, entity));
+            }
+            entity.setPosition(to);
+            return true;
+        } finally {
+            if (a != b) second.unlockWrite(secondStamp);
+            first.unlockWrite(firstStamp);
+        }
+    }
+
+
+    /**
+     * Returns the entities at a given position. Never modifies the map.
      *
      * @param pos The position to look at.
-     * @return List of GameEntities (can be empty but never null).
+     * @return An unmodifiable snapshot of the cell (can be empty but never null).
      */
     public List<GameEntity> getEntitiesAt(Position pos) {
-        return grid.computeIfAbsent(pos, k -> new ArrayList<>());
+        if (pos == null || !isValidPosition(pos)) return Collections.emptyList();
+        GameEntity[] entities = cells.get(cellOf(pos));
+        return entities.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(entities));
     }
 
     /**
@@ -70,23 +150,44 @@ public class GameMap {
     }
 
     /**
-     * Returns the entire grid (used for visibility updates or debugging).
+     * Returns a consistent snapshot of all occupied cells (used for debugging).
      *
-     * @return A map of all positions and their entity lists.
+     * @return A map of occupied positions and their entity lists.
      */
     public Map<Position, List<GameEntity>> getGrid() {
+        GameEntity[][] snapshot = snapshotCells();
+        Map<Position, List<GameEntity>> grid = new HashMap<>();
+        for (int cell = 0; cell < snapshot.length; cell++) {
+            if (snapshot[cell].length > 0) {
+                grid.put(new Position(cell / size, cell % size), new ArrayList<>(Arrays.asList(snapshot[cell])));
+            }
+        }
         return grid;
     }
 
 
-    // Add this constructor to support new GameMap(size)
     public GameMap(int size) {
+        this(size, new HeapCellStorage(size * size));
+    }
+
+    /**
+     * Creates a map whose terrain and occupancy layers live in the given storage.
+     */
+    public GameMap(int size, CellStorage layers) {
+        if (layers.cellCount() != size * size) {
+            throw new IllegalArgumentException("Storage has " + layers.cellCount() + " cells, map needs " + size * size);
+        }
         this.size = size;
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-                Position pos = new Position(row, col);
-                grid.put(pos, new ArrayList<>());
-            }
+        this.layers = layers;
+        layers.clear();
+        this.cells = new AtomicReferenceArray<>(size * size);
+        for (int cell = 0; cell < size * size; cell++) {
+            cells.set(cell, EMPTY);
+        }
+        this.regionsPerRow = (size + (1 << REGION_BITS) - 1) >> REGION_BITS;
+        this.regionLocks = new StampedLock[regionsPerRow * regionsPerRow];
+        for (int i = 0; i < regionLocks.length; i++) {
+            regionLocks[i] = new StampedLock();
         }
     }
 
@@ -95,22 +196,36 @@ public class GameMap {
     }
 
     public void clear() {
-        grid.clear();
+        long[] stamps = lockAll();
+        try {
+            for (int cell = 0; cell < size * size; cell++) {
+                cells.set(cell, EMPTY);
+            }
+            layers.clear();
+        } finally {
+            unlockAll(stamps);
+        }
     }
 
-    
-
     public int getMapSize(){return size;}
 
     public boolean isWall(Position pos)
     {
-        List<GameEntity> entities = getEntitiesAt(pos);
-        for(GameEntity e : entities)
-        {
-            if(e instanceof Wall)
-                return true;
-        }
-        return false;
+        return pos != null && isValidPosition(pos) && layers.getTerrain(cellOf(pos)) == CellStorage.TERRAIN_WALL;
+    }
+
+    /**
+     * Returns how many entities are at a position, without copying the cell.
+     */
+    public int getEntityCount(Position pos) {
+        return pos != null && isValidPosition(pos) ? layers.getOccupancy(cellOf(pos)) : 0;
+    }
+
+    /**
+     * The storage holding the terrain and occupancy layers, e.g. for checkpoints.
+     */
+    public CellStorage getCellStorage() {
+        return layers;
     }
 
     /**
@@ -125,14 +240,127 @@ public class GameMap {
 
 
 
+    /**
+     * Returns every entity on the map. Each entity appears exactly once, even
+     * while other threads are moving entities around.
+     */
     public List<GameEntity> getAllEntities() {
         List<GameEntity> all = new ArrayList<>();
-        for (List<GameEntity> cellEntities : grid.values()) {
-            all.addAll(cellEntities);
+        for (GameEntity[] cellEntities : snapshotCells()) {
+            Collections.addAll(all, cellEntities);
         }
         return all;
     }
 
+    /**
+     * Reads all cells as of a single point in time.
+     */
+    private GameEntity[][] snapshotCells() {
+        GameEntity[][] snapshot = new GameEntity[size * size][];
+        long[] stamps = new long[regionLocks.length];
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            for (int r = 0; r < regionLocks.length; r++) {
+                stamps[r] = regionLocks[r].tryOptimisticRead();
+            }
+            for (int cell = 0; cell < snapshot.length; cell++) {
+                snapshot[cell] = cells.get(cell);
+            }
+            if (validateAll(stamps)) {
+                return snapshot;
+            }
+        }
+
+        // Too much contention: block writers while copying
+        for (int r = 0; r < regionLocks.length; r++) {
+            stamps[r] = regionLocks[r].readLock();
+        }
+        try {
+            for (int cell = 0; cell < snapshot.length; cell++) {
+                snapshot[cell] = cells.get(cell);
+            }
+        } finally {
+            for (int r = regionLocks.length - 1; r >= 0; r--) {
+                regionLocks[r].unlockRead(stamps[r]);
+            }
+        }
+        return snapshot;
+    }
+
+    private boolean validateAll(long[] stamps) {
+        for (int r = 0; r < regionLocks.length; r++) {
+            // A zero stamp means a writer held the lock when the read started
+            if (stamps[r] == 0 || !regionLocks[r].validate(stamps[r])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long[] lockAll() {
+        long[] stamps = new long[regionLocks.length];
+        for (int r = 0; r < regionLocks.length; r++) {
+            stamps[r] = regionLocks[r].writeLock();
+        }
+        return stamps;
+    }
+
+    private void unlockAll(long[] stamps) {
+        for (int r = regionLocks.length - 1; r >= 0; r--) {
+            regionLocks[r].unlockWrite(stamps[r]);
+        }
+    }
+
+    /**
+     * Publishes a cell's new entities and updates its layers. Callers hold the region's write lock.
+     */
+    private void store(int cell, GameEntity[] entities) {
+        cells.set(cell, entities);
+        layers.setOccupancy(cell, entities.length);
+        byte terrain = CellStorage.TERRAIN_FLOOR;
+        for (GameEntity e : entities) {
+            if (e instanceof Wall) {
+                terrain = CellStorage.TERRAIN_WALL;
+                break;
+            }
+        }
+        layers.setTerrain(cell, terrain);
+    }
+
+    private int cellOf(Position pos) {
+        return pos.getRow() * size + pos.getCol();
+    }
+
+    private int regionOf(int cell) {
+        int row = cell / size;
+        int col = cell % size;
+        return (row >> REGION_BITS) * regionsPerRow + (col >> REGION_BITS);
+    }
+
+    private StampedLock lockFor(int cell) {
+        return regionLocks[regionOf(cell)];
+    }
+
+    private static int indexOf(GameEntity[] entities, GameEntity entity) {
+        for (int i = 0; i < entities.length; i++) {
+            if (entities[i] == entity) return i;
+        }
+        return -1;
+    }
+
+    private static GameEntity[] with(GameEntity[] entities, GameEntity entity) {
+        GameEntity[] copy = Arrays.copyOf(entities, entities.length + 1);
+        copy[entities.length] = entity;
+        return copy;
+    }
+
+    private static GameEntity[] without(GameEntity[] entities, int index) {
+        if (entities.length == 1) return EMPTY;
+        GameEntity[] copy = new GameEntity[entities.length - 1];
+        System.arraycopy(entities, 0, copy, 0, index);
+        System.arraycopy(entities, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
 
     public static int getBoardSize() {
         int size = 10;
@@ -159,9 +387,18 @@ public class GameMap {
 
     public void replaceEntity(GameEntity oldEntity, GameEntity newEntity) {
         Position pos = oldEntity.getPosition();
-        List<GameEntity> entities = getEntitiesAt(pos);
-        entities.remove(oldEntity);
-        entities.add(newEntity);
+        if (pos == null || newEntity == null || !isValidPosition(pos)) return;
+        int cell = cellOf(pos);
+        StampedLock lock = lockFor(cell);
+        long stamp = lock.writeLock();
+        try {
+            GameEntity[] entities = cells.get(cell);
+            int i = indexOf(entities, oldEntity);
+            GameEntity[] updated = i >= 0 ? without(entities, i) : entities;
+            store(cell, with(updated, newEntity));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
 }
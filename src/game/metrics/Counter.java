@@ -0,0 +1,15 @@
+package game.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count that many threads can bump without contending on one
+ * cache line; reading it sums the cells and is meant for dumps, not hot paths.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void inc() { value.increment(); }
+    public void add(long amount) { value.add(amount); }
+    public long get() { return value.sum(); }
+}
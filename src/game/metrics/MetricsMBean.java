@@ -0,0 +1,114 @@
+package game.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only JMX view of a {@link MetricsRegistry}. Counters and gauges are
+ * attributes of their own name; each histogram shows up as
+ * {@code name.count}, {@code .mean}, {@code .p50}, {@code .p99} and {@code .max},
+ * timers in milliseconds. The attribute list is built when a console asks
+ * for it, so metrics created later appear on the next refresh.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private static final String[] STATISTICS = {"count", "mean", "p50", "p99", "max"};
+
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Counter counter = registry.counters().get(attribute);
+        if (counter != null) return counter.get();
+        LongSupplier gauge = registry.gauges().get(attribute);
+        if (gauge != null) return MetricsRegistry.readGauge(gauge);
+
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            String name = attribute.substring(0, dot);
+            String statistic = attribute.substring(dot + 1);
+            LatencyHistogram timer = registry.timers().get(name);
+            if (timer != null) return statistic(timer, statistic, 1e6, attribute);
+            LatencyHistogram histogram = registry.histograms().get(name);
+            if (histogram != null) return statistic(histogram, statistic, 1, attribute);
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static Object statistic(LatencyHistogram histogram, String statistic, double scale, String attribute)
+            throws AttributeNotFoundException {
+        return switch (statistic) {
+            case "count" -> (double) histogram.getCount();
+            case "mean" -> histogram.getMean() / scale;
+            case "p50" -> histogram.percentile(0.5) / scale;
+            case "p99" -> histogram.percentile(0.99) / scale;
+            case "max" -> histogram.getMax() / scale;
+            default -> throw new AttributeNotFoundException(attribute);
+        };
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the interface asks
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : registry.counters().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+        }
+        for (String name : registry.gauges().keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, "long", "gauge", true, false, false));
+        }
+        addHistograms(attributes, registry.timers(), "timer, ms");
+        addHistograms(attributes, registry.histograms(), "histogram");
+        return new MBeanInfo(MetricsRegistry.class.getName(), "Game server metrics",
+            attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private static void addHistograms(List<MBeanAttributeInfo> attributes, Map<String, LatencyHistogram> histograms,
+                                      String description) {
+        for (String name : histograms.keySet()) {
+            for (String statistic : STATISTICS) {
+                attributes.add(new MBeanAttributeInfo(name + "." + statistic, "double", description,
+                    true, false, false));
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package game.metrics;
+
+import game.logging.LogManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, gauges and histograms of one process.
+ * <p>
+ * Counters and histograms are created on first use and are lock-free to
+ * update, so code looks them up once, keeps them in a field and records
+ * from any thread. Gauges are read only when metrics are looked at. Timers
+ * hold nanoseconds and are reported in milliseconds; value histograms hold
+ * plain numbers such as bytes or search nodes.
+ * <p>
+ * Everything is readable through JMX under {@code game:type=Metrics} once
+ * {@link #registerMBean()} was called, and as a compact line in the game
+ * log with {@link #startDump(long)}; the dump leaves out counters and
+ * histograms that never moved.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private ScheduledExecutorService dumper;
+
+    /**
+     * The registry the server and its subsystems record into.
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Registers a value read on demand, replacing any gauge of the same name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * A histogram of durations in nanoseconds.
+     */
+    public LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Adds a timer kept elsewhere, e.g. a pipeline stage's, under {@code name}.
+     */
+    public void register(String name, LatencyHistogram timer) {
+        timers.put(name, timer);
+    }
+
+    /**
+     * A histogram of plain values.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    Map<String, Counter> counters() { return counters; }
+    Map<String, LongSupplier> gauges() { return gauges; }
+    Map<String, LatencyHistogram> timers() { return timers; }
+    Map<String, LatencyHistogram> histograms() { return histograms; }
+
+    /**
+     * One line with every gauge and every counter and histogram that has recorded something.
+     */
+    public String dump() {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : timers.entrySet()) {
+            LatencyHistogram timer = entry.getValue();
+            if (timer.getCount() == 0) continue;
+            line.append(entry.getKey()).append(String.format("=%d/%.2f/%.2f/%.2fms ",
+                timer.getCount(), timer.percentile(0.5) / 1e6, timer.percentile(0.99) / 1e6, timer.getMax() / 1e6));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) continue;
+            line.append(entry.getKey()).append('=').append(histogram.getCount()).append('/')
+                .append(histogram.percentile(0.5)).append('/').append(histogram.percentile(0.99)).append('/')
+                .append(histogram.getMax()).append(' ');
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            long value = entry.getValue().get();
+            if (value == 0) continue;
+            line.append(entry.getKey()).append('=').append(value).append(' ');
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            line.append(entry.getKey()).append('=').append(readGauge(entry.getValue())).append(' ');
+        }
+        return line.toString().trim();
+    }
+
+    static long readGauge(LongSupplier gauge) {
+        try {
+            return gauge.getAsLong();
+        } catch (RuntimeException e) {
+            return -1; // The subsystem behind it is shutting down
+        }
+    }
+
+    /**
+     * Logs {@link #dump()} every {@code seconds}; histograms show count/p50/p99/max.
+     */
+    public synchronized void startDump(long seconds) {
+        if (dumper != null || seconds <= 0) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> LogManager.log("Metrics: " + dump()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Publishes the registry to the platform MBean server, e.g. for jconsole.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("game:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(this), name);
+            }
+        } catch (JMException e) {
+            LogManager.log("Cannot publish metrics over JMX: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package game.nav;
+
+/**
+ * Fixed-size ring of recently changed cells, numbered by a running sequence.
+ * Callers synchronize externally.
+ */
+class ChangeLog {
+    static final int CAPACITY = 1024;
+
+    private final int[] cells = new int[CAPACITY];
+    private long sequence;
+
+    void record(int cell) {
+        cells[(int) (sequence++ % CAPACITY)] = cell;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Copies the cells recorded after {@code since} into {@code out}.
+     *
+     * @return The number copied, or -1 if older entries were already overwritten
+     */
+    int since(long since, int[] out) {
+        long count = sequence - since;
+        if (count < 0 || count > CAPACITY || count > out.length) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            out[i] = cells[(int) ((since + i) % CAPACITY)];
+        }
+        return (int) count;
+    }
+}
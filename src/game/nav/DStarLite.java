@@ -0,0 +1,317 @@
+package game.nav;
+
+import java.util.Arrays;
+
+/**
+ * Incremental planner (D* Lite) for one moving agent.
+ * The search runs backwards from the goal, and its state is kept between
+ * calls. When the agent moves, only the heuristic offset changes; when walls
+ * or occupied cells change, only the vertices next to those cells are
+ * updated and the search is repaired from there. A new goal starts a fresh search.
+ * <p>
+ * Moving into a wall or an occupied cell is impossible, except into the goal,
+ * which is usually occupied by the player being chased. Not thread-safe: each
+ * agent owns its planner.
+ */
+public class DStarLite {
+    private static final int INF = Integer.MAX_VALUE / 4;
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+
+    private final NavGrid grid;
+    private final OccupancyLayer occupancy;
+    private final int size;
+
+    // Search state, valid for a cell only when its epoch matches
+    private final int[] g;
+    private final int[] rhs;
+    private final int[] epochOf;
+    private int epoch;
+
+    // Indexed min-heap on {k1, k2} packed into a long
+    private final int[] heapPos;
+    private int[] heapCell = new int[64];
+    private long[] heapKey = new long[64];
+    private int heapSize;
+
+    private int goal = -1;
+    private int lastStart = -1;
+    private int km;
+    private long gridVersion;
+    private long occupancySequence;
+    private int[] changed = new int[ChangeLog.CAPACITY];
+
+    public DStarLite(NavGrid grid, OccupancyLayer occupancy) {
+        this.grid = grid;
+        this.occupancy = occupancy;
+        this.size = grid.size();
+        int cells = grid.cellCount();
+        this.g = new int[cells];
+        this.rhs = new int[cells];
+        this.epochOf = new int[cells];
+        this.heapPos = new int[cells];
+    }
+
+    /**
+     * Returns the next cell toward the goal, or {@link Pathfinder#NO_STEP} if
+     * every route is currently blocked.
+     */
+    public int nextStep(int start, int goalCell) {
+        if (start == goalCell) {
+            return Pathfinder.NO_STEP;
+        }
+        if (goalCell != goal) {
+            reset(start, goalCell);
+        } else {
+            km += heuristic(lastStart, start);
+            lastStart = start;
+            if (!applyChanges()) {
+                reset(start, goalCell);
+            }
+        }
+
+        computeShortestPath(start);
+        if (g(start) >= INF) {
+            return Pathfinder.NO_STEP;
+        }
+
+        int best = Pathfinder.NO_STEP;
+        int bestCost = INF;
+        int row = start / size;
+        int col = start % size;
+        for (int d = 0; d < 4; d++) {
+            int nr = row + DR[d];
+            int nc = col + DC[d];
+            if (!grid.inBounds(nr, nc)) continue;
+            int next = nr * size + nc;
+            int cost = add(cost(next), g(next));
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = next;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Forgets the search, e.g. when the agent dies or its target leaves.
+     */
+    public void clear() {
+        goal = -1;
+    }
+
+    private void reset(int start, int goalCell) {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(epochOf, 0);
+            epoch = 1;
+        }
+        for (int i = 0; i < heapSize; i++) {
+            heapPos[heapCell[i]] = -1;
+        }
+        heapSize = 0;
+        km = 0;
+        goal = goalCell;
+        lastStart = start;
+        gridVersion = grid.getVersion();
+        occupancySequence = occupancy.getSequence();
+
+        touch(goal);
+        rhs[goal] = 0;
+        push(goal, key(goal, start));
+    }
+
+    /**
+     * Updates the vertices around cells that changed since the last call.
+     *
+     * @return false if too much changed to repair and the search must restart
+     */
+    private boolean applyChanges() {
+        long version = grid.getVersion();
+        if (version != gridVersion) {
+            int n = grid.changesSince(gridVersion, changed);
+            if (n < 0) return false;
+            gridVersion = version;
+            for (int i = 0; i < n; i++) {
+                costChanged(changed[i]);
+            }
+        }
+        long sequence = occupancy.getSequence();
+        if (sequence != occupancySequence) {
+            int n = occupancy.changesSince(occupancySequence, changed);
+            if (n < 0) return false;
+            occupancySequence = sequence;
+            for (int i = 0; i < n; i++) {
+                costChanged(changed[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The cost of entering a cell changed, so every neighbor's rhs may change.
+     */
+    private void costChanged(int cell) {
+        int row = cell / size;
+        int col = cell % size;
+        for (int d = 0; d < 4; d++) {
+            int nr = row + DR[d];
+            int nc = col + DC[d];
+            if (grid.inBounds(nr, nc)) {
+                updateVertex(nr * size + nc);
+            }
+        }
+    }
+
+    private void updateVertex(int u) {
+        touch(u);
+        if (u != goal) {
+            int best = INF;
+            int row = u / size;
+            int col = u % size;
+            for (int d = 0; d < 4; d++) {
+                int nr = row + DR[d];
+                int nc = col + DC[d];
+                if (!grid.inBounds(nr, nc)) continue;
+                int next = nr * size + nc;
+                best = Math.min(best, add(cost(next), g(next)));
+            }
+            rhs[u] = best;
+        }
+        if (heapPos[u] >= 0) {
+            remove(u);
+        }
+        if (g[u] != rhs[u]) {
+            push(u, key(u, lastStart));
+        }
+    }
+
+    private void computeShortestPath(int start) {
+        touch(start);
+        int expanded = 0;
+        while (heapSize > 0 && (heapKey[0] < key(start, start) || rhs[start] != g[start])) {
+            expanded++;
+            int u = heapCell[0];
+            long oldKey = heapKey[0];
+            long newKey = key(u, start);
+            if (oldKey < newKey) {
+                // Stale key after the start moved: reinsert with the current one
+                remove(u);
+                push(u, newKey);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                remove(u);
+                predecessorsChanged(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                predecessorsChanged(u);
+            }
+        }
+        PathMetrics.searched(expanded);
+    }
+
+    private void predecessorsChanged(int u) {
+        int row = u / size;
+        int col = u % size;
+        for (int d = 0; d < 4; d++) {
+            int nr = row + DR[d];
+            int nc = col + DC[d];
+            if (grid.inBounds(nr, nc)) {
+                updateVertex(nr * size + nc);
+            }
+        }
+    }
+
+    private int cost(int cell) {
+        if (!grid.isWalkable(cell)) return INF;
+        if (cell != goal && occupancy.isOccupied(cell)) return INF;
+        return 1;
+    }
+
+    private int g(int cell) {
+        return epochOf[cell] == epoch ? g[cell] : INF;
+    }
+
+    private void touch(int cell) {
+        if (epochOf[cell] != epoch) {
+            epochOf[cell] = epoch;
+            g[cell] = INF;
+            rhs[cell] = INF;
+            heapPos[cell] = -1;
+        }
+    }
+
+    private long key(int cell, int start) {
+        int m = Math.min(g[cell], rhs[cell]);
+        long k1 = Math.min((long) m + heuristic(start, cell) + km, INF);
+        return (k1 << 32) | m;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.abs(a / size - b / size) + Math.abs(a % size - b % size);
+    }
+
+    private static int add(int a, int b) {
+        return a >= INF || b >= INF ? INF : a + b;
+    }
+
+    // --- Indexed binary heap ---
+
+    private void push(int cell, long key) {
+        if (heapSize == heapCell.length) {
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+        }
+        int i = heapSize++;
+        heapCell[i] = cell;
+        heapKey[i] = key;
+        heapPos[cell] = i;
+        siftUp(i);
+    }
+
+    private void remove(int cell) {
+        int i = heapPos[cell];
+        heapPos[cell] = -1;
+        int last = --heapSize;
+        if (i == last) return;
+        heapCell[i] = heapCell[last];
+        heapKey[i] = heapKey[last];
+        heapPos[heapCell[i]] = i;
+        siftDown(siftUp(i));
+    }
+
+    private int siftUp(int i) {
+        int cell = heapCell[i];
+        long key = heapKey[i];
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapKey[up] <= key) break;
+            heapCell[i] = heapCell[up];
+            heapKey[i] = heapKey[up];
+            heapPos[heapCell[i]] = i;
+            i = up;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+        heapPos[cell] = i;
+        return i;
+    }
+
+    private void siftDown(int i) {
+        int cell = heapCell[i];
+        long key = heapKey[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) child++;
+            if (heapKey[child] >= key) break;
+            heapCell[i] = heapCell[child];
+            heapKey[i] = heapKey[child];
+            heapPos[heapCell[i]] = i;
+            i = child;
+        }
+        heapCell[i] = cell;
+        heapKey[i] = key;
+        heapPos[cell] = i;
+    }
+}
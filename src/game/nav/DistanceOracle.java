@@ -0,0 +1,148 @@
+package game.nav;
+
+import game.logging.LogManager;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed shortest-path tables for a static wall layout.
+ * Walkable cells are renumbered densely, and one breadth-first search per
+ * goal fills a {@code short} distance table and a {@code byte} next-hop table,
+ * so a path query is two array lookups. Memory is about 3 bytes per pair of
+ * walkable cells, which caps the oracle at {@link #MAX_CELLS} walkable cells.
+ * <p>
+ * If the grid changes after the tables were built, queries go to the fallback.
+ */
+public class DistanceOracle implements Pathfinder {
+    public static final int MAX_CELLS = 2500;
+    public static final int UNREACHABLE = -1;
+
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+    private static final byte NO_HOP = -1;
+
+    private final NavGrid grid;
+    private final Pathfinder fallback;
+    private final long version;
+    private final int[] denseOfCell;
+    private final int[] cellOfDense;
+    private final int walkable;
+    // Indexed [goal * walkable + from]
+    private final short[] distance;
+    private final byte[] nextHop;
+
+    /**
+     * Builds an oracle for the grid, or returns the fallback if the grid is too large.
+     */
+    public static Pathfinder create(NavGrid grid, Pathfinder fallback) {
+        int walkable = 0;
+        for (int cell = 0; cell < grid.cellCount(); cell++) {
+            if (grid.isWalkable(cell)) walkable++;
+        }
+        if (walkable > MAX_CELLS) {
+            LogManager.log("Board has " + walkable + " walkable cells, using on-demand pathfinding");
+            return fallback;
+        }
+        return new DistanceOracle(grid, fallback, walkable);
+    }
+
+    private DistanceOracle(NavGrid grid, Pathfinder fallback, int walkable) {
+        this.grid = grid;
+        this.fallback = fallback;
+        this.version = grid.getVersion();
+        this.walkable = walkable;
+        this.denseOfCell = new int[grid.cellCount()];
+        this.cellOfDense = new int[walkable];
+
+        int next = 0;
+        for (int cell = 0; cell < grid.cellCount(); cell++) {
+            if (grid.isWalkable(cell)) {
+                denseOfCell[cell] = next;
+                cellOfDense[next++] = cell;
+            } else {
+                denseOfCell[cell] = -1;
+            }
+        }
+
+        this.distance = new short[walkable * walkable];
+        this.nextHop = new byte[walkable * walkable];
+        Arrays.fill(distance, (short) UNREACHABLE);
+        Arrays.fill(nextHop, NO_HOP);
+
+        long start = System.nanoTime();
+        IntStream.range(0, walkable).parallel().forEach(this::searchFromGoal);
+        LogManager.log("Distance oracle built for " + walkable + " cells in "
+            + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Breadth-first search outward from one goal. Every cell reached from a
+     * neighbor one step closer records the direction toward that neighbor.
+     */
+    private void searchFromGoal(int goal) {
+        int base = goal * walkable;
+        int size = grid.size();
+        int[] queue = new int[walkable];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goal;
+        distance[base + goal] = 0;
+
+        while (head < tail) {
+            int current = queue[head++];
+            int cell = cellOfDense[current];
+            int row = cell / size;
+            int col = cell % size;
+            short d = (short) (distance[base + current] + 1);
+            for (int dir = 0; dir < 4; dir++) {
+                int nr = row + DR[dir];
+                int nc = col + DC[dir];
+                if (!grid.inBounds(nr, nc)) continue;
+                int neighbor = denseOfCell[nr * size + nc];
+                if (neighbor < 0 || distance[base + neighbor] != UNREACHABLE) continue;
+                distance[base + neighbor] = d;
+                // Stepping from the neighbor back to current is the opposite direction
+                nextHop[base + neighbor] = (byte) (dir ^ 1);
+                queue[tail++] = neighbor;
+            }
+        }
+    }
+
+    @Override
+    public int nextStep(int startCell, int goalCell) {
+        if (grid.getVersion() != version) {
+            return fallback.nextStep(startCell, goalCell);
+        }
+        int from = denseOfCell[startCell];
+        int goal = denseOfCell[goalCell];
+        if (from < 0 || goal < 0 || from == goal) {
+            return NO_STEP;
+        }
+        byte dir = nextHop[goal * walkable + from];
+        if (dir == NO_HOP) {
+            return NO_STEP;
+        }
+        int size = grid.size();
+        return (startCell / size + DR[dir]) * size + startCell % size + DC[dir];
+    }
+
+    /**
+     * Returns the walking distance between two cells, or {@link #UNREACHABLE}.
+     */
+    public int distance(int fromCell, int toCell) {
+        int from = denseOfCell[fromCell];
+        int to = denseOfCell[toCell];
+        if (from < 0 || to < 0) {
+            return UNREACHABLE;
+        }
+        return distance[to * walkable + from];
+    }
+
+    /**
+     * Checks whether the tables still match the grid they were built from.
+     */
+    public boolean isCurrent() {
+        return grid.getVersion() == version;
+    }
+}
@@ -0,0 +1,149 @@
+package game.nav;
+
+import java.util.Arrays;
+
+/**
+ * A* over a {@link NavGrid} with 4-way movement and a Manhattan heuristic.
+ * All search state lives in flat int arrays that are reused per thread, and
+ * cells are stamped with a search id instead of clearing the arrays, so a
+ * search allocates nothing once a thread has warmed up.
+ */
+public class GridAStar implements Pathfinder {
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+
+    private final NavGrid grid;
+    private final ThreadLocal<Scratch> scratch;
+
+    public GridAStar(NavGrid grid) {
+        this.grid = grid;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(grid.cellCount()));
+    }
+
+    @Override
+    public int nextStep(int startCell, int goalCell) {
+        if (startCell == goalCell) {
+            return NO_STEP;
+        }
+        Scratch s = scratch.get();
+        int stamp = s.nextStamp();
+        int size = grid.size();
+        int goalRow = grid.rowOf(goalCell);
+        int goalCol = grid.colOf(goalCell);
+
+        s.open(startCell, stamp, 0, -1, heuristic(startCell, size, goalRow, goalCol));
+        int expanded = 0;
+        while (s.heapSize > 0) {
+            int current = s.pop();
+            if (s.closed[current] == stamp) continue;
+            s.closed[current] = stamp;
+            expanded++;
+
+            if (current == goalCell) {
+                PathMetrics.searched(expanded);
+                return firstStep(s, startCell, goalCell);
+            }
+
+            int row = current / size;
+            int col = current % size;
+            int g = s.g[current] + 1;
+            for (int d = 0; d < 4; d++) {
+                int nr = row + DR[d];
+                int nc = col + DC[d];
+                if (!grid.inBounds(nr, nc)) continue;
+                int next = nr * size + nc;
+                if (!grid.isWalkable(next) || s.closed[next] == stamp) continue;
+                if (s.seen[next] != stamp || g < s.g[next]) {
+                    s.open(next, stamp, g, current, g + Math.abs(nr - goalRow) + Math.abs(nc - goalCol));
+                }
+            }
+        }
+        PathMetrics.searched(expanded);
+        return NO_STEP;
+    }
+
+    private static int heuristic(int cell, int size, int goalRow, int goalCol) {
+        return Math.abs(cell / size - goalRow) + Math.abs(cell % size - goalCol);
+    }
+
+    private static int firstStep(Scratch s, int startCell, int goalCell) {
+        int cell = goalCell;
+        while (s.parent[cell] != startCell) {
+            cell = s.parent[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Per-thread search arrays with a binary min-heap keyed on f.
+     * The heap allows duplicate entries; stale ones are skipped when popped.
+     */
+    private static final class Scratch {
+        final int[] g;
+        final int[] parent;
+        final int[] seen;
+        final int[] closed;
+        int[] heapCell;
+        int[] heapF;
+        int heapSize;
+        int stamp;
+
+        Scratch(int cells) {
+            g = new int[cells];
+            parent = new int[cells];
+            seen = new int[cells];
+            closed = new int[cells];
+            heapCell = new int[cells];
+            heapF = new int[cells];
+        }
+
+        int nextStamp() {
+            heapSize = 0;
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        void open(int cell, int stamp, int gValue, int parentCell, int f) {
+            seen[cell] = stamp;
+            g[cell] = gValue;
+            parent[cell] = parentCell;
+            if (heapSize == heapCell.length) {
+                heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+                heapF = Arrays.copyOf(heapF, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (heapF[up] <= f) break;
+                heapCell[i] = heapCell[up];
+                heapF[i] = heapF[up];
+                i = up;
+            }
+            heapCell[i] = cell;
+            heapF[i] = f;
+        }
+
+        int pop() {
+            int top = heapCell[0];
+            int lastCell = heapCell[--heapSize];
+            int lastF = heapF[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && heapF[child + 1] < heapF[child]) child++;
+                if (heapF[child] >= lastF) break;
+                heapCell[i] = heapCell[child];
+                heapF[i] = heapF[child];
+                i = child;
+            }
+            heapCell[i] = lastCell;
+            heapF[i] = lastF;
+            return top;
+        }
+    }
+}
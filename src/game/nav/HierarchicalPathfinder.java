@@ -0,0 +1,514 @@
+package game.nav;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical pathfinder (HPA*) for large grids.
+ * The grid is cut into square clusters. Where two neighboring clusters share an
+ * open stretch of border, an entrance links a cell on each side; the entrance
+ * cells of a cluster are the nodes of an abstract graph, joined by precomputed
+ * walking distances inside the cluster. A query searches the abstract graph and
+ * then refines only the leg inside the start cluster, which is all the caller
+ * needs to take one step.
+ * <p>
+ * Queries may run concurrently. {@link #setWall} updates the grid and rebuilds
+ * only the touched cluster and its neighbors.
+ */
+public class HierarchicalPathfinder implements Pathfinder {
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+    // Open border stretches at least this long get an entrance at each end
+    private static final int WIDE_ENTRANCE = 6;
+    private static final int FROM_START = -2;
+
+    private final NavGrid grid;
+    private final int clusterSize;
+    private final int clustersPerSide;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Scratch> scratch;
+
+    // Entrance pairs {inside, outside, ...} on the right and bottom border of each cluster
+    private final int[][] rightEntrances;
+    private final int[][] bottomEntrances;
+    private final ClusterGraph[] clusters;
+
+    /**
+     * Entrance cells of one cluster and the walking distances between them.
+     */
+    private static final class ClusterGraph {
+        final int[] nodes;
+        final int[] distance;
+
+        ClusterGraph(int[] nodes, int[] distance) {
+            this.nodes = nodes;
+            this.distance = distance;
+        }
+
+        int indexOf(int cell) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == cell) return i;
+            }
+            return -1;
+        }
+    }
+
+    public HierarchicalPathfinder(NavGrid grid, int clusterSize) {
+        this.grid = grid;
+        this.clusterSize = clusterSize;
+        this.clustersPerSide = (grid.size() + clusterSize - 1) / clusterSize;
+        int count = clustersPerSide * clustersPerSide;
+        this.rightEntrances = new int[count][];
+        this.bottomEntrances = new int[count][];
+        this.clusters = new ClusterGraph[count];
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(grid.cellCount()));
+
+        for (int c = 0; c < count; c++) {
+            buildEntrances(c);
+        }
+        Scratch s = scratch.get();
+        for (int c = 0; c < count; c++) {
+            clusters[c] = buildCluster(c, s);
+        }
+    }
+
+    /**
+     * Changes a wall and rebuilds the abstract graph around it.
+     */
+    public void setWall(int cell, boolean wall) {
+        lock.writeLock().lock();
+        try {
+            if (!grid.setWall(cell, wall)) {
+                return;
+            }
+            int c = clusterOf(cell);
+            int cx = c % clustersPerSide;
+            int cy = c / clustersPerSide;
+
+            // The cluster owns its right/bottom borders; the left/top ones belong to neighbors
+            buildEntrances(c);
+            if (cx > 0) buildEntrances(c - 1);
+            if (cy > 0) buildEntrances(c - clustersPerSide);
+
+            Scratch s = scratch.get();
+            clusters[c] = buildCluster(c, s);
+            if (cx > 0) clusters[c - 1] = buildCluster(c - 1, s);
+            if (cx < clustersPerSide - 1) clusters[c + 1] = buildCluster(c + 1, s);
+            if (cy > 0) clusters[c - clustersPerSide] = buildCluster(c - clustersPerSide, s);
+            if (cy < clustersPerSide - 1) clusters[c + clustersPerSide] = buildCluster(c + clustersPerSide, s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int nextStep(int startCell, int goalCell) {
+        if (startCell == goalCell || !grid.isWalkable(startCell) || !grid.isWalkable(goalCell)) {
+            return NO_STEP;
+        }
+        lock.readLock().lock();
+        try {
+            Scratch s = scratch.get();
+            int startCluster = clusterOf(startCell);
+            int goalCluster = clusterOf(goalCell);
+
+            // Same cluster and connected inside it: a local search is enough
+            if (startCluster == goalCluster) {
+                localSearch(goalCell, startCluster, s);
+                if (s.reached(startCell)) {
+                    return descend(startCell, startCluster, s);
+                }
+            }
+
+            int waypoint = abstractSearch(startCell, goalCell, startCluster, goalCluster, s);
+            if (waypoint < 0) {
+                return NO_STEP;
+            }
+            if (clusterOf(waypoint) != startCluster) {
+                // Crossing an entrance: the waypoint is the adjacent cell
+                return waypoint;
+            }
+            localSearch(waypoint, startCluster, s);
+            return s.reached(startCell) ? descend(startCell, startCluster, s) : NO_STEP;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the abstract graph with the start and goal attached to their
+     * clusters' entrances.
+     *
+     * @return The first cell on the abstract path after the start, or -1
+     */
+    private int abstractSearch(int startCell, int goalCell, int startCluster, int goalCluster, Scratch s) {
+        // Distances from every entrance of the goal cluster to the goal
+        ClusterGraph goalGraph = clusters[goalCluster];
+        localSearch(goalCell, goalCluster, s);
+        int[] toGoal = s.toGoal(goalGraph.nodes.length);
+        for (int i = 0; i < goalGraph.nodes.length; i++) {
+            toGoal[i] = s.reached(goalGraph.nodes[i]) ? s.bfsDist[goalGraph.nodes[i]] : -1;
+        }
+
+        // Seed the open list with the entrances reachable from the start
+        ClusterGraph startGraph = clusters[startCluster];
+        localSearch(startCell, startCluster, s);
+        int stamp = s.nextStamp();
+        int size = grid.size();
+        int goalRow = goalCell / size;
+        int goalCol = goalCell % size;
+        for (int node : startGraph.nodes) {
+            if (s.reached(node)) {
+                s.relax(node, stamp, s.bfsDist[node], FROM_START, heuristic(node, goalRow, goalCol));
+            }
+        }
+
+        int expanded = 0;
+        while (s.heapSize > 0) {
+            int u = s.pop();
+            if (s.closed[u] == stamp) continue;
+            s.closed[u] = stamp;
+            expanded++;
+            if (u == goalCell) {
+                PathMetrics.searched(expanded);
+                return firstWaypoint(startCell, goalCell, s);
+            }
+            int g = s.g[u];
+            int c = clusterOf(u);
+            ClusterGraph graph = clusters[c];
+            int i = graph.indexOf(u);
+            if (i < 0) continue;
+
+            // Intra-cluster edges
+            int k = graph.nodes.length;
+            for (int j = 0; j < k; j++) {
+                int d = graph.distance[i * k + j];
+                if (j == i || d < 0) continue;
+                int v = graph.nodes[j];
+                if (s.closed[v] == stamp) continue;
+                if (s.seen[v] != stamp || g + d < s.g[v]) {
+                    s.relax(v, stamp, g + d, u, g + d + heuristic(v, goalRow, goalCol));
+                }
+            }
+            // Inter-cluster edges through entrances touching u
+            relaxCrossings(u, c, g, stamp, goalRow, goalCol, s);
+
+            // Attach the goal
+            if (c == goalCluster && toGoal[i] >= 0) {
+                int total = g + toGoal[i];
+                if (s.seen[goalCell] != stamp || total < s.g[goalCell]) {
+                    s.relax(goalCell, stamp, total, u, total);
+                }
+            }
+        }
+        PathMetrics.searched(expanded);
+        return -1;
+    }
+
+    private void relaxCrossings(int u, int c, int g, int stamp, int goalRow, int goalCol, Scratch s) {
+        int cx = c % clustersPerSide;
+        int cy = c / clustersPerSide;
+        relaxCrossings(rightEntrances[c], u, false, g, stamp, goalRow, goalCol, s);
+        relaxCrossings(bottomEntrances[c], u, false, g, stamp, goalRow, goalCol, s);
+        if (cx > 0) relaxCrossings(rightEntrances[c - 1], u, true, g, stamp, goalRow, goalCol, s);
+        if (cy > 0) relaxCrossings(bottomEntrances[c - clustersPerSide], u, true, g, stamp, goalRow, goalCol, s);
+    }
+
+    private void relaxCrossings(int[] pairs, int u, boolean outside, int g, int stamp,
+                                int goalRow, int goalCol, Scratch s) {
+        for (int p = 0; p < pairs.length; p += 2) {
+            int from = outside ? pairs[p + 1] : pairs[p];
+            if (from != u) continue;
+            int v = outside ? pairs[p] : pairs[p + 1];
+            if (s.closed[v] == stamp) continue;
+            if (s.seen[v] != stamp || g + 1 < s.g[v]) {
+                s.relax(v, stamp, g + 1, u, g + 1 + heuristic(v, goalRow, goalCol));
+            }
+        }
+    }
+
+    /**
+     * Walks the parent chain back to the first waypoint that differs from the start.
+     */
+    private static int firstWaypoint(int startCell, int goalCell, Scratch s) {
+        int cell = goalCell;
+        int after = -1;
+        while (s.parent[cell] != FROM_START) {
+            after = cell;
+            cell = s.parent[cell];
+        }
+        // The first node may be the start itself when it sits on an entrance
+        return cell != startCell ? cell : after;
+    }
+
+    /**
+     * From a cell reached by the last local search, steps to the neighbor one closer to its origin.
+     */
+    private int descend(int cell, int cluster, Scratch s) {
+        int size = grid.size();
+        int row = cell / size;
+        int col = cell % size;
+        int want = s.bfsDist[cell] - 1;
+        for (int d = 0; d < 4; d++) {
+            int nr = row + DR[d];
+            int nc = col + DC[d];
+            if (!inCluster(nr, nc, cluster)) continue;
+            int next = nr * size + nc;
+            if (s.reached(next) && s.bfsDist[next] == want) {
+                return next;
+            }
+        }
+        return NO_STEP;
+    }
+
+    /**
+     * Breadth-first search from a cell, confined to one cluster.
+     */
+    private void localSearch(int origin, int cluster, Scratch s) {
+        int stamp = s.nextBfsStamp();
+        int size = grid.size();
+        int head = 0;
+        int tail = 0;
+        s.queue[tail++] = origin;
+        s.bfsSeen[origin] = stamp;
+        s.bfsDist[origin] = 0;
+        while (head < tail) {
+            int cell = s.queue[head++];
+            int row = cell / size;
+            int col = cell % size;
+            for (int d = 0; d < 4; d++) {
+                int nr = row + DR[d];
+                int nc = col + DC[d];
+                if (!inCluster(nr, nc, cluster)) continue;
+                int next = nr * size + nc;
+                if (s.bfsSeen[next] == stamp || !grid.isWalkable(next)) continue;
+                s.bfsSeen[next] = stamp;
+                s.bfsDist[next] = s.bfsDist[cell] + 1;
+                s.queue[tail++] = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the entrances on the right and bottom border of a cluster.
+     */
+    private void buildEntrances(int c) {
+        int size = grid.size();
+        int cx = c % clustersPerSide;
+        int cy = c / clustersPerSide;
+        int rowStart = cy * clusterSize;
+        int colStart = cx * clusterSize;
+        int rowEnd = Math.min(rowStart + clusterSize, size);
+        int colEnd = Math.min(colStart + clusterSize, size);
+
+        IntBuffer right = new IntBuffer();
+        if (colEnd < size) {
+            int col = colEnd - 1;
+            scanBorder(rowStart, rowEnd, r -> r * size + col, r -> r * size + col + 1, right);
+        }
+        IntBuffer bottom = new IntBuffer();
+        if (rowEnd < size) {
+            int row = rowEnd - 1;
+            scanBorder(colStart, colEnd, k -> row * size + k, k -> (row + 1) * size + k, bottom);
+        }
+        rightEntrances[c] = right.toArray();
+        bottomEntrances[c] = bottom.toArray();
+    }
+
+    private void scanBorder(int from, int to, java.util.function.IntUnaryOperator inside,
+                            java.util.function.IntUnaryOperator outside, IntBuffer out) {
+        int runStart = -1;
+        for (int k = from; k <= to; k++) {
+            boolean open = k < to && grid.isWalkable(inside.applyAsInt(k)) && grid.isWalkable(outside.applyAsInt(k));
+            if (open && runStart < 0) {
+                runStart = k;
+            } else if (!open && runStart >= 0) {
+                int runEnd = k - 1;
+                if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+                    out.add(inside.applyAsInt(runStart), outside.applyAsInt(runStart));
+                    out.add(inside.applyAsInt(runEnd), outside.applyAsInt(runEnd));
+                } else {
+                    int mid = (runStart + runEnd) >>> 1;
+                    out.add(inside.applyAsInt(mid), outside.applyAsInt(mid));
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Collects a cluster's entrance cells and their pairwise distances inside it.
+     */
+    private ClusterGraph buildCluster(int c, Scratch s) {
+        int cx = c % clustersPerSide;
+        int cy = c / clustersPerSide;
+        IntBuffer nodes = new IntBuffer();
+        addInside(rightEntrances[c], 0, nodes);
+        addInside(bottomEntrances[c], 0, nodes);
+        if (cx > 0) addInside(rightEntrances[c - 1], 1, nodes);
+        if (cy > 0) addInside(bottomEntrances[c - clustersPerSide], 1, nodes);
+
+        int[] cells = nodes.toArray();
+        int k = cells.length;
+        int[] distance = new int[k * k];
+        for (int i = 0; i < k; i++) {
+            localSearch(cells[i], c, s);
+            for (int j = 0; j < k; j++) {
+                distance[i * k + j] = s.reached(cells[j]) ? s.bfsDist[cells[j]] : -1;
+            }
+        }
+        return new ClusterGraph(cells, distance);
+    }
+
+    private static void addInside(int[] pairs, int offset, IntBuffer nodes) {
+        for (int p = offset; p < pairs.length; p += 2) {
+            nodes.addUnique(pairs[p]);
+        }
+    }
+
+    private int clusterOf(int cell) {
+        int size = grid.size();
+        return (cell / size / clusterSize) * clustersPerSide + (cell % size) / clusterSize;
+    }
+
+    private boolean inCluster(int row, int col, int cluster) {
+        if (!grid.inBounds(row, col)) return false;
+        return (row / clusterSize) * clustersPerSide + col / clusterSize == cluster;
+    }
+
+    private int heuristic(int cell, int goalRow, int goalCol) {
+        int size = grid.size();
+        return Math.abs(cell / size - goalRow) + Math.abs(cell % size - goalCol);
+    }
+
+    /**
+     * Growable int list used while building entrances.
+     */
+    private static final class IntBuffer {
+        private int[] data = new int[8];
+        private int size;
+
+        void add(int a, int b) {
+            add(a);
+            add(b);
+        }
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void addUnique(int value) {
+            for (int i = 0; i < size; i++) {
+                if (data[i] == value) return;
+            }
+            add(value);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Per-thread search state, stamped instead of cleared between searches.
+     */
+    private static final class Scratch {
+        final int[] g;
+        final int[] parent;
+        final int[] seen;
+        final int[] closed;
+        final int[] bfsSeen;
+        final int[] bfsDist;
+        final int[] queue;
+        int[] heapCell;
+        int[] heapF;
+        int[] goalDistances = new int[16];
+        int heapSize;
+        int stamp;
+        int bfsStamp;
+
+        Scratch(int cells) {
+            g = new int[cells];
+            parent = new int[cells];
+            seen = new int[cells];
+            closed = new int[cells];
+            bfsSeen = new int[cells];
+            bfsDist = new int[cells];
+            queue = new int[cells];
+            heapCell = new int[64];
+            heapF = new int[64];
+        }
+
+        int nextStamp() {
+            heapSize = 0;
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        int nextBfsStamp() {
+            if (++bfsStamp == Integer.MAX_VALUE) {
+                Arrays.fill(bfsSeen, 0);
+                bfsStamp = 1;
+            }
+            return bfsStamp;
+        }
+
+        boolean reached(int cell) {
+            return bfsSeen[cell] == bfsStamp;
+        }
+
+        int[] toGoal(int k) {
+            if (goalDistances.length < k) {
+                goalDistances = new int[k];
+            }
+            return goalDistances;
+        }
+
+        void relax(int cell, int stamp, int gValue, int parentCell, int f) {
+            seen[cell] = stamp;
+            g[cell] = gValue;
+            parent[cell] = parentCell;
+            if (heapSize == heapCell.length) {
+                heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+                heapF = Arrays.copyOf(heapF, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (heapF[up] <= f) break;
+                heapCell[i] = heapCell[up];
+                heapF[i] = heapF[up];
+                i = up;
+            }
+            heapCell[i] = cell;
+            heapF[i] = f;
+        }
+
+        int pop() {
+            int top = heapCell[0];
+            int lastCell = heapCell[--heapSize];
+            int lastF = heapF[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && heapF[child + 1] < heapF[child]) child++;
+                if (heapF[child] >= lastF) break;
+                heapCell[i] = heapCell[child];
+                heapF[i] = heapF[child];
+                i = child;
+            }
+            heapCell[i] = lastCell;
+            heapF[i] = lastF;
+            return top;
+        }
+    }
+}
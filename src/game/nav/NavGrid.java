@@ -0,0 +1,105 @@
+package game.nav;
+
+import game.map.GameMap;
+import game.map.Position;
+
+/**
+ * Flat walkability grid used by the pathfinders.
+ * Cells are addressed by a single index {@code row * size + col}. Every change
+ * to a wall bumps the version, so planners that cache data can tell when it is stale,
+ * and is kept in a short change log so incremental planners can repair just those cells.
+ */
+public class NavGrid {
+    private final int size;
+    private final boolean[] walls;
+    private final ChangeLog changes = new ChangeLog();
+    private volatile long version;
+
+    public NavGrid(int size) {
+        this.size = size;
+        this.walls = new boolean[size * size];
+    }
+
+    /**
+     * Builds a grid from the walls currently placed on a map.
+     */
+    public static NavGrid fromMap(GameMap map) {
+        int size = map.getMapSize();
+        NavGrid grid = new NavGrid(size);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (map.isWall(new Position(row, col))) {
+                    grid.walls[row * size + col] = true;
+                }
+            }
+        }
+        return grid;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cellCount() {
+        return walls.length;
+    }
+
+    public int cellOf(int row, int col) {
+        return row * size + col;
+    }
+
+    public int cellOf(Position pos) {
+        return pos.getRow() * size + pos.getCol();
+    }
+
+    public int rowOf(int cell) {
+        return cell / size;
+    }
+
+    public int colOf(int cell) {
+        return cell % size;
+    }
+
+    public Position positionOf(int cell) {
+        return new Position(cell / size, cell % size);
+    }
+
+    public boolean inBounds(int row, int col) {
+        return row >= 0 && col >= 0 && row < size && col < size;
+    }
+
+    public boolean isWalkable(int cell) {
+        return !walls[cell];
+    }
+
+    /**
+     * Marks a cell as wall or floor.
+     *
+     * @return true if the cell changed
+     */
+    public synchronized boolean setWall(int cell, boolean wall) {
+        if (walls[cell] == wall) {
+            return false;
+        }
+        walls[cell] = wall;
+        changes.record(cell);
+        version++;
+        return true;
+    }
+
+    /**
+     * Returns a counter that increases on every wall change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Copies the cells whose walls changed after the given version.
+     *
+     * @return The number of cells copied, or -1 if the log no longer reaches back that far
+     */
+    public synchronized int changesSince(long sinceVersion, int[] out) {
+        return changes.since(sinceVersion, out);
+    }
+}
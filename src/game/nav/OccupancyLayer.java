@@ -0,0 +1,44 @@
+package game.nav;
+
+/**
+ * Cells currently taken by moving agents (players and enemies), layered on
+ * top of the static walls of a {@link NavGrid}. Changes are numbered and logged
+ * like wall changes, so incremental planners only revisit cells that changed.
+ */
+public class OccupancyLayer {
+    private final boolean[] occupied;
+    private final ChangeLog changes = new ChangeLog();
+
+    public OccupancyLayer(int cellCount) {
+        this.occupied = new boolean[cellCount];
+    }
+
+    public boolean isOccupied(int cell) {
+        return occupied[cell];
+    }
+
+    /**
+     * Brings the layer in line with a full occupancy snapshot, logging only the differences.
+     */
+    public synchronized void update(boolean[] snapshot) {
+        for (int cell = 0; cell < occupied.length; cell++) {
+            if (occupied[cell] != snapshot[cell]) {
+                occupied[cell] = snapshot[cell];
+                changes.record(cell);
+            }
+        }
+    }
+
+    public synchronized long getSequence() {
+        return changes.sequence();
+    }
+
+    /**
+     * Copies the cells that changed after the given sequence number.
+     *
+     * @return The number of cells copied, or -1 if the log no longer reaches back that far
+     */
+    public synchronized int changesSince(long sequence, int[] out) {
+        return changes.since(sequence, out);
+    }
+}
@@ -0,0 +1,25 @@
+package game.nav;
+
+import game.metrics.Counter;
+import game.metrics.LatencyHistogram;
+import game.metrics.MetricsRegistry;
+
+/**
+ * Search effort of the pathfinders: nodes expanded in total and per search.
+ */
+final class PathMetrics {
+    private static final Counter EXPANDED = MetricsRegistry.global().counter("path.expanded");
+    private static final LatencyHistogram PER_SEARCH = MetricsRegistry.global().histogram("path.nodes");
+
+    private PathMetrics() {
+    }
+
+    /**
+     * Records one search; searches count locally and report once, so the
+     * shared counters are not touched per node.
+     */
+    static void searched(int expanded) {
+        EXPANDED.add(expanded);
+        PER_SEARCH.record(expanded);
+    }
+}
@@ -0,0 +1,15 @@
+package game.nav;
+
+/**
+ * Computes movement on a {@link NavGrid}. Implementations must be safe to call
+ * from several threads at once.
+ */
+public interface Pathfinder {
+    int NO_STEP = -1;
+
+    /**
+     * Returns the first cell on a shortest path from start to goal, or
+     * {@link #NO_STEP} if the goal is unreachable or already reached.
+     */
+    int nextStep(int startCell, int goalCell);
+}
@@ -0,0 +1,86 @@
+package game.network;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Change to one player's fog of war, sent as run-length encoded XOR masks.
+ * Each run array alternates lengths of unchanged and flipped cells, starting
+ * with unchanged; trailing unchanged cells are omitted. Applying the runs to
+ * the previous bitset yields the new one. The first delta a client receives
+ * is against an all-hidden board.
+ */
+public class FogDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int[] NO_RUNS = new int[0];
+
+    private final int boardSize;
+    private final int[] visibleRuns;
+    private final int[] exploredRuns;
+
+    public FogDelta(int boardSize, int[] visibleRuns, int[] exploredRuns) {
+        this.boardSize = boardSize;
+        this.visibleRuns = visibleRuns;
+        this.exploredRuns = exploredRuns;
+    }
+
+    public int getBoardSize() { return boardSize; }
+    public int[] getVisibleRuns() { return visibleRuns; }
+    public int[] getExploredRuns() { return exploredRuns; }
+
+    public boolean isEmpty() {
+        return visibleRuns.length == 0 && exploredRuns.length == 0;
+    }
+
+    /**
+     * Encodes the cells that differ between two bitsets.
+     */
+    public static int[] encodeRuns(long[] before, long[] after, int cellCount) {
+        int[] runs = NO_RUNS;
+        int count = 0;
+        int runStart = 0;
+        boolean flipping = false;
+        int cell = 0;
+        while (cell < cellCount) {
+            long diff = before[cell >>> 6] ^ after[cell >>> 6];
+            if ((cell & 63) == 0 && (diff == 0 && !flipping || diff == -1L && flipping)) {
+                // Whole word continues the current run
+                cell += 64;
+                continue;
+            }
+            boolean flipped = (diff & (1L << cell)) != 0;
+            if (flipped != flipping) {
+                if (count == runs.length) {
+                    runs = Arrays.copyOf(runs, Math.max(8, count * 2));
+                }
+                runs[count++] = cell - runStart;
+                runStart = cell;
+                flipping = flipped;
+            }
+            cell++;
+        }
+        if (flipping) {
+            if (count == runs.length) {
+                runs = Arrays.copyOf(runs, count + 1);
+            }
+            runs[count++] = cellCount - runStart;
+        }
+        return count == runs.length ? runs : Arrays.copyOf(runs, count);
+    }
+
+    /**
+     * Flips the cells described by the runs.
+     */
+    public static void applyRuns(long[] bits, int[] runs) {
+        int cell = 0;
+        for (int i = 0; i < runs.length; i++) {
+            int length = runs[i];
+            if ((i & 1) == 1) {
+                for (int c = cell; c < cell + length; c++) {
+                    bits[c >>> 6] ^= 1L << c;
+                }
+            }
+            cell += length;
+        }
+    }
+}
@@ -26,6 +26,9 @@ public class GameMessage implements Serializable {
     private List<EnemyState> enemyStates;
     private List<ItemState> itemStates;
     
+    // For fog of war updates
+    private FogDelta fogDelta;
+    
     public GameMessage(MessageType type) {
         this.type = type;
     }
@@ -61,6 +64,9 @@ public class GameMessage implements Serializable {
     public List<ItemState> getItemStates() { return itemStates; }
     public void setItemStates(List<ItemState> itemStates) { this.itemStates = itemStates; }
     
+    public FogDelta getFogDelta() { return fogDelta; }
+    public void setFogDelta(FogDelta fogDelta) { this.fogDelta = fogDelta; }
+    
     public int getTargetPlayerId() { return targetPlayerId; }
     public void setTargetPlayerId(int targetPlayerId) { this.targetPlayerId = targetPlayerId; }
 }
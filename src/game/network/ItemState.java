@@ -10,6 +10,7 @@ import game.map.Position;
 public class ItemState implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    private int itemId = -1;
     private String type;
     private Position position;
     private boolean visible;
@@ -20,7 +21,13 @@ public class ItemState implements Serializable {
         this.visible = visible;
     }
     
+    public ItemState(int itemId, String type, Position position, boolean visible) {
+        this(type, position, visible);
+        this.itemId = itemId;
+    }
+    
     // Getters
+    public int getItemId() { return itemId; }
     public String getType() { return type; }
     public Position getPosition() { return position; }
     public boolean isVisible() { return visible; }
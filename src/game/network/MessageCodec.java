@@ -0,0 +1,104 @@
+package game.network;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Wire format shared by client and server. Every message travels as one
+ * frame: a 4-byte big-endian length followed by the serialized message.
+ * Frames are self-contained, so a message can be encoded on one thread and
+ * written to the socket later by another, and a broadcast is encoded once.
+ * State frames use the compact binary layout of {@link StateFrameCodec}.
+ */
+public final class MessageCodec {
+    public static final int MAX_FRAME_BYTES = 1 << 20;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes a message into a complete frame, length prefix included.
+     */
+    public static byte[] encode(GameMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        bytes.write(new byte[4]);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * Encodes and writes one message, then flushes.
+     */
+    public static void write(DataOutputStream out, GameMessage message) throws IOException {
+        out.write(encode(message));
+        out.flush();
+    }
+
+    /**
+     * Blocks until a whole frame has arrived and decodes it.
+     *
+     * @throws EOFException if the stream ended between frames
+     */
+    public static GameMessage read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decodeBody(body);
+    }
+
+    /**
+     * Blocks until a whole frame has arrived and returns it undecoded, length
+     * prefix included, e.g. to count its bytes before {@link #decode(byte[])}.
+     *
+     * @throws EOFException if the stream ended between frames
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] frame = new byte[4 + length];
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        in.readFully(frame, 4, length);
+        return frame;
+    }
+
+    /**
+     * Decodes a whole frame that arrived by other means, e.g. through a gateway.
+     */
+    public static GameMessage decode(byte[] frame) throws IOException {
+        if (frame.length < 5) {
+            throw new IOException("Truncated frame of " + frame.length + " bytes");
+        }
+        int length = (frame[0] & 0xFF) << 24 | (frame[1] & 0xFF) << 16 | (frame[2] & 0xFF) << 8 | frame[3] & 0xFF;
+        if (length != frame.length - 4) {
+            throw new IOException("Frame length " + length + " does not match its " + (frame.length - 4) + " bytes");
+        }
+        return decodeBody(Arrays.copyOfRange(frame, 4, frame.length));
+    }
+
+    private static GameMessage decodeBody(byte[] body) throws IOException {
+        if (body[0] == StateFrameCodec.STATE_TAG) {
+            return StateFrameCodec.decode(body);
+        }
+        try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(body))) {
+            return (GameMessage) objects.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid message: " + e.getMessage(), e);
+        }
+    }
+}
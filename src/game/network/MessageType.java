@@ -20,10 +20,14 @@ public enum MessageType {
     COMBAT_UPDATE,
     CHAT_MESSAGE,
     ABILITY_ACTIVATED,
+    EFFECT_APPLIED,
+    EFFECT_EXPIRED,
+    FOG_UPDATE,
     SERVER_SHUTDOWN,
     ERROR,
     MOVE_FAILED,
     DAMAGE_DEALT,
+    REDIRECT, // host:port of the server node that now owns the player
     
     // Client to Server
     JOIN_GAME,
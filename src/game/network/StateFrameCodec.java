@@ -0,0 +1,241 @@
+package game.network;
+
+import game.map.Position;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of {@link MessageType#FULL_STATE} frames.
+ * An encoder writes entity states straight into a buffer it keeps between
+ * calls, and caches the bytes of names and type names, so encoding a state
+ * frame allocates only the finished frame. One encoder per thread.
+ * <p>
+ * Layout after the frame length: a {@link #STATE_TAG} byte, then players,
+ * enemies and items, each as a count followed by fixed fields per entity.
+ * Strings are a 2-byte length and UTF-8 bytes. The tag can never start a
+ * Java serialization stream, so {@link MessageCodec} tells the two apart.
+ */
+public final class StateFrameCodec {
+    public static final byte STATE_TAG = 0x01;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private byte[] buffer = new byte[4096];
+    private int position;
+    private int countAt = -1;
+    private int count;
+    private final Map<String, byte[]> strings = new HashMap<>();
+
+    /**
+     * Starts a new frame, discarding anything written before.
+     */
+    public void begin() {
+        position = 4;
+        countAt = -1;
+        writeByte(STATE_TAG);
+    }
+
+    /**
+     * Starts the next entity list: players, then enemies, then items.
+     */
+    public void startList() {
+        closeList();
+        countAt = position;
+        count = 0;
+        writeInt(0);
+    }
+
+    public void player(PlayerState state) {
+        count++;
+        writeInt(state.getPlayerId());
+        writeString(state.getName());
+        writePosition(state.getPosition());
+        writeInt(state.getHealth());
+        writeInt(state.getPower());
+        writeString(state.getCharacterClass());
+        writeInt(state.getLifePotionCount());
+        writeInt(state.getPowerPotionCount());
+        writeInt(state.getTreasurePoints());
+    }
+
+    public void enemy(EnemyState state) {
+        count++;
+        writeInt(state.getEnemyId());
+        writeString(state.getType());
+        writePosition(state.getPosition());
+        writeInt(state.getHealth());
+        writeByte(state.isVisible() ? 1 : 0);
+    }
+
+    public void item(ItemState state) {
+        count++;
+        writeInt(state.getItemId());
+        writeString(state.getType());
+        writePosition(state.getPosition());
+        writeByte(state.isVisible() ? 1 : 0);
+    }
+
+    /**
+     * Completes the frame and returns a copy of it, length prefix included.
+     */
+    public byte[] finish() {
+        closeList();
+        putInt(0, position - 4);
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void closeList() {
+        if (countAt >= 0) {
+            putInt(countAt, count);
+            countAt = -1;
+        }
+    }
+
+    private void writePosition(Position pos) {
+        writeInt(pos.getRow());
+        writeInt(pos.getCol());
+    }
+
+    private void writeString(String s) {
+        byte[] bytes = s == null ? NO_BYTES : strings.get(s);
+        if (bytes == null) {
+            bytes = s.getBytes(StandardCharsets.UTF_8);
+            // Names and type names repeat every tick; bound the cache anyway
+            if (strings.size() < 1024) {
+                strings.put(s, bytes);
+            }
+        }
+        ensure(2 + bytes.length);
+        buffer[position++] = (byte) (bytes.length >>> 8);
+        buffer[position++] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        ensure(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeInt(int v) {
+        ensure(4);
+        putInt(position, v);
+        position += 4;
+    }
+
+    private void putInt(int at, int v) {
+        buffer[at] = (byte) (v >>> 24);
+        buffer[at + 1] = (byte) (v >>> 16);
+        buffer[at + 2] = (byte) (v >>> 8);
+        buffer[at + 3] = (byte) v;
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    /**
+     * Decodes a state frame body (without the length prefix) into a message.
+     */
+    public static GameMessage decode(byte[] body) throws IOException {
+        Reader in = new Reader(body);
+        if (in.readByte() != STATE_TAG) {
+            throw new IOException("Not a state frame");
+        }
+        GameMessage msg = new GameMessage(MessageType.FULL_STATE);
+
+        int players = in.readCount();
+        List<PlayerState> playerStates = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            int id = in.readInt();
+            String name = in.readString();
+            Position pos = in.readPosition();
+            int health = in.readInt();
+            int power = in.readInt();
+            String characterClass = in.readString();
+            playerStates.add(new PlayerState(id, name, pos, health, power, characterClass,
+                in.readInt(), in.readInt(), in.readInt()));
+        }
+        msg.setPlayerStates(playerStates);
+
+        int enemies = in.readCount();
+        List<EnemyState> enemyStates = new ArrayList<>(enemies);
+        for (int i = 0; i < enemies; i++) {
+            int id = in.readInt();
+            String type = in.readString();
+            Position pos = in.readPosition();
+            int health = in.readInt();
+            enemyStates.add(new EnemyState(id, type, pos, health, in.readByte() != 0));
+        }
+        msg.setEnemyStates(enemyStates);
+
+        int items = in.readCount();
+        List<ItemState> itemStates = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            int id = in.readInt();
+            String type = in.readString();
+            Position pos = in.readPosition();
+            itemStates.add(new ItemState(id, type, pos, in.readByte() != 0));
+        }
+        msg.setItemStates(itemStates);
+        return msg;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return data[position++];
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            int v = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            position += 4;
+            return v;
+        }
+
+        int readCount() throws IOException {
+            int n = readInt();
+            if (n < 0 || n > data.length) {
+                throw new IOException("Invalid entity count " + n);
+            }
+            return n;
+        }
+
+        String readString() throws IOException {
+            require(2);
+            int length = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            position += 2;
+            require(length);
+            String s = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+
+        Position readPosition() throws IOException {
+            int row = readInt();
+            return new Position(row, readInt());
+        }
+
+        private void require(int bytes) throws IOException {
+            if (position + bytes > data.length) {
+                throw new IOException("Truncated state frame");
+            }
+        }
+    }
+}
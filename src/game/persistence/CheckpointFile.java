@@ -0,0 +1,196 @@
+package game.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * A memory-mapped file holding the two most recent world checkpoints.
+ * <p>
+ * After a 16-byte file header come two equal slots. Each slot starts with a
+ * sequence number, a payload length and a CRC32C over both and the payload.
+ * A new checkpoint always overwrites the older slot and is forced to disk
+ * before the call returns, so the newer slot stays intact if the process dies
+ * mid-write. On open, the slot with the highest sequence whose checksum
+ * matches wins; a torn or corrupt slot is simply ignored.
+ * <p>
+ * When a checkpoint outgrows its slot, the file is rewritten with larger
+ * slots under a temporary name and moved over the old one.
+ * Not thread-safe: one writer at a time.
+ */
+public final class CheckpointFile implements Closeable {
+    private static final int MAGIC = 0x44444350; // "DDCP"
+    private static final int FORMAT = 1;
+    private static final int FILE_HEADER = 16;
+    private static final int SLOT_HEADER = 16;
+    private static final int INITIAL_SLOT_SIZE = 64 * 1024;
+    private static final int MAX_SLOT_SIZE = 256 * 1024 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int slotSize;
+    private int latestSlot = -1;
+    private long sequence;
+
+    private CheckpointFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens a checkpoint file, creating it if it does not exist or is not one.
+     */
+    public static CheckpointFile open(Path path) throws IOException {
+        CheckpointFile file = new CheckpointFile(path);
+        if (!file.mapExisting()) {
+            CheckpointFile.create(path, INITIAL_SLOT_SIZE);
+            file.map(path);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the newest valid checkpoint, or null if there is none.
+     */
+    public WorldCheckpoint readLatest() {
+        if (latestSlot < 0) {
+            return null;
+        }
+        ByteBuffer payload = slot(latestSlot);
+        payload.position(SLOT_HEADER).limit(SLOT_HEADER + payload.getInt(8));
+        try {
+            return WorldCheckpoint.readFrom(payload.slice());
+        } catch (IllegalArgumentException e) {
+            // Checksum matched but the layout is from another version
+            return null;
+        }
+    }
+
+    /**
+     * Sequence number of the newest valid checkpoint, 0 if there is none.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Writes a checkpoint into the older slot and forces it to disk.
+     *
+     * @return the number of payload bytes written
+     */
+    public int write(WorldCheckpoint checkpoint) throws IOException {
+        while (true) {
+            int target = latestSlot == 0 ? 1 : 0;
+            ByteBuffer slot = slot(target);
+            ByteBuffer payload = slot.duplicate().position(SLOT_HEADER).slice();
+            try {
+                checkpoint.writeTo(payload);
+            } catch (BufferOverflowException e) {
+                grow();
+                continue;
+            }
+            int length = payload.position();
+            long next = sequence + 1;
+            slot.putLong(0, next);
+            slot.putInt(8, length);
+            slot.putInt(12, checksum(slot, length));
+            mapped.force(FILE_HEADER + target * slotSize, SLOT_HEADER + length);
+            latestSlot = target;
+            sequence = next;
+            return length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private boolean mapExisting() throws IOException {
+        if (!Files.exists(path) || Files.size(path) < FILE_HEADER) {
+            return false;
+        }
+        map(path);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT
+                || (long) FILE_HEADER + 2L * mapped.getInt(8) != channel.size()) {
+            close();
+            return false;
+        }
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer slot = slot(i);
+            long slotSequence = slot.getLong(0);
+            int length = slot.getInt(8);
+            if (slotSequence <= 0 || length <= 0 || length > slotSize - SLOT_HEADER) continue;
+            if (slot.getInt(12) != checksum(slot, length)) continue;
+            if (slotSequence > sequence) {
+                sequence = slotSequence;
+                latestSlot = i;
+            }
+        }
+        return true;
+    }
+
+    private void map(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        slotSize = mapped.getInt(8);
+    }
+
+    private static void create(Path file, int slotSize) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = out.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER + 2L * slotSize);
+            header.putInt(0, MAGIC);
+            header.putInt(4, FORMAT);
+            header.putInt(8, slotSize);
+            header.force();
+        }
+    }
+
+    /**
+     * Rewrites the file with slots twice as large, carrying over the newest checkpoint.
+     */
+    private void grow() throws IOException {
+        if (slotSize >= MAX_SLOT_SIZE) {
+            throw new IOException("Checkpoint larger than " + MAX_SLOT_SIZE + " bytes");
+        }
+        int newSize = slotSize * 2;
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        create(temp, newSize);
+        if (latestSlot >= 0) {
+            ByteBuffer latest = slot(latestSlot);
+            latest.limit(SLOT_HEADER + latest.getInt(8));
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                out.write(latest, FILE_HEADER);
+                out.force(false);
+            }
+        }
+        close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(path);
+        latestSlot = latestSlot >= 0 ? 0 : -1;
+    }
+
+    private ByteBuffer slot(int index) {
+        return mapped.slice(FILE_HEADER + index * slotSize, slotSize);
+    }
+
+    private static int checksum(ByteBuffer slot, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(slot.slice(0, 12));
+        crc.update(slot.slice(SLOT_HEADER, length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,149 @@
+package game.persistence;
+
+import game.logging.LogManager;
+import game.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes world checkpoints to a {@link CheckpointFile} on a background thread.
+ * The tick thread only captures the checkpoint and hands it over. If a write
+ * is still running when the next checkpoint arrives, the waiting one is
+ * replaced, so a slow disk never queues up stale checkpoints.
+ */
+public class Checkpointer {
+    private final Path path;
+    private final CheckpointFile file;
+    private final AtomicReference<WorldCheckpoint> pending = new AtomicReference<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final LatencyHistogram writeLatency = new LatencyHistogram("checkpoint write");
+    private final AtomicLong superseded = new AtomicLong();
+    private volatile long lastTick = -1;
+    private volatile int lastBytes;
+    private volatile LongConsumer onWritten;
+
+    public Checkpointer(Path path) throws IOException {
+        this.path = path;
+        this.file = CheckpointFile.open(path);
+    }
+
+    /**
+     * Reads the newest valid checkpoint, or returns null if there is none.
+     */
+    public WorldCheckpoint restore() {
+        long start = System.nanoTime();
+        WorldCheckpoint checkpoint = file.readLatest();
+        if (checkpoint != null) {
+            LogManager.log(String.format("Restored checkpoint #%d of tick %d from %s in %.2f ms (%d players, %d enemies, %d items)",
+                file.getSequence(), checkpoint.getTick(), path, (System.nanoTime() - start) / 1e6,
+                checkpoint.getPlayers().size(), checkpoint.getEnemies().size(), checkpoint.getItems().size()));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Registers a callback run on the writer thread with the tick of every
+     * checkpoint once it is on disk.
+     */
+    public void setOnWritten(LongConsumer onWritten) {
+        this.onWritten = onWritten;
+    }
+
+    /**
+     * Writes a checkpoint and waits until it is on disk.
+     */
+    public void writeNow(WorldCheckpoint checkpoint) throws IOException {
+        try {
+            writer.submit(() -> {
+                write(checkpoint);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing checkpoint", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Queues a checkpoint for writing and returns at once.
+     */
+    public void submit(WorldCheckpoint checkpoint) {
+        if (pending.getAndSet(checkpoint) == null) {
+            try {
+                writer.execute(this::writePending);
+            } catch (RejectedExecutionException e) {
+                // A tick that finished after shutdown; the final checkpoint is already written
+            }
+        } else {
+            superseded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes a last checkpoint, waits for the writer to finish and closes the file.
+     */
+    public void shutdown(WorldCheckpoint last) {
+        if (last != null) {
+            submit(last);
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                LogManager.log("Checkpoint writer did not finish in time");
+            }
+            file.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LogManager.log("Error closing checkpoint file: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void writePending() {
+        WorldCheckpoint checkpoint = pending.getAndSet(null);
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            write(checkpoint);
+        } catch (IOException e) {
+            LogManager.log("Error writing checkpoint: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void write(WorldCheckpoint checkpoint) throws IOException {
+        long start = System.nanoTime();
+        lastBytes = file.write(checkpoint);
+        writeLatency.record(System.nanoTime() - start);
+        lastTick = checkpoint.getTick();
+        LongConsumer callback = onWritten;
+        if (callback != null) {
+            callback.accept(checkpoint.getTick());
+        }
+    }
+
+    public String summary() {
+        return writeLatency.summary() + ", last tick=" + lastTick + " (" + lastBytes + " B)"
+            + ", superseded=" + superseded.get();
+    }
+
+    public LatencyHistogram getWriteLatency() { return writeLatency; }
+    public long getLastTick() { return lastTick; }
+}
@@ -0,0 +1,374 @@
+package game.persistence;
+
+import game.logging.LogManager;
+import game.map.Position;
+import game.metrics.LatencyHistogram;
+import game.network.GameMessage;
+import game.network.MessageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the player commands applied since the last checkpoint.
+ * <p>
+ * The tick thread only copies each command into an in-memory batch. A flusher
+ * thread swaps the batch out, writes it and forces it to disk with a single
+ * fsync; commands that arrive during the fsync form the next batch. A crash
+ * therefore loses at most the batch being written.
+ * <p>
+ * The journal is a directory of numbered segment files. A segment starts with
+ * a magic number and is followed by entries of a length, a CRC32C and the
+ * body: tick, client id, player name, message type, position and text. A
+ * segment is rotated when it grows past a size limit, and deleted once a
+ * durable checkpoint covers every tick in it. On recovery each segment is
+ * read up to its first torn or corrupt entry.
+ */
+public class CommandJournal implements Closeable {
+    private static final int MAGIC = 0x4444574C; // "DDWL"
+    private static final long SEGMENT_BYTES = 4L * 1024 * 1024;
+    private static final int INITIAL_BATCH_BYTES = 64 * 1024;
+    private static final int ENTRY_HEADER = 8;
+
+    /**
+     * One journaled command.
+     */
+    public static final class Entry {
+        private final long tick;
+        private final int clientId;
+        private final String playerName;
+        private final GameMessage message;
+
+        Entry(long tick, int clientId, String playerName, GameMessage message) {
+            this.tick = tick;
+            this.clientId = clientId;
+            this.playerName = playerName;
+            this.message = message;
+        }
+
+        public long getTick() { return tick; }
+        public int getClientId() { return clientId; }
+        public String getPlayerName() { return playerName; }
+        public GameMessage getMessage() { return message; }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long number;
+        long firstTick = -1;
+        long lastTick = -1;
+
+        Segment(Path path, long number) {
+            this.path = path;
+            this.number = number;
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Object batchLock = new Object();
+    private ByteBuffer active = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+    private long activeFirstTick = -1;
+    private long activeLastTick = -1;
+    private final CRC32C crc = new CRC32C();
+    private FileChannel current;
+    private long currentBytes;
+    private long nextSegment;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final LatencyHistogram syncLatency = new LatencyHistogram("journal fsync");
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public CommandJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.wal")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    long number = Long.parseLong(name.substring(8, name.length() - 4));
+                    segments.add(new Segment(file, number));
+                } catch (NumberFormatException e) {
+                    LogManager.log("Ignoring unexpected journal file " + file);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(a.number, b.number));
+        nextSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+    }
+
+    /**
+     * Reads every intact entry with a tick after {@code afterTick}, oldest first.
+     * Call before {@link #start()}.
+     */
+    public List<Entry> recover(long afterTick) throws IOException {
+        List<Entry> recovered = new ArrayList<>();
+        for (Segment segment : segments) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment.path));
+            if (data.remaining() < Integer.BYTES || data.getInt() != MAGIC) {
+                LogManager.log("Skipping journal segment without header: " + segment.path);
+                continue;
+            }
+            int intact = 0;
+            while (data.remaining() >= ENTRY_HEADER) {
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length <= 0 || length > data.remaining()) break;
+                ByteBuffer body = data.slice(data.position(), length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) break;
+                data.position(data.position() + length);
+                Entry entry;
+                try {
+                    entry = decode(body);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    break;
+                }
+                intact++;
+                if (segment.firstTick < 0) segment.firstTick = entry.tick;
+                segment.lastTick = entry.tick;
+                if (entry.tick > afterTick) {
+                    recovered.add(entry);
+                }
+            }
+            if (data.hasRemaining()) {
+                LogManager.log("Journal segment " + segment.path.getFileName() + " ends in a torn write after "
+                    + intact + " entries");
+            }
+        }
+        return recovered;
+    }
+
+    public void start() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Adds a command to the current batch. Never blocks on I/O.
+     */
+    public void append(long tick, int clientId, String playerName, GameMessage message) {
+        synchronized (batchLock) {
+            boolean wasEmpty = active.position() == 0;
+            int start = active.position();
+            while (true) {
+                try {
+                    if (active.capacity() - start < ENTRY_HEADER) {
+                        throw new BufferOverflowException();
+                    }
+                    active.position(start + ENTRY_HEADER);
+                    encode(active, tick, clientId, playerName, message);
+                    break;
+                } catch (BufferOverflowException e) {
+                    // The disk is behind or the command is large; grow rather than block the tick
+                    ByteBuffer larger = ByteBuffer.allocate(active.capacity() * 2);
+                    larger.put(active.position(0).limit(start));
+                    active = larger;
+                }
+            }
+            int end = active.position();
+            crc.reset();
+            crc.update(active.slice(start + ENTRY_HEADER, end - start - ENTRY_HEADER));
+            active.putInt(start, end - start - ENTRY_HEADER);
+            active.putInt(start + 4, (int) crc.getValue());
+            if (activeFirstTick < 0) activeFirstTick = tick;
+            activeLastTick = tick;
+            if (wasEmpty) {
+                batchLock.notify();
+            }
+        }
+        entries.incrementAndGet();
+    }
+
+    /**
+     * Deletes every segment whose entries are all covered by a durable
+     * checkpoint of {@code tick}. The open segment is closed first if it qualifies.
+     */
+    public synchronized void truncateThrough(long tick) {
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment.lastTick > tick) continue;
+            boolean isCurrent = current != null && segment == segments.get(segments.size() - 1);
+            try {
+                if (isCurrent) {
+                    current.close();
+                    current = null;
+                }
+                Files.deleteIfExists(segment.path);
+                it.remove();
+            } catch (IOException e) {
+                LogManager.log("Error deleting journal segment " + segment.path + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Flushes what is buffered and stops the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (flusher != null) {
+            synchronized (batchLock) {
+                batchLock.notify();
+            }
+            try {
+                flusher.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    public String summary() {
+        return syncLatency.summary() + ", entries=" + entries.get() + ", batches=" + batches.get();
+    }
+
+    public LatencyHistogram getSyncLatency() { return syncLatency; }
+
+    private void flushLoop() {
+        while (true) {
+            long firstTick;
+            long lastTick;
+            synchronized (batchLock) {
+                while (active.position() == 0 && running) {
+                    try {
+                        batchLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (active.position() == 0) {
+                    return; // Closed and drained
+                }
+                ByteBuffer full = active;
+                active = flushing;
+                flushing = full;
+                active.clear();
+                firstTick = activeFirstTick;
+                lastTick = activeLastTick;
+                activeFirstTick = -1;
+                activeLastTick = -1;
+            }
+            flushing.flip();
+            try {
+                writeBatch(flushing, firstTick, lastTick);
+            } catch (IOException e) {
+                LogManager.log("Error writing command journal: " + e.getMessage());
+                e.printStackTrace();
+            }
+            flushing.clear();
+        }
+    }
+
+    private synchronized void writeBatch(ByteBuffer batch, long firstTick, long lastTick) throws IOException {
+        if (current == null || currentBytes + batch.remaining() > SEGMENT_BYTES) {
+            openSegment(firstTick);
+        }
+        long start = System.nanoTime();
+        currentBytes += batch.remaining();
+        while (batch.hasRemaining()) {
+            current.write(batch);
+        }
+        current.force(false);
+        syncLatency.record(System.nanoTime() - start);
+        batches.incrementAndGet();
+        segments.get(segments.size() - 1).lastTick = lastTick;
+    }
+
+    private void openSegment(long firstTick) throws IOException {
+        if (current != null) {
+            current.close();
+        }
+        Segment segment = new Segment(directory.resolve(String.format("segment-%010d.wal", nextSegment)), nextSegment);
+        nextSegment++;
+        segment.firstTick = firstTick;
+        current = FileChannel.open(segment.path,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip();
+        current.write(header);
+        currentBytes = Integer.BYTES;
+        segments.add(segment);
+    }
+
+    private static void encode(ByteBuffer out, long tick, int clientId, String playerName, GameMessage message) {
+        out.putLong(tick);
+        out.putInt(clientId);
+        putString(out, playerName);
+        putString(out, message.getType().name());
+        Position pos = message.getPosition();
+        out.put((byte) (pos != null ? 1 : 0));
+        if (pos != null) {
+            out.putInt(pos.getRow()).putInt(pos.getCol());
+        }
+        putString(out, message.getMessage());
+        putString(out, message.getPlayerName());
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        long tick = in.getLong();
+        int clientId = in.getInt();
+        String playerName = getString(in);
+        GameMessage message = new GameMessage(MessageType.valueOf(getString(in)));
+        if (in.get() != 0) {
+            int row = in.getInt();
+            message.setPosition(new Position(row, in.getInt()));
+        }
+        message.setMessage(getString(in));
+        message.setPlayerName(getString(in));
+        return new Entry(tick, clientId, playerName, message);
+    }
+
+    // A length of -1 stands for null
+    private static void putString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,423 @@
+package game.persistence;
+
+import game.logging.LogManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Embedded store of player profiles, keyed by player name.
+ * <p>
+ * Profiles are kept in an append-only log file. Each record is a length, a
+ * CRC32C and the profile; the last record for a name wins. An in-memory index
+ * maps every name to the offset of its latest record and is rebuilt by
+ * scanning the log on open. When the log holds more dead records than live
+ * ones it is rewritten under a temporary name and moved over the old one.
+ * <p>
+ * Saves are write-behind: they only replace the name's entry in a dirty map,
+ * so a burst of inventory changes costs one record. A background thread
+ * appends all dirty profiles every second with a single fsync. Recently used
+ * profiles stay in an LRU cache; loads that miss it read the log on the same
+ * background thread and never block the caller.
+ */
+public class ProfileStore implements Closeable {
+    private static final int MAGIC = 0x44445032; // "DDP2"
+    private static final int RECORD_HEADER = 8;
+    private static final int CACHE_SIZE = 1024;
+    private static final long FLUSH_MILLIS = 1000;
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024;
+
+    /**
+     * What a player keeps between sessions.
+     */
+    public static final class Profile {
+        private final String name;
+        private final String characterClass;
+        private final int treasure;
+        private final int[] lifePotions;
+        private final int[] powerPotions;
+
+        /**
+         * @param lifePotions  Strengths of the life potions, in inventory order
+         * @param powerPotions Strengths of the power potions, in inventory order
+         */
+        public Profile(String name, String characterClass, int treasure, int[] lifePotions, int[] powerPotions) {
+            this.name = name;
+            this.characterClass = characterClass;
+            this.treasure = treasure;
+            this.lifePotions = lifePotions.clone();
+            this.powerPotions = powerPotions.clone();
+        }
+
+        public String getName() { return name; }
+        public String getCharacterClass() { return characterClass; }
+        public int getTreasure() { return treasure; }
+        public int[] getLifePotions() { return lifePotions.clone(); }
+        public int[] getPowerPotions() { return powerPotions.clone(); }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Profile)) return false;
+            Profile p = (Profile) o;
+            return treasure == p.treasure && Arrays.equals(lifePotions, p.lifePotions)
+                && Arrays.equals(powerPotions, p.powerPotions)
+                && name.equals(p.name) && Objects.equals(characterClass, p.characterClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, characterClass, treasure, Arrays.hashCode(lifePotions),
+                Arrays.hashCode(powerPotions));
+        }
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private long end;
+    private long liveBytes;
+    private final Map<String, Long> index = new HashMap<>();
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    private final Map<String, Profile> dirty = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Profile> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Profile> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "profile-store");
+        t.setDaemon(true);
+        return t;
+    });
+    private final CRC32C crc = new CRC32C();
+
+    public ProfileStore(Path path) throws IOException {
+        this.path = path;
+        open();
+        io.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        LogManager.log("Profile store " + path + " opened with " + index.size() + " profiles");
+    }
+
+    /**
+     * Loads a profile. Completes at once from memory when possible, otherwise
+     * on the store's thread; completes with null for an unknown name.
+     */
+    public CompletableFuture<Profile> load(String name) {
+        synchronized (this) {
+            Profile profile = dirty.get(name);
+            if (profile == null) {
+                profile = cache.get(name);
+            }
+            if (profile != null || !index.containsKey(name)) {
+                return CompletableFuture.completedFuture(profile);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(name);
+            } catch (IOException e) {
+                LogManager.log("Error loading profile of " + name + ": " + e.getMessage());
+                e.printStackTrace();
+                return null;
+            }
+        }, io);
+    }
+
+    /**
+     * Records the latest state of a profile; it is written within about a second.
+     */
+    public synchronized void save(Profile profile) {
+        if (profile.equals(cache.get(profile.getName()))) {
+            return;
+        }
+        cache.put(profile.getName(), profile);
+        dirty.put(profile.getName(), profile);
+    }
+
+    /**
+     * Writes every dirty profile now and waits until they are on disk.
+     */
+    public void flush() throws IOException {
+        try {
+            io.submit(() -> {
+                flushDirty();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        io.shutdown();
+        try {
+            io.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    public synchronized int size() {
+        int unwritten = 0;
+        for (String name : dirty.keySet()) {
+            if (!index.containsKey(name)) unwritten++;
+        }
+        return index.size() + unwritten;
+    }
+
+    public synchronized String summary() {
+        return "profiles=" + size() + ", unwritten=" + dirty.size() + ", log=" + end + "B";
+    }
+
+    private void flushQuietly() {
+        try {
+            flushDirty();
+        } catch (IOException e) {
+            LogManager.log("Error writing profiles: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Runs on the store's thread only
+    private void flushDirty() throws IOException {
+        List<Profile> batch;
+        synchronized (this) {
+            if (dirty.isEmpty()) return;
+            batch = new ArrayList<>(dirty.values());
+            dirty.clear();
+        }
+        List<ByteBuffer> records = new ArrayList<>(batch.size());
+        int total = 0;
+        for (Profile profile : batch) {
+            ByteBuffer record = encode(profile);
+            records.add(record);
+            total += record.remaining();
+        }
+        ByteBuffer out = ByteBuffer.allocate(total);
+        for (ByteBuffer record : records) out.put(record);
+        out.flip();
+        long at = end;
+        while (out.hasRemaining()) {
+            at += channel.write(out, at);
+        }
+        channel.force(false);
+
+        synchronized (this) {
+            long offset = end;
+            for (int i = 0; i < batch.size(); i++) {
+                int size = records.get(i).capacity();
+                Integer old = recordSizes.put(batch.get(i).getName(), size);
+                liveBytes += size - (old != null ? old : 0);
+                index.put(batch.get(i).getName(), offset);
+                offset += size;
+            }
+            end = offset;
+        }
+        if (end > COMPACT_MIN_BYTES && end > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    // Runs on the store's thread only
+    private Profile read(String name) throws IOException {
+        long offset;
+        int size;
+        synchronized (this) {
+            Long at = index.get(name);
+            if (at == null) return null;
+            offset = at;
+            size = recordSizes.get(name);
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        while (record.hasRemaining()) {
+            if (channel.read(record, offset + record.position()) < 0) {
+                throw new IOException("Profile log ends inside the record of " + name);
+            }
+        }
+        record.flip();
+        Profile profile = decode(record);
+        if (profile == null || !profile.getName().equals(name)) {
+            throw new IOException("Corrupt profile record for " + name);
+        }
+        synchronized (this) {
+            cache.putIfAbsent(name, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Opens the log and rebuilds the index, cutting off a torn last record.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+        while (data.hasRemaining() && channel.read(data, data.position()) >= 0) { }
+        data.flip();
+        if (data.remaining() < Integer.BYTES || data.getInt() != MAGIC) {
+            if (data.limit() > 0) {
+                LogManager.log("Profile log " + path + " has no valid header, starting a new one");
+            }
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip(), 0);
+            channel.force(false);
+            end = Integer.BYTES;
+            return;
+        }
+        while (data.remaining() >= RECORD_HEADER) {
+            int start = data.position();
+            int length = data.getInt(start);
+            if (length <= 0 || length > data.remaining() - RECORD_HEADER) break;
+            ByteBuffer record = data.slice(start, RECORD_HEADER + length);
+            Profile profile = decode(record);
+            if (profile == null) break;
+            Integer old = recordSizes.put(profile.getName(), RECORD_HEADER + length);
+            liveBytes += RECORD_HEADER + length - (old != null ? old : 0);
+            index.put(profile.getName(), (long) start);
+            data.position(start + RECORD_HEADER + length);
+        }
+        end = data.position();
+        if (end < channel.size()) {
+            LogManager.log("Profile log " + path + " ends in a torn record; truncating at " + end);
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest record of every profile.
+     */
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<String, Long> newIndex = new HashMap<>();
+        long offset = Integer.BYTES;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+            Map<String, Long> live;
+            synchronized (this) {
+                live = new HashMap<>(index);
+            }
+            for (Map.Entry<String, Long> entry : live.entrySet()) {
+                int size;
+                synchronized (this) {
+                    size = recordSizes.get(entry.getKey());
+                }
+                ByteBuffer record = ByteBuffer.allocate(size);
+                while (record.hasRemaining()) {
+                    if (channel.read(record, entry.getValue() + record.position()) < 0) break;
+                }
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+                newIndex.put(entry.getKey(), offset);
+                offset += size;
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        synchronized (this) {
+            index.clear();
+            index.putAll(newIndex);
+            end = offset;
+            liveBytes = offset - Integer.BYTES;
+        }
+        LogManager.log("Compacted profile log " + path + " to " + offset + " bytes");
+    }
+
+    private ByteBuffer encode(Profile profile) {
+        byte[] name = profile.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] characterClass = Objects.toString(profile.getCharacterClass(), "").getBytes(StandardCharsets.UTF_8);
+        int length = 2 + name.length + 2 + characterClass.length
+            + (3 + profile.lifePotions.length + profile.powerPotions.length) * Integer.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+        record.putInt(length).putInt(0);
+        record.putShort((short) name.length).put(name);
+        record.putShort((short) characterClass.length).put(characterClass);
+        record.putInt(profile.getTreasure());
+        putInts(record, profile.lifePotions);
+        putInts(record, profile.powerPotions);
+        record.putInt(4, checksum(record, length));
+        return record.flip();
+    }
+
+    /**
+     * Decodes a whole record, header included, or returns null if it does not check out.
+     */
+    private Profile decode(ByteBuffer record) {
+        int length = record.getInt(0);
+        if (record.getInt(4) != checksum(record, length)) {
+            return null;
+        }
+        ByteBuffer in = record.slice(RECORD_HEADER, length);
+        byte[] name = new byte[in.getShort() & 0xFFFF];
+        in.get(name);
+        byte[] characterClass = new byte[in.getShort() & 0xFFFF];
+        in.get(characterClass);
+        int treasure = in.getInt();
+        int[] lifePotions = getInts(in);
+        int[] powerPotions = getInts(in);
+        if (lifePotions == null || powerPotions == null) {
+            return null;
+        }
+        return new Profile(new String(name, StandardCharsets.UTF_8), new String(characterClass, StandardCharsets.UTF_8),
+            treasure, lifePotions, powerPotions);
+    }
+
+    private static void putInts(ByteBuffer out, int[] values) {
+        out.putInt(values.length);
+        for (int value : values) {
+            out.putInt(value);
+        }
+    }
+
+    /**
+     * Reads a counted list of ints, or returns null if the count does not fit the record.
+     */
+    private static int[] getInts(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / Integer.BYTES) {
+            return null;
+        }
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.getInt();
+        }
+        return values;
+    }
+
+    private int checksum(ByteBuffer record, int length) {
+        synchronized (crc) {
+            crc.reset();
+            crc.update(record.slice(RECORD_HEADER, length));
+            return (int) crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package game.persistence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the server needs to resume a world after a restart: the tick,
+ * the items and walls on the map, the enemies, and the progress of players,
+ * keyed by name because players get new ids when they reconnect. It also
+ * holds what a journal replay needs to continue exactly where the world was:
+ * the enemies' handles and AI schedules, the handle allocator, the players
+ * who were online with their effects, and the running combats. Restoring it
+ * draws nothing from the random streams.
+ * <p>
+ * The binary layout is a version byte, the tick and board size, then three
+ * counted lists of records, then the seed and a counted list of random
+ * stream positions, then the players who were online, the handle allocator
+ * state and the combats. Strings are a 2-byte length and UTF-8 bytes.
+ */
+public final class WorldCheckpoint {
+    private static final byte VERSION = 1;
+
+    public static final byte ITEM_WALL = 1;
+    public static final byte ITEM_POTION = 2;
+    public static final byte ITEM_POWER_POTION = 3;
+    public static final byte ITEM_TREASURE = 4;
+
+    private final long tick;
+    private final int boardSize;
+    private final List<PlayerRecord> players;
+    private final List<EnemyRecord> enemies;
+    private final List<ItemRecord> items;
+    private final long seed;
+    private final long[] randomState;
+    private final List<OnlineRecord> online;
+    private final int[] handles;
+    private final List<CombatRecord> combats;
+
+    /**
+     * @param enemies The enemies in the order the AI visits them
+     * @param online  The players in the world at {@code tick}, by ascending id
+     * @param handles The state of the world's handle allocator
+     */
+    public WorldCheckpoint(long tick, int boardSize,
+                           List<PlayerRecord> players, List<EnemyRecord> enemies, List<ItemRecord> items,
+                           long seed, long[] randomState, List<OnlineRecord> online,
+                           int[] handles, List<CombatRecord> combats) {
+        this.tick = tick;
+        this.boardSize = boardSize;
+        this.players = Collections.unmodifiableList(players);
+        this.enemies = Collections.unmodifiableList(enemies);
+        this.items = Collections.unmodifiableList(items);
+        this.seed = seed;
+        this.randomState = randomState.clone();
+        this.online = Collections.unmodifiableList(online);
+        this.handles = handles.clone();
+        this.combats = Collections.unmodifiableList(combats);
+    }
+
+    public long getTick() { return tick; }
+    public int getBoardSize() { return boardSize; }
+    public List<PlayerRecord> getPlayers() { return players; }
+    public List<EnemyRecord> getEnemies() { return enemies; }
+    public List<ItemRecord> getItems() { return items; }
+    public long getSeed() { return seed; }
+
+    /**
+     * Positions of the world's random streams.
+     */
+    public long[] getRandomState() { return randomState.clone(); }
+
+    /**
+     * The players who were online, by ascending id; their progress is in {@link #getPlayers()}.
+     */
+    public List<OnlineRecord> getOnline() { return online; }
+
+    /**
+     * State of the world's handle allocator, as saved by {@code EntityHandles.saveState()}.
+     */
+    public int[] getHandles() { return handles.clone(); }
+
+    public List<CombatRecord> getCombats() { return combats; }
+
+    public static final class PlayerRecord {
+        private final String name;
+        private final String characterClass;
+        private final int row;
+        private final int col;
+        private final int health;
+        private final int power;
+        private final double trait;
+        private final int treasure;
+        private final int[] lifePotions;
+        private final int[] powerPotions;
+
+        /**
+         * @param trait        The stat the character's class rolled: a warrior's defence,
+         *                     an archer's accuracy or the ordinal of a mage's element
+         * @param lifePotions  Strengths of the life potions, in inventory order
+         * @param powerPotions Strengths of the power potions, in inventory order
+         */
+        public PlayerRecord(String name, String characterClass, int row, int col, int health, int power,
+                            double trait, int treasure, int[] lifePotions, int[] powerPotions) {
+            this.name = name;
+            this.characterClass = characterClass;
+            this.row = row;
+            this.col = col;
+            this.health = health;
+            this.power = power;
+            this.trait = trait;
+            this.treasure = treasure;
+            this.lifePotions = lifePotions.clone();
+            this.powerPotions = powerPotions.clone();
+        }
+
+        public String getName() { return name; }
+        public String getCharacterClass() { return characterClass; }
+        public int getRow() { return row; }
+        public int getCol() { return col; }
+        public int getHealth() { return health; }
+        public int getPower() { return power; }
+        public double getTrait() { return trait; }
+        public int getTreasure() { return treasure; }
+        public int[] getLifePotions() { return lifePotions.clone(); }
+        public int[] getPowerPotions() { return powerPotions.clone(); }
+
+        /**
+         * Writes this record in the checkpoint layout; also used to hand players between nodes.
+         */
+        public void writeTo(ByteBuffer out) {
+            putString(out, name);
+            putString(out, characterClass);
+            out.putInt(row).putInt(col).putInt(health).putInt(power);
+            out.putDouble(trait).putInt(treasure);
+            putInts(out, lifePotions);
+            putInts(out, powerPotions);
+        }
+
+        public static PlayerRecord readFrom(ByteBuffer in) {
+            String name = getString(in);
+            String characterClass = getString(in);
+            int row = in.getInt();
+            int col = in.getInt();
+            int health = in.getInt();
+            int power = in.getInt();
+            double trait = in.getDouble();
+            int treasure = in.getInt();
+            return new PlayerRecord(name, characterClass, row, col, health, power, trait, treasure,
+                getInts(in), getInts(in));
+        }
+    }
+
+    public static final class EnemyRecord {
+        private final String type;
+        private final int row;
+        private final int col;
+        private final int health;
+        private final int power;
+        private final int loot;
+        private final double trait;
+        private final int handle;
+        private final byte aiState;
+        private final int interval;
+        private final long nextActionTick;
+
+        /**
+         * @param trait          The stat the enemy's type rolled: a goblin's agility, an
+         *                       orc's resistance or the ordinal of a dragon's element
+         * @param aiState        One of the {@code EnemyStore.AI_*} states
+         * @param interval       Ticks between two AI decisions
+         * @param nextActionTick When the enemy decides next
+         */
+        public EnemyRecord(String type, int row, int col, int health, int power, int loot, double trait,
+                           int handle, byte aiState, int interval, long nextActionTick) {
+            this.type = type;
+            this.row = row;
+            this.col = col;
+            this.health = health;
+            this.power = power;
+            this.loot = loot;
+            this.trait = trait;
+            this.handle = handle;
+            this.aiState = aiState;
+            this.interval = interval;
+            this.nextActionTick = nextActionTick;
+        }
+
+        public String getType() { return type; }
+        public int getRow() { return row; }
+        public int getCol() { return col; }
+        public int getHealth() { return health; }
+        public int getPower() { return power; }
+        public int getLoot() { return loot; }
+        public double getTrait() { return trait; }
+        public int getHandle() { return handle; }
+        public byte getAiState() { return aiState; }
+        public int getInterval() { return interval; }
+        public long getNextActionTick() { return nextActionTick; }
+
+        /**
+         * Writes this record in the checkpoint layout; also used to hand enemies between nodes.
+         */
+        public void writeTo(ByteBuffer out) {
+            putString(out, type);
+            out.putInt(row).putInt(col).putInt(health).putInt(power).putInt(loot).putDouble(trait);
+            out.putInt(handle).put(aiState).putInt(interval).putLong(nextActionTick);
+        }
+
+        public static EnemyRecord readFrom(ByteBuffer in) {
+            String type = getString(in);
+            return new EnemyRecord(type, in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(),
+                in.getDouble(), in.getInt(), in.get(), in.getInt(), in.getLong());
+        }
+    }
+
+    /**
+     * A player who was online, with the id their client had, so that a journal
+     * replay can bring them back under it, and the effects they carried.
+     */
+    public static final class OnlineRecord {
+        private final String name;
+        private final int playerId;
+        private final List<EffectRecord> effects;
+
+        public OnlineRecord(String name, int playerId, List<EffectRecord> effects) {
+            this.name = name;
+            this.playerId = playerId;
+            this.effects = Collections.unmodifiableList(effects);
+        }
+
+        public String getName() { return name; }
+        public int getPlayerId() { return playerId; }
+        public List<EffectRecord> getEffects() { return effects; }
+    }
+
+    /**
+     * A status effect, with its type and stacking rule by name.
+     */
+    public static final class EffectRecord {
+        private final String type;
+        private final int magnitude;
+        private final int charges;
+        private final long startTick;
+        private final long expiryTick;
+        private final String stacking;
+
+        public EffectRecord(String type, int magnitude, int charges, long startTick, long expiryTick,
+                            String stacking) {
+            this.type = type;
+            this.magnitude = magnitude;
+            this.charges = charges;
+            this.startTick = startTick;
+            this.expiryTick = expiryTick;
+            this.stacking = stacking;
+        }
+
+        public String getType() { return type; }
+        public int getMagnitude() { return magnitude; }
+        public int getCharges() { return charges; }
+        public long getStartTick() { return startTick; }
+        public long getExpiryTick() { return expiryTick; }
+        public String getStacking() { return stacking; }
+    }
+
+    /**
+     * A combat between an online player and an enemy.
+     */
+    public static final class CombatRecord {
+        private final int playerId;
+        private final int enemyHandle;
+        private final boolean playerTurn;
+        private final long nextTurnTick;
+
+        public CombatRecord(int playerId, int enemyHandle, boolean playerTurn, long nextTurnTick) {
+            this.playerId = playerId;
+            this.enemyHandle = enemyHandle;
+            this.playerTurn = playerTurn;
+            this.nextTurnTick = nextTurnTick;
+        }
+
+        public int getPlayerId() { return playerId; }
+        public int getEnemyHandle() { return enemyHandle; }
+        public boolean isPlayerTurn() { return playerTurn; }
+        public long getNextTurnTick() { return nextTurnTick; }
+    }
+
+    public static final class ItemRecord {
+        private final byte kind;
+        private final int id;
+        private final int row;
+        private final int col;
+        private final int value;
+
+        public ItemRecord(byte kind, int id, int row, int col, int value) {
+            this.kind = kind;
+            this.id = id;
+            this.row = row;
+            this.col = col;
+            this.value = value;
+        }
+
+        public byte getKind() { return kind; }
+        public int getId() { return id; }
+        public int getRow() { return row; }
+        public int getCol() { return col; }
+
+        /**
+         * Treasure points for treasure, the strength of a potion, zero for a wall.
+         */
+        public int getValue() { return value; }
+    }
+
+    /**
+     * Writes the checkpoint at the buffer's position.
+     *
+     * @throws java.nio.BufferOverflowException if it does not fit
+     */
+    public void writeTo(ByteBuffer out) {
+        out.put(VERSION);
+        out.putLong(tick);
+        out.putInt(boardSize);
+        out.putInt(players.size());
+        for (PlayerRecord p : players) {
+            p.writeTo(out);
+        }
+        out.putInt(enemies.size());
+        for (EnemyRecord e : enemies) {
+            e.writeTo(out);
+        }
+        out.putInt(items.size());
+        for (ItemRecord i : items) {
+            out.put(i.kind).putInt(i.id).putInt(i.row).putInt(i.col).putInt(i.value);
+        }
+        out.putLong(seed);
+        out.putInt(randomState.length);
+        for (long state : randomState) {
+            out.putLong(state);
+        }
+        out.putInt(online.size());
+        for (OnlineRecord o : online) {
+            putString(out, o.name);
+            out.putInt(o.playerId);
+            out.putInt(o.effects.size());
+            for (EffectRecord e : o.effects) {
+                putString(out, e.type);
+                out.putInt(e.magnitude).putInt(e.charges).putLong(e.startTick).putLong(e.expiryTick);
+                putString(out, e.stacking);
+            }
+        }
+        putInts(out, handles);
+        out.putInt(combats.size());
+        for (CombatRecord c : combats) {
+            out.putInt(c.playerId).putInt(c.enemyHandle).put((byte) (c.playerTurn ? 1 : 0)).putLong(c.nextTurnTick);
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @throws IllegalArgumentException if the data is not a readable checkpoint
+     */
+    public static WorldCheckpoint readFrom(ByteBuffer in) {
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+            }
+            long tick = in.getLong();
+            int boardSize = in.getInt();
+
+            int playerCount = count(in);
+            List<PlayerRecord> players = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                players.add(PlayerRecord.readFrom(in));
+            }
+
+            int enemyCount = count(in);
+            List<EnemyRecord> enemies = new ArrayList<>(enemyCount);
+            for (int i = 0; i < enemyCount; i++) {
+                enemies.add(EnemyRecord.readFrom(in));
+            }
+
+            int itemCount = count(in);
+            List<ItemRecord> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(new ItemRecord(in.get(), in.getInt(), in.getInt(), in.getInt(), in.getInt()));
+            }
+
+            long seed = in.getLong();
+            long[] randomState = new long[count(in)];
+            for (int i = 0; i < randomState.length; i++) {
+                randomState[i] = in.getLong();
+            }
+            int onlineCount = count(in);
+            List<OnlineRecord> online = new ArrayList<>(onlineCount);
+            for (int i = 0; i < onlineCount; i++) {
+                String name = getString(in);
+                int playerId = in.getInt();
+                int effectCount = count(in);
+                List<EffectRecord> effects = new ArrayList<>(effectCount);
+                for (int j = 0; j < effectCount; j++) {
+                    String type = getString(in);
+                    int magnitude = in.getInt();
+                    int charges = in.getInt();
+                    long startTick = in.getLong();
+                    long expiryTick = in.getLong();
+                    effects.add(new EffectRecord(type, magnitude, charges, startTick, expiryTick, getString(in)));
+                }
+                online.add(new OnlineRecord(name, playerId, effects));
+            }
+            int[] handles = getInts(in);
+            int combatCount = count(in);
+            List<CombatRecord> combats = new ArrayList<>(combatCount);
+            for (int i = 0; i < combatCount; i++) {
+                combats.add(new CombatRecord(in.getInt(), in.getInt(), in.get() != 0, in.getLong()));
+            }
+            return new WorldCheckpoint(tick, boardSize, players, enemies, items, seed, randomState, online,
+                handles, combats);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated checkpoint", e);
+        }
+    }
+
+    private static int count(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining()) {
+            throw new IllegalArgumentException("Invalid record count " + n);
+        }
+        return n;
+    }
+
+    private static void putInts(ByteBuffer out, int[] values) {
+        out.putInt(values.length);
+        for (int value : values) {
+            out.putInt(value);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer in) {
+        int[] values = new int[count(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getInt();
+        }
+        return values;
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for a checkpoint: " + bytes.length + " bytes");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package game.replay;
+
+import game.network.GameMessage;
+import game.network.MessageCodec;
+import game.network.MessageType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Plays back a recorded session without a server.
+ * <p>
+ * Headless, it decodes every frame as fast as it can, or at {@code --speed}
+ * times real time, and prints a summary; {@code --print} also prints one
+ * line per tick. With {@code --serve} it waits for a game client to connect
+ * on the given port and streams the session to it, so the recorded world can
+ * be watched in the normal client window. The client's own commands are
+ * ignored.
+ * <p>
+ * Run with: {@code java -cp out game.replay.ReplayPlayer <file.replay> [--speed N] [--print] [--serve port]}
+ */
+public class ReplayPlayer {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayPlayer <file.replay> [--speed N] [--print] [--serve port]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        double speed = 0;
+        boolean print = false;
+        int servePort = -1;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--speed" -> speed = Double.parseDouble(args[++i]);
+                case "--print" -> print = true;
+                case "--serve" -> servePort = Integer.parseInt(args[++i]);
+                default -> System.err.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        if (servePort > 0) {
+            serve(file, servePort, speed > 0 ? speed : 1);
+        } else {
+            play(file, speed, print);
+        }
+    }
+
+    /**
+     * Decodes the whole replay, paced at {@code speed} times real time or unpaced if it is 0.
+     */
+    private static void play(Path file, double speed, boolean print) throws IOException, InterruptedException {
+        try (ReplayReader reader = new ReplayReader(file)) {
+            long start = System.nanoTime();
+            long firstTick = -1;
+            long lastTick = -1;
+            long frames = 0;
+            long bytes = 0;
+            int maxPlayers = 0;
+            int maxEnemies = 0;
+            ReplayReader.Frame frame;
+            while ((frame = reader.next()) != null) {
+                if (firstTick < 0) {
+                    firstTick = frame.getTick();
+                }
+                pace(reader, speed, start, frame.getTick() - firstTick);
+                GameMessage state = frame.decode();
+                frames++;
+                bytes += frame.getBytes().length;
+                lastTick = frame.getTick();
+                maxPlayers = Math.max(maxPlayers, state.getPlayerStates().size());
+                maxEnemies = Math.max(maxEnemies, state.getEnemyStates().size());
+                if (print) {
+                    System.out.printf("tick %d: players=%d enemies=%d items=%d%n", frame.getTick(),
+                        state.getPlayerStates().size(), state.getEnemyStates().size(), state.getItemStates().size());
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double recorded = frames > 0 ? (lastTick - firstTick + 1) * reader.getTickMillis() / 1000.0 : 0;
+            System.out.printf("%s: seed %d, %dx%d board, ticks %d-%d%n",
+                file, reader.getSeed(), reader.getBoardSize(), reader.getBoardSize(), firstTick, lastTick);
+            System.out.printf("%d frames (%d KiB decoded), up to %d players and %d enemies%n",
+                frames, bytes / 1024, maxPlayers, maxEnemies);
+            System.out.printf("%.1f s of play in %.3f s (%.0fx real time)%n",
+                recorded, seconds, seconds > 0 ? recorded / seconds : 0);
+        }
+    }
+
+    /**
+     * Streams the replay to one client, which sees it as if it were connected to a server.
+     */
+    private static void serve(Path file, int port, double speed) throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Waiting for a client on port " + port);
+            try (Socket socket = server.accept();
+                 ReplayReader reader = new ReplayReader(file)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                Thread drain = new Thread(() -> discardInput(socket), "replay-client-input");
+                drain.setDaemon(true);
+                drain.start();
+
+                GameMessage welcome = new GameMessage(MessageType.WELCOME);
+                welcome.setPlayerId(-1);
+                MessageCodec.write(out, welcome);
+
+                long start = System.nanoTime();
+                long firstTick = -1;
+                long frames = 0;
+                ReplayReader.Frame frame;
+                while ((frame = reader.next()) != null) {
+                    if (firstTick < 0) {
+                        firstTick = frame.getTick();
+                    }
+                    pace(reader, speed, start, frame.getTick() - firstTick);
+                    out.write(frame.getBytes());
+                    out.flush();
+                    frames++;
+                }
+                MessageCodec.write(out, new GameMessage(MessageType.SERVER_SHUTDOWN));
+                System.out.println("Sent " + frames + " frames");
+            }
+        }
+    }
+
+    private static void pace(ReplayReader reader, double speed, long start, long ticksIn)
+            throws InterruptedException {
+        if (speed <= 0) {
+            return;
+        }
+        long due = start + (long) (ticksIn * reader.getTickMillis() * 1_000_000L / speed);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+
+    private static void discardInput(Socket socket) {
+        byte[] buffer = new byte[4096];
+        try {
+            InputStream in = socket.getInputStream();
+            while (in.read(buffer) >= 0) {
+                // The replay does not take commands
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+}
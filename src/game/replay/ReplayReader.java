@@ -0,0 +1,155 @@
+package game.replay;
+
+import game.network.GameMessage;
+import game.network.StateFrameCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a replay written by {@link ReplayRecorder}, one frame at a time.
+ * A chunk that is cut short or fails its checksum, e.g. the last one of a
+ * server that crashed, ends the replay.
+ */
+public class ReplayReader implements Closeable {
+
+    /**
+     * One recorded tick: the tick number and the state frame, length prefix
+     * included, as it would be sent to a client.
+     */
+    public static final class Frame {
+        private final long tick;
+        private final byte[] bytes;
+
+        Frame(long tick, byte[] bytes) {
+            this.tick = tick;
+            this.bytes = bytes;
+        }
+
+        public long getTick() { return tick; }
+        public byte[] getBytes() { return bytes; }
+
+        /**
+         * Decodes the frame into the state message a client would get.
+         */
+        public GameMessage decode() throws IOException {
+            return StateFrameCodec.decode(Arrays.copyOfRange(bytes, 4, bytes.length));
+        }
+    }
+
+    private final FileChannel channel;
+    private final int boardSize;
+    private final int tickMillis;
+    private final long seed;
+    private final Inflater inflater = new Inflater();
+    private final CRC32C crc = new CRC32C();
+    private long position = ReplayRecorder.HEADER_BYTES;
+    private ByteBuffer chunk = ByteBuffer.allocate(0);
+    private int framesLeft;
+    private boolean ended;
+
+    public ReplayReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = read(0, ReplayRecorder.HEADER_BYTES);
+        if (header == null || header.getInt() != ReplayRecorder.MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a replay");
+        }
+        int version = header.getInt();
+        if (version != ReplayRecorder.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported replay version " + version);
+        }
+        this.boardSize = header.getInt();
+        this.tickMillis = header.getInt();
+        this.seed = header.getLong();
+    }
+
+    public int getBoardSize() { return boardSize; }
+    public int getTickMillis() { return tickMillis; }
+    public long getSeed() { return seed; }
+
+    /**
+     * Returns the next frame, or null at the end of the replay.
+     */
+    public Frame next() throws IOException {
+        while (framesLeft == 0) {
+            if (ended || !readChunk()) {
+                ended = true;
+                return null;
+            }
+        }
+        framesLeft--;
+        long tick = chunk.getLong();
+        int length = chunk.getInt(chunk.position());
+        byte[] frame = new byte[4 + length];
+        chunk.get(frame);
+        return new Frame(tick, frame);
+    }
+
+    private boolean readChunk() throws IOException {
+        ByteBuffer header = read(position, ReplayRecorder.CHUNK_HEADER_BYTES);
+        if (header == null) {
+            return false;
+        }
+        header.getLong(); // first tick, for readers that seek
+        int frames = header.getInt();
+        int rawLength = header.getInt();
+        int packedLength = header.getInt();
+        int checksum = header.getInt();
+        if (frames <= 0 || rawLength <= 0 || packedLength <= 0) {
+            return false;
+        }
+        ByteBuffer packed = read(position + ReplayRecorder.CHUNK_HEADER_BYTES, packedLength);
+        if (packed == null) {
+            return false;
+        }
+        crc.reset();
+        crc.update(packed.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(packed);
+        try {
+            if (inflater.inflate(raw) != rawLength) {
+                return false;
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+        chunk = ByteBuffer.wrap(raw);
+        framesLeft = frames;
+        position += ReplayRecorder.CHUNK_HEADER_BYTES + packedLength;
+        return true;
+    }
+
+    /**
+     * Reads {@code length} bytes at {@code offset}, or returns null if the file ends first.
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
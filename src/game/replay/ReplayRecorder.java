@@ -0,0 +1,242 @@
+package game.replay;
+
+import game.engine.WorldSnapshot;
+import game.logging.LogManager;
+import game.network.StateFrameCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * Records a session as the sequence of world snapshots the server broadcast.
+ * <p>
+ * The encode stage hands each snapshot to {@link #record(WorldSnapshot)},
+ * which only queues it; the recorder's own thread encodes it as a state frame
+ * that sees every entity and appends it to the current chunk. Every
+ * {@link #FRAMES_PER_CHUNK} frames the chunk is deflated and written out.
+ * Consecutive frames differ in a few entities, so the compressor stores them
+ * as little more than their differences, and every chunk still starts with a
+ * whole frame, so a reader can start at any chunk.
+ * <p>
+ * File layout: a header (magic, version, board size, tick length, seed), then
+ * chunks of [first tick][frame count][raw length][packed length][CRC32C of
+ * the packed bytes][packed bytes]. Unpacked, a chunk is a sequence of
+ * [tick][state frame, length prefix included]. See {@link ReplayReader}.
+ * <p>
+ * A directory keeps a bounded number of sessions, the oldest being deleted
+ * when a new one starts, and a session stops recording at a size limit.
+ */
+public class ReplayRecorder implements Closeable {
+    static final int MAGIC = 0x44445250; // "DDRP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int CHUNK_HEADER_BYTES = 24;
+    static final int FRAMES_PER_CHUNK = 64;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final Path path;
+    private final long maxBytes;
+    private final FileChannel channel;
+    private final BlockingQueue<WorldSnapshot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean full;
+
+    // Only touched by the writer thread
+    private final StateFrameCodec codec = new StateFrameCodec();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer raw = ByteBuffer.allocate(64 * 1024);
+    private byte[] packed = new byte[16 * 1024];
+    private long chunkFirstTick;
+    private int chunkFrames;
+    private long lastTick = -1;
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Starts recording into a new file in {@code directory}, first deleting the
+     * oldest sessions there so that at most {@code keepSessions} remain with the new one.
+     *
+     * @param maxBytes Size at which the session stops recording
+     */
+    public ReplayRecorder(Path directory, int boardSize, int tickMillis, long seed,
+                          int keepSessions, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        pruneSessions(directory, keepSessions - 1);
+        this.maxBytes = maxBytes;
+        this.path = directory.resolve("session-" + System.currentTimeMillis() + ".replay");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(boardSize).putInt(tickMillis).putLong(seed).flip();
+        writeFully(header);
+        writtenBytes.set(HEADER_BYTES);
+
+        writer = new Thread(this::writeLoop, "replay-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LogManager.log("Recording replay to " + path);
+    }
+
+    public Path getPath() { return path; }
+
+    /**
+     * Deletes the oldest session files in a directory until at most {@code keep} are left.
+     */
+    static void pruneSessions(Path directory, int keep) throws IOException {
+        List<Path> sessions = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "session-*.replay")) {
+            for (Path file : files) {
+                sessions.add(file);
+            }
+        }
+        // Names carry the start time with a fixed number of digits, so they sort by age
+        Collections.sort(sessions);
+        for (int i = 0; i < sessions.size() - Math.max(0, keep); i++) {
+            Files.deleteIfExists(sessions.get(i));
+            LogManager.log("Deleted old replay " + sessions.get(i));
+        }
+    }
+
+    /**
+     * Queues a broadcast snapshot. Never blocks; if the writer is behind, the
+     * snapshot is skipped and the replay has a gap of one tick.
+     */
+    public void record(WorldSnapshot snapshot) {
+        if (full) return;
+        if (!queue.offer(snapshot)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                WorldSnapshot snapshot = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (snapshot != null) {
+                    append(snapshot);
+                }
+            }
+            writeChunk();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LogManager.log("Replay recording stopped: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void append(WorldSnapshot snapshot) throws IOException {
+        if (snapshot.getTick() <= lastTick) {
+            return;
+        }
+        lastTick = snapshot.getTick();
+        byte[] frame = snapshot.encodeFor(WorldSnapshot.OMNISCIENT, codec);
+        if (raw.remaining() < Long.BYTES + frame.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(raw.capacity() * 2, raw.position() + Long.BYTES + frame.length));
+            raw.flip();
+            larger.put(raw);
+            raw = larger;
+        }
+        if (chunkFrames == 0) {
+            chunkFirstTick = snapshot.getTick();
+        }
+        raw.putLong(snapshot.getTick()).put(frame);
+        chunkFrames++;
+        frames.incrementAndGet();
+        if (chunkFrames == FRAMES_PER_CHUNK) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (chunkFrames == 0) {
+            return;
+        }
+        int rawLength = raw.position();
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, rawLength);
+        deflater.finish();
+        int packedLength = 0;
+        while (!deflater.finished()) {
+            if (packedLength == packed.length) {
+                packed = Arrays.copyOf(packed, packed.length * 2);
+            }
+            packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+        }
+        crc.reset();
+        crc.update(packed, 0, packedLength);
+
+        if (writtenBytes.get() + CHUNK_HEADER_BYTES + packedLength > maxBytes) {
+            // The file stays a valid replay of everything up to the last whole chunk
+            if (!full) {
+                full = true;
+                queue.clear();
+                LogManager.log("Replay " + path + " reached " + maxBytes / (1024 * 1024) + " MiB, recording stopped");
+            }
+            raw.clear();
+            chunkFrames = 0;
+            return;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_BYTES + packedLength);
+        chunk.putLong(chunkFirstTick).putInt(chunkFrames).putInt(rawLength).putInt(packedLength)
+            .putInt((int) crc.getValue()).put(packed, 0, packedLength).flip();
+        writeFully(chunk);
+
+        chunks.incrementAndGet();
+        rawBytes.addAndGet(rawLength);
+        writtenBytes.addAndGet(chunk.limit());
+        raw.clear();
+        chunkFrames = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes what is queued and the last partial chunk, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deflater.end();
+        channel.close();
+        LogManager.log("Replay " + path + " closed: " + summary());
+    }
+
+    public String summary() {
+        long raw = rawBytes.get();
+        long written = writtenBytes.get();
+        return String.format("replay frames=%d, chunks=%d, %d KiB written (%.1fx compression), dropped=%d%s",
+            frames.get(), chunks.get(), written / 1024, written > 0 ? (double) raw / written : 0.0, dropped.get(),
+            full ? ", stopped at size limit" : "");
+    }
+}
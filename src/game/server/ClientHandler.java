@@ -1,15 +1,19 @@
 package game.server;
 
 import game.network.*;
-import game.map.Position;
 import game.logging.LogManager;
 
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles communication with a single client.
- * Each client connection runs in its own thread.
+ * Each client connection runs in its own thread, and a second thread
+ * writes queued frames to the socket, so senders never block on a slow client.
  * 
  * @author Artiom Bondar:332692730
  * @author Shahar Dahan:207336355
@@ -18,10 +22,25 @@ public class ClientHandler implements Runnable {
     private final int clientId;
     private final Socket socket;
     private final GameServer server;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private boolean connected = true;
+    // Frames waiting for the writer; a client that lets this fill up is dropped
+    private static final int OUTBOUND_CAPACITY = 256;
+    
+    private static final class Frame {
+        final byte[] bytes;
+        final long queuedAt;
+        
+        Frame(byte[] bytes, long queuedAt) {
+            this.bytes = bytes;
+            this.queuedAt = queuedAt;
+        }
+    }
+    
+    private DataOutputStream out;
+    private DataInputStream in;
+    private volatile boolean connected = true;
+    private final AtomicBoolean closed = new AtomicBoolean();
     private String playerName;
+    private final BlockingQueue<Frame> outbound = new ArrayBlockingQueue<>(OUTBOUND_CAPACITY);
     
     /**
      * Creates a new client handler.
@@ -36,28 +55,37 @@ public class ClientHandler implements Runnable {
         this.server = server;
     }
     
+    /**
+     * Creates a handler for a client that is not connected by its own socket,
+     * e.g. one behind a gateway; the subclass carries its frames.
+     */
+    protected ClientHandler(int clientId, GameServer server) {
+        this(clientId, null, server);
+    }
+    
     @Override
     public void run() {
         try {
             // Set up streams
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            
+            Thread writer = new Thread(this::writeLoop, "client-" + clientId + "-send");
+            writer.setDaemon(true);
+            writer.start();
             
-            // Send welcome message with client ID
-            GameMessage welcome = new GameMessage(MessageType.WELCOME);
-            welcome.setPlayerId(clientId);
-            sendMessage(welcome);
+            sendWelcome();
             
             // Main message loop
             while (connected) {
                 try {
-                    GameMessage message = (GameMessage) in.readObject();
+                    byte[] frame = MessageCodec.readFrame(in);
+                    GameMessage message = MessageCodec.decode(frame);
+                    MessageMetrics.received(message.getType(), frame.length);
                     handleMessage(message);
                 } catch (EOFException | SocketException e) {
                     // Client disconnected
                     break;
-                } catch (ClassNotFoundException e) {
-                    LogManager.log("Invalid message from client " + clientId + ": " + e.getMessage());
                 }
             }
             
@@ -68,31 +96,32 @@ public class ClientHandler implements Runnable {
         }
     }
     
+    /**
+     * Sends the welcome message with the client's ID.
+     */
+    void sendWelcome() {
+        GameMessage welcome = new GameMessage(MessageType.WELCOME);
+        welcome.setPlayerId(clientId);
+        sendMessage(welcome);
+    }
+    
     /**
      * Handles incoming messages from the client.
      */
-    private void handleMessage(GameMessage message) {
+    void handleMessage(GameMessage message) {
         try {
             switch (message.getType()) {
                 case JOIN_GAME:
                     playerName = message.getPlayerName();
-                    String playerType = message.getMessage(); // Contains player class type
-                    server.handlePlayerJoin(clientId, playerName, playerType);
+                    server.submitJoin(clientId, message);
                     break;
                     
                 case MOVE_REQUEST:
-                    Position newPos = message.getPosition();
-                    server.handlePlayerMove(clientId, newPos);
-                    break;
-                    
                 case USE_POTION:
-                    String potionType = message.getMessage();
-                    server.handleUsePotion(clientId, potionType);
-                    break;
-                    
                 case ACTIVATE_ABILITY:
-                    String abilityType = message.getMessage();
-                    server.handleActivateAbility(clientId, abilityType);
+                case ATTACK_REQUEST:
+                    // Game commands are applied by the tick thread
+                    server.submitCommand(clientId, message);
                     break;
                     
                 case CHAT_MESSAGE:
@@ -104,11 +133,6 @@ public class ClientHandler implements Runnable {
                     connected = false;
                     break;
                     
-                case ATTACK_REQUEST:
-                    Position targetPos = message.getPosition();
-                    server.handlePlayerAttackRequest(clientId, targetPos);
-                    break;
-                    
                 default:
                     LogManager.log("Unknown message type from client " + clientId + ": " + message.getType());
             }
@@ -119,17 +143,51 @@ public class ClientHandler implements Runnable {
     }
     
     /**
-     * Sends a message to this client.
+     * Encodes a message and queues it for this client.
+     */
+    public void sendMessage(GameMessage message) {
+        if (!connected) return;
+        try {
+            byte[] frame = MessageCodec.encode(message);
+            MessageMetrics.sent(message.getType(), frame.length);
+            sendFrame(frame);
+        } catch (IOException e) {
+            LogManager.log("Failed to encode message for client " + clientId + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Queues an already encoded frame, e.g. one shared by a broadcast.
      */
-    public synchronized void sendMessage(GameMessage message) {
-        if (connected && out != null) {
-            try {
-                out.writeObject(message);
+    public void sendFrame(byte[] frame) {
+        if (!connected) return;
+        if (!outbound.offer(new Frame(frame, System.nanoTime()))) {
+            LogManager.log("Client " + clientId + " is not keeping up, disconnecting");
+            disconnect();
+        }
+    }
+    
+    /**
+     * Writes queued frames, flushing once per batch.
+     */
+    private void writeLoop() {
+        try {
+            while (connected) {
+                Frame frame = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) continue;
+                do {
+                    out.write(frame.bytes);
+                    server.getPipeline().getSendLatency().record(System.nanoTime() - frame.queuedAt);
+                } while ((frame = outbound.poll()) != null);
                 out.flush();
-            } catch (IOException e) {
+            }
+        } catch (IOException e) {
+            if (connected) {
                 LogManager.log("Failed to send message to client " + clientId + ": " + e.getMessage());
                 disconnect();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
     
@@ -137,25 +195,38 @@ public class ClientHandler implements Runnable {
      * Disconnects this client.
      */
     public void disconnect() {
-        if (connected) {
+        if (!closed.getAndSet(true)) {
             connected = false;
             
             // Notify server
             server.handleClientDisconnect(clientId);
             
-            // Close streams and socket
-            try {
-                if (in != null) in.close();
-                if (out != null) out.close();
-                if (socket != null && !socket.isClosed()) socket.close();
-            } catch (IOException e) {
-                // Ignore errors during cleanup
-            }
+            closeConnection();
             
             LogManager.log("Client " + clientId + " (" + playerName + ") disconnected");
         }
     }
     
+    /**
+     * Closes the streams and socket once the client is disconnected.
+     */
+    protected void closeConnection() {
+        try {
+            if (in != null) in.close();
+            if (out != null) out.close();
+            if (socket != null && !socket.isClosed()) socket.close();
+        } catch (IOException e) {
+            // Ignore errors during cleanup
+        }
+    }
+    
+    /**
+     * Number of frames waiting to be written to this client.
+     */
+    public int getQueuedFrames() {
+        return outbound.size();
+    }
+    
     public int getClientId() {
         return clientId;
     }
@@ -1,14 +1,31 @@
 package game.server;
 
 import game.characters.*;
-import game.decorators.PlayerDecorator;
+import game.cluster.Ghost;
+import game.cluster.NodeTransport;
+import game.cluster.ZoneLayout;
+import game.cluster.ZoneNode;
+import game.collections.ConcurrentIntObjectMap;
+import game.engine.WorldSnapshot;
+import game.gateway.MuxLink;
 import game.items.*;
 import game.map.*;
 import game.network.*;
 import game.logging.LogManager;
+import game.metrics.LatencyHistogram;
+import game.metrics.MetricsRegistry;
+import game.persistence.Checkpointer;
+import game.persistence.CommandJournal;
+import game.persistence.ProfileStore;
+import game.persistence.WorldCheckpoint;
+import game.replay.ReplayRecorder;
+import game.spectator.SpectatorRelay;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -24,14 +41,77 @@ public class GameServer {
     private static final int MAX_PLAYERS = 10;
     
     private ServerSocket serverSocket;
-    private final Map<Integer, ClientHandler> clients = new ConcurrentHashMap<>();
+    private final ConcurrentIntObjectMap<ClientHandler> clients = new ConcurrentIntObjectMap<>();
     private final ServerGameWorld gameWorld;
     private final ChatManager chatManager;
     private boolean running = true;
-    private int nextClientId = 1;
     
     private final ExecutorService clientExecutor = Executors.newCachedThreadPool();
-    private final ScheduledExecutorService gameUpdateExecutor = Executors.newScheduledThreadPool(2);
+    private final TickPipeline pipeline;
+    
+    // The server keeps state across restarts only in this directory, e.g.
+    // -Dgame.dataDir=data; by default it starts a new world every time
+    private static final String DATA_DIR = System.getProperty("game.dataDir", "");
+    
+    // World checkpoints, written every few seconds and restored on start; on with
+    // game.dataDir, or -Dgame.checkpoint=<file> on its own, -Dgame.checkpoint= (empty) disables them
+    private static final String CHECKPOINT_FILE = System.getProperty("game.checkpoint", inDataDir("world.checkpoint"));
+    private static final int CHECKPOINT_TICKS = Integer.getInteger("game.checkpointTicks", 50);
+    // Starts a new world and drops the journal even if a checkpoint exists; -Dgame.freshStart=true
+    private static final boolean FRESH_START = Boolean.getBoolean("game.freshStart");
+    private Checkpointer checkpointer;
+    
+    // Journal of commands applied since the last checkpoint, replayed on start;
+    // needs checkpoints, defaults to <dataDir>/journal, -Dgame.journal= (empty) disables it
+    private static final String JOURNAL_DIR = System.getProperty("game.journal", inDataDir("journal"));
+    private CommandJournal journal;
+    
+    // Player profiles (treasure, potions) kept by name across sessions; on with
+    // game.dataDir as <dataDir>/profiles.log, or -Dgame.profiles=<file> on its own
+    private static final String PROFILE_FILE = System.getProperty("game.profiles", inDataDir("profiles.log"));
+    private ProfileStore profiles;
+    // Profiles loaded for joins that are still queued for the tick
+    private final ConcurrentIntObjectMap<ProfileStore.Profile> pendingProfiles = new ConcurrentIntObjectMap<>();
+    
+    // Sessions are recorded for playback with game.replay.ReplayPlayer into this
+    // directory, e.g. -Dgame.replays=replays; only the newest game.maxReplays
+    // sessions are kept, and each stops recording at game.maxReplayMegabytes
+    private static final String REPLAY_DIR = System.getProperty("game.replays", "");
+    private static final int MAX_REPLAYS = Integer.getInteger("game.maxReplays", 10);
+    private static final int MAX_REPLAY_MEGABYTES = Integer.getInteger("game.maxReplayMegabytes", 256);
+    private ReplayRecorder recorder;
+    
+    // Spectators watch through a relay on this port and are not players;
+    // -Dgame.spectatorPort=<port> enables it
+    private static final int SPECTATOR_PORT = Integer.getInteger("game.spectatorPort", 0);
+    private SpectatorRelay spectators;
+    
+    // Runs this server as one zone of a board split into vertical strips across
+    // processes, e.g. -Dgame.zone=1/3; node z talks to its peers on clusterPort + z
+    private static final String ZONE = System.getProperty("game.zone", "");
+    private static final int CLUSTER_PORT = Integer.getInteger("game.clusterPort", 62500);
+    private ZoneNode cluster;
+    
+    // Gateways link here and bring many clients each; -Dgame.gatewayPort=<port> enables it
+    private static final int GATEWAY_PORT = Integer.getInteger("game.gatewayPort", 0);
+    private GatewayListener gateways;
+    
+    // State frames are encoded on several threads, each with its own buffer
+    private static final ThreadLocal<StateFrameCodec> STATE_CODECS =
+        ThreadLocal.withInitial(StateFrameCodec::new);
+    private static final LatencyHistogram STATE_BYTES = MetricsRegistry.global().histogram("state.bytes");
+    
+    // Metrics are logged every this many seconds, 0 disables the dump;
+    // -Dgame.jmx=false keeps them off the platform MBean server
+    private static final long METRICS_DUMP_SECONDS = Long.getLong("game.metricsDumpSeconds", 30);
+    private static final boolean METRICS_JMX = Boolean.parseBoolean(System.getProperty("game.jmx", "true"));
+    
+    /**
+     * Returns the path of a file in the data directory, or "" (disabled) without one.
+     */
+    private static String inDataDir(String name) {
+        return DATA_DIR.isEmpty() ? "" : Paths.get(DATA_DIR, name).toString();
+    }
     
     /**
      * Creates a new game server instance.
@@ -42,24 +122,161 @@ public class GameServer {
         this.serverSocket = new ServerSocket(port);
         this.gameWorld = new ServerGameWorld(this);
         this.chatManager = new ChatManager();
+        this.pipeline = new TickPipeline(this, gameWorld, ServerGameWorld.TICK_MILLIS);
+        if (!CHECKPOINT_FILE.isEmpty()) {
+            try {
+                Path checkpointFile = Paths.get(CHECKPOINT_FILE).toAbsolutePath();
+                Files.createDirectories(checkpointFile.getParent());
+                this.checkpointer = new Checkpointer(checkpointFile);
+            } catch (IOException e) {
+                LogManager.log("Checkpoints disabled, cannot open " + CHECKPOINT_FILE + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (checkpointer != null && !JOURNAL_DIR.isEmpty()) {
+            try {
+                this.journal = new CommandJournal(Paths.get(JOURNAL_DIR));
+            } catch (IOException e) {
+                LogManager.log("Command journal disabled, cannot open " + JOURNAL_DIR + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (!PROFILE_FILE.isEmpty()) {
+            try {
+                Path profileFile = Paths.get(PROFILE_FILE).toAbsolutePath();
+                Files.createDirectories(profileFile.getParent());
+                this.profiles = new ProfileStore(profileFile);
+                gameWorld.setProfileStore(profiles);
+            } catch (IOException e) {
+                LogManager.log("Player profiles disabled, cannot open " + PROFILE_FILE + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (SPECTATOR_PORT > 0) {
+            try {
+                this.spectators = new SpectatorRelay(SPECTATOR_PORT);
+            } catch (IOException e) {
+                LogManager.log("Spectators disabled, cannot listen on " + SPECTATOR_PORT + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (GATEWAY_PORT > 0) {
+            try {
+                this.gateways = new GatewayListener(this, GATEWAY_PORT);
+            } catch (IOException e) {
+                LogManager.log("Gateway links disabled, cannot listen on " + GATEWAY_PORT + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (!ZONE.isEmpty()) {
+            this.cluster = createZoneNode(port);
+            gameWorld.setCluster(cluster);
+        }
         
         LogManager.log("Server started on port " + port);
         System.out.println("Game Server started on port " + port);
     }
     
+    /**
+     * Parses {@code -Dgame.zone=<index>/<count>} and joins the cluster. Ghosts
+     * reach one cell past a player's sight, so nothing pops into view at a border.
+     */
+    private ZoneNode createZoneNode(int gamePort) throws IOException {
+        String[] parts = ZONE.split("/");
+        int zone;
+        int zoneCount;
+        try {
+            zone = Integer.parseInt(parts[0].trim());
+            zoneCount = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid game.zone " + ZONE + ", expected <index>/<count>");
+        }
+        if (zone < 0 || zone >= zoneCount) {
+            throw new IOException("Zone " + zone + " is not one of " + zoneCount);
+        }
+        ZoneLayout layout;
+        try {
+            layout = new ZoneLayout(gameWorld.getSnapshot().getBoardSize(), zoneCount,
+                ServerGameWorld.VISION_RADIUS + 1);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        LogManager.log("Zone " + zone + " owns columns " + layout.firstCol(zone) + " to " + (layout.firstCol(zone + 1) - 1));
+        return new ZoneNode(layout, zone, new NodeTransport(zone, zoneCount, CLUSTER_PORT, gamePort,
+            gateways != null ? gateways.getPort() : 0));
+    }
+    
     public ClientHandler getClient(int clientId) {
         return clients.get(clientId);
     }
     
+    public int[] getClientIds() {
+        return clients.keys();
+    }
+    
+    public TickPipeline getPipeline() {
+        return pipeline;
+    }
+    
     /**
      * Starts the server and begins accepting client connections.
      */
     public void start() {
-        // Start game world updates
-        gameWorld.initialize();
+        // Start game world updates, resuming from the last checkpoint if there is one
+        WorldCheckpoint restored = null;
+        if (checkpointer != null && FRESH_START) {
+            LogManager.log("Fresh start: ignoring the checkpoint in " + CHECKPOINT_FILE + " and discarding the journal");
+        } else if (checkpointer != null) {
+            restored = checkpointer.restore();
+            if (restored != null) {
+                String notice = "Resuming the world saved in " + CHECKPOINT_FILE + " at tick " + restored.getTick()
+                    + "; start with -Dgame.freshStart=true to begin a new one";
+                LogManager.log(notice);
+                System.out.println(notice);
+            }
+        }
+        gameWorld.initialize(restored);
+        if (journal != null) {
+            checkpointer.setOnWritten(journal::truncateThrough);
+            replayJournal(restored);
+        }
+        if (restored != null) {
+            // Nobody is connected yet, so the players who were online wait parked for
+            // their clients; a fresh checkpoint records that before anything is journaled
+            gameWorld.parkAllPlayers();
+            try {
+                checkpointer.writeNow(gameWorld.captureCheckpoint());
+            } catch (IOException e) {
+                LogManager.log("Error writing checkpoint after restore: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (journal != null) {
+            journal.start();
+        }
+        if (!REPLAY_DIR.isEmpty()) {
+            try {
+                recorder = new ReplayRecorder(Paths.get(REPLAY_DIR), gameWorld.getSnapshot().getBoardSize(),
+                    ServerGameWorld.TICK_MILLIS, gameWorld.getRandomStreams().getSeed(),
+                    MAX_REPLAYS, MAX_REPLAY_MEGABYTES * 1024L * 1024L);
+            } catch (IOException e) {
+                LogManager.log("Replay recording disabled, cannot write to " + REPLAY_DIR + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
         
-        // Schedule periodic state broadcasts
-        gameUpdateExecutor.scheduleAtFixedRate(this::broadcastGameState, 0, 100, TimeUnit.MILLISECONDS);
+        // Run the tick: input, simulation, snapshot, encode and send
+        if (checkpointer != null) {
+            pipeline.setCheckpoints(checkpointer, CHECKPOINT_TICKS);
+        }
+        pipeline.setJournal(journal);
+        pipeline.setProfileStore(profiles);
+        pipeline.setRecorder(recorder);
+        pipeline.setSpectators(spectators);
+        pipeline.setCluster(cluster);
+        pipeline.setGateways(gateways);
+        pipeline.start();
+        registerMetrics();
         
         // Accept client connections
         while (running) {
@@ -74,7 +291,7 @@ public class GameServer {
                     continue;
                 }
                 
-                int clientId = nextClientId++;
+                int clientId = gameWorld.getClientHandles().allocate();
                 ClientHandler handler = new ClientHandler(clientId, clientSocket, this);
                 clients.put(clientId, handler);
                 clientExecutor.execute(handler);
@@ -89,6 +306,176 @@ public class GameServer {
         }
     }
     
+    /**
+     * Registers a client that a gateway opened a stream for.
+     *
+     * @return the client's handler, or null if the server is full
+     */
+    GatewayClientHandler openGatewayStream(GatewayListener listener, MuxLink link, int stream) {
+        if (!running || clients.size() >= MAX_PLAYERS) {
+            return null;
+        }
+        int clientId = gameWorld.getClientHandles().allocate();
+        GatewayClientHandler handler = new GatewayClientHandler(clientId, this, listener, link, stream);
+        clients.put(clientId, handler);
+        LogManager.log("Client " + clientId + " connected through gateway " + link.getRemote() + " on stream " + stream);
+        return handler;
+    }
+    
+    /**
+     * Queues a game command for the next tick.
+     */
+    public void submitCommand(int clientId, GameMessage message) {
+        if (!pipeline.submit(clientId, message)) {
+            ClientHandler handler = clients.get(clientId);
+            if (handler != null) {
+                GameMessage errorMsg = new GameMessage(MessageType.ERROR);
+                errorMsg.setMessage("Server busy, command dropped");
+                handler.sendMessage(errorMsg);
+            }
+        }
+    }
+    
+    /**
+     * Queues a join once the player's profile is loaded. The load never runs
+     * on the tick thread; it usually completes at once from the store's cache.
+     */
+    public void submitJoin(int clientId, GameMessage message) {
+        if (profiles == null) {
+            submitCommand(clientId, message);
+            return;
+        }
+        profiles.load(message.getPlayerName()).whenComplete((profile, error) -> {
+            if (error != null) {
+                LogManager.log("Error loading profile of " + message.getPlayerName() + ": " + error.getMessage());
+            } else if (profile != null && clients.containsKey(clientId)) {
+                pendingProfiles.put(clientId, profile);
+            }
+            submitCommand(clientId, message);
+        });
+    }
+    
+    /**
+     * Re-applies the commands journaled after the restored checkpoint; the
+     * checkpoint written after it lets the replayed tail be dropped.
+     * The world is ticked up to each command's tick before it is applied, as
+     * the tick pipeline did, so enemy moves, spawns and combat rolls between
+     * commands happen again from the restored random streams.
+     * Players who join in the tail are brought back for the replay under
+     * their ids and left in the world, like the ones restored online.
+     */
+    private void replayJournal(WorldCheckpoint restored) {
+        try {
+            if (restored == null) {
+                // Without the checkpoint it was based on, the tail cannot be applied
+                journal.recover(Long.MAX_VALUE);
+                journal.truncateThrough(Long.MAX_VALUE);
+                return;
+            }
+            long start = System.nanoTime();
+            List<CommandJournal.Entry> tail = journal.recover(restored.getTick());
+            if (tail.isEmpty()) {
+                journal.truncateThrough(restored.getTick());
+                return;
+            }
+            long lastTick = restored.getTick();
+            for (CommandJournal.Entry entry : tail) {
+                // Commands of tick T were applied just before the world ticked to T
+                while (gameWorld.getCurrentTick() < entry.getTick() - 1) {
+                    replayTick();
+                }
+                GameMessage message = entry.getMessage();
+                // The player has the id their client had in the session that wrote the journal
+                int playerId = entry.getClientId();
+                lastTick = entry.getTick();
+                boolean inWorld = gameWorld.getPlayerById(playerId) != null;
+                if (message.getType() == MessageType.DISCONNECT) {
+                    if (inWorld) {
+                        dispatchCommand(playerId, message);
+                    }
+                    continue;
+                }
+                if (!inWorld) {
+                    rejoinForReplay(entry.getPlayerName(), playerId,
+                        message.getType() == MessageType.JOIN_GAME ? message.getMessage() : null);
+                }
+                if (message.getType() != MessageType.JOIN_GAME) {
+                    dispatchCommand(playerId, message);
+                }
+            }
+            while (gameWorld.getCurrentTick() < lastTick) {
+                replayTick();
+            }
+            LogManager.log(String.format("Replayed %d journaled commands up to tick %d in %.2f ms",
+                tail.size(), lastTick, (System.nanoTime() - start) / 1e6));
+        } catch (IOException e) {
+            LogManager.log("Error replaying command journal: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Ticks the world once during a journal replay. Where the tick pipeline
+     * captured a checkpoint, one is captured and dropped too, because capturing
+     * resets the enemies' path planners.
+     */
+    private void replayTick() {
+        gameWorld.tick();
+        if (gameWorld.getCurrentTick() % Math.max(1, CHECKPOINT_TICKS) == 0) {
+            gameWorld.captureCheckpoint();
+        }
+    }
+    
+    /**
+     * Puts a player back into the world under the id they had, for a journal replay.
+     * Without a {@code characterClass} the saved one is used.
+     */
+    private void rejoinForReplay(String name, int playerId, String characterClass) {
+        ProfileStore.Profile profile = profiles != null ? profiles.load(name).join() : null;
+        if (profile != null) {
+            pendingProfiles.put(playerId, profile);
+        }
+        if (characterClass == null) {
+            characterClass = gameWorld.getSavedCharacterClass(name);
+        }
+        if (characterClass == null) {
+            characterClass = profile != null ? profile.getCharacterClass() : "Warrior";
+        }
+        handlePlayerJoin(playerId, name, characterClass);
+    }
+    
+    /**
+     * Applies a queued command. Runs on the tick thread.
+     */
+    void applyCommand(int clientId, GameMessage message) {
+        if (message.getType() != MessageType.DISCONNECT && !clients.containsKey(clientId)) {
+            return; // Disconnected while the command was queued
+        }
+        if (journal != null) {
+            PlayerCharacter player = gameWorld.getPlayerById(clientId);
+            String name = message.getType() == MessageType.JOIN_GAME ? message.getPlayerName()
+                : player != null ? player.getName() : null;
+            if (name != null) {
+                journal.append(gameWorld.getCurrentTick() + 1, clientId, name, message);
+            }
+        }
+        dispatchCommand(clientId, message);
+        // Moves pick up treasure and potions, and potions get used up
+        gameWorld.saveProfile(clientId);
+    }
+    
+    private void dispatchCommand(int clientId, GameMessage message) {
+        switch (message.getType()) {
+            case JOIN_GAME -> handlePlayerJoin(clientId, message.getPlayerName(), message.getMessage());
+            case MOVE_REQUEST -> handlePlayerMove(clientId, message.getPosition());
+            case USE_POTION -> handleUsePotion(clientId, message.getMessage());
+            case ACTIVATE_ABILITY -> handleActivateAbility(clientId, message.getMessage());
+            case ATTACK_REQUEST -> handlePlayerAttackRequest(clientId, message.getPosition());
+            case DISCONNECT -> handlePlayerLeave(clientId);
+            default -> LogManager.log("Unexpected queued command from client " + clientId + ": " + message.getType());
+        }
+    }
+    
     /**
      * Handles a new player joining the game.
      */
@@ -96,17 +483,17 @@ public class GameServer {
         try {
             // Create player character based on type
             PlayerCharacter player = switch (playerType) {
-                case "Warrior" -> new Warrior(playerName);
-                case "Mage" -> new Mage(playerName);
-                case "Archer" -> new Archer(playerName);
-                default -> new Warrior(playerName); // Default
+                case "Warrior" -> new Warrior(playerName, gameWorld.getRandomStreams());
+                case "Mage" -> new Mage(playerName, gameWorld.getRandomStreams());
+                case "Archer" -> new Archer(playerName, gameWorld.getRandomStreams());
+                default -> new Warrior(playerName, gameWorld.getRandomStreams()); // Default
             };
             
             // Set unique ID for network identification
             player.setNetworkId(clientId);
             
-            // Add to game world
-            gameWorld.addPlayer(player);
+            // Add to game world, with the profile loaded for this join if there is one
+            gameWorld.addPlayer(player, pendingProfiles.remove(clientId));
             
             // Notify all clients
             GameMessage joinMsg = new GameMessage(MessageType.PLAYER_JOINED);
@@ -118,7 +505,7 @@ public class GameServer {
             // Send initial state to new player
             ClientHandler handler = clients.get(clientId);
             if (handler != null) {
-                handler.sendMessage(createFullStateMessage());
+                sendStateFrame(handler, gameWorld.getSnapshot().encodeFor(clientId, STATE_CODECS.get()));
             }
             
             // Broadcast chat notification
@@ -135,7 +522,9 @@ public class GameServer {
      */
     public synchronized void handlePlayerMove(int clientId, Position newPos) {
         PlayerCharacter player = gameWorld.getPlayerById(clientId);
-        if (player != null && gameWorld.validateAndMovePlayer(player, newPos)) {
+        if (player != null && gameWorld.isOutsideZone(newPos)) {
+            handlePlayerCrossing(clientId, player, newPos);
+        } else if (player != null && gameWorld.validateAndMovePlayer(player, newPos)) {
             // Movement successful, broadcast update
             GameMessage moveMsg = new GameMessage(MessageType.PLAYER_MOVED);
             moveMsg.setPlayerId(clientId);
@@ -146,7 +535,7 @@ public class GameServer {
             GameMessage updateMsg = new GameMessage(MessageType.PLAYER_UPDATE);
             updateMsg.setPlayerId(clientId);
             updateMsg.setHealth(player.getHealth());
-            updateMsg.setPower(player.getPower());
+            updateMsg.setPower(player.getEffectivePower());
             
             // Create full player state for inventory update
             PlayerState fullState = new PlayerState(
@@ -154,8 +543,8 @@ public class GameServer {
                 player.getName(),
                 player.getPosition(),
                 player.getHealth(),
-                player.getPower(),
-                getBaseClassName(player),
+                player.getEffectivePower(),
+                player.getComponents().getBaseClassName(),
                 player.getLifePotionCount(),
                 player.getPowerPotionCount(),
                 player.getTreasurePoints()
@@ -176,6 +565,35 @@ public class GameServer {
         }
     }
     
+    /**
+     * Hands a player stepping into another node's zone to that node and
+     * redirects their client there.
+     */
+    private void handlePlayerCrossing(int clientId, PlayerCharacter player, Position newPos) {
+        ClientHandler handler = clients.get(clientId);
+        int port = gameWorld.handOffPlayer(player, newPos);
+        if (port < 0) {
+            if (handler != null) {
+                GameMessage errorMsg = new GameMessage(MessageType.MOVE_FAILED);
+                errorMsg.setMessage("Invalid move");
+                handler.sendMessage(errorMsg);
+            }
+            return;
+        }
+        int gatewayPort = gameWorld.getCluster().gatewayPortFor(newPos);
+        if (handler instanceof GatewayClientHandler streamHandler && gatewayPort > 0) {
+            // The gateway moves the client over without it reconnecting
+            streamHandler.migrate("localhost:" + gatewayPort);
+        } else if (handler != null) {
+            GameMessage redirectMsg = new GameMessage(MessageType.REDIRECT);
+            redirectMsg.setMessage("localhost:" + port);
+            handler.sendMessage(redirectMsg);
+        }
+        GameMessage leaveMsg = new GameMessage(MessageType.PLAYER_LEFT);
+        leaveMsg.setPlayerId(clientId);
+        broadcastMessage(leaveMsg);
+    }
+    
     /**
      * Handles player using a potion.
      */
@@ -194,7 +612,7 @@ public class GameServer {
                 GameMessage updateMsg = new GameMessage(MessageType.PLAYER_UPDATE);
                 updateMsg.setPlayerId(clientId);
                 updateMsg.setHealth(player.getHealth());
-                updateMsg.setPower(player.getPower());
+                updateMsg.setPower(player.getEffectivePower());
                 broadcastMessage(updateMsg);
             }
         }
@@ -227,111 +645,139 @@ public class GameServer {
     }
     
     /**
-     * Handles client disconnection.
+     * Handles client disconnection. The client stops receiving at once; its
+     * player leaves the world on the tick thread, after the commands it sent before.
      */
-    public synchronized void handleClientDisconnect(int clientId) {
-        ClientHandler handler = clients.remove(clientId);
-        if (handler != null) {
-            PlayerCharacter player = gameWorld.removePlayer(clientId);
-            if (player != null) {
-                // Notify all clients
-                GameMessage leaveMsg = new GameMessage(MessageType.PLAYER_LEFT);
-                leaveMsg.setPlayerId(clientId);
-                broadcastMessage(leaveMsg);
-                
-                chatManager.broadcastSystemMessage(player.getName() + " has left the game.", this);
-            }
+    public void handleClientDisconnect(int clientId) {
+        if (clients.remove(clientId) != null) {
+            pipeline.submit(clientId, new GameMessage(MessageType.DISCONNECT));
         }
         LogManager.log("Client " + clientId + " disconnected");
     }
     
+    /**
+     * Takes a disconnected client's player out of the world.
+     */
+    private synchronized void handlePlayerLeave(int clientId) {
+        pendingProfiles.remove(clientId);
+        gameWorld.getClientHandles().release(clientId);
+        PlayerCharacter player = gameWorld.removePlayer(clientId);
+        if (player != null) {
+            // Notify all clients
+            GameMessage leaveMsg = new GameMessage(MessageType.PLAYER_LEFT);
+            leaveMsg.setPlayerId(clientId);
+            broadcastMessage(leaveMsg);
+            
+            chatManager.broadcastSystemMessage(player.getName() + " has left the game.", this);
+        }
+    }
+    
+    /**
+     * Publishes the server's gauges and timers and starts the periodic dump.
+     */
+    private void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        pipeline.registerMetrics(metrics);
+        gameWorld.registerMetrics(metrics);
+        metrics.gauge("clients", clients::size);
+        metrics.gauge("queue.outbound", () -> {
+            long queued = 0;
+            for (ClientHandler handler : clients.values()) {
+                queued += handler.getQueuedFrames();
+            }
+            return queued;
+        });
+        if (METRICS_JMX) {
+            metrics.registerMBean();
+        }
+        metrics.startDump(METRICS_DUMP_SECONDS);
+    }
+    
     /**
      * Broadcasts a message to all connected clients.
      */
     public void broadcastMessage(GameMessage message) {
+        byte[] frame = encodeOrNull(message);
+        if (frame == null) return;
+        int copies = 0;
         for (ClientHandler handler : clients.values()) {
-            handler.sendMessage(message);
+            handler.sendFrame(frame);
+            copies++;
         }
+        MessageMetrics.sent(message.getType(), frame.length, copies);
     }
     
     /**
      * Broadcasts a message to all clients except one.
      */
     public void broadcastMessageExcept(GameMessage message, int exceptClientId) {
-        for (Map.Entry<Integer, ClientHandler> entry : clients.entrySet()) {
-            if (entry.getKey() != exceptClientId) {
-                entry.getValue().sendMessage(message);
+        byte[] frame = encodeOrNull(message);
+        if (frame == null) return;
+        int copies = 0;
+        for (ClientHandler handler : clients.values()) {
+            if (handler.getClientId() != exceptClientId) {
+                handler.sendFrame(frame);
+                copies++;
             }
         }
+        MessageMetrics.sent(message.getType(), frame.length, copies);
+    }
+    
+    private static byte[] encodeOrNull(GameMessage message) {
+        try {
+            return MessageCodec.encode(message);
+        } catch (IOException e) {
+            LogManager.log("Failed to encode " + message.getType() + ": " + e.getMessage());
+            return null;
+        }
     }
     
     /**
-     * Periodically broadcasts the full game state to all clients.
+     * Sends a client its fog of war changes and its view of a snapshot.
+     * Runs on the pipeline's encode threads.
      */
-    private void broadcastGameState() {
-        if (!clients.isEmpty()) {
-            GameMessage stateMsg = createFullStateMessage();
-            broadcastMessage(stateMsg);
+    void sendStateTo(int clientId, WorldSnapshot snapshot) {
+        ClientHandler handler = clients.get(clientId);
+        if (handler == null) return;
+        FogDelta fogDelta = gameWorld.pollFogDelta(clientId, snapshot);
+        if (fogDelta != null) {
+            GameMessage fogMsg = new GameMessage(MessageType.FOG_UPDATE);
+            fogMsg.setPlayerId(clientId);
+            fogMsg.setFogDelta(fogDelta);
+            handler.sendMessage(fogMsg);
         }
+        sendStateFrame(handler, snapshot.encodeFor(clientId, STATE_CODECS.get()));
+    }
+    
+    private static void sendStateFrame(ClientHandler handler, byte[] frame) {
+        STATE_BYTES.record(frame.length);
+        MessageMetrics.sent(MessageType.FULL_STATE, frame.length);
+        handler.sendFrame(frame);
     }
     
     /**
-     * Creates a message containing the full game state.
+     * Encodes what any player can see once and hands it to the spectator relay.
+     * Called by the encode stage; does nothing while no one is watching.
      */
-    public GameMessage createFullStateMessage() {
-        GameMessage msg = new GameMessage(MessageType.FULL_STATE);
-        
-        // Add all players with inventory info
-        List<PlayerState> playerStates = new ArrayList<>();
-        for (PlayerCharacter player : gameWorld.getAllPlayers()) {
-            PlayerState state = new PlayerState(
-                player.getNetworkId(),
-                player.getName(),
-                player.getPosition(),
-                player.getHealth(),
-                player.getPower(),
-                getBaseClassName(player),
-                player.getLifePotionCount(),
-                player.getPowerPotionCount(),
-                player.getTreasurePoints()
-            );
-            playerStates.add(state);
+    void sendStateToSpectators(WorldSnapshot snapshot) {
+        if (spectators != null && spectators.hasSubscribers()) {
+            spectators.publish(snapshot.encodeFor(-1, STATE_CODECS.get()));
         }
-        msg.setPlayerStates(playerStates);
-        
-        // Rest of the method remains the same...
-        // Add visible enemies
-        List<EnemyState> enemyStates = new ArrayList<>();
-        for (Enemy enemy : gameWorld.getAllEnemies()) {
-            if (gameWorld.isEnemyVisibleToAnyPlayer(enemy)) {
-                EnemyState state = new EnemyState(
-                    enemy.getNetworkId(),
-                    enemy.getClass().getSimpleName(),
-                    enemy.getPosition(),
-                    enemy.getHealth(),
-                    enemy.isVisible()
-                );
-                enemyStates.add(state);
-            }
-        }
-        msg.setEnemyStates(enemyStates);
-        
-        // Add visible items
-        List<ItemState> itemStates = new ArrayList<>();
-        for (GameItem item : gameWorld.getAllItems()) {
-            if (gameWorld.isItemVisibleToAnyPlayer(item)) {
-                String itemType = item.getClass().getSimpleName();
-                ItemState state = new ItemState(
-                    itemType,
-                    item.getPosition(),
-                    item.isVisible()
-                );
-                itemStates.add(state);
-            }
-        }
-        msg.setItemStates(itemStates);
-        
-        return msg;
+    }
+    
+    /**
+     * Creates a message containing everything visible to any player.
+     */
+    public GameMessage createFullStateMessage() {
+        return gameWorld.getSnapshot().toStateMessage(-1);
+    }
+    
+    /**
+     * Creates a message containing only what one player can see.
+     * The player's own state is always included.
+     */
+    public GameMessage createStateMessageFor(int viewerId) {
+        return gameWorld.getSnapshot().toStateMessage(viewerId);
     }
     
     public void sendDamageToPlayer(int playerId, GameMessage damageMsg) {
@@ -341,13 +787,6 @@ public class GameServer {
         }
     }
     
-    private String getBaseClassName(PlayerCharacter player) {
-        PlayerCharacter base = player;
-        while (base instanceof PlayerDecorator) {
-            base = ((PlayerDecorator) base).getWrapped();
-        }
-        return base.getClass().getSimpleName();
-    }
     
     /**
      * Shuts down the server gracefully.
@@ -365,8 +804,43 @@ public class GameServer {
         }
         
         // Shutdown executors
+        pipeline.stop();
+        MetricsRegistry.global().stopDump();
+        if (gateways != null) {
+            gateways.shutdown();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        if (spectators != null) {
+            spectators.shutdown();
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (checkpointer != null) {
+            checkpointer.shutdown(gameWorld.captureCheckpoint());
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (profiles != null) {
+            gameWorld.saveProfiles();
+            try {
+                profiles.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         clientExecutor.shutdown();
-        gameUpdateExecutor.shutdown();
         gameWorld.shutdown();
         
         try {
@@ -424,9 +898,26 @@ public class GameServer {
             }
         }
         
+        Ghost ghost = targetEnemy == null && gameWorld.getCluster() != null
+            ? gameWorld.getCluster().enemyGhostAt(targetPos) : null;
+        
         if (targetEnemy != null) {
             // Use combat manager instead of direct attack
             gameWorld.handlePlayerCombat(player, targetEnemy);
+        } else if (ghost != null) {
+            // The enemy is across a border; its owner lands the strike and reports the outcome
+            ClientHandler handler = clients.get(clientId);
+            String error = null;
+            if (player.getPosition().distanceTo(targetPos) > Math.max(1, player.getComponents().getRange())) {
+                error = "Target out of range!";
+            } else if (!gameWorld.attackGhost(player, ghost)) {
+                error = "Cannot reach that target";
+            }
+            if (error != null && handler != null) {
+                GameMessage errorMsg = new GameMessage(MessageType.ERROR);
+                errorMsg.setMessage(error);
+                handler.sendMessage(errorMsg);
+            }
         } else {
             // No enemy at target position
             ClientHandler handler = clients.get(clientId);
@@ -0,0 +1,56 @@
+package game.server;
+
+import game.gateway.MuxLink;
+import game.logging.LogManager;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A client connected through a gateway, reached on one stream of a shared
+ * link instead of a socket of its own. Frames go straight onto the link's
+ * send queue; the gateway does the per-client buffering and drops clients
+ * that cannot keep up.
+ */
+public class GatewayClientHandler extends ClientHandler {
+    private final MuxLink link;
+    private final int stream;
+    private final GatewayListener listener;
+
+    GatewayClientHandler(int clientId, GameServer server, GatewayListener listener, MuxLink link, int stream) {
+        super(clientId, server);
+        this.listener = listener;
+        this.link = link;
+        this.stream = stream;
+    }
+
+    public int getStream() { return stream; }
+
+    @Override
+    public void run() {
+        sendWelcome();
+    }
+
+    @Override
+    public void sendFrame(byte[] frame) {
+        if (!isConnected()) return;
+        if (!link.send(stream, MuxLink.DATA, frame)) {
+            LogManager.log("Gateway link " + link.getRemote() + " is not keeping up, dropping client " + getClientId());
+            disconnect();
+        }
+    }
+
+    /**
+     * Tells the gateway to move the client to another server, which it does
+     * without the client noticing, and lets go of the client here.
+     */
+    public void migrate(String hostAndPort) {
+        link.send(stream, MuxLink.MIGRATE, hostAndPort.getBytes(StandardCharsets.UTF_8));
+        disconnect();
+    }
+
+    @Override
+    protected void closeConnection() {
+        listener.forget(link, stream);
+        link.send(stream, MuxLink.CLOSE);
+    }
+}
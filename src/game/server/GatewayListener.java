@@ -0,0 +1,159 @@
+package game.server;
+
+import game.collections.ConcurrentIntObjectMap;
+import game.gateway.MuxLink;
+import game.logging.LogManager;
+import game.network.GameMessage;
+import game.network.MessageCodec;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts links from gateways and turns the streams on them into clients.
+ * Each link has one reader thread, so a server with a few gateways in front
+ * of it runs a few threads for all of their clients instead of two per client.
+ */
+public class GatewayListener {
+    // A link that sends nothing, not even the gateway's pings, for this long is dropped
+    static final int LINK_TIMEOUT_MILLIS = 15_000;
+
+    private final GameServer server;
+    private final ServerSocket serverSocket;
+    private final Map<MuxLink, ConcurrentIntObjectMap<GatewayClientHandler>> links = new ConcurrentHashMap<>();
+    private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "gateway-link");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = true;
+    private final AtomicLong streamsOpened = new AtomicLong();
+    private final AtomicLong streamsRefused = new AtomicLong();
+
+    public GatewayListener(GameServer server, int port) throws IOException {
+        this.server = server;
+        this.serverSocket = new ServerSocket(port);
+        threads.execute(this::acceptLoop);
+        LogManager.log("Accepting gateway links on port " + port);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LogManager.log("Error accepting gateway link: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        MuxLink link;
+        try {
+            link = MuxLink.accept(socket);
+            link.setReadTimeout(LINK_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            LogManager.log("Rejected gateway link from " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException closeError) {
+                // Already closed
+            }
+            return;
+        }
+        ConcurrentIntObjectMap<GatewayClientHandler> streams = new ConcurrentIntObjectMap<>();
+        links.put(link, streams);
+        LogManager.log("Gateway linked from " + link.getRemote());
+        try {
+            while (running) {
+                MuxLink.Frame frame = link.read();
+                switch (frame.getKind()) {
+                    case MuxLink.OPEN -> {
+                        GatewayClientHandler handler = server.openGatewayStream(this, link, frame.getStream());
+                        if (handler == null) {
+                            streamsRefused.incrementAndGet();
+                            link.send(frame.getStream(), MuxLink.CLOSE);
+                        } else {
+                            streamsOpened.incrementAndGet();
+                            streams.put(frame.getStream(), handler);
+                            handler.run();
+                        }
+                    }
+                    case MuxLink.DATA -> {
+                        GatewayClientHandler handler = streams.get(frame.getStream());
+                        if (handler != null) {
+                            GameMessage message = MessageCodec.decode(frame.getPayload());
+                            MessageMetrics.received(message.getType(), frame.getPayload().length);
+                            handler.handleMessage(message);
+                        }
+                    }
+                    case MuxLink.CLOSE -> {
+                        GatewayClientHandler handler = streams.get(frame.getStream());
+                        if (handler != null) {
+                            handler.disconnect();
+                        }
+                    }
+                    case MuxLink.PING -> link.send(0, MuxLink.PONG);
+                    default -> LogManager.log("Unexpected gateway frame " + frame.getKind());
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                LogManager.log("Gateway link " + link.getRemote() + " closed: " + e.getMessage());
+            }
+        } finally {
+            links.remove(link);
+            for (GatewayClientHandler handler : streams.values()) {
+                handler.disconnect();
+            }
+            link.close();
+        }
+    }
+
+    /**
+     * Drops a stream whose client disconnected.
+     */
+    void forget(MuxLink link, int stream) {
+        ConcurrentIntObjectMap<GatewayClientHandler> streams = links.get(link);
+        if (streams != null) {
+            streams.remove(stream);
+        }
+    }
+
+    public String summary() {
+        int clients = 0;
+        StringBuilder perLink = new StringBuilder();
+        for (Map.Entry<MuxLink, ConcurrentIntObjectMap<GatewayClientHandler>> entry : links.entrySet()) {
+            clients += entry.getValue().size();
+            perLink.append("; ").append(entry.getKey().getRemote()).append(' ').append(entry.getKey().summary());
+        }
+        return "gateway links=" + links.size() + ", clients=" + clients + ", opened=" + streamsOpened.get()
+            + ", refused=" + streamsRefused.get() + perLink;
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (MuxLink link : links.keySet()) {
+            link.close();
+        }
+        threads.shutdownNow();
+    }
+}
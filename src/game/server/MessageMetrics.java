@@ -0,0 +1,45 @@
+package game.server;
+
+import game.metrics.Counter;
+import game.metrics.MetricsRegistry;
+import game.network.MessageType;
+
+/**
+ * Counts the messages and bytes the server receives and sends, per message
+ * type. A broadcast is encoded once but counted once per recipient, as that
+ * is what goes on the wire.
+ */
+final class MessageMetrics {
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final Counter[] RECEIVED = counters("msg.in.", "");
+    private static final Counter[] RECEIVED_BYTES = counters("msg.in.", ".bytes");
+    private static final Counter[] SENT = counters("msg.out.", "");
+    private static final Counter[] SENT_BYTES = counters("msg.out.", ".bytes");
+
+    private MessageMetrics() {
+    }
+
+    private static Counter[] counters(String prefix, String suffix) {
+        Counter[] counters = new Counter[TYPES.length];
+        for (MessageType type : TYPES) {
+            counters[type.ordinal()] = MetricsRegistry.global().counter(prefix + type + suffix);
+        }
+        return counters;
+    }
+
+    static void received(MessageType type, int bytes) {
+        if (type == null) return;
+        RECEIVED[type.ordinal()].inc();
+        RECEIVED_BYTES[type.ordinal()].add(bytes);
+    }
+
+    static void sent(MessageType type, int bytes) {
+        sent(type, bytes, 1);
+    }
+
+    static void sent(MessageType type, int bytes, int copies) {
+        if (copies <= 0) return;
+        SENT[type.ordinal()].add(copies);
+        SENT_BYTES[type.ordinal()].add((long) bytes * copies);
+    }
+}
@@ -1,24 +1,25 @@
 package game.server;
 
 import game.characters.*;
+import game.collections.ConcurrentIntObjectMap;
 import game.combat.*;
-import game.decorators.PlayerDecorator;
-import game.decorators.ShieldedPlayerDecorator;
 import game.map.Position;
 import game.network.*;
 import game.logging.LogManager;
+import game.persistence.WorldCheckpoint;
 import java.util.*;
-import java.util.concurrent.*;
 
 /**
  * Manages active combat sessions between players and enemies.
- * Handles turn-based combat similar to single-player mode.
+ * Handles turn-based combat similar to single-player mode. Turns are taken
+ * by the world tick through {@link #step(long)}, so combat rolls happen in
+ * tick order and replay with the world.
  */
 public class ServerCombatManager {
     private final GameServer server;
     private final ServerGameWorld gameWorld;
-    private final Map<Integer, CombatSession> activeCombats = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService combatExecutor = Executors.newScheduledThreadPool(5);
+    private final ConcurrentIntObjectMap<CombatSession> activeCombats = new ConcurrentIntObjectMap<>();
+    private static final int TURN_TICKS = 1000 / ServerGameWorld.TICK_MILLIS; // 1 second between turns
     
     public ServerCombatManager(GameServer server, ServerGameWorld gameWorld) {
         this.server = server;
@@ -35,7 +36,7 @@ public class ServerCombatManager {
         final Enemy enemy;
         boolean playerTurn;
         boolean active = true;
-        ScheduledFuture<?> combatTask;
+        long nextTurnTick; // 0 until the first turn, which is taken on the next step
         
         CombatSession(PlayerCharacter player, Enemy enemy) {
             this.playerId = player.getNetworkId();
@@ -62,12 +63,7 @@ public class ServerCombatManager {
         Position enemyPos = enemy.getPosition();
         int distance = playerPos.distanceTo(enemyPos);
         
-        boolean inRange = false;
-        if (player instanceof RangedFighter) {
-            inRange = distance <= 2;
-        } else {
-            inRange = distance <= 1;
-        }
+        boolean inRange = distance <= Math.max(1, player.getComponents().getRange());
         
         if (!inRange) {
             sendErrorToPlayer(playerId, "Target out of range!");
@@ -80,6 +76,7 @@ public class ServerCombatManager {
         
         // Mark enemy as in combat
         enemy.setActive(false); // Prevent normal AI movement
+        gameWorld.setEnemyInCombat(enemy, true);
         
         // Notify client that combat started
         GameMessage combatStart = new GameMessage(MessageType.COMBAT_UPDATE);
@@ -87,45 +84,84 @@ public class ServerCombatManager {
         combatStart.setMessage("COMBAT_START");
         server.broadcastMessage(combatStart);
         
-        LogManager.log("Combat started: " + player.getName() + " vs " + enemy.getClass().getSimpleName());
-        
-        // Start combat loop
-        startCombatLoop(session);
+        LogManager.log("Combat started: " + player.getName() + " vs " + enemy.getComponents().getBaseClassName());
         
         return true;
     }
     
     /**
-     * Starts the turn-based combat loop.
+     * Puts back a combat saved in a checkpoint, where it left off.
      */
-    private void startCombatLoop(CombatSession session) {
-        session.combatTask = combatExecutor.scheduleWithFixedDelay(() -> {
-            if (!session.active || session.player.isDead() || session.enemy.isDead()) {
-                endCombat(session.playerId);
-                return;
-            }
-            
-            // Check if combatants are still in range
-            int distance = session.player.getPosition().distanceTo(session.enemy.getPosition());
-            int maxRange = getMaxCombatRange(session.player, session.enemy);
-            
-            if (distance > maxRange) {
-                // Player fled from combat
-                endCombat(session.playerId);
-                return;
-            }
-            
-            // Execute turn
-            if (session.playerTurn) {
-                executePlayerTurn(session);
-            } else {
-                executeEnemyTurn(session);
+    public synchronized void restoreCombat(PlayerCharacter player, Enemy enemy, boolean playerTurn,
+                                           long nextTurnTick) {
+        CombatSession session = new CombatSession(player, enemy);
+        session.playerTurn = playerTurn;
+        session.nextTurnTick = nextTurnTick;
+        activeCombats.put(session.playerId, session);
+        enemy.setActive(false);
+        gameWorld.setEnemyInCombat(enemy, true);
+    }
+    
+    /**
+     * Returns the running combats for a checkpoint, in player id order.
+     */
+    public List<WorldCheckpoint.CombatRecord> captureCombats() {
+        int[] playerIds = activeCombats.keys();
+        Arrays.sort(playerIds);
+        List<WorldCheckpoint.CombatRecord> records = new ArrayList<>(playerIds.length);
+        for (int playerId : playerIds) {
+            CombatSession session = activeCombats.get(playerId);
+            if (session != null && session.active) {
+                records.add(new WorldCheckpoint.CombatRecord(playerId, session.enemyId, session.playerTurn,
+                    session.nextTurnTick));
             }
-            
-            // Switch turns
-            session.playerTurn = !session.playerTurn;
-            
-        }, 0, 1000, TimeUnit.MILLISECONDS); // 1 second between turns
+        }
+        return records;
+    }
+    
+    /**
+     * Takes the turns that are due at tick {@code now}, in player id order.
+     * Called by the world tick.
+     */
+    public void step(long now) {
+        int[] playerIds = activeCombats.keys();
+        Arrays.sort(playerIds);
+        for (int playerId : playerIds) {
+            CombatSession session = activeCombats.get(playerId);
+            if (session == null || session.nextTurnTick > now) continue;
+            takeTurn(session);
+            session.nextTurnTick = now + TURN_TICKS;
+        }
+    }
+    
+    /**
+     * Takes one turn of a combat, or ends it if it is over.
+     */
+    private void takeTurn(CombatSession session) {
+        if (!session.active || session.player.isDead() || session.enemy.isDead()) {
+            endCombat(session.playerId);
+            return;
+        }
+        
+        // Check if combatants are still in range
+        int distance = session.player.getPosition().distanceTo(session.enemy.getPosition());
+        int maxRange = getMaxCombatRange(session.player, session.enemy);
+        
+        if (distance > maxRange) {
+            // Player fled from combat
+            endCombat(session.playerId);
+            return;
+        }
+        
+        // Execute turn
+        if (session.playerTurn) {
+            executePlayerTurn(session);
+        } else {
+            executeEnemyTurn(session);
+        }
+        
+        // Switch turns
+        session.playerTurn = !session.playerTurn;
     }
     
     /**
@@ -148,6 +184,8 @@ public class ServerCombatManager {
             sendDamageEventToPlayer(session.playerId, enemy.getPosition(), result.damageDealt, result.wasCritical, false);
         }
         
+        gameWorld.syncEnemyHealth(enemy);
+        
         // Check if enemy died
         if (enemy.isDead()) {
             LogManager.log("Enemy defeated in combat");
@@ -165,19 +203,11 @@ public class ServerCombatManager {
         Enemy enemy = session.enemy;
         PlayerCharacter player = session.player;
         
-        // Check if player has shield
-        boolean shieldBlocked = false;
-        if (player instanceof ShieldedPlayerDecorator shield) {
-            if (shield.isShieldActive()) {
-                shieldBlocked = true;
-            }
-        }
-        
-        // Use ServerCombatSystem to resolve attack
+        // Use ServerCombatSystem to resolve attack (shield effects are applied there)
         ServerCombatSystem.CombatResult result = ServerCombatSystem.resolveAttack(enemy, player);
         
         // Send damage event only to the affected player
-        if (shieldBlocked && !result.wasEvaded) {
+        if (result.wasBlocked) {
             // Shield blocked the attack
             sendShieldBlockEvent(session.playerId, player.getPosition());
         } else if (result.wasEvaded) {
@@ -190,7 +220,7 @@ public class ServerCombatManager {
         GameMessage updateMsg = new GameMessage(MessageType.PLAYER_UPDATE);
         updateMsg.setPlayerId(player.getNetworkId());
         updateMsg.setHealth(player.getHealth());
-        updateMsg.setPower(player.getPower());
+        updateMsg.setPower(player.getEffectivePower());
         
         // Include full inventory state
         PlayerState fullState = new PlayerState(
@@ -198,8 +228,8 @@ public class ServerCombatManager {
             player.getName(),
             player.getPosition(),
             player.getHealth(),
-            player.getPower(),
-            getBaseClassName(player),
+            player.getEffectivePower(),
+            player.getComponents().getBaseClassName(),
             player.getLifePotionCount(),
             player.getPowerPotionCount(),
             player.getTreasurePoints()
@@ -225,13 +255,11 @@ public class ServerCombatManager {
         CombatSession session = activeCombats.remove(playerId);
         if (session != null) {
             session.active = false;
-            if (session.combatTask != null) {
-                session.combatTask.cancel(false);
-            }
             
             // Reactivate enemy AI if still alive
             if (!session.enemy.isDead()) {
                 session.enemy.setActive(true);
+                gameWorld.setEnemyInCombat(session.enemy, false);
             }
             
             // Notify client that combat ended
@@ -244,6 +272,13 @@ public class ServerCombatManager {
         }
     }
     
+    /**
+     * Number of combats currently running.
+     */
+    public int getActiveCombatCount() {
+        return activeCombats.size();
+    }
+    
     /**
      * Checks if a player is currently in combat.
      */
@@ -285,9 +320,9 @@ public class ServerCombatManager {
     /**
      * Gets the maximum combat range between two combatants.
      */
-    private int getMaxCombatRange(Combatant c1, Combatant c2) {
-        int range1 = (c1 instanceof RangedFighter) ? 2 : 1;
-        int range2 = (c2 instanceof RangedFighter) ? 2 : 1;
+    private int getMaxCombatRange(AbstractCharacter c1, AbstractCharacter c2) {
+        int range1 = Math.max(1, c1.getComponents().getRange());
+        int range2 = Math.max(1, c2.getComponents().getRange());
         return Math.max(range1, range2);
     }
     
@@ -378,22 +413,14 @@ public class ServerCombatManager {
         }
     }
 
-    private String getBaseClassName(PlayerCharacter player) {
-        PlayerCharacter base = player;
-        while (base instanceof PlayerDecorator) {
-            base = ((PlayerDecorator) base).getWrapped();
-        }
-        return base.getClass().getSimpleName();
-    }
     
     /**
      * Shuts down the combat manager.
      */
     public void shutdown() {
         // End all active combats
-        for (Integer playerId : new ArrayList<>(activeCombats.keySet())) {
+        for (int playerId : activeCombats.keys()) {
             endCombat(playerId);
         }
-        combatExecutor.shutdownNow();
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package game.server;
 
+import game.characters.AbstractCharacter;
+import game.characters.Archer;
 import game.combat.*;
-import game.decorators.*;
+import game.ecs.Capability;
+import game.ecs.EntityComponents;
+import game.effects.StatusEffects;
 import game.map.Position;
 
 /**
@@ -14,11 +18,17 @@ public class ServerCombatSystem {
         public final int damageDealt;
         public final boolean wasCritical;
         public final boolean wasEvaded;
+        public final boolean wasBlocked;
         
         public CombatResult(int damageDealt, boolean wasCritical, boolean wasEvaded) {
+            this(damageDealt, wasCritical, wasEvaded, false);
+        }
+        
+        public CombatResult(int damageDealt, boolean wasCritical, boolean wasEvaded, boolean wasBlocked) {
             this.damageDealt = damageDealt;
             this.wasCritical = wasCritical;
             this.wasEvaded = wasEvaded;
+            this.wasBlocked = wasBlocked;
         }
     }
     
@@ -27,58 +37,98 @@ public class ServerCombatSystem {
      * Returns the combat result without any side effects.
      */
     public static CombatResult resolveAttack(Combatant attacker, Combatant defender) {
-        // Get the base attacker type (unwrap decorators)
-        Combatant baseAttacker = attacker;
-        while (baseAttacker instanceof PlayerDecorator) {
-            baseAttacker = ((PlayerDecorator) baseAttacker).getWrapped();
-        }
-        while (baseAttacker instanceof EnemyDecorator) {
-            baseAttacker = ((EnemyDecorator) baseAttacker).getWrapped();
-        }
-        
-        int healthBefore = defender.getHealth();
-        boolean wasCritical = false;
+        return land(strike(attacker), defender, attacker);
+    }
+    
+    /**
+     * Rolls the attacker's half of an attack: its critical hit and its power
+     * with active effects. Returns null if the attacker cannot attack.
+     */
+    public static Strike strike(Combatant attacker) {
+        EntityComponents attackerComponents = EntityComponents.of(attacker);
         
         // Physical attack
-        if (baseAttacker instanceof PhysicalAttacker) {
-            PhysicalAttacker physAttacker = (PhysicalAttacker) baseAttacker;
+        if (attackerComponents.has(Capability.PHYSICAL)) {
+            PhysicalAttacker physAttacker = attackerComponents.getPhysical();
             
             // Check for critical hit
-            wasCritical = physAttacker.isCriticalHit();
-            int damage = attacker.getPower(); // Use decorated power
+            boolean wasCritical = physAttacker.isCriticalHit();
+            int damage = effectivePower(attacker); // Use power with active effects
             if (wasCritical) {
                 damage *= 2;
                 System.out.println("Critical hit!");
             }
-            
-            // Apply damage (defender's receiveDamage handles evasion/armor)
-            defender.receiveDamage(damage, attacker);
+            double accuracy = attacker instanceof Archer archer ? archer.getAccuracy() : 0;
+            return new Strike(damage, wasCritical, null, accuracy);
         }
         // Magic attack
-        else if (baseAttacker instanceof MagicAttacker) {
-            MagicAttacker magicAttacker = (MagicAttacker) baseAttacker;
-            
-            // Calculate magic damage
-            double baseDamage = attacker.getPower() * 1.5;
+        if (attackerComponents.has(Capability.MAGIC)) {
+            MagicAttacker magicAttacker = attackerComponents.getMagic();
+            return new Strike(effectivePower(attacker) * 1.5, false, magicAttacker.getElement(), 0);
+        }
+        return null;
+    }
+    
+    /**
+     * Lands a strike on the defender: elemental advantage, the defender's
+     * effects and its evasion against {@code source}, the attacker or a
+     * stand-in for one on another node.
+     */
+    public static CombatResult land(Strike strike, Combatant defender, Combatant source) {
+        int healthBefore = defender.getHealth();
+        boolean wasBlocked = false;
+        
+        if (strike != null) {
+            double damage = strike.getDamage();
             
             // Check elemental advantages
-            if (defender instanceof MagicAttacker) {
-                MagicAttacker defenderMagic = (MagicAttacker) defender;
-                if (magicAttacker.getElement().isStrongerThan(defenderMagic.getElement())) {
-                    baseDamage *= 1.2;
-                } else if (defenderMagic.getElement().isStrongerThan(magicAttacker.getElement())) {
-                    baseDamage *= 0.8;
+            EntityComponents defenderComponents = EntityComponents.of(defender);
+            if (strike.getElement() != null && defenderComponents.has(Capability.MAGIC)) {
+                MagicAttacker defenderMagic = defenderComponents.getMagic();
+                if (strike.getElement().isStrongerThan(defenderMagic.getElement())) {
+                    damage *= 1.2;
+                } else if (defenderMagic.getElement().isStrongerThan(strike.getElement())) {
+                    damage *= 0.8;
                 }
             }
             
-            defender.receiveDamage((int) baseDamage, attacker);
+            // Apply damage (defender's receiveDamage handles evasion/armor)
+            wasBlocked = deliverDamage(defender, (int) damage, source);
         }
         
         int healthAfter = defender.getHealth();
         int actualDamage = healthBefore - healthAfter;
-        boolean wasEvaded = (actualDamage == 0 && healthBefore > 0);
+        boolean wasEvaded = (!wasBlocked && actualDamage == 0 && healthBefore > 0);
         
-        return new CombatResult(actualDamage, wasCritical, wasEvaded);
+        return new CombatResult(actualDamage, strike != null && strike.isCritical(), wasEvaded, wasBlocked);
+    }
+    
+    /**
+     * Returns a combatant's power with its active status effects applied.
+     */
+    public static int effectivePower(Combatant combatant) {
+        if (combatant instanceof AbstractCharacter character) {
+            return character.getEffectivePower();
+        }
+        return combatant.getPower();
+    }
+    
+    /**
+     * Delivers damage to a defender after its status effects had a chance
+     * to absorb or reduce it.
+     * 
+     * @return true if an effect absorbed the hit completely
+     */
+    public static boolean deliverDamage(Combatant defender, int amount, Combatant source) {
+        if (defender instanceof AbstractCharacter character) {
+            StatusEffects effects = character.getEffects();
+            if (effects.absorbHit()) {
+                return true;
+            }
+            amount = effects.modifyIncomingDamage(amount);
+        }
+        defender.receiveDamage(amount, source);
+        return false;
     }
     
     /**
@@ -113,24 +163,7 @@ public class ServerCombatSystem {
      * Checks if attacker is in range to attack target.
      */
     private static boolean checkRange(Combatant attacker, Position attackerPos, Position targetPos) {
-        int distance = attackerPos.distanceTo(targetPos);
-        
-        // Get base type for range checking
-        Combatant base = attacker;
-        while (base instanceof PlayerDecorator) {
-            base = ((PlayerDecorator) base).getWrapped();
-        }
-        while (base instanceof EnemyDecorator) {
-            base = ((EnemyDecorator) base).getWrapped();
-        }
-        
-        if (base instanceof RangedFighter) {
-            return distance <= ((RangedFighter) base).getRange();
-        } else if (base instanceof MeleeFighter) {
-            return distance <= 1;
-        }
-        
-        return false;
+        return EntityComponents.of(attacker).canReach(attackerPos.distanceTo(targetPos));
     }
     
     public static class CombatRoundResult {
@@ -1,18 +1,46 @@
 package game.server;
 
 import game.characters.*;
+import game.cluster.Ghost;
+import game.cluster.ZoneNode;
+import game.collections.ConcurrentIntObjectMap;
+import game.collections.IntSet;
+import game.combat.MagicElement;
+import game.combat.Strike;
 import game.items.*;
 import game.map.*;
+import game.network.FogDelta;
 import game.network.GameMessage;
 import game.network.MessageType;
 import game.factory.EnemyFactory;
 import game.core.GameEntity;
+import game.core.RandomStreams;
 import game.decorators.*;
+import game.effects.EffectType;
+import game.engine.EnemyStore;
+import game.engine.EntityHandles;
+import game.engine.WorldSnapshot;
+import game.effects.StackingRule;
+import game.effects.StatusEffect;
 import game.logging.LogManager;
+import game.metrics.LatencyHistogram;
+import game.metrics.MetricsRegistry;
+import game.nav.DStarLite;
+import game.nav.DistanceOracle;
+import game.nav.GridAStar;
+import game.nav.HierarchicalPathfinder;
+import game.nav.NavGrid;
+import game.nav.OccupancyLayer;
+import game.nav.Pathfinder;
+import game.persistence.ProfileStore;
+import game.persistence.WorldCheckpoint;
+import game.storage.StorageBackend;
+import game.vision.FogOfWar;
+import game.vision.VisionSystem;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Server-side game world that manages all game state and logic.
@@ -21,45 +49,754 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author Artiom Bondar:332692730
  * @author Shahar Dahan:207336355
  */
-public class ServerGameWorld {
+public class ServerGameWorld implements ZoneNode.Host {
     private final GameServer server;
     private final GameMap map;
-    private final Map<Integer, PlayerCharacter> players = new ConcurrentHashMap<>();
-    private final Map<Integer, Enemy> enemies = new ConcurrentHashMap<>();
+    private final ConcurrentIntObjectMap<PlayerCharacter> players = new ConcurrentIntObjectMap<>();
+    private final ConcurrentIntObjectMap<Enemy> enemies = new ConcurrentIntObjectMap<>();
     private final List<GameItem> items = new CopyOnWriteArrayList<>();
     private ServerCombatManager combatManager;
-    private final AtomicInteger nextEnemyId = new AtomicInteger(1000);
-    private final ScheduledExecutorService enemyScheduler = Executors.newScheduledThreadPool(10);
-    private final Random random = new Random();
-    private final Map<Integer, Boolean> playersUnderAttack = new ConcurrentHashMap<>();
+    // Enemies and items get handles from the lower half of the index space, only on the
+    // tick thread; clients connect at any time and get theirs from the upper half, so a
+    // replayed player id can never be handed to an enemy or item
+    private static final int CLIENT_INDICES = (EntityHandles.MAX_INDEX + 1) / 2;
+    private final EntityHandles handles = new EntityHandles(64, 0, CLIENT_INDICES);
+    private final EntityHandles clientHandles = new EntityHandles(64, CLIENT_INDICES, CLIENT_INDICES);
+    
+    // All randomness in the simulation comes from these streams; -Dgame.seed=<n>
+    // replays a session, otherwise the seed is picked at random and logged
+    private static final Long SEED = Long.getLong("game.seed");
+    private volatile RandomStreams streams;
+    private final IntSet playersUnderAttack = new IntSet();
+    private final AtomicLong currentTick = new AtomicLong();
     private static final int BOARD_SIZE = 15; // Larger for multiplayer
     private static final int MAX_ENEMIES = 20;
     private static final int ENEMY_SPAWN_DELAY = 5000; // 5 seconds
+    public static final int TICK_MILLIS = 100;
+    
+    private static final byte ACTION_MOVE = 1;
+    private static final byte ACTION_ENGAGE = 2;
+    
+    // Where map layers and packed enemy columns live; -Dgame.storage=offheap keeps them
+    // in direct buffers outside the Java heap
+    private static final StorageBackend STORAGE =
+        StorageBackend.named(System.getProperty("game.storage", "heap"));
+    // The sweep reads packed copies of enemy state; set -Dgame.packedEnemies=false
+    // to read it from the Enemy objects instead, for comparison
+    private static final boolean PACKED_ENEMIES =
+        Boolean.parseBoolean(System.getProperty("game.packedEnemies", "true"));
+    private final EnemyStore enemyStore = new EnemyStore(MAX_ENEMIES, STORAGE, PACKED_ENEMIES);
+    
+    // Reusable sweep buffers, only touched by the tick thread
+    private PlayerCharacter[] sweepPlayers = new PlayerCharacter[4];
+    private int[] sweepPlayerRows = new int[4];
+    private int[] sweepPlayerCols = new int[4];
+    private boolean[] sweepPlayerInCombat = new boolean[4];
+    private int[] dueHandles = new int[MAX_ENEMIES];
+    private byte[] dueActions = new byte[MAX_ENEMIES];
+    private int[] dueTargets = new int[MAX_ENEMIES];
+    private int[] dueFromCells = new int[MAX_ENEMIES];
+    private int[] dueGoalCells = new int[MAX_ENEMIES];
+    private int[] dueNextCells = new int[MAX_ENEMIES];
+    private long[] dueOrder = new long[MAX_ENEMIES];
+    private DStarLite[] duePlanners = new DStarLite[MAX_ENEMIES];
+    private boolean[] claimed;
+    
+    // Enemy decisions are computed in parallel once there are more than a batch of them
+    private static final int DECIDE_BATCH = 16;
+    private final ForkJoinPool decidePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private NavGrid navGrid;
+    
+    // Precompute all-pairs paths over the static walls; -Dgame.navOracle=false to search on demand
+    private static final boolean NAV_ORACLE =
+        Boolean.parseBoolean(System.getProperty("game.navOracle", "true"));
+    // Boards with more cells than this search hierarchically instead of with flat A*
+    private static final int HIERARCHICAL_NAV_CELLS = 64 * 64;
+    private static final int NAV_CLUSTER_SIZE = 16;
+    
+    // Per-enemy incremental planners that route around other agents; -Dgame.incrementalPaths=false to disable
+    private static final boolean INCREMENTAL_PATHS =
+        Boolean.parseBoolean(System.getProperty("game.incrementalPaths", "true"));
+    private static final int INCREMENTAL_PATH_MAX_CELLS = 128 * 128;
+    private final ConcurrentIntObjectMap<DStarLite> planners = new ConcurrentIntObjectMap<>();
+    private OccupancyLayer occupancy;
+    private boolean incrementalPaths;
+    
+    // Sight radius in Manhattan steps; walls block line of sight
+    public static final int VISION_RADIUS = 2;
+    private VisionSystem vision;
+    private FogOfWar fog;
+    
+    // Published at the end of every tick for lock-free readers
+    private volatile WorldSnapshot snapshot = WorldSnapshot.empty(BOARD_SIZE);
+    private final Object snapshotLock = new Object();
+    private final WorldSnapshot.Builder snapshotBuilder = new WorldSnapshot.Builder();
+    
+    // Simple class names of items, looked up once per class
+    private static final ClassValue<String> TYPE_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return type.getSimpleName();
+        }
+    };
+    private Pathfinder pathfinder;
+    
+    // Progress of players who left, or who were in the restored checkpoint and
+    // have not rejoined yet, by name; it is carried into every checkpoint
+    private final Map<String, WorldCheckpoint.PlayerRecord> parkedPlayers = new ConcurrentHashMap<>();
+    
+    // Treasure and potions kept across restarts and checkpoints; null when disabled
+    private volatile ProfileStore profiles;
+    
+    // This node's zone when the board is split across processes; null when it runs alone
+    private ZoneNode cluster;
+    // Seed nodes fall back to without -Dgame.seed, so that they all lay out the same walls
+    private static final long CLUSTER_SEED = 0x5EEDL;
+    
+    // Time spent on enemy AI per tick, and on each path query within it
+    private static final LatencyHistogram ENEMY_AI_TIME = MetricsRegistry.global().timer("enemy.ai");
+    private static final LatencyHistogram PATH_TIME = MetricsRegistry.global().timer("path");
     
     /**
      * Creates a new server game world.
      */
     public ServerGameWorld(GameServer server) {
         this.server = server;
-        this.map = new GameMap(BOARD_SIZE);
+        this.map = new GameMap(BOARD_SIZE, STORAGE.newCells(BOARD_SIZE * BOARD_SIZE));
         this.combatManager = new ServerCombatManager(server, this);
+        this.streams = new RandomStreams(SEED != null ? SEED : System.nanoTime());
+    }
+    
+    public RandomStreams getRandomStreams() {
+        return streams;
+    }
+    
+    /**
+     * Runs this world as one zone of a board split across processes. Every
+     * node lays out the same walls from the shared seed and keeps only the
+     * items, enemies and spawns of its own columns. Call before {@link #initialize()}.
+     */
+    public void setCluster(ZoneNode cluster) {
+        this.cluster = cluster;
+        if (SEED == null) {
+            this.streams = new RandomStreams(CLUSTER_SEED);
+        }
+    }
+    
+    public ZoneNode getCluster() {
+        return cluster;
     }
     
     /**
      * Initializes the game world with items and enemies.
      */
     public void initialize() {
+        initialize(null);
+    }
+    
+    /**
+     * Initializes the game world, from a checkpoint if one is given and fits
+     * this board, otherwise with fresh random items and enemies.
+     */
+    public void initialize(WorldCheckpoint restored) {
         LogManager.log("Initializing server game world");
+        if (restored != null && restored.getBoardSize() != BOARD_SIZE) {
+            LogManager.log("Ignoring checkpoint for a " + restored.getBoardSize() + " board");
+            restored = null;
+        }
+        
+        // Continue the random streams where the checkpoint left them
+        if (restored != null && SEED == null && cluster == null) {
+            RandomStreams resumed = new RandomStreams(restored.getSeed());
+            resumed.restoreState(restored.getRandomState());
+            streams = resumed;
+        }
+        LogManager.log("World seed: " + streams.getSeed());
         
         // Place items on the map
-        placeItems();
+        if (restored != null) {
+            currentTick.set(restored.getTick());
+            handles.restoreState(restored.getHandles());
+            restoreItems(restored);
+        } else {
+            placeItems();
+        }
+        
+        // Build the walkability grid from the placed walls
+        navGrid = NavGrid.fromMap(map);
+        pathfinder = createPathfinder(navGrid);
+        claimed = new boolean[navGrid.cellCount()];
+        occupancy = new OccupancyLayer(navGrid.cellCount());
+        incrementalPaths = INCREMENTAL_PATHS && navGrid.cellCount() <= INCREMENTAL_PATH_MAX_CELLS;
+        vision = new VisionSystem(navGrid, VISION_RADIUS);
+        fog = new FogOfWar(BOARD_SIZE);
         
         // Spawn initial enemies
-        spawnInitialEnemies();
+        if (restored != null) {
+            restoreEnemies(restored);
+            for (WorldCheckpoint.PlayerRecord record : restored.getPlayers()) {
+                parkedPlayers.put(record.getName(), record);
+            }
+            restoreOnlinePlayers(restored);
+        } else {
+            spawnInitialEnemies();
+        }
+        publishSnapshot();
+    }
+    
+    /**
+     * Advances the world by one tick and updates time-based effects.
+     * Called every {@link #TICK_MILLIS} by the server's tick pipeline.
+     */
+    public void tick() {
+        try {
+            long now = currentTick.incrementAndGet();
+            for (PlayerCharacter player : players.values()) {
+                updateEffects(player, now);
+            }
+            // Spawning is driven by the tick, not a timer, so it replays in the same order
+            if (now % (ENEMY_SPAWN_DELAY / TICK_MILLIS) == 0) {
+                spawnEnemyIfNeeded();
+            }
+            long sweepStart = System.nanoTime();
+            sweepEnemies(now);
+            ENEMY_AI_TIME.record(System.nanoTime() - sweepStart);
+            combatManager.step(now);
+            if (cluster != null) {
+                handOffStrayEnemies();
+                sendGhosts();
+            }
+        } catch (Exception e) {
+            LogManager.log("Error during world tick: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Captures the current world into a new snapshot and publishes it.
+     * States that did not change since the last snapshot are shared.
+     */
+    public WorldSnapshot publishSnapshot() {
+        synchronized (snapshotLock) {
+            WorldSnapshot.Builder next = snapshotBuilder.begin(snapshot, currentTick.get());
+            for (PlayerCharacter player : players.values()) {
+                next.player(
+                    player.getNetworkId(),
+                    player.getName(),
+                    player.getPosition(),
+                    player.getHealth(),
+                    player.getEffectivePower(),
+                    player.getComponents().getBaseClassName(),
+                    player.getLifePotionCount(),
+                    player.getPowerPotionCount(),
+                    player.getTreasurePoints());
+                next.view(player.getNetworkId(), vision.visibleTo(player.getNetworkId()));
+            }
+            for (Enemy enemy : enemies.values()) {
+                next.enemy(
+                    enemy.getNetworkId(),
+                    enemy.getComponents().getBaseClassName(),
+                    enemy.getPosition(),
+                    enemy.getHealth(),
+                    enemy.isVisible());
+            }
+            for (GameItem item : items) {
+                next.item(item.getId(), TYPE_NAMES.get(item.getClass()), item.getPosition(), item.isVisible());
+            }
+            if (cluster != null) {
+                for (Ghost ghost : cluster.getGhosts()) {
+                    if (ghost.getKind() == Ghost.PLAYER) {
+                        next.player(ghost.localId(), ghost.getName(), ghost.getPosition(), ghost.getHealth(),
+                            ghost.getPower(), ghost.getType(), 0, 0, 0);
+                    } else {
+                        next.enemy(ghost.localId(), ghost.getType(), ghost.getPosition(), ghost.getHealth(), true);
+                    }
+                }
+            }
+            next.anyView(vision.visibleToAny());
+            snapshot = next.build();
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Captures what a restart needs into a checkpoint. Called on the tick thread
+     * between ticks; writing it out is left to the caller.
+     * <p>
+     * The enemies' path planners are dropped here, so that a world restored
+     * from the checkpoint plans from the same, empty, state as this one.
+     */
+    public WorldCheckpoint captureCheckpoint() {
+        planners.clear();
+        
+        List<WorldCheckpoint.PlayerRecord> playerRecords = new ArrayList<>();
+        Set<String> online = new HashSet<>();
+        int[] playerIds = players.keys();
+        Arrays.sort(playerIds); // A stable order for bringing them back in a journal replay
+        List<WorldCheckpoint.OnlineRecord> onlineInOrder = new ArrayList<>(playerIds.length);
+        for (int playerId : playerIds) {
+            PlayerCharacter player = players.get(playerId);
+            if (player == null) continue;
+            online.add(player.getName());
+            List<WorldCheckpoint.EffectRecord> effects = new ArrayList<>();
+            for (StatusEffect effect : player.getEffects().getActive()) {
+                effects.add(new WorldCheckpoint.EffectRecord(effect.getType().name(), effect.getMagnitude(),
+                    effect.getCharges(), effect.getStartTick(), effect.getExpiryTick(), effect.getStacking().name()));
+            }
+            onlineInOrder.add(new WorldCheckpoint.OnlineRecord(player.getName(), playerId, effects));
+            playerRecords.add(recordOf(player));
+        }
+        for (WorldCheckpoint.PlayerRecord parked : parkedPlayers.values()) {
+            if (!online.contains(parked.getName())) {
+                playerRecords.add(parked);
+            }
+        }
         
-        // Schedule enemy spawning
-        enemyScheduler.scheduleAtFixedRate(this::spawnEnemyIfNeeded, 
-            ENEMY_SPAWN_DELAY, ENEMY_SPAWN_DELAY, TimeUnit.MILLISECONDS);
+        // In slot order, which is the order the AI sweep visits them in
+        List<WorldCheckpoint.EnemyRecord> enemyRecords = new ArrayList<>(enemies.size());
+        synchronized (enemyStore) {
+            for (int slot = 0; slot < enemyStore.size(); slot++) {
+                if (!enemyStore.viewAt(slot).isDead()) {
+                    enemyRecords.add(enemyRecordAt(slot));
+                }
+            }
+        }
+        
+        List<WorldCheckpoint.ItemRecord> itemRecords = new ArrayList<>(items.size());
+        for (GameItem item : items) {
+            byte kind;
+            int value = 0;
+            if (item instanceof Wall) {
+                kind = WorldCheckpoint.ITEM_WALL;
+            } else if (item instanceof PowerPotion potion) {
+                kind = WorldCheckpoint.ITEM_POWER_POTION;
+                value = potion.getIncreaseAmount();
+            } else if (item instanceof Potion potion) {
+                kind = WorldCheckpoint.ITEM_POTION;
+                value = potion.getIncreaseAmount();
+            } else if (item instanceof Treasure treasure) {
+                kind = WorldCheckpoint.ITEM_TREASURE;
+                value = treasure.getValue();
+            } else {
+                continue;
+            }
+            Position pos = item.getPosition();
+            itemRecords.add(new WorldCheckpoint.ItemRecord(kind, item.getId(), pos.getRow(), pos.getCol(), value));
+        }
+        return new WorldCheckpoint(currentTick.get(), BOARD_SIZE, playerRecords, enemyRecords, itemRecords,
+            streams.getSeed(), streams.saveState(), onlineInOrder, handles.saveState(),
+            combatManager.captureCombats());
+    }
+    
+    private static WorldCheckpoint.PlayerRecord recordOf(PlayerCharacter player) {
+        return recordOf(player, player.getPosition());
+    }
+    
+    private static WorldCheckpoint.PlayerRecord recordOf(PlayerCharacter player, Position pos) {
+        return new WorldCheckpoint.PlayerRecord(
+            player.getName(), player.getComponents().getBaseClassName(), pos.getRow(), pos.getCol(),
+            player.getHealth(), player.getPower(), traitOf(player), player.getTreasurePoints(),
+            player.getLifePotionStrengths(), player.getPowerPotionStrengths());
+    }
+    
+    /**
+     * Returns the stat a player's class rolls when it is created: a warrior's
+     * defence, an archer's accuracy or the ordinal of a mage's element.
+     */
+    private static double traitOf(PlayerCharacter player) {
+        if (player instanceof Warrior warrior) {
+            return warrior.getDefence();
+        }
+        if (player instanceof Archer archer) {
+            return archer.getAccuracy();
+        }
+        if (player instanceof Mage mage) {
+            return mage.getElement().ordinal();
+        }
+        return 0;
+    }
+    
+    /**
+     * Records the enemy in a store slot, schedule included. The caller holds the store's monitor.
+     */
+    private WorldCheckpoint.EnemyRecord enemyRecordAt(int slot) {
+        Enemy enemy = enemyStore.viewAt(slot);
+        Position pos = enemy.getPosition();
+        return new WorldCheckpoint.EnemyRecord(enemy.getComponents().getBaseClassName(),
+            pos.getRow(), pos.getCol(), enemy.getHealth(), enemy.getPower(), enemy.getLoot(),
+            EnemyFactory.traitOf(enemy), enemyStore.handleAt(slot), enemyStore.aiStateAt(slot),
+            enemyStore.intervalAt(slot), enemyStore.nextActionTickAt(slot));
+    }
+    
+    private void restoreItems(WorldCheckpoint restored) {
+        for (WorldCheckpoint.ItemRecord record : restored.getItems()) {
+            Position pos = new Position(record.getRow(), record.getCol());
+            if (!map.isValidPosition(pos)) continue;
+            GameItem item = switch (record.getKind()) {
+                case WorldCheckpoint.ITEM_WALL -> new Wall(pos);
+                case WorldCheckpoint.ITEM_POTION -> new Potion(pos, record.getValue());
+                case WorldCheckpoint.ITEM_POWER_POTION -> new PowerPotion(pos, record.getValue());
+                case WorldCheckpoint.ITEM_TREASURE -> new Treasure(pos, true, record.getValue());
+                default -> null;
+            };
+            if (item != null) {
+                item.setId(record.getId());
+                items.add(item);
+                map.addEntity(pos, item);
+            }
+        }
+    }
+    
+    /**
+     * Puts the enemies back under their handles, with their AI schedules and in
+     * their sweep order. Their handles are already taken in the restored allocator.
+     */
+    private void restoreEnemies(WorldCheckpoint restored) {
+        for (WorldCheckpoint.EnemyRecord record : restored.getEnemies()) {
+            Position pos = new Position(record.getRow(), record.getCol());
+            if (!map.isValidPosition(pos) || map.isWall(pos)) continue;
+            Enemy enemy = EnemyFactory.createEnemy(record.getType(), pos,
+                record.getHealth(), record.getPower(), record.getLoot(), record.getTrait(), streams);
+            if (enemy == null) continue;
+            enemy.resolveComponents();
+            enemy.setNetworkId(record.getHandle());
+            enemies.put(record.getHandle(), enemy);
+            map.addEntity(pos, enemy);
+            enemyStore.add(enemy, record.getNextActionTick(), record.getInterval());
+            enemyStore.setAiState(record.getHandle(), record.getAiState());
+        }
+    }
+    
+    /**
+     * Puts the players who were online back into the world under their ids,
+     * with their stats and effects as they were, then their combats.
+     * They have no clients; the server parks them once it no longer needs them.
+     */
+    private void restoreOnlinePlayers(WorldCheckpoint restored) {
+        for (WorldCheckpoint.OnlineRecord online : restored.getOnline()) {
+            WorldCheckpoint.PlayerRecord saved = parkedPlayers.remove(online.getName());
+            if (saved == null) continue;
+            Position pos = new Position(saved.getRow(), saved.getCol());
+            double trait = saved.getTrait();
+            PlayerCharacter player = switch (saved.getCharacterClass()) {
+                case "Mage" -> new Mage(saved.getName(), pos, saved.getPower(),
+                    MagicElement.values()[(int) trait], streams);
+                case "Archer" -> new Archer(saved.getName(), pos, saved.getPower(), trait, streams);
+                default -> new Warrior(saved.getName(), pos, saved.getPower(), (int) trait, streams);
+            };
+            player.setNetworkId(online.getPlayerId());
+            player.setHealth(saved.getHealth());
+            player.updateTreasurePoint(saved.getTreasure());
+            restorePotions(player, saved.getLifePotions(), saved.getPowerPotions());
+            for (WorldCheckpoint.EffectRecord effect : online.getEffects()) {
+                player.getEffects().apply(new StatusEffect(EffectType.valueOf(effect.getType()),
+                    effect.getMagnitude(), effect.getCharges(), effect.getStartTick(), effect.getExpiryTick(),
+                    StackingRule.valueOf(effect.getStacking())));
+            }
+            enterWorld(player, pos);
+        }
+        for (WorldCheckpoint.CombatRecord combat : restored.getCombats()) {
+            PlayerCharacter player = players.get(combat.getPlayerId());
+            Enemy enemy = enemies.get(combat.getEnemyHandle());
+            if (player != null && enemy != null) {
+                combatManager.restoreCombat(player, enemy, combat.isPlayerTurn(), combat.getNextTurnTick());
+            }
+        }
+    }
+    
+    /**
+     * Parks every player in the world, as when they leave. At startup nobody
+     * is connected, so the players restored for a journal replay wait for their clients.
+     */
+    public synchronized void parkAllPlayers() {
+        int[] playerIds = players.keys();
+        Arrays.sort(playerIds);
+        for (int playerId : playerIds) {
+            removePlayer(playerId);
+        }
+    }
+    
+    /**
+     * Returns the world as of the end of the last tick. Safe to read from any thread.
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Picks the pathfinder for the board: the precomputed oracle when it fits,
+     * otherwise flat A* on small boards and hierarchical search on large ones.
+     */
+    private static Pathfinder createPathfinder(NavGrid grid) {
+        Pathfinder onDemand = grid.cellCount() > HIERARCHICAL_NAV_CELLS
+            ? new HierarchicalPathfinder(grid, NAV_CLUSTER_SIZE)
+            : new GridAStar(grid);
+        return NAV_ORACLE ? DistanceOracle.create(grid, onDemand) : onDemand;
+    }
+    
+    /**
+     * Runs the AI of every enemy whose next action is due.
+     * The sweep has three phases: due enemies and cell occupancy are frozen
+     * under the store lock, next steps are decided in parallel against that
+     * frozen view, and the results are applied serially in handle order so
+     * the outcome does not depend on thread scheduling.
+     */
+    private void sweepEnemies(long now) {
+        int playerCount = capturePlayers();
+        if (playerCount == 0) {
+            return;
+        }
+        
+        int due = freezeDueEnemies(now, playerCount);
+        if (due == 0) {
+            return;
+        }
+        
+        if (due > DECIDE_BATCH) {
+            decidePool.invoke(new DecideTask(0, due));
+        } else {
+            decideMoves(0, due);
+        }
+        
+        applyDecisions(due);
+    }
+    
+    /**
+     * Picks the enemies whose action is due and snapshots which cells are taken.
+     * 
+     * @return The number of enemies with an action to decide
+     */
+    private int freezeDueEnemies(long now, int playerCount) {
+        int due = 0;
+        synchronized (enemyStore) {
+            int count = enemyStore.size();
+            if (dueHandles.length < count) {
+                dueHandles = new int[count];
+                dueActions = new byte[count];
+                dueTargets = new int[count];
+                dueFromCells = new int[count];
+                dueGoalCells = new int[count];
+                dueNextCells = new int[count];
+                dueOrder = new long[count];
+                duePlanners = new DStarLite[count];
+            }
+            
+            Arrays.fill(claimed, false);
+            for (int slot = 0; slot < count; slot++) {
+                claimed[navGrid.cellOf(enemyStore.rowAt(slot), enemyStore.colAt(slot))] = true;
+            }
+            for (int p = 0; p < playerCount; p++) {
+                claimed[navGrid.cellOf(sweepPlayerRows[p], sweepPlayerCols[p])] = true;
+            }
+            if (incrementalPaths) {
+                occupancy.update(claimed);
+            }
+            
+            for (int slot = 0; slot < count; slot++) {
+                if (enemyStore.nextActionTickAt(slot) > now) continue;
+                enemyStore.scheduleNextAt(slot, now);
+                if (enemyStore.aiStateAt(slot) == EnemyStore.AI_COMBAT) continue;
+                
+                // Find nearest player; ties go to the lowest id, whatever the map's iteration order
+                int row = enemyStore.rowAt(slot);
+                int col = enemyStore.colAt(slot);
+                int nearest = -1;
+                int distance = Integer.MAX_VALUE;
+                for (int p = 0; p < playerCount; p++) {
+                    int d = Math.abs(sweepPlayerRows[p] - row) + Math.abs(sweepPlayerCols[p] - col);
+                    if (d < distance || d == distance
+                            && sweepPlayers[p].getNetworkId() < sweepPlayers[nearest].getNetworkId()) {
+                        distance = d;
+                        nearest = p;
+                    }
+                }
+                
+                // Activate if any player can see this enemy
+                boolean active = vision.isVisibleToAny(navGrid.cellOf(row, col));
+                enemyStore.setAiStateAt(slot, active ? EnemyStore.AI_ACTIVE : EnemyStore.AI_IDLE);
+                if (!active || sweepPlayerInCombat[nearest]) continue;
+                
+                int handle = enemyStore.handleAt(slot);
+                dueHandles[due] = handle;
+                dueActions[due] = distance <= 1 ? ACTION_ENGAGE : ACTION_MOVE;
+                dueTargets[due] = nearest;
+                dueFromCells[due] = navGrid.cellOf(row, col);
+                dueGoalCells[due] = navGrid.cellOf(sweepPlayerRows[nearest], sweepPlayerCols[nearest]);
+                dueNextCells[due] = Pathfinder.NO_STEP;
+                dueOrder[due] = ((long) handle << 32) | due;
+                duePlanners[due] = incrementalPaths && distance > 1 ? plannerFor(handle) : null;
+                due++;
+            }
+        }
+        return due;
+    }
+    
+    /**
+     * Computes the next step of each moving enemy in a range. Read-only apart
+     * from the range's own entries in dueNextCells, so ranges can run in parallel.
+     */
+    private void decideMoves(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (dueActions[i] != ACTION_MOVE) continue;
+            DStarLite planner = duePlanners[i];
+            long start = System.nanoTime();
+            dueNextCells[i] = planner != null
+                ? planner.nextStep(dueFromCells[i], dueGoalCells[i])
+                : pathfinder.nextStep(dueFromCells[i], dueGoalCells[i]);
+            PATH_TIME.record(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Returns the incremental planner of an enemy, creating it on first use.
+     */
+    private DStarLite plannerFor(int handle) {
+        DStarLite planner = planners.get(handle);
+        if (planner == null) {
+            planner = new DStarLite(navGrid, occupancy);
+            planners.put(handle, planner);
+        }
+        return planner;
+    }
+    
+    /**
+     * Splits the decide phase into batches for the fork/join pool.
+     */
+    private class DecideTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        
+        DecideTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= DECIDE_BATCH) {
+                decideMoves(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DecideTask(from, mid), new DecideTask(mid, to));
+            }
+        }
+    }
+    
+    /**
+     * Applies the decided actions in ascending handle order. When two enemies
+     * chose the same cell, the first one in that order takes it and the other waits.
+     */
+    private void applyDecisions(int due) {
+        Arrays.sort(dueOrder, 0, due);
+        for (int k = 0; k < due; k++) {
+            int i = (int) dueOrder[k];
+            duePlanners[i] = null;
+            Enemy enemy = enemyStore.view(dueHandles[i]);
+            if (enemy == null || enemy.isDead()) continue;
+            
+            PlayerCharacter target = sweepPlayers[dueTargets[i]];
+            if (dueActions[i] == ACTION_ENGAGE) {
+                combatManager.startCombat(target, enemy);
+                continue;
+            }
+            
+            int next = dueNextCells[i];
+            if (next == Pathfinder.NO_STEP || claimed[next]) continue;
+            
+            // Players keep moving during the tick, so the move rechecks the live map
+            if (!relocateEnemy(enemy, navGrid.positionOf(next))) continue;
+            
+            claimed[dueFromCells[i]] = false;
+            claimed[next] = true;
+        }
+    }
+    
+    /**
+     * Copies player positions and combat flags into the reusable sweep buffers.
+     * 
+     * @return The number of players captured
+     */
+    private int capturePlayers() {
+        int n = 0;
+        for (PlayerCharacter player : players.values()) {
+            if (n == sweepPlayers.length) {
+                int capacity = n * 2;
+                sweepPlayers = Arrays.copyOf(sweepPlayers, capacity);
+                sweepPlayerRows = Arrays.copyOf(sweepPlayerRows, capacity);
+                sweepPlayerCols = Arrays.copyOf(sweepPlayerCols, capacity);
+                sweepPlayerInCombat = Arrays.copyOf(sweepPlayerInCombat, capacity);
+            }
+            Position pos = player.getPosition();
+            sweepPlayers[n] = player;
+            sweepPlayerRows[n] = pos.getRow();
+            sweepPlayerCols[n] = pos.getCol();
+            sweepPlayerInCombat[n] = combatManager.isPlayerInCombat(player.getNetworkId());
+            vision.refresh(player.getNetworkId(), navGrid.cellOf(pos));
+            n++;
+        }
+        for (int i = n; i < sweepPlayers.length && sweepPlayers[i] != null; i++) {
+            sweepPlayers[i] = null;
+        }
+        return n;
+    }
+    
+    /**
+     * Marks an enemy as engaged in (or released from) a combat session,
+     * so the AI sweep leaves it alone.
+     */
+    public void setEnemyInCombat(Enemy enemy, boolean inCombat) {
+        enemyStore.setAiState(enemy.getNetworkId(), inCombat ? EnemyStore.AI_COMBAT : EnemyStore.AI_IDLE);
+    }
+    
+    /**
+     * Copies an enemy's health into the packed store after it took damage.
+     */
+    public void syncEnemyHealth(Enemy enemy) {
+        enemyStore.setHealth(enemy.getNetworkId(), enemy.getHealth());
+    }
+    
+    /**
+     * Applies regeneration and removes expired effects for a single player.
+     */
+    private void updateEffects(PlayerCharacter player, long now) {
+        if (player.getEffects().isEmpty()) {
+            return;
+        }
+        
+        int heal = player.getEffects().regenerationAt(now);
+        if (heal > 0 && !player.isDead()) {
+            player.heal(heal);
+        }
+        
+        for (StatusEffect expired : player.getEffects().removeExpired(now)) {
+            sendEffectEvent(player, MessageType.EFFECT_EXPIRED, expired);
+            LogManager.log("Removed " + expired.getType() + " from player " + player.getNetworkId());
+        }
+    }
+    
+    /**
+     * Sends a small effect event to the player that owns the effect.
+     */
+    private void sendEffectEvent(PlayerCharacter player, MessageType type, StatusEffect effect) {
+        GameMessage effectMsg = new GameMessage(type);
+        effectMsg.setPlayerId(player.getNetworkId());
+        effectMsg.setMessage(effect.getType().name());
+        effectMsg.setHealth(player.getHealth());
+        effectMsg.setPower(player.getEffectivePower());
+        
+        ClientHandler handler = server.getClient(player.getNetworkId());
+        if (handler != null) {
+            handler.sendMessage(effectMsg);
+        }
+    }
+    
+    /**
+     * Returns the current world tick.
+     */
+    public long getCurrentTick() {
+        return currentTick.get();
     }
     
     /**
@@ -69,12 +806,22 @@ public class ServerGameWorld {
         int itemCount = BOARD_SIZE * BOARD_SIZE / 10; // 10% of tiles
         
         for (int i = 0; i < itemCount; i++) {
-            Position pos = getRandomFreePosition();
+            Position pos = getRandomFreePosition(0, BOARD_SIZE);
             if (pos != null) {
                 GameItem item = createRandomItem(pos);
                 if (item != null) {
-                    items.add(item);
-                    map.addEntity(pos, item);
+                    addItem(item);
+                }
+            }
+        }
+        
+        // Every node keeps all walls, so paths and sight match across borders,
+        // but only the potions of its own zone
+        if (cluster != null) {
+            for (GameItem item : items) {
+                if (!(item instanceof Wall) && !cluster.owns(item.getPosition())) {
+                    map.removeEntity(item.getPosition(), item);
+                    removeItem(item);
                 }
             }
         }
@@ -82,11 +829,19 @@ public class ServerGameWorld {
     
     
     private boolean isPlayerUnderAttack(PlayerCharacter player) {
-        return playersUnderAttack.getOrDefault(player.getNetworkId(), false);
+        synchronized (playersUnderAttack) {
+            return playersUnderAttack.contains(player.getNetworkId());
+        }
     }
 
     private void markPlayerUnderAttack(PlayerCharacter player, boolean underAttack) {
-        playersUnderAttack.put(player.getNetworkId(), underAttack);
+        synchronized (playersUnderAttack) {
+            if (underAttack) {
+                playersUnderAttack.add(player.getNetworkId());
+            } else {
+                playersUnderAttack.remove(player.getNetworkId());
+            }
+        }
     }
     
     
@@ -95,20 +850,10 @@ public class ServerGameWorld {
      * Handles special decorator behaviors after enemy death.
      */
     private void handleEnemyDeathSpecial(Enemy enemy) {
-        // Check for ExplodingEnemyDecorator
-        if (enemy instanceof ExplodingEnemyDecorator explodingEnemy) {
+        ExplodingEnemyDecorator explodingEnemy = enemy.getComponents().getExploding();
+        if (explodingEnemy != null) {
             handleExplosion(explodingEnemy);
         }
-        
-        // Recursively check wrapped enemies
-        Enemy current = enemy;
-        while (current instanceof EnemyDecorator) {
-            EnemyDecorator decorator = (EnemyDecorator) current;
-            if (decorator instanceof ExplodingEnemyDecorator) {
-                handleExplosion((ExplodingEnemyDecorator) decorator);
-            }
-            current = decorator.getWrapped();
-        }
     }
 
     /**
@@ -125,7 +870,7 @@ public class ServerGameWorld {
         for (PlayerCharacter player : players.values()) {
             int distance = GameMap.calcDistance(player.getPosition(), explosionPos);
             if (distance <= explosionRange) {
-                player.receiveDamage(explosionDamage, explodingEnemy);
+                ServerCombatSystem.deliverDamage(player, explosionDamage, explodingEnemy);
                 
                 // Send damage event only to affected player
                 GameMessage damageMsg = new GameMessage(MessageType.DAMAGE_DEALT);
@@ -151,35 +896,16 @@ public class ServerGameWorld {
      * Call this after any damage is dealt to an enemy.
      */
     private void checkAndHandleTeleport(Enemy enemy) {
-        // Check if enemy has teleporting decorator
-        Enemy current = enemy;
-        TeleportingEnemyDecorator teleporter = null;
-        
-        // Check if enemy itself is a teleporting decorator
-        if (current instanceof TeleportingEnemyDecorator) {
-            teleporter = (TeleportingEnemyDecorator) current;
-        } else {
-            // Check wrapped enemies
-            while (current instanceof EnemyDecorator) {
-                EnemyDecorator decorator = (EnemyDecorator) current;
-                if (decorator instanceof TeleportingEnemyDecorator) {
-                    teleporter = (TeleportingEnemyDecorator) decorator;
-                    break;
-                }
-                current = decorator.getWrapped();
-            }
-        }
+        TeleportingEnemyDecorator teleporter = enemy.getComponents().getTeleporter();
         
         // Handle teleportation if needed
         if (teleporter != null && teleporter.shouldTeleport()) {
             Position oldPos = enemy.getPosition();
             Position newPos = getRandomFreePosition();
             
-            if (newPos != null) {
-                // Teleport the enemy
-                map.removeEntity(oldPos, enemy);
-                enemy.setPosition(newPos);
-                map.addEntity(newPos, enemy);
+            if (newPos != null && map.moveEntity(enemy, oldPos, newPos, ServerGameWorld::blocksMovement)) {
+                // Teleported
+                enemyStore.setPosition(enemy.getNetworkId(), newPos);
                 
                 // Reset teleport flag
                 teleporter.resetTeleportFlag();
@@ -188,7 +914,7 @@ public class ServerGameWorld {
                 GameMessage teleportMsg = new GameMessage(MessageType.ENEMY_UPDATE);
                 teleportMsg.setPlayerId(enemy.getNetworkId());
                 teleportMsg.setPosition(newPos);
-                server.broadcastMessage(teleportMsg);
+                sendToViewers(teleportMsg, oldPos, newPos);
                 
                 // Log the teleportation
                 LogManager.log("Enemy teleported from " + oldPos + " to " + newPos);
@@ -204,14 +930,14 @@ public class ServerGameWorld {
      * Creates a random item at the given position.
      */
     private GameItem createRandomItem(Position pos) {
-        int chance = random.nextInt(100);
+        int chance = streams.get(RandomStreams.Stream.LOOT).nextInt(100);
         
         if (chance < 30) {
             return new Wall(pos);
         } else if (chance < 65) {
-            return new Potion(pos);
+            return new Potion(pos, streams);
         } else {
-            return new PowerPotion(pos);
+            return new PowerPotion(pos, streams);
         }
     }
     
@@ -242,124 +968,69 @@ public class ServerGameWorld {
     private void spawnEnemy() {
         Position pos = getRandomFreePosition();
         if (pos != null) {
-            Enemy enemy = EnemyFactory.createRandomEnemy(pos);
-            
-            int enemyId = nextEnemyId.getAndIncrement();
-            enemy.setNetworkId(enemyId);
-            
-            enemies.put(enemyId, enemy);
-            map.addEntity(pos, enemy);
-            
-            // Start enemy AI
-            startEnemyAI(enemy);
-            
-            LogManager.log("Spawned " + enemy.getClass().getSimpleName() + " at " + pos);
+            Enemy enemy = EnemyFactory.createRandomEnemy(pos, streams);
+            registerEnemy(enemy);
+            LogManager.log("Spawned " + enemy.getComponents() + " at " + pos);
         }
     }
     
     /**
-     * Starts the AI for an enemy.
+     * Gives an enemy a handle, places it and starts its AI.
      */
-    private void startEnemyAI(Enemy enemy) {
-        enemyScheduler.scheduleAtFixedRate(() -> {
-            if (!enemy.isDead() && enemies.containsKey(enemy.getNetworkId())) {
-                updateEnemy(enemy);
-            }
-        }, 1000, 500 + random.nextInt(1000), TimeUnit.MILLISECONDS);
+    private void registerEnemy(Enemy enemy) {
+        enemy.resolveComponents();
+        
+        int enemyId = handles.allocate();
+        enemy.setNetworkId(enemyId);
+        
+        enemies.put(enemyId, enemy);
+        map.addEntity(enemy.getPosition(), enemy);
+        
+        // Start enemy AI
+        int interval = (500 + streams.get(RandomStreams.Stream.AI).nextInt(1000)) / TICK_MILLIS;
+        long firstAction = currentTick.get() + 1000 / TICK_MILLIS;
+        enemyStore.add(enemy, firstAction, interval);
     }
     
     /**
-     * Updates a single enemy's behavior.
+     * Checks whether an entity keeps others out of its cell.
      */
-    private void updateEnemy(Enemy enemy) {
-        if (enemy.isDead()) {
-            handleEnemyDeath(enemy);
-            return;
-        }
-        
-        // Check if this enemy is in combat
-        for (PlayerCharacter player : players.values()) {
-            Enemy opponent = combatManager.getCombatOpponent(player.getNetworkId());
-            if (opponent == enemy) {
-                // This enemy is in combat, skip normal AI
-                return;
-            }
-        }
-        
-        if (players.isEmpty()) return;
-        
-        // Find nearest player
-        PlayerCharacter nearestPlayer = findNearestPlayer(enemy.getPosition());
-        if (nearestPlayer == null) return;
-        
-        int distance = GameMap.calcDistance(enemy.getPosition(), nearestPlayer.getPosition());
-        
-        // Activate if player is nearby
-        enemy.onPlayerMoved(nearestPlayer.getPosition());
-        
-        if (enemy.isActive()) {
-            // Check if player is already in combat
-            if (combatManager.isPlayerInCombat(nearestPlayer.getNetworkId())) {
-                // Don't attack a player who's already fighting
-                return;
-            }
-            
-            if (distance <= 1) {
-                // Initiate combat
-                combatManager.startCombat(nearestPlayer, enemy);
-            } else if (distance <= 5) {
-                // Move towards player
-                moveEnemyTowards(enemy, nearestPlayer.getPosition());
-            }
-        }
+    private static boolean blocksMovement(GameEntity entity) {
+        return entity instanceof Wall || entity instanceof PlayerCharacter || entity instanceof Enemy;
     }
     
     /**
-     * Finds the nearest player to a position.
+     * Moves an enemy one step, unless the cell got blocked, and tells the clients.
+     * 
+     * @return false if the cell was blocked
      */
-    private PlayerCharacter findNearestPlayer(Position pos) {
-        PlayerCharacter nearest = null;
-        int minDistance = Integer.MAX_VALUE;
-        
-        for (PlayerCharacter player : players.values()) {
-            int distance = GameMap.calcDistance(pos, player.getPosition());
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = player;
-            }
+    private boolean relocateEnemy(Enemy enemy, Position nextPos) {
+        Position oldPos = enemy.getPosition();
+        if (!map.moveEntity(enemy, oldPos, nextPos, ServerGameWorld::blocksMovement)) {
+            return false;
         }
+        enemyStore.setPosition(enemy.getNetworkId(), nextPos);
         
-        return nearest;
+        // Send position update to clients
+        GameMessage updateMsg = new GameMessage(MessageType.ENEMY_UPDATE);
+        updateMsg.setPlayerId(enemy.getNetworkId()); // Using playerId field for enemy ID
+        updateMsg.setPosition(nextPos);
+        sendToViewers(updateMsg, oldPos, nextPos);
+        return true;
     }
     
     /**
-     * Moves an enemy towards a target position.
+     * Sends a message only to the players who can see either position.
      */
-    private void moveEnemyTowards(Enemy enemy, Position target) {
-        // Use Enemy's static pathfinding method
-        List<Position> path = Enemy.findPath(map, enemy.getPosition(), target);
-        
-        if (path != null && path.size() > 1) {
-            Position nextPos = path.get(1);
-            
-            // Check if position is free
-            List<GameEntity> entities = map.getEntitiesAt(nextPos);
-            boolean blocked = entities.stream().anyMatch(e -> 
-                e instanceof Wall || e instanceof PlayerCharacter || e instanceof Enemy);
-                
-            if (!blocked) {
-                Position oldPos = enemy.getPosition();
-                map.removeEntity(oldPos, enemy);
-                enemy.setPosition(nextPos);
-                map.addEntity(nextPos, enemy);
-                
-                // Send position update to clients
-                GameMessage updateMsg = new GameMessage(MessageType.ENEMY_UPDATE);
-                updateMsg.setPlayerId(enemy.getNetworkId()); // Using playerId field for enemy ID
-                updateMsg.setPosition(nextPos);
-                server.broadcastMessage(updateMsg);
+    private void sendToViewers(GameMessage message, Position from, Position to) {
+        players.forEach((playerId, player) -> {
+            if (isVisibleToPlayer(playerId, from) || isVisibleToPlayer(playerId, to)) {
+                ClientHandler handler = server.getClient(playerId);
+                if (handler != null) {
+                    handler.sendMessage(message);
+                }
             }
-        }
+        });
     }
     
     /**
@@ -407,26 +1078,133 @@ public class ServerGameWorld {
     /**
      * Adds a new player to the game.
      */
-    public synchronized void addPlayer(PlayerCharacter player) {
-        Position pos = getRandomFreePosition();
+    public void addPlayer(PlayerCharacter player) {
+        addPlayer(player, null);
+    }
+    
+    /**
+     * Adds a player with their stored profile. Progress parked in this world
+     * is newer than the profile and takes precedence over it.
+     */
+    public synchronized void addPlayer(PlayerCharacter player, ProfileStore.Profile profile) {
+        WorldCheckpoint.PlayerRecord saved = parkedPlayers.remove(player.getName());
+        Position pos = saved != null ? savedPosition(saved) : getRandomFreePosition();
         if (pos != null) {
-            player.setPosition(pos);
-            player.setVisible(true);
+            if (saved != null) {
+                restoreProgress(player, saved);
+            } else if (profile != null) {
+                restoreProfile(player, profile);
+            }
+            enterWorld(player, pos);
             
-            players.put(player.getNetworkId(), player);
-            map.addEntity(pos, player);
+            publishSnapshot();
             
             LogManager.log("Player " + player.getName() + " joined at " + pos);
         }
     }
     
+    /**
+     * Places a player on the map and starts tracking them.
+     */
+    private void enterWorld(PlayerCharacter player, Position pos) {
+        player.setPosition(pos);
+        player.setVisible(true);
+        player.resolveComponents();
+        
+        players.put(player.getNetworkId(), player);
+        map.addEntity(pos, player);
+        vision.refresh(player.getNetworkId(), navGrid.cellOf(pos));
+    }
+    
+    /**
+     * Returns the class a player had when their progress was parked, or null if it was not.
+     */
+    public String getSavedCharacterClass(String name) {
+        WorldCheckpoint.PlayerRecord saved = parkedPlayers.get(name);
+        return saved != null ? saved.getCharacterClass() : null;
+    }
+    
+    /**
+     * Returns where a returning player stood, or a random free cell if that one is taken.
+     */
+    private Position savedPosition(WorldCheckpoint.PlayerRecord saved) {
+        Position pos = new Position(saved.getRow(), saved.getCol());
+        return map.isValidPosition(pos) && map.getEntityCount(pos) == 0 ? pos : getRandomFreePosition();
+    }
+    
+    private void restoreProgress(PlayerCharacter player, WorldCheckpoint.PlayerRecord saved) {
+        player.setHealth(saved.getHealth() > 0 ? saved.getHealth() : 100);
+        player.setPower(saved.getPower());
+        player.updateTreasurePoint(saved.getTreasure() - player.getTreasurePoints());
+        restorePotions(player, saved.getLifePotions(), saved.getPowerPotions());
+        LogManager.log("Restored saved progress of " + player.getName());
+    }
+    
+    private void restoreProfile(PlayerCharacter player, ProfileStore.Profile profile) {
+        player.updateTreasurePoint(profile.getTreasure() - player.getTreasurePoints());
+        restorePotions(player, profile.getLifePotions(), profile.getPowerPotions());
+        LogManager.log("Loaded profile of " + player.getName());
+    }
+    
+    /**
+     * Gives a player back potions of the saved strengths; nothing is drawn
+     * from the world's streams, so a restore does not shift later rolls.
+     */
+    private static void restorePotions(PlayerCharacter player, int[] lifePotions, int[] powerPotions) {
+        for (int strength : lifePotions) {
+            player.addToInventory(new Potion(player.getPosition(), strength));
+        }
+        for (int strength : powerPotions) {
+            player.addToInventory(new PowerPotion(player.getPosition(), strength));
+        }
+    }
+    
+    public void setProfileStore(ProfileStore profiles) {
+        this.profiles = profiles;
+    }
+    
+    /**
+     * Hands a player's current treasure and potions to the profile store,
+     * which writes them out in the background if they changed.
+     */
+    public void saveProfile(int playerId) {
+        PlayerCharacter player = players.get(playerId);
+        if (player != null) {
+            saveProfile(player);
+        }
+    }
+    
+    /**
+     * Saves the profiles of everyone online, e.g. before shutting down.
+     */
+    public void saveProfiles() {
+        for (PlayerCharacter player : players.values()) {
+            saveProfile(player);
+        }
+    }
+    
+    private void saveProfile(PlayerCharacter player) {
+        ProfileStore store = profiles;
+        if (store != null) {
+            store.save(new ProfileStore.Profile(player.getName(), player.getComponents().getBaseClassName(),
+                player.getTreasurePoints(), player.getLifePotionStrengths(), player.getPowerPotionStrengths()));
+        }
+    }
+    
     /**
      * Removes a player from the game.
      */
     public synchronized PlayerCharacter removePlayer(int playerId) {
         PlayerCharacter player = players.remove(playerId);
         if (player != null) {
+            // A combat would go on against a player who is no longer in the world
+            combatManager.endCombat(playerId);
+            parkedPlayers.put(player.getName(), recordOf(player));
+            saveProfile(player);
             map.removeEntity(player.getPosition(), player);
+            vision.remove(playerId);
+            fog.remove(playerId);
+            publishSnapshot();
             LogManager.log("Player " + player.getName() + " removed from game");
         }
         return player;
@@ -454,23 +1232,17 @@ public class ServerGameWorld {
             return false;
         }
         
-        // Check for obstacles
-        List<GameEntity> entities = map.getEntitiesAt(newPos);
-        for (GameEntity entity : entities) {
-            if (entity instanceof Wall) {
-                return false;
-            }
-            if (entity instanceof Enemy) {
-                // Don't move into enemy space, initiate combat instead
-                return false;
-            }
+        // Check for obstacles; don't move into enemy space, initiate combat instead
+        if (blocksPlayer(newPos)) {
+            return false;
         }
         
-        // Move is valid
-        Position oldPos = player.getPosition();
-        map.removeEntity(oldPos, player);
-        player.setPosition(newPos);
-        map.addEntity(newPos, player);
+        // Move is valid; an enemy may still step in first
+        if (!map.moveEntity(player, player.getPosition(), newPos,
+                e -> e instanceof Wall || e instanceof Enemy)) {
+            return false;
+        }
+        vision.refresh(player.getNetworkId(), navGrid.cellOf(newPos));
         
         // Handle item interactions
         handleItemInteractions(player, newPos);
@@ -478,6 +1250,18 @@ public class ServerGameWorld {
         return true;
     }
     
+    /**
+     * Whether a wall or an enemy stands on a cell, so a player cannot step there.
+     */
+    private boolean blocksPlayer(Position pos) {
+        for (GameEntity entity : map.getEntitiesAt(pos)) {
+            if (entity instanceof Wall || entity instanceof Enemy) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private void sendDamageEvent(Position pos, int damage, boolean isCrit) {
         GameMessage damageMsg = new GameMessage(MessageType.DAMAGE_DEALT);
         damageMsg.setPosition(pos);
@@ -548,6 +1332,8 @@ public class ServerGameWorld {
             }
         }
         
+        syncEnemyHealth(enemy);
+        
         // Handle deaths
         if (enemy.isDead()) {
             handleEnemyDeath(enemy);
@@ -568,7 +1354,7 @@ public class ServerGameWorld {
             if (entity instanceof Potion potion && !potion.getIsUsed()) {
                 potion.interact(player);
                 map.removeEntity(pos, potion);
-                items.remove(potion);
+                removeItem(potion);
                 
                 LogManager.log(player.getName() + " used a potion");
                 
@@ -578,7 +1364,7 @@ public class ServerGameWorld {
             } else if (entity instanceof PowerPotion powerPotion && !powerPotion.getIsUsed()) {
                 powerPotion.interact(player);
                 map.removeEntity(pos, powerPotion);
-                items.remove(powerPotion);
+                removeItem(powerPotion);
                 
                 LogManager.log(player.getName() + " used a power potion");
                 
@@ -588,7 +1374,7 @@ public class ServerGameWorld {
             } else if (entity instanceof Treasure treasure) {
                 treasure.interact(player);
                 map.removeEntity(pos, treasure);
-                items.remove(treasure);
+                removeItem(treasure);
                 
                 LogManager.log(player.getName() + " collected treasure");
                 
@@ -598,6 +1384,24 @@ public class ServerGameWorld {
         }
     }
     
+    /**
+     * Gives an item a handle and places it on the map.
+     */
+    private void addItem(GameItem item) {
+        item.setId(handles.allocate());
+        items.add(item);
+        map.addEntity(item.getPosition(), item);
+    }
+    
+    /**
+     * Removes an item from the world and releases its handle.
+     */
+    private void removeItem(GameItem item) {
+        if (items.remove(item)) {
+            handles.release(item.getId());
+        }
+    }
+    
     private void sendItemCollectedMessage(int playerId, String itemType) {
         GameMessage itemMsg = new GameMessage(MessageType.ITEM_COLLECTED);
         itemMsg.setPlayerId(playerId);
@@ -618,12 +1422,14 @@ public class ServerGameWorld {
         
         // Then proceed with normal death handling
         enemies.remove(enemy.getNetworkId());
+        enemyStore.remove(enemy.getNetworkId());
+        planners.remove(enemy.getNetworkId());
+        handles.release(enemy.getNetworkId());
         map.removeEntity(enemy.getPosition(), enemy);
         
         Position pos = enemy.getPosition();
         Treasure treasure = new Treasure(pos, true, enemy.getLoot());
-        items.add(treasure);
-        map.addEntity(pos, treasure);
+        addItem(treasure);
         
         LogManager.log("Enemy " + enemy.getClass().getSimpleName() + " defeated, dropped treasure worth " + enemy.getLoot());
         
@@ -632,6 +1438,206 @@ public class ServerGameWorld {
         }
     }
     
+    /**
+     * Hands enemies that walked out of this node's zone to the zone they entered.
+     * An enemy whose new owner cannot be reached stays here and is retried next tick.
+     */
+    private void handOffStrayEnemies() {
+        List<Enemy> strays = null;
+        for (Enemy enemy : enemies.values()) {
+            if (!enemy.isDead() && !cluster.owns(enemy.getPosition())) {
+                if (strays == null) strays = new ArrayList<>();
+                strays.add(enemy);
+            }
+        }
+        if (strays == null) return;
+        for (Enemy enemy : strays) {
+            Position pos = enemy.getPosition();
+            WorldCheckpoint.EnemyRecord record;
+            synchronized (enemyStore) {
+                int slot = enemyStore.slotOf(enemy.getNetworkId());
+                if (slot < 0) continue;
+                record = enemyRecordAt(slot);
+            }
+            if (cluster.handOffEnemy(record)) {
+                enemies.remove(enemy.getNetworkId());
+                enemyStore.remove(enemy.getNetworkId());
+                planners.remove(enemy.getNetworkId());
+                handles.release(enemy.getNetworkId());
+                map.removeEntity(pos, enemy);
+            }
+        }
+    }
+    
+    /**
+     * Shows the players and enemies near a border to the node across it.
+     */
+    private void sendGhosts() {
+        for (PlayerCharacter player : players.values()) {
+            cluster.offerGhost(player.getNetworkId(), Ghost.PLAYER, player.getName(),
+                player.getComponents().getBaseClassName(), player.getPosition(),
+                player.getHealth(), player.getEffectivePower());
+        }
+        for (Enemy enemy : enemies.values()) {
+            String type = enemy.getComponents().getBaseClassName();
+            cluster.offerGhost(enemy.getNetworkId(), Ghost.ENEMY, type, type, enemy.getPosition(),
+                enemy.getHealth(), enemy.getPower());
+        }
+        cluster.flushGhosts();
+    }
+    
+    /**
+     * Applies what the neighbouring nodes sent since the last tick. Called by
+     * the tick pipeline before it applies commands, so a player handed over by
+     * a neighbour is waiting by the time their join is processed.
+     */
+    public void receiveFromCluster() {
+        if (cluster != null) {
+            cluster.receive(this);
+        }
+    }
+    
+    /**
+     * Whether a cell belongs to another node's zone.
+     */
+    public boolean isOutsideZone(Position pos) {
+        return cluster != null && map.isValidPosition(pos) && !cluster.owns(pos);
+    }
+    
+    /**
+     * Moves a player one step across the border of this node's zone by handing
+     * them to the node that owns the cell. The player leaves this world
+     * without being parked here; their client reconnects to the new owner.
+     * Like a local move, the step is refused if a wall or an enemy, local or
+     * reported by the owner, stands on the cell. Should the cell fill up
+     * before the player arrives, the owner places them on a free one instead.
+     *
+     * @return the game port of the new owner, or -1 if the move is not allowed
+     *         or the owner cannot be reached
+     */
+    public synchronized int handOffPlayer(PlayerCharacter player, Position newPos) {
+        if (!isOutsideZone(newPos) || player.getPosition().distanceTo(newPos) > 1
+                || blocksPlayer(newPos) || cluster.enemyGhostAt(newPos) != null
+                || combatManager.isPlayerInCombat(player.getNetworkId())) {
+            return -1;
+        }
+        int port = cluster.gamePortFor(newPos);
+        if (port < 0) {
+            return -1;
+        }
+        WorldCheckpoint.PlayerRecord record = recordOf(player, newPos);
+        if (!cluster.handOffPlayer(record)) {
+            return -1;
+        }
+        players.remove(player.getNetworkId());
+        saveProfile(player);
+        map.removeEntity(player.getPosition(), player);
+        vision.remove(player.getNetworkId());
+        fog.remove(player.getNetworkId());
+        publishSnapshot();
+        return port;
+    }
+    
+    @Override
+    public void adoptPlayer(WorldCheckpoint.PlayerRecord record) {
+        parkedPlayers.put(record.getName(), record);
+    }
+    
+    @Override
+    public void adoptEnemy(WorldCheckpoint.EnemyRecord record) {
+        Position pos = new Position(record.getRow(), record.getCol());
+        if (!map.isValidPosition(pos) || map.getEntityCount(pos) != 0) {
+            pos = getRandomFreePosition();
+            if (pos == null) return;
+        }
+        // The handle and schedule were the old owner's; this node gives it its own
+        Enemy enemy = EnemyFactory.createEnemy(record.getType(), pos,
+            record.getHealth(), record.getPower(), record.getLoot(), record.getTrait(), streams);
+        if (enemy != null) {
+            registerEnemy(enemy);
+        }
+    }
+    
+    @Override
+    public void attackEnemy(int fromZone, int handle, int attackerId, String attackerClass, Strike strike) {
+        Enemy enemy = enemies.get(handle);
+        if (enemy == null || enemy.isDead()) {
+            // Died or moved on since the ghost was sent
+            cluster.reportAttack(fromZone, attackerId, new Position(0, 0), ZoneNode.ATTACK_GONE, 0, false);
+            return;
+        }
+        ServerCombatSystem.CombatResult result =
+            ServerCombatSystem.land(strike, enemy, remoteAttacker(attackerClass, strike));
+        syncEnemyHealth(enemy);
+        Position pos = enemy.getPosition();
+        boolean killed = enemy.isDead();
+        if (killed) {
+            handleEnemyDeath(enemy);
+        }
+        byte outcome = result.wasBlocked ? ZoneNode.ATTACK_BLOCKED
+            : result.wasEvaded ? ZoneNode.ATTACK_EVADED
+            : result.wasCritical ? ZoneNode.ATTACK_CRITICAL : ZoneNode.ATTACK_HIT;
+        cluster.reportAttack(fromZone, attackerId, pos, outcome, result.damageDealt, killed);
+    }
+    
+    /**
+     * A stand-in for a player on another node, so that the enemy's defences
+     * react to its class, element and accuracy as they would to a local one.
+     * It is built from the strike, so making one draws nothing from the
+     * streams.
+     */
+    private PlayerCharacter remoteAttacker(String characterClass, Strike strike) {
+        Position nowhere = new Position(0, 0);
+        return switch (characterClass) {
+            case "Archer" -> new Archer(characterClass, nowhere, 0, strike.getAccuracy(), streams);
+            case "Mage" -> new Mage(characterClass, nowhere, 0, strike.getElement(), streams);
+            default -> new Warrior(characterClass, nowhere, 0, 0, streams);
+        };
+    }
+    
+    /**
+     * Sends a player's strike at an enemy ghost to the enemy's owner.
+     *
+     * @return false if the player cannot attack or the owner cannot be reached
+     */
+    public boolean attackGhost(PlayerCharacter player, Ghost ghost) {
+        Strike strike = ServerCombatSystem.strike(player);
+        return strike != null && cluster.attackGhost(ghost, player.getNetworkId(),
+            player.getComponents().getBaseClassName(), strike);
+    }
+    
+    @Override
+    public void attackLanded(int attackerId, Position target, byte outcome, int damage, boolean killed) {
+        ClientHandler handler = server.getClient(attackerId);
+        if (handler == null) return;
+        if (outcome == ZoneNode.ATTACK_GONE) {
+            GameMessage errorMsg = new GameMessage(MessageType.ERROR);
+            errorMsg.setMessage("No target at that position");
+            handler.sendMessage(errorMsg);
+            return;
+        }
+        // The same events a local combat turn sends
+        if (outcome == ZoneNode.ATTACK_EVADED) {
+            handler.sendMessage(damageEvent(attackerId, target, 0, "MISS"));
+        } else if (damage > 0) {
+            handler.sendMessage(damageEvent(attackerId, target, damage,
+                outcome == ZoneNode.ATTACK_CRITICAL ? "CRIT" : "NORMAL"));
+        }
+        if (killed) {
+            handler.sendMessage(damageEvent(attackerId, target, 0, "ENEMY_DEATH"));
+        }
+    }
+    
+    private static GameMessage damageEvent(int playerId, Position pos, int damage, String kind) {
+        GameMessage damageMsg = new GameMessage(MessageType.DAMAGE_DEALT);
+        damageMsg.setPosition(pos);
+        damageMsg.setHealth(damage);
+        damageMsg.setMessage(kind);
+        damageMsg.setTargetPlayerId(playerId);
+        damageMsg.setPlayerId(playerId);
+        return damageMsg;
+    }
+    
     /**
      * Handles player death.
      */
@@ -639,102 +1645,52 @@ public class ServerGameWorld {
         // Respawn at random location
         Position respawnPos = getRandomFreePosition();
         if (respawnPos != null) {
-            map.removeEntity(player.getPosition(), player);
-            player.setPosition(respawnPos);
+            map.moveEntity(player, player.getPosition(), respawnPos, null);
             player.setHealth(100); // Full health
-            map.addEntity(respawnPos, player);
             
             LogManager.log(player.getName() + " died and respawned at " + respawnPos);
         }
     }
     
     /**
-     * Activates a player ability (decorator).
+     * Activates a player ability by attaching its status effect.
+     * The effect expires on its own during a later tick.
      */
     public boolean activatePlayerAbility(PlayerCharacter player, String abilityType) {
-        try {
-            // Get the base player without decorators
-            PlayerCharacter basePlayer = player;
-            while (basePlayer instanceof PlayerDecorator) {
-                basePlayer = ((PlayerDecorator) basePlayer).getWrapped();
-            }
-            
-            // Apply new decorator to base player
-            PlayerCharacter decorated = switch (abilityType) {
-                case "BOOST" -> new BoostedAttackDecorator(basePlayer, 10);
-                case "SHIELD" -> new ShieldedPlayerDecorator(basePlayer);
-                case "REGEN" -> new RegenerationDecorator(basePlayer);
-                default -> null;
-            };
-            
-            if (decorated != null) {
-                // Preserve position and other state
-                decorated.setPosition(player.getPosition());
-                decorated.setHealth(player.getHealth());
-                decorated.setPower(basePlayer.getPower()); // Use base power
-                decorated.setNetworkId(player.getNetworkId());
-                
-                // Replace player in collections
-                players.put(player.getNetworkId(), decorated);
-                
-                // Update map
-                map.removeEntity(player.getPosition(), player);
-                map.addEntity(decorated.getPosition(), decorated);
-                
-                // Schedule removal after duration
-                enemyScheduler.schedule(() -> {
-                    removePlayerDecorator(player.getNetworkId(), abilityType);
-                }, 15, TimeUnit.SECONDS);
-                
-                // Send full state update to sync with clients
-                GameMessage stateMsg = server.createFullStateMessage();
-                server.broadcastMessage(stateMsg);
-                
-                LogManager.log(player.getName() + " activated " + abilityType);
-                return true;
-            }
-        } catch (Exception e) {
-            LogManager.log("Error activating ability: " + e.getMessage());
-            e.printStackTrace();
+        EffectType type = EffectType.fromAbility(abilityType);
+        if (type == null) {
+            return false;
         }
         
-        return false;
+        StatusEffect effect = type.create(currentTick.get());
+        if (!player.getEffects().apply(effect)) {
+            return false;
+        }
+        
+        sendEffectEvent(player, MessageType.EFFECT_APPLIED, effect);
+        LogManager.log(player.getName() + " activated " + abilityType);
+        return true;
     }
     
     /**
-     * Removes a decorator from a player.
+     * Gets a random free position on the map, in this node's zone if the board is split.
      */
-    private void removePlayerDecorator(int playerId, String decoratorType) {
-        PlayerCharacter player = players.get(playerId);
-        if (player instanceof PlayerDecorator decorator) {
-            PlayerCharacter basePlayer = decorator.getWrapped();
-            
-            // Preserve current state
-            basePlayer.setPosition(player.getPosition());
-            basePlayer.setHealth(player.getHealth());
-            
-            // Replace in collections
-            players.put(playerId, basePlayer);
-            
-            // Update map
-            map.removeEntity(player.getPosition(), player);
-            map.addEntity(basePlayer.getPosition(), basePlayer);
-            
-            // Send update to clients
-            GameMessage stateMsg = server.createFullStateMessage();
-            server.broadcastMessage(stateMsg);
-            
-            LogManager.log("Removed " + decoratorType + " from player " + playerId);
+    private Position getRandomFreePosition() {
+        if (cluster == null) {
+            return getRandomFreePosition(0, BOARD_SIZE);
         }
+        int zone = cluster.getZone();
+        return getRandomFreePosition(cluster.getLayout().firstCol(zone), cluster.getLayout().firstCol(zone + 1));
     }
     
     /**
-     * Gets a random free position on the map.
+     * Gets a random free position between columns {@code fromCol} (inclusive) and {@code toCol}.
      */
-    private Position getRandomFreePosition() {
+    private Position getRandomFreePosition(int fromCol, int toCol) {
+        RandomStreams.Generator random = streams.get(RandomStreams.Stream.SPAWN);
         for (int attempts = 0; attempts < 100; attempts++) {
             int row = random.nextInt(BOARD_SIZE);
-            int col = random.nextInt(BOARD_SIZE);
+            int col = fromCol + random.nextInt(toCol - fromCol);
             Position pos = new Position(row, col);
             
             if (map.getEntitiesAt(pos).isEmpty()) {
@@ -748,24 +1704,39 @@ public class ServerGameWorld {
      * Checks if an enemy is visible to any player.
      */
     public boolean isEnemyVisibleToAnyPlayer(Enemy enemy) {
-        for (PlayerCharacter player : players.values()) {
-            if (GameMap.calcDistance(player.getPosition(), enemy.getPosition()) <= 2) {
-                return true;
-            }
-        }
-        return false;
+        return isVisibleToAnyPlayer(enemy.getPosition());
     }
     
     /**
      * Checks if an item is visible to any player.
      */
     public boolean isItemVisibleToAnyPlayer(GameItem item) {
-        for (PlayerCharacter player : players.values()) {
-            if (GameMap.calcDistance(player.getPosition(), item.getPosition()) <= 2) {
-                return true;
-            }
+        return isVisibleToAnyPlayer(item.getPosition());
+    }
+    
+    /**
+     * Checks if a cell lies in the field of view of any player.
+     */
+    public boolean isVisibleToAnyPlayer(Position pos) {
+        return map.isValidPosition(pos) && vision.isVisibleToAny(navGrid.cellOf(pos));
+    }
+    
+    /**
+     * Checks if a cell lies in the field of view of one player.
+     */
+    public boolean isVisibleToPlayer(int playerId, Position pos) {
+        return map.isValidPosition(pos) && vision.isVisibleTo(playerId, navGrid.cellOf(pos));
+    }
+    
+    /**
+     * Returns the change to a player's fog of war as of a snapshot,
+     * or null if nothing changed since the last call.
+     */
+    public FogDelta pollFogDelta(int playerId, WorldSnapshot current) {
+        if (current.getPlayer(playerId) == null) {
+            return null;
         }
-        return false;
+        return fog.poll(playerId, current.visibleTo(playerId));
     }
     
     // Getters
@@ -781,22 +1752,42 @@ public class ServerGameWorld {
         return enemies.values();
     }
     
+    /**
+     * Returns the allocator that issues client ids, which are also the ids of their players.
+     */
+    public EntityHandles getClientHandles() {
+        return clientHandles;
+    }
+    
+    /**
+     * Returns a read-only view of the items. Iteration never sees concurrent changes.
+     */
     public List<GameItem> getAllItems() {
-        return new ArrayList<>(items);
+        return Collections.unmodifiableList(items);
     }
     
     public GameMap getMap() {
         return map;
     }
     
+    /**
+     * Adds gauges for the number of players, enemies and running combats to {@code metrics}.
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.gauge("world.players", players::size);
+        metrics.gauge("world.enemies", enemies::size);
+        metrics.gauge("combat.active", combatManager::getActiveCombatCount);
+    }
+    
     /**
      * Shuts down the game world.
      */
     public void shutdown() {
         combatManager.shutdown();
-        enemyScheduler.shutdownNow();
+        decidePool.shutdownNow();
         players.clear();
         enemies.clear();
+        enemyStore.clear();
         items.clear();
     }
 
@@ -0,0 +1,317 @@
+package game.server;
+
+import game.cluster.ZoneNode;
+import game.engine.WorldSnapshot;
+import game.logging.LogManager;
+import game.metrics.LatencyHistogram;
+import game.metrics.MetricsRegistry;
+import game.network.GameMessage;
+import game.network.MessageType;
+import game.persistence.Checkpointer;
+import game.persistence.CommandJournal;
+import game.persistence.ProfileStore;
+import game.replay.ReplayRecorder;
+import game.spectator.SpectatorRelay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the server tick as a staged pipeline:
+ * <ol>
+ *   <li>input: commands queued by client readers are drained and applied,</li>
+ *   <li>simulate: the world advances one tick,</li>
+ *   <li>snapshot: the world publishes an immutable snapshot,</li>
+ *   <li>encode: each client's view of the snapshot is encoded into frames,</li>
+ *   <li>send: per-client writers put the frames on the wire.</li>
+ * </ol>
+ * The first three stages run on the tick thread. Snapshots go to the encoder
+ * through a small bounded queue, and frames go to each client's bounded
+ * outbound queue, so encoding and writing tick N overlap with simulating
+ * tick N+1. If encoding falls behind, the oldest waiting snapshot is dropped
+ * instead of stalling the simulation.
+ * <p>
+ * Every few ticks the snapshot stage also captures a world checkpoint, which
+ * is written out on the checkpointer's own thread. The encode stage also
+ * hands every snapshot it broadcasts to the replay recorder, if there is one,
+ * and encodes it once more for the spectator relay while anyone is watching.
+ * When the world is one zone of a cluster, the input stage first takes in
+ * what the neighbouring nodes sent.
+ */
+public class TickPipeline {
+    private static final int INPUT_CAPACITY = 4096;
+    private static final int MAX_COMMANDS_PER_TICK = 1024;
+    private static final int SNAPSHOT_QUEUE = 2;
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+    private static final int ENCODE_THREADS =
+        Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final class Command {
+        final int clientId;
+        final GameMessage message;
+
+        Command(int clientId, GameMessage message) {
+            this.clientId = clientId;
+            this.message = message;
+        }
+    }
+
+    private final GameServer server;
+    private final ServerGameWorld world;
+    private final long tickMillis;
+
+    private final BlockingQueue<Command> input = new ArrayBlockingQueue<>(INPUT_CAPACITY);
+    // Disconnects that found the input queue full; one is never dropped, or the player would stay
+    private final Queue<Command> departures = new ConcurrentLinkedQueue<>();
+    private final List<Command> drained = new ArrayList<>();
+    private final BlockingQueue<WorldSnapshot> published = new ArrayBlockingQueue<>(SNAPSHOT_QUEUE);
+
+    private final ScheduledExecutorService tickThread = Executors.newSingleThreadScheduledExecutor(
+        r -> new Thread(r, "tick-simulate"));
+    private final ExecutorService encodePool = Executors.newFixedThreadPool(ENCODE_THREADS, r -> {
+        Thread t = new Thread(r, "tick-encode");
+        t.setDaemon(true);
+        return t;
+    });
+    private Thread encoder;
+    private volatile boolean running;
+    private Checkpointer checkpointer;
+    private int checkpointTicks;
+    private CommandJournal journal;
+    private ProfileStore profiles;
+    private ReplayRecorder recorder;
+    private SpectatorRelay spectators;
+    private ZoneNode cluster;
+    private GatewayListener gateways;
+
+    private final LatencyHistogram tickLatency = new LatencyHistogram("tick");
+    private final LatencyHistogram inputLatency = new LatencyHistogram("input");
+    private final LatencyHistogram simulateLatency = new LatencyHistogram("simulate");
+    private final LatencyHistogram snapshotLatency = new LatencyHistogram("snapshot");
+    private final LatencyHistogram encodeLatency = new LatencyHistogram("encode");
+    private final LatencyHistogram sendLatency = new LatencyHistogram("send");
+    private final AtomicLong droppedSnapshots = new AtomicLong();
+    private final AtomicLong rejectedCommands = new AtomicLong();
+
+    public TickPipeline(GameServer server, ServerGameWorld world, long tickMillis) {
+        this.server = server;
+        this.world = world;
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Captures a checkpoint every {@code everyTicks} ticks. Call before {@link #start()}.
+     */
+    public void setCheckpoints(Checkpointer checkpointer, int everyTicks) {
+        this.checkpointer = checkpointer;
+        this.checkpointTicks = Math.max(1, everyTicks);
+    }
+
+    /**
+     * The journal the applied commands go to, reported with the stage timings.
+     */
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * The player profile store, reported with the stage timings.
+     */
+    public void setProfileStore(ProfileStore profiles) {
+        this.profiles = profiles;
+    }
+
+    /**
+     * Records every broadcast snapshot into a replay. Call before {@link #start()}.
+     */
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * The relay spectators watch through, reported with the stage timings.
+     */
+    public void setSpectators(SpectatorRelay spectators) {
+        this.spectators = spectators;
+    }
+
+    /**
+     * This node's part in a split world, reported with the stage timings.
+     */
+    public void setCluster(ZoneNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * The listener for gateway links, reported with the stage timings.
+     */
+    public void setGateways(GatewayListener gateways) {
+        this.gateways = gateways;
+    }
+
+    public void start() {
+        running = true;
+        encoder = new Thread(this::encodeLoop, "tick-encoder");
+        encoder.setDaemon(true);
+        encoder.start();
+        tickThread.scheduleAtFixedRate(this::runTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        tickThread.scheduleAtFixedRate(this::report,
+            REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        running = false;
+        tickThread.shutdown();
+        encodePool.shutdown();
+        if (encoder != null) {
+            encoder.interrupt();
+        }
+    }
+
+    /**
+     * Queues a client command for the next tick. A disconnect is always queued.
+     *
+     * @return false if the input queue is full
+     */
+    public boolean submit(int clientId, GameMessage message) {
+        Command command = new Command(clientId, message);
+        if (input.offer(command)) {
+            return true;
+        }
+        if (message.getType() == MessageType.DISCONNECT) {
+            departures.add(command);
+            return true;
+        }
+        rejectedCommands.incrementAndGet();
+        return false;
+    }
+
+    private void runTick() {
+        try {
+            long start = System.nanoTime();
+            world.receiveFromCluster();
+            drained.clear();
+            input.drainTo(drained, MAX_COMMANDS_PER_TICK);
+            for (Command command : drained) {
+                server.applyCommand(command.clientId, command.message);
+            }
+            for (Command command; (command = departures.poll()) != null; ) {
+                server.applyCommand(command.clientId, command.message);
+            }
+            long drainedAt = System.nanoTime();
+            inputLatency.record(drainedAt - start);
+
+            world.tick();
+            long simulatedAt = System.nanoTime();
+            simulateLatency.record(simulatedAt - drainedAt);
+
+            WorldSnapshot snapshot = world.publishSnapshot();
+            if (checkpointer != null && snapshot.getTick() % checkpointTicks == 0) {
+                checkpointer.submit(world.captureCheckpoint());
+            }
+            long publishedAt = System.nanoTime();
+            snapshotLatency.record(publishedAt - simulatedAt);
+            tickLatency.record(publishedAt - start);
+
+            while (!published.offer(snapshot)) {
+                // The encoder is behind; the newest snapshot supersedes the oldest
+                if (published.poll() != null) {
+                    droppedSnapshots.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            LogManager.log("Error during tick: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void encodeLoop() {
+        while (running) {
+            try {
+                WorldSnapshot snapshot = published.take();
+                long start = System.nanoTime();
+                if (recorder != null) {
+                    recorder.record(snapshot);
+                }
+                server.sendStateToSpectators(snapshot);
+                int[] clientIds = server.getClientIds();
+                CountDownLatch done = new CountDownLatch(clientIds.length);
+                for (int clientId : clientIds) {
+                    encodePool.execute(() -> {
+                        try {
+                            server.sendStateTo(clientId, snapshot);
+                        } catch (Exception e) {
+                            LogManager.log("Error encoding state for client " + clientId + ": " + e.getMessage());
+                            e.printStackTrace();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                done.await();
+                encodeLatency.record(System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void report() {
+        LogManager.log("Tick pipeline: " + inputLatency.summary() + "; " + simulateLatency.summary()
+            + "; " + snapshotLatency.summary() + "; " + encodeLatency.summary() + "; " + sendLatency.summary()
+            + "; dropped snapshots=" + droppedSnapshots.get() + ", rejected commands=" + rejectedCommands.get()
+            + (checkpointer != null ? "; " + checkpointer.summary() : "")
+            + (journal != null ? "; " + journal.summary() : "")
+            + (profiles != null ? "; " + profiles.summary() : "")
+            + (recorder != null ? "; " + recorder.summary() : "")
+            + (spectators != null ? "; " + spectators.summary() : "")
+            + (cluster != null ? "; " + cluster.summary() : "")
+            + (gateways != null ? "; " + gateways.summary() : ""));
+    }
+
+    /**
+     * Adds the stage timers, queue depths and the persistence timers to {@code metrics}.
+     * Call after the setters.
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.register("tick", tickLatency);
+        metrics.register("tick.input", inputLatency);
+        metrics.register("tick.simulate", simulateLatency);
+        metrics.register("tick.snapshot", snapshotLatency);
+        metrics.register("tick.encode", encodeLatency);
+        metrics.register("tick.send", sendLatency);
+        metrics.gauge("queue.input", input::size);
+        metrics.gauge("queue.snapshots", published::size);
+        metrics.gauge("tick.droppedSnapshots", droppedSnapshots::get);
+        metrics.gauge("tick.rejectedCommands", rejectedCommands::get);
+        if (checkpointer != null) {
+            metrics.register("checkpoint.write", checkpointer.getWriteLatency());
+        }
+        if (journal != null) {
+            metrics.register("journal.fsync", journal.getSyncLatency());
+        }
+    }
+
+    /**
+     * Time the tick thread spends on one tick, from draining input to publishing the snapshot.
+     */
+    public LatencyHistogram getTickLatency() { return tickLatency; }
+    public LatencyHistogram getInputLatency() { return inputLatency; }
+    public LatencyHistogram getSimulateLatency() { return simulateLatency; }
+    public LatencyHistogram getSnapshotLatency() { return snapshotLatency; }
+    public LatencyHistogram getEncodeLatency() { return encodeLatency; }
+
+    /**
+     * Time from a frame entering a client's outbound queue until it was written.
+     */
+    public LatencyHistogram getSendLatency() { return sendLatency; }
+
+    public long getDroppedSnapshots() { return droppedSnapshots.get(); }
+    public long getRejectedCommands() { return rejectedCommands.get(); }
+}
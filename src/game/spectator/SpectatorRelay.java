@@ -0,0 +1,273 @@
+package game.spectator;
+
+import game.logging.LogManager;
+import game.network.GameMessage;
+import game.network.MessageCodec;
+import game.network.MessageType;
+import game.network.StateFrameCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans the world's state frames out to spectators.
+ * <p>
+ * A relay gets each frame once, either from the game server it is embedded
+ * in or from an upstream relay, and re-sends the same bytes to every
+ * subscriber. A subscriber is a game client watching the game, or another
+ * relay, so relays can be chained in a tree and the server pays for one
+ * stream however many people watch. Spectators are not players: they do not
+ * count against the server's player limit and have no view of their own;
+ * they see what is visible to any player.
+ * <p>
+ * Each subscriber has a writer that only keeps the newest frame. A state
+ * frame replaces the one before it, so a slow spectator skips frames rather
+ * than queueing them or slowing down the others. New subscribers get a
+ * welcome with player id -1 and then the latest frame right away.
+ * <p>
+ * Run a relay with: {@code java -cp out game.spectator.SpectatorRelay <port> <upstreamHost> <upstreamPort>}
+ */
+public class SpectatorRelay {
+    // Most subscribers a relay serves; chain relays for more
+    private static final int MAX_SUBSCRIBERS = Integer.getInteger("game.maxSpectators", 500);
+    private static final long RECONNECT_MILLIS = 2000;
+
+    private final int port;
+    private final ServerSocket serverSocket;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "spectator-relay");
+        t.setDaemon(true);
+        return t;
+    });
+    private final byte[] welcome;
+    private volatile byte[] latest;
+    private volatile boolean running = true;
+
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * A spectator or downstream relay with the newest frame it has not been sent yet.
+     */
+    private final class Subscriber implements Runnable {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private byte[] pending;
+
+        Subscriber(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        synchronized void offer(byte[] frame) {
+            if (pending != null) {
+                framesSkipped.incrementAndGet();
+            }
+            pending = frame;
+            notifyAll();
+        }
+
+        private synchronized byte[] take() throws InterruptedException {
+            while (pending == null && running) {
+                wait();
+            }
+            byte[] frame = pending;
+            pending = null;
+            return frame;
+        }
+
+        @Override
+        public void run() {
+            try {
+                out.write(welcome);
+                out.flush();
+                while (running) {
+                    byte[] frame = take();
+                    if (frame == null) break;
+                    out.write(frame);
+                    out.flush();
+                    framesOut.incrementAndGet();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Spectator went away
+            } finally {
+                subscribers.remove(this);
+                close();
+            }
+        }
+
+        synchronized void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Starts accepting subscribers on {@code port}.
+     */
+    public SpectatorRelay(int port) throws IOException {
+        this.port = port;
+        this.serverSocket = new ServerSocket(port);
+        GameMessage hello = new GameMessage(MessageType.WELCOME);
+        hello.setPlayerId(-1);
+        this.welcome = MessageCodec.encode(hello);
+        threads.execute(this::acceptLoop);
+        LogManager.log("Spectator relay listening on port " + port);
+    }
+
+    /**
+     * Whether anyone is watching; the server skips encoding the spectator frame if not.
+     */
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Sends a state frame, length prefix included, to every subscriber.
+     */
+    public void publish(byte[] frame) {
+        latest = frame;
+        framesIn.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (subscribers.size() >= MAX_SUBSCRIBERS) {
+                    refused.incrementAndGet();
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                Subscriber subscriber = new Subscriber(socket);
+                discardInputOf(socket);
+                subscribers.add(subscriber);
+                byte[] current = latest;
+                if (current != null) {
+                    subscriber.offer(current);
+                }
+                threads.execute(subscriber);
+            } catch (IOException e) {
+                if (running) {
+                    LogManager.log("Error accepting spectator: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Spectators may still send commands, e.g. a client's join; they are ignored.
+     */
+    private void discardInputOf(Socket socket) {
+        threads.execute(() -> {
+            byte[] buffer = new byte[1024];
+            try {
+                InputStream in = socket.getInputStream();
+                while (in.read(buffer) >= 0) {
+                    // Spectators cannot act
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        });
+    }
+
+    /**
+     * Subscribes to an upstream server or relay and republishes its state
+     * frames until stopped, reconnecting whenever the upstream goes away.
+     */
+    public void relayFrom(String host, int upstreamPort) {
+        while (running) {
+            try (Socket socket = new Socket(host, upstreamPort)) {
+                LogManager.log("Spectator relay on port " + port + " subscribed to " + host + ":" + upstreamPort);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (running) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MessageCodec.MAX_FRAME_BYTES) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+                    byte[] frame = new byte[4 + length];
+                    frame[0] = (byte) (length >>> 24);
+                    frame[1] = (byte) (length >>> 16);
+                    frame[2] = (byte) (length >>> 8);
+                    frame[3] = (byte) length;
+                    in.readFully(frame, 4, length);
+                    // Only state frames are relayed; the upstream's welcome is replaced by ours
+                    if (frame[4] == StateFrameCodec.STATE_TAG) {
+                        publish(frame);
+                    }
+                }
+            } catch (IOException e) {
+                if (!running) break;
+                LogManager.log("Lost upstream " + host + ":" + upstreamPort + " (" + e.getMessage()
+                    + "), reconnecting in " + RECONNECT_MILLIS + " ms");
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        threads.shutdownNow();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public String summary() {
+        return "spectators=" + subscribers.size() + ", frames in=" + framesIn.get() + ", out=" + framesOut.get()
+            + ", skipped=" + framesSkipped.get() + ", refused=" + refused.get();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: SpectatorRelay <port> <upstreamHost> <upstreamPort>");
+            System.exit(1);
+        }
+        try {
+            SpectatorRelay relay = new SpectatorRelay(Integer.parseInt(args[0]));
+            Runtime.getRuntime().addShutdownHook(new Thread(relay::shutdown));
+            System.out.println("Spectator relay on port " + args[0] + " relaying " + args[1] + ":" + args[2]);
+            relay.relayFrom(args[1], Integer.parseInt(args[2]));
+        } catch (IOException e) {
+            System.err.println("Failed to start relay: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package game.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-cell layers of a square map: a terrain byte and an occupancy count.
+ * Cells are addressed by {@code row * size + col}.
+ * <p>
+ * Implementations do no locking; the owner serializes writers. Reads of a
+ * single cell may race with writers and see either the old or the new value.
+ */
+public interface CellStorage extends AutoCloseable {
+    byte TERRAIN_FLOOR = 0;
+    byte TERRAIN_WALL = 1;
+
+    int cellCount();
+
+    byte getTerrain(int cell);
+
+    void setTerrain(int cell, byte terrain);
+
+    int getOccupancy(int cell);
+
+    void setOccupancy(int cell, int count);
+
+    /**
+     * Resets every cell to empty floor.
+     */
+    void clear();
+
+    /**
+     * Size of the image written by {@link #copyTo(ByteBuffer)}.
+     * The image is the occupancy counts as little-endian ints followed by the
+     * terrain bytes, and is the same for every implementation.
+     */
+    long byteSize();
+
+    /**
+     * Writes the image of all cells at the buffer's position and advances it.
+     */
+    void copyTo(ByteBuffer out);
+
+    /**
+     * Replaces all cells with an image read from the buffer's position.
+     */
+    void copyFrom(ByteBuffer in);
+
+    /**
+     * Releases the memory behind the storage. It must not be used afterwards.
+     */
+    @Override
+    void close();
+}
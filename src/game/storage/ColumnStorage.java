@@ -0,0 +1,41 @@
+package game.storage;
+
+/**
+ * Parallel columns of int values, one column per entity field, all addressed
+ * by the same dense row index. Each column is contiguous, so a sweep over one
+ * field reads memory linearly. A long takes two consecutive columns.
+ * <p>
+ * Implementations do no locking; the owner serializes all access, including
+ * reads, because {@link #resize(int)} may move the columns.
+ */
+public interface ColumnStorage extends AutoCloseable {
+    int columnCount();
+
+    int capacity();
+
+    /**
+     * Changes the number of rows, keeping the ones that still fit.
+     */
+    void resize(int capacity);
+
+    int getInt(int column, int row);
+
+    void setInt(int column, int row, int value);
+
+    long getLong(int column, int row);
+
+    void setLong(int column, int row, long value);
+
+    /**
+     * Copies one row over another in every column.
+     */
+    void copyRow(int from, int to);
+
+    long byteSize();
+
+    /**
+     * Releases the memory behind the storage. It must not be used afterwards.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,55 @@
+package game.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Cell layers in two Java arrays.
+ */
+public final class HeapCellStorage implements CellStorage {
+    private final byte[] terrain;
+    private final int[] occupancy;
+
+    public HeapCellStorage(int cellCount) {
+        this.terrain = new byte[cellCount];
+        this.occupancy = new int[cellCount];
+    }
+
+    @Override public int cellCount() { return terrain.length; }
+    @Override public byte getTerrain(int cell) { return terrain[cell]; }
+    @Override public void setTerrain(int cell, byte value) { terrain[cell] = value; }
+    @Override public int getOccupancy(int cell) { return occupancy[cell]; }
+    @Override public void setOccupancy(int cell, int count) { occupancy[cell] = count; }
+
+    @Override
+    public void clear() {
+        Arrays.fill(terrain, TERRAIN_FLOOR);
+        Arrays.fill(occupancy, 0);
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) terrain.length * (Integer.BYTES + 1);
+    }
+
+    @Override
+    public void copyTo(ByteBuffer out) {
+        int start = out.position();
+        out.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(occupancy);
+        out.position(start + occupancy.length * Integer.BYTES);
+        out.put(terrain);
+    }
+
+    @Override
+    public void copyFrom(ByteBuffer in) {
+        int start = in.position();
+        in.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(occupancy);
+        in.position(start + occupancy.length * Integer.BYTES);
+        in.get(terrain);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,61 @@
+package game.storage;
+
+import java.util.Arrays;
+
+/**
+ * One int array per column.
+ */
+public final class HeapColumnStorage implements ColumnStorage {
+    private final int[][] columns;
+
+    public HeapColumnStorage(int columnCount, int capacity) {
+        columns = new int[columnCount][capacity];
+    }
+
+    @Override public int columnCount() { return columns.length; }
+    @Override public int capacity() { return columns[0].length; }
+
+    @Override
+    public void resize(int capacity) {
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = Arrays.copyOf(columns[c], capacity);
+        }
+    }
+
+    @Override
+    public int getInt(int column, int row) {
+        return columns[column][row];
+    }
+
+    @Override
+    public void setInt(int column, int row, int value) {
+        columns[column][row] = value;
+    }
+
+    @Override
+    public long getLong(int column, int row) {
+        return ((long) columns[column + 1][row] << 32) | (columns[column][row] & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void setLong(int column, int row, long value) {
+        columns[column][row] = (int) value;
+        columns[column + 1][row] = (int) (value >>> 32);
+    }
+
+    @Override
+    public void copyRow(int from, int to) {
+        for (int[] column : columns) {
+            column[to] = column[from];
+        }
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) columns.length * capacity() * Integer.BYTES;
+    }
+
+    @Override
+    public void close() {
+    }
+}
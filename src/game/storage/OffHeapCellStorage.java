@@ -0,0 +1,116 @@
+package game.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cell layers in one direct buffer, laid out exactly like the image
+ * described in {@link CellStorage#byteSize()}: occupancy ints, then terrain bytes.
+ * The buffer is either allocated or mapped from a file, in which case the
+ * operating system writes changes back to the file.
+ */
+public final class OffHeapCellStorage implements CellStorage {
+    private final int cellCount;
+    private final int terrainOffset;
+    private ByteBuffer buffer;
+
+    public OffHeapCellStorage(int cellCount) {
+        this(cellCount, ByteBuffer.allocateDirect(checkedSize(cellCount)));
+    }
+
+    private OffHeapCellStorage(int cellCount, ByteBuffer buffer) {
+        this.cellCount = cellCount;
+        this.terrainOffset = cellCount * Integer.BYTES;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps the cells onto a file, creating or extending it as needed. Cells
+     * already in the file are kept, so a map can be reopened where it was left.
+     */
+    public static OffHeapCellStorage map(Path file, int cellCount) throws IOException {
+        int size = checkedSize(cellCount);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new OffHeapCellStorage(cellCount, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    // A direct buffer is indexed by int
+    private static int checkedSize(int cellCount) {
+        long size = (long) cellCount * (Integer.BYTES + 1);
+        if (cellCount < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot hold " + cellCount + " cells off-heap");
+        }
+        return (int) size;
+    }
+
+    @Override public int cellCount() { return cellCount; }
+
+    @Override
+    public byte getTerrain(int cell) {
+        return buffer.get(terrainOffset + checked(cell));
+    }
+
+    @Override
+    public void setTerrain(int cell, byte terrain) {
+        buffer.put(terrainOffset + checked(cell), terrain);
+    }
+
+    @Override
+    public int getOccupancy(int cell) {
+        return buffer.getInt(checked(cell) * Integer.BYTES);
+    }
+
+    @Override
+    public void setOccupancy(int cell, int count) {
+        buffer.putInt(checked(cell) * Integer.BYTES, count);
+    }
+
+    @Override
+    public void clear() {
+        byte[] zeros = new byte[Math.min(8192, buffer.capacity())];
+        for (int offset = 0; offset < buffer.capacity(); offset += zeros.length) {
+            buffer.put(offset, zeros, 0, Math.min(zeros.length, buffer.capacity() - offset));
+        }
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) cellCount * (Integer.BYTES + 1);
+    }
+
+    @Override
+    public void copyTo(ByteBuffer out) {
+        out.put(buffer.duplicate().clear());
+    }
+
+    @Override
+    public void copyFrom(ByteBuffer in) {
+        int start = in.position();
+        buffer.put(0, in, start, buffer.capacity());
+        in.position(start + buffer.capacity());
+    }
+
+    /**
+     * Drops the buffer; its memory is returned once the collector finds it
+     * unreachable, and a mapped file is written back by the operating system.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    // The terrain bytes share the buffer with the counts, so an index past
+    // the end would land in the other layer instead of failing
+    private int checked(int cell) {
+        if (cell < 0 || cell >= cellCount) {
+            throw new IndexOutOfBoundsException("Cell " + cell + " out of bounds for " + cellCount);
+        }
+        return cell;
+    }
+}
@@ -0,0 +1,87 @@
+package game.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One direct buffer per column, little-endian. Growing allocates new buffers;
+ * the old ones are returned to the system when they are collected.
+ */
+public final class OffHeapColumnStorage implements ColumnStorage {
+    private final ByteBuffer[] columns;
+    private int capacity;
+
+    public OffHeapColumnStorage(int columnCount, int capacity) {
+        this.columns = new ByteBuffer[columnCount];
+        this.capacity = capacity;
+        for (int c = 0; c < columnCount; c++) {
+            columns[c] = allocate(capacity);
+        }
+    }
+
+    // A direct buffer is indexed by int
+    private static ByteBuffer allocate(int rows) {
+        long size = (long) rows * Integer.BYTES;
+        if (rows < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot hold " + rows + " rows off-heap");
+        }
+        return ByteBuffer.allocateDirect((int) Math.max(1, size)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override public int columnCount() { return columns.length; }
+    @Override public int capacity() { return capacity; }
+
+    @Override
+    public void resize(int newCapacity) {
+        for (int c = 0; c < columns.length; c++) {
+            ByteBuffer column = allocate(newCapacity);
+            column.put(0, columns[c], 0, Integer.BYTES * Math.min(capacity, newCapacity));
+            columns[c] = column;
+        }
+        capacity = newCapacity;
+    }
+
+    @Override
+    public int getInt(int column, int row) {
+        return columns[column].getInt(offset(row));
+    }
+
+    @Override
+    public void setInt(int column, int row, int value) {
+        columns[column].putInt(offset(row), value);
+    }
+
+    @Override
+    public long getLong(int column, int row) {
+        return ((long) getInt(column + 1, row) << 32) | (getInt(column, row) & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void setLong(int column, int row, long value) {
+        setInt(column, row, (int) value);
+        setInt(column + 1, row, (int) (value >>> 32));
+    }
+
+    @Override
+    public void copyRow(int from, int to) {
+        for (ByteBuffer column : columns) {
+            column.putInt(offset(to), column.getInt(offset(from)));
+        }
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) columns.length * capacity * Integer.BYTES;
+    }
+
+    @Override
+    public void close() {
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = null;
+        }
+    }
+
+    private static int offset(int row) {
+        return row * Integer.BYTES;
+    }
+}
@@ -0,0 +1,50 @@
+package game.storage;
+
+/**
+ * Where grid layers and packed entity columns live.
+ * {@link #HEAP} uses plain Java arrays and is the default. {@link #OFF_HEAP}
+ * keeps them in direct buffers outside the Java heap, so very large worlds
+ * do not grow the heap the collector has to scan.
+ */
+public enum StorageBackend {
+    HEAP {
+        @Override
+        public CellStorage newCells(int cellCount) {
+            return new HeapCellStorage(cellCount);
+        }
+
+        @Override
+        public ColumnStorage newColumns(int columnCount, int capacity) {
+            return new HeapColumnStorage(columnCount, capacity);
+        }
+    },
+    OFF_HEAP {
+        @Override
+        public CellStorage newCells(int cellCount) {
+            return new OffHeapCellStorage(cellCount);
+        }
+
+        @Override
+        public ColumnStorage newColumns(int columnCount, int capacity) {
+            return new OffHeapColumnStorage(columnCount, capacity);
+        }
+    };
+
+    public abstract CellStorage newCells(int cellCount);
+
+    public abstract ColumnStorage newColumns(int columnCount, int capacity);
+
+    /**
+     * Parses a backend name such as {@code heap} or {@code offheap}.
+     */
+    public static StorageBackend named(String name) {
+        switch (name.trim().toLowerCase().replace("-", "").replace("_", "")) {
+            case "heap":
+                return HEAP;
+            case "offheap":
+                return OFF_HEAP;
+            default:
+                throw new IllegalArgumentException("Unknown storage backend: " + name);
+        }
+    }
+}
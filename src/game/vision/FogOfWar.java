@@ -0,0 +1,76 @@
+package game.vision;
+
+import game.collections.ConcurrentIntObjectMap;
+import game.network.FogDelta;
+
+/**
+ * Server-side fog of war. For every player it accumulates the explored cells
+ * and remembers what was last sent, so each update only carries the cells
+ * that changed since the previous one.
+ */
+public class FogOfWar {
+    private final int boardSize;
+    private final int cellCount;
+    private final ConcurrentIntObjectMap<PlayerFog> fog = new ConcurrentIntObjectMap<>();
+
+    private static final class PlayerFog {
+        final long[] explored;
+        final long[] sentVisible;
+        final long[] sentExplored;
+        boolean sent;
+
+        PlayerFog(int words) {
+            explored = new long[words];
+            sentVisible = new long[words];
+            sentExplored = new long[words];
+        }
+    }
+
+    public FogOfWar(int boardSize) {
+        this.boardSize = boardSize;
+        this.cellCount = boardSize * boardSize;
+    }
+
+    /**
+     * Folds the current view into the explored set and returns what changed
+     * since the last call, or null if nothing did.
+     */
+    public FogDelta poll(int playerId, VisibilitySet visible) {
+        PlayerFog state = fog.get(playerId);
+        if (state == null) {
+            state = new PlayerFog(VisibilitySet.words(cellCount));
+            PlayerFog raced = fog.putIfAbsent(playerId, state);
+            if (raced != null) state = raced;
+        }
+
+        synchronized (state) {
+            long[] now = visible.words();
+            for (int i = 0; i < now.length; i++) {
+                state.explored[i] |= now[i];
+            }
+            int[] visibleRuns = FogDelta.encodeRuns(state.sentVisible, now, cellCount);
+            int[] exploredRuns = FogDelta.encodeRuns(state.sentExplored, state.explored, cellCount);
+            if (state.sent && visibleRuns.length == 0 && exploredRuns.length == 0) {
+                return null;
+            }
+            System.arraycopy(now, 0, state.sentVisible, 0, now.length);
+            System.arraycopy(state.explored, 0, state.sentExplored, 0, now.length);
+            state.sent = true;
+            return new FogDelta(boardSize, visibleRuns, exploredRuns);
+        }
+    }
+
+    public boolean isExplored(int playerId, int cell) {
+        PlayerFog state = fog.get(playerId);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return (state.explored[cell >>> 6] & (1L << cell)) != 0;
+        }
+    }
+
+    public void remove(int playerId) {
+        fog.remove(playerId);
+    }
+}
@@ -0,0 +1,86 @@
+package game.vision;
+
+import game.nav.NavGrid;
+
+/**
+ * Field of view by recursive shadowcasting over the walls of a {@link NavGrid}.
+ * Each of the eight octants is scanned row by row outward from the viewer;
+ * a wall narrows the visible slope range for the rows behind it, so cells
+ * hidden by walls are never visited. Walls themselves are visible.
+ * Cells count as in range when their Manhattan distance is within the radius,
+ * which matches the game's existing sight rule on open ground.
+ */
+public final class ShadowCaster {
+    // Octant transforms: {xx, xy, yx, yy}
+    private static final int[][] OCTANTS = {
+        {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+        {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+    };
+
+    private ShadowCaster() {
+    }
+
+    /**
+     * Computes the cells visible from an origin cell.
+     */
+    public static VisibilitySet compute(NavGrid grid, int origin, int radius) {
+        long[] bits = new long[VisibilitySet.words(grid.cellCount())];
+        mark(bits, origin);
+        int row = grid.rowOf(origin);
+        int col = grid.colOf(origin);
+        for (int[] o : OCTANTS) {
+            castLight(grid, bits, row, col, radius, 1, 1.0, 0.0, o[0], o[1], o[2], o[3]);
+        }
+        return new VisibilitySet(bits, grid.cellCount());
+    }
+
+    private static void castLight(NavGrid grid, long[] bits, int originRow, int originCol, int radius,
+                                  int startDepth, double startSlope, double endSlope,
+                                  int xx, int xy, int yx, int yy) {
+        if (startSlope < endSlope) {
+            return;
+        }
+        double nextStart = startSlope;
+        for (int depth = startDepth; depth <= radius; depth++) {
+            boolean blocked = false;
+            for (int dx = -depth; dx <= 0; dx++) {
+                int dy = -depth;
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (startSlope < rightSlope) continue;
+                if (endSlope > leftSlope) break;
+
+                int col = originCol + dx * xx + dy * xy;
+                int row = originRow + dx * yx + dy * yy;
+                boolean inside = grid.inBounds(row, col);
+                int cell = inside ? grid.cellOf(row, col) : -1;
+                boolean opaque = !inside || !grid.isWalkable(cell);
+
+                if (inside && Math.abs(dx) + Math.abs(dy) <= radius) {
+                    mark(bits, cell);
+                }
+
+                if (blocked) {
+                    if (opaque) {
+                        nextStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        startSlope = nextStart;
+                    }
+                } else if (opaque && depth < radius) {
+                    blocked = true;
+                    castLight(grid, bits, originRow, originCol, radius, depth + 1,
+                        startSlope, leftSlope, xx, xy, yx, yy);
+                    nextStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                break;
+            }
+        }
+    }
+
+    private static void mark(long[] bits, int cell) {
+        bits[cell >>> 6] |= 1L << cell;
+    }
+}
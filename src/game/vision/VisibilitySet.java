@@ -0,0 +1,49 @@
+package game.vision;
+
+/**
+ * Immutable bitset of grid cells, one bit per cell index.
+ */
+public final class VisibilitySet {
+    private final long[] bits;
+    private final int cellCount;
+
+    VisibilitySet(long[] bits, int cellCount) {
+        this.bits = bits;
+        this.cellCount = cellCount;
+    }
+
+    public static VisibilitySet empty(int cellCount) {
+        return new VisibilitySet(new long[words(cellCount)], cellCount);
+    }
+
+    static int words(int cellCount) {
+        return (cellCount + 63) >>> 6;
+    }
+
+    public boolean contains(int cell) {
+        return cell >= 0 && cell < cellCount && (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public int cellCount() {
+        return cellCount;
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (long word : bits) {
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    /**
+     * Returns a copy of the raw words, e.g. for encoding.
+     */
+    public long[] toLongArray() {
+        return bits.clone();
+    }
+
+    long[] words() {
+        return bits;
+    }
+}
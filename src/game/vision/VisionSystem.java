@@ -0,0 +1,92 @@
+package game.vision;
+
+import game.collections.ConcurrentIntObjectMap;
+import game.nav.NavGrid;
+
+/**
+ * Keeps a field of view per viewer (player) and the union of all of them.
+ * A viewer's set is recomputed only when it moved or the walls changed
+ * since the last refresh; everything else reads the cached sets.
+ */
+public class VisionSystem {
+    private final NavGrid grid;
+    private final int radius;
+    private final ConcurrentIntObjectMap<Viewer> viewers = new ConcurrentIntObjectMap<>();
+    private volatile VisibilitySet union;
+
+    private static final class Viewer {
+        final int origin;
+        final long gridVersion;
+        final VisibilitySet visible;
+
+        Viewer(int origin, long gridVersion, VisibilitySet visible) {
+            this.origin = origin;
+            this.gridVersion = gridVersion;
+            this.visible = visible;
+        }
+    }
+
+    public VisionSystem(NavGrid grid, int radius) {
+        this.grid = grid;
+        this.radius = radius;
+        this.union = VisibilitySet.empty(grid.cellCount());
+    }
+
+    /**
+     * Brings a viewer's field of view up to date.
+     *
+     * @return true if it had to be recomputed
+     */
+    public boolean refresh(int viewerId, int originCell) {
+        long version = grid.getVersion();
+        Viewer current = viewers.get(viewerId);
+        if (current != null && current.origin == originCell && current.gridVersion == version) {
+            return false;
+        }
+        VisibilitySet visible = ShadowCaster.compute(grid, originCell, radius);
+        viewers.put(viewerId, new Viewer(originCell, version, visible));
+        rebuildUnion();
+        return true;
+    }
+
+    public void remove(int viewerId) {
+        if (viewers.remove(viewerId) != null) {
+            rebuildUnion();
+        }
+    }
+
+    /**
+     * Returns what a viewer currently sees, or an empty set for an unknown viewer.
+     */
+    public VisibilitySet visibleTo(int viewerId) {
+        Viewer viewer = viewers.get(viewerId);
+        return viewer != null ? viewer.visible : VisibilitySet.empty(grid.cellCount());
+    }
+
+    public boolean isVisibleTo(int viewerId, int cell) {
+        Viewer viewer = viewers.get(viewerId);
+        return viewer != null && viewer.visible.contains(cell);
+    }
+
+    /**
+     * Returns the union of all fields of view.
+     */
+    public VisibilitySet visibleToAny() {
+        return union;
+    }
+
+    public boolean isVisibleToAny(int cell) {
+        return union.contains(cell);
+    }
+
+    private synchronized void rebuildUnion() {
+        long[] bits = new long[VisibilitySet.words(grid.cellCount())];
+        for (Viewer viewer : viewers.values()) {
+            long[] words = viewer.visible.words();
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] |= words[i];
+            }
+        }
+        union = new VisibilitySet(bits, grid.cellCount());
+    }
+}
@@ -0,0 +1,80 @@
+package game;
+
+import game.collections.IntObjectMapCheck;
+import game.gateway.MuxLinkCheck;
+import game.nav.PathfinderCheck;
+import game.network.FogDeltaCheck;
+import game.network.MessageCodecCheck;
+import game.persistence.CheckpointFileCheck;
+import game.persistence.CommandJournalCheck;
+import game.storage.StorageCheck;
+import game.vision.ShadowCasterCheck;
+
+import java.util.Random;
+
+/**
+ * Round-trip and equivalence checks for the data structures, codecs and
+ * formats that replace simpler ones. Each check throws an
+ * {@link AssertionError} at the first mismatch, which ends the run with a
+ * non-zero exit code. Random inputs come from one seed, so a failure can be
+ * reproduced by passing the same seed again.
+ * <p>
+ * Run with: {@code java -cp out game.Checks [seed]}
+ */
+public final class Checks {
+    private interface Check {
+        void run(Random random) throws Exception;
+    }
+
+    private Checks() {
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        try {
+            run("IntObjectMap", seed, IntObjectMapCheck::run);
+            run("Pathfinders", seed, PathfinderCheck::run);
+            run("ShadowCaster", seed, ShadowCasterCheck::run);
+            run("FogDelta", seed, FogDeltaCheck::run);
+            run("MessageCodec", seed, MessageCodecCheck::run);
+            run("Storage", seed, StorageCheck::run);
+            run("CheckpointFile", seed, CheckpointFileCheck::run);
+            run("CommandJournal", seed, CommandJournalCheck::run);
+            run("MuxLink", seed, MuxLinkCheck::run);
+            System.out.println("All checks passed with seed " + seed);
+        } catch (Exception | AssertionError e) {
+            e.printStackTrace();
+            System.out.println("Checks failed with seed " + seed);
+            System.exit(1);
+        }
+        // The log writer of the subsystems under test would keep the JVM alive
+        System.exit(0);
+    }
+
+    private static void run(String name, long seed, Check check) throws Exception {
+        long start = System.nanoTime();
+        check.run(new Random(seed));
+        System.out.printf("%-16s ok %6d ms%n", name, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Fails the running check with {@code what} unless the condition holds.
+     */
+    public static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    public static void checkEquals(long expected, long actual, String what) {
+        if (expected != actual) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
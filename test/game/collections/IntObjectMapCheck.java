@@ -0,0 +1,155 @@
+package game.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Runs random puts and removes against {@link IntObjectMap},
+ * {@link ConcurrentIntObjectMap} and a {@link HashMap} side by side and
+ * compares every result and the final contents. Keys come from a small range
+ * so probe chains collide and backward-shift deletion is exercised. Readers of
+ * a {@link ConcurrentIntObjectMap} must find every key that stays in it while
+ * writers churn other keys, and iteration must visit such keys exactly once.
+ */
+public class IntObjectMapCheck {
+    public static void run(Random random) throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            int keyRange = 4 + random.nextInt(round < 25 ? 64 : 4096);
+            compare(random, keyRange, 20_000);
+        }
+        checkConcurrentReaders(random);
+    }
+
+    private static void compare(Random random, int keyRange, int ops) {
+        IntObjectMap<Integer> map = new IntObjectMap<>(random.nextInt(16));
+        ConcurrentIntObjectMap<Integer> concurrent = new ConcurrentIntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int op = 0; op < ops; op++) {
+            // Negative and zero keys are ordinary keys too
+            int key = random.nextInt(keyRange) - keyRange / 4;
+            int value = random.nextInt();
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    checkEquals(expected.put(key, value), map.put(key, value), "put " + key);
+                    concurrent.put(key, value);
+                    break;
+                case 2:
+                    Integer existing = expected.putIfAbsent(key, value);
+                    checkEquals(existing, map.putIfAbsent(key, value), "putIfAbsent " + key);
+                    checkEquals(existing, concurrent.putIfAbsent(key, value), "concurrent putIfAbsent " + key);
+                    break;
+                case 3:
+                case 4:
+                    Integer removed = expected.remove(key);
+                    checkEquals(removed, map.remove(key), "remove " + key);
+                    checkEquals(removed, concurrent.remove(key), "concurrent remove " + key);
+                    break;
+                default:
+                    checkEquals(expected.get(key), map.get(key), "get " + key);
+                    checkEquals(expected.containsKey(key), map.containsKey(key), "containsKey " + key);
+                    checkEquals(expected.get(key), concurrent.get(key), "concurrent get " + key);
+                    break;
+            }
+            checkEquals(expected.size(), map.size(), "size");
+        }
+
+        checkEquals(expected.size(), concurrent.size(), "concurrent size");
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            checkEquals(entry.getValue(), map.get(entry.getKey()), "final get " + entry.getKey());
+            checkEquals(entry.getValue(), concurrent.get(entry.getKey()), "final concurrent get " + entry.getKey());
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        int[] expectedKeys = expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        check(Arrays.equals(keys, expectedKeys), "keys");
+        int[] concurrentKeys = concurrent.keys();
+        Arrays.sort(concurrentKeys);
+        check(Arrays.equals(concurrentKeys, expectedKeys), "concurrent keys");
+        checkEquals(expected.size(), concurrent.values().size(), "concurrent values");
+        int[] visited = {0};
+        map.forEach((key, value) -> {
+            checkEquals(expected.get(key), value, "forEach " + key);
+            visited[0]++;
+        });
+        checkEquals(expected.size(), visited[0], "forEach count");
+        checkEquals(expected.size(), map.values().size(), "values");
+
+        IntObjectMap<Integer> copy = new IntObjectMap<>(map);
+        map.clear();
+        check(map.isEmpty() && map.get(keys.length > 0 ? keys[0] : 0) == null, "clear");
+        checkEquals(expected.size(), copy.size(), "copy size");
+        for (int key : keys) {
+            checkEquals(expected.get(key), copy.get(key), "copy get " + key);
+        }
+    }
+
+    private static void checkConcurrentReaders(Random random) throws InterruptedException {
+        ConcurrentIntObjectMap<Integer> map = new ConcurrentIntObjectMap<>();
+        int[] stable = new int[200];
+        for (int i = 0; i < stable.length; i++) {
+            stable[i] = i * 3;
+            map.put(stable[i], stable[i]);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] writers = new Thread[2];
+        for (int w = 0; w < writers.length; w++) {
+            long seed = random.nextLong();
+            // Other keys come and go; each new key takes a free slot, so tables are rebuilt often
+            writers[w] = new Thread(() -> {
+                Random r = new Random(seed);
+                int next = 1;
+                while (!done.get()) {
+                    int key = (next++ % 5000) * 3 + 1 + (int) (seed & 1);
+                    map.put(key, key);
+                    map.remove((r.nextInt(5000)) * 3 + 1 + (int) (seed & 1));
+                    map.put(stable[r.nextInt(stable.length)], -1);
+                }
+            });
+        }
+        Thread reader = new Thread(() -> {
+            try {
+                int[] seen = new int[stable.length * 3];
+                while (!done.get()) {
+                    for (int key : stable) {
+                        check(map.get(key) != null, "a stable key went missing");
+                    }
+                    Arrays.fill(seen, 0);
+                    map.forEach((key, value) -> {
+                        if (key % 3 == 0 && key < seen.length) {
+                            seen[key]++;
+                        }
+                    });
+                    for (int key : stable) {
+                        checkEquals(1, seen[key], "visits of stable key " + key);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        reader.start();
+        Thread.sleep(500);
+        done.set(true);
+        reader.join();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent reader failed", failure.get());
+        }
+    }
+}
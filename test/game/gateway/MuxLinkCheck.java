@@ -0,0 +1,100 @@
+package game.gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Opens links over loopback, with and without deflate, and checks that
+ * frames of random streams, kinds and sizes arrive intact and in order in
+ * both directions. A peer that does not answer the handshake must be refused.
+ */
+public class MuxLinkCheck {
+    public static void run(Random random) throws Exception {
+        for (boolean deflate : new boolean[]{false, true}) {
+            checkLink(random, deflate);
+        }
+        checkRefusedHandshake();
+    }
+
+    private static void checkLink(Random random, boolean deflate) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<MuxLink> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return MuxLink.accept(listener.accept());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            String host = listener.getInetAddress().getHostAddress();
+            MuxLink gateway = MuxLink.connect(host, listener.getLocalPort(), deflate);
+            MuxLink server = accepted.get(10, TimeUnit.SECONDS);
+            try {
+                gateway.setReadTimeout(10_000);
+                server.setReadTimeout(10_000);
+                exchange(random, gateway, server);
+                exchange(random, server, gateway);
+                checkEquals(deflate, gateway.summary().contains("compressed"), "deflate negotiated");
+            } finally {
+                gateway.close();
+                server.close();
+            }
+        }
+    }
+
+    private static void exchange(Random random, MuxLink from, MuxLink to) throws IOException {
+        List<MuxLink.Frame> sent = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int size = i % 100 == 0 ? random.nextInt(200_000) : random.nextInt(i % 3 == 0 ? 1 : 300);
+            byte[] payload = new byte[size];
+            // Half the payloads repeat a pattern, like consecutive state frames
+            if (random.nextBoolean()) {
+                random.nextBytes(payload);
+            } else {
+                Arrays.fill(payload, (byte) i);
+            }
+            MuxLink.Frame frame = new MuxLink.Frame(random.nextInt(), (byte) (1 + random.nextInt(6)), payload);
+            check(from.send(frame.getStream(), frame.getKind(), frame.getPayload()), "send " + i);
+            sent.add(frame);
+        }
+        for (int i = 0; i < sent.size(); i++) {
+            MuxLink.Frame expected = sent.get(i);
+            MuxLink.Frame got = to.read();
+            check(expected.getStream() == got.getStream() && expected.getKind() == got.getKind()
+                && Arrays.equals(expected.getPayload(), got.getPayload()), "frame " + i);
+        }
+    }
+
+    private static void checkRefusedHandshake() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<Void> peer = CompletableFuture.runAsync(() -> {
+                try (Socket socket = listener.accept()) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(new byte[7]);
+                    out.flush();
+                    socket.getInputStream().read();
+                } catch (IOException e) {
+                    // The link gave up, as it should
+                }
+            });
+            try {
+                MuxLink.connect(listener.getInetAddress().getHostAddress(), listener.getLocalPort(), false).close();
+                throw new AssertionError("Connected to a port that is not a gateway port");
+            } catch (IOException expected) {
+                // Refused
+            }
+            peer.get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package game.nav;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Compares the path planners against a plain breadth-first search on random
+ * grids. {@link GridAStar} and {@link DistanceOracle} must step onto a
+ * shortest path whenever one exists, also after a wall change sends the
+ * oracle to its fallback. {@link HierarchicalPathfinder} does not promise
+ * shortest paths, but must find a step exactly when a path exists, reach the
+ * goal by following its steps, and answer after a wall change as if it had
+ * been built from scratch. {@link DStarLite} must step onto a shortest path
+ * for an agent walking among moving blockers while walls appear and
+ * disappear, which exercises its incremental repair.
+ */
+public class PathfinderCheck {
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+
+    public static void run(Random random) {
+        checkStatic(random);
+        checkHierarchical(random);
+        checkIncremental(random);
+    }
+
+    private static void checkStatic(Random random) {
+        for (int trial = 0; trial < 200; trial++) {
+            int size = 5 + random.nextInt(20);
+            NavGrid grid = randomGrid(random, size, random.nextDouble() * 0.4);
+            GridAStar astar = new GridAStar(grid);
+            Pathfinder pathfinder = DistanceOracle.create(grid, astar);
+            check(pathfinder instanceof DistanceOracle, "small grids get an oracle");
+            DistanceOracle oracle = (DistanceOracle) pathfinder;
+
+            for (int query = 0; query < 50; query++) {
+                if (query == 25) {
+                    // A change the tables do not know about
+                    grid.setWall(randomWalkable(random, grid), true);
+                    check(!oracle.isCurrent(), "oracle notices the wall change");
+                }
+                int start = randomWalkable(random, grid);
+                int goal = randomWalkable(random, grid);
+                int[] distance = distancesTo(grid, goal, null);
+                if (oracle.isCurrent()) {
+                    int expected = distance[start];
+                    checkEquals(expected < 0 ? DistanceOracle.UNREACHABLE : expected, oracle.distance(start, goal),
+                        "oracle distance");
+                }
+                checkStep(grid, distance, start, goal, astar.nextStep(start, goal), "A*");
+                checkStep(grid, distance, start, goal, oracle.nextStep(start, goal), "oracle");
+            }
+        }
+    }
+
+    private static void checkHierarchical(Random random) {
+        for (int trial = 0; trial < 40; trial++) {
+            int size = 10 + random.nextInt(50);
+            int clusterSize = 3 + random.nextInt(10);
+            NavGrid grid = randomGrid(random, size, random.nextDouble() * 0.35);
+            HierarchicalPathfinder pathfinder = new HierarchicalPathfinder(grid, clusterSize);
+
+            for (int round = 0; round < 8; round++) {
+                if (round > 0) {
+                    // Toggle a few walls; the rebuilt clusters must match a fresh build
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        int cell = random.nextInt(grid.cellCount());
+                        pathfinder.setWall(cell, grid.isWalkable(cell));
+                    }
+                }
+                HierarchicalPathfinder fresh = new HierarchicalPathfinder(grid, clusterSize);
+                for (int query = 0; query < 10; query++) {
+                    int start = randomWalkable(random, grid);
+                    int goal = randomWalkable(random, grid);
+                    int[] distance = distancesTo(grid, goal, null);
+                    int step = pathfinder.nextStep(start, goal);
+                    checkEquals(fresh.nextStep(start, goal), step, "hierarchical step after wall changes");
+                    if (start == goal || distance[start] < 0) {
+                        checkEquals(Pathfinder.NO_STEP, step, "hierarchical step with no path");
+                        continue;
+                    }
+
+                    // Walking the steps reaches the goal, if not always on a shortest path
+                    int at = start;
+                    for (int walked = 0; at != goal; walked++) {
+                        check(walked < 4 * grid.cellCount(), "hierarchical walk does not reach the goal");
+                        int next = pathfinder.nextStep(at, goal);
+                        check(next != Pathfinder.NO_STEP, "hierarchical search lost a reachable goal");
+                        int rows = Math.abs(grid.rowOf(next) - grid.rowOf(at));
+                        int cols = Math.abs(grid.colOf(next) - grid.colOf(at));
+                        check(rows + cols == 1 && grid.isWalkable(next), "hierarchical step is not a walkable neighbor");
+                        at = next;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkIncremental(Random random) {
+        int size = 20;
+        for (int trial = 0; trial < 200; trial++) {
+            NavGrid grid = randomGrid(random, size, 0.2);
+            OccupancyLayer occupancy = new OccupancyLayer(grid.cellCount());
+            DStarLite planner = new DStarLite(grid, occupancy);
+            int[] blockers = new int[15];
+            for (int i = 0; i < blockers.length; i++) {
+                blockers[i] = random.nextInt(grid.cellCount());
+            }
+            int agent = randomWalkable(random, grid);
+            int goal = randomWalkable(random, grid);
+
+            for (int step = 0; step < 60; step++) {
+                boolean[] occupied = new boolean[grid.cellCount()];
+                for (int blocker : blockers) {
+                    occupied[blocker] = true;
+                }
+                occupied[agent] = true;
+                occupancy.update(occupied);
+                if (random.nextInt(15) == 0) {
+                    int cell = random.nextInt(grid.cellCount());
+                    if (cell != agent && cell != goal) {
+                        grid.setWall(cell, grid.isWalkable(cell));
+                    }
+                }
+                if (random.nextInt(10) == 0) {
+                    goal = randomWalkable(random, grid);
+                }
+
+                int[] distance = distancesTo(grid, goal, occupied);
+                int next = planner.nextStep(agent, goal);
+                checkStep(grid, distance, agent, goal, next, "D* Lite");
+                check(next == Pathfinder.NO_STEP || next == goal || !occupied[next], "D* Lite stepped onto an agent");
+                if (next != Pathfinder.NO_STEP) {
+                    agent = next;
+                }
+                for (int i = 0; i < blockers.length; i++) {
+                    int row = grid.rowOf(blockers[i]) + DR[random.nextInt(4)];
+                    int col = grid.colOf(blockers[i]) + DC[random.nextInt(4)];
+                    if (grid.inBounds(row, col) && grid.cellOf(row, col) != agent) {
+                        blockers[i] = grid.cellOf(row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A step is right if it is a neighbor one cell closer to the goal, and
+     * missing only if the goal is unreachable or already reached.
+     */
+    private static void checkStep(NavGrid grid, int[] distance, int start, int goal, int step, String planner) {
+        int expected = distance[start];
+        if (start == goal || expected < 0) {
+            checkEquals(Pathfinder.NO_STEP, step, planner + " step with no path");
+            return;
+        }
+        check(step != Pathfinder.NO_STEP, planner + " found no path of length " + expected);
+        int rows = Math.abs(grid.rowOf(step) - grid.rowOf(start));
+        int cols = Math.abs(grid.colOf(step) - grid.colOf(start));
+        check(rows + cols == 1, planner + " step is not a neighbor");
+        checkEquals(expected - 1, distance[step], planner + " step distance");
+    }
+
+    /**
+     * Walking distance of every cell to the goal, -1 if unreachable. Occupied
+     * cells other than the goal block the way.
+     */
+    private static int[] distancesTo(NavGrid grid, int goal, boolean[] occupied) {
+        int[] distance = new int[grid.cellCount()];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[grid.cellCount()];
+        int head = 0;
+        int tail = 0;
+        distance[goal] = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int row = grid.rowOf(cell) + DR[d];
+                int col = grid.colOf(cell) + DC[d];
+                if (!grid.inBounds(row, col)) continue;
+                int next = grid.cellOf(row, col);
+                if (distance[next] >= 0 || !grid.isWalkable(next)) continue;
+                distance[next] = distance[cell] + 1;
+                // An occupied cell can be left, e.g. by the agent standing on it, but not entered
+                if (occupied == null || !occupied[next]) {
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distance;
+    }
+
+    private static NavGrid randomGrid(Random random, int size, double walls) {
+        NavGrid grid = new NavGrid(size);
+        for (int cell = 0; cell < grid.cellCount(); cell++) {
+            if (random.nextDouble() < walls) {
+                grid.setWall(cell, true);
+            }
+        }
+        return grid;
+    }
+
+    private static int randomWalkable(Random random, NavGrid grid) {
+        while (true) {
+            int cell = random.nextInt(grid.cellCount());
+            if (grid.isWalkable(cell)) {
+                return cell;
+            }
+        }
+    }
+}
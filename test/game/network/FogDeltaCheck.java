@@ -0,0 +1,66 @@
+package game.network;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static game.Checks.check;
+
+/**
+ * Encodes the difference between random fog bitsets as runs and checks that
+ * applying the runs to the old bitset gives the new one. Densities range from
+ * almost empty to almost full, and include identical and fully inverted pairs
+ * so whole-word skipping in both directions is covered.
+ */
+public class FogDeltaCheck {
+    public static void run(Random random) {
+        for (int trial = 0; trial < 5000; trial++) {
+            int cells = 1 + random.nextInt(700);
+            long[] before = randomBits(random, cells, random.nextDouble());
+            long[] after;
+            switch (trial % 4) {
+                case 0:
+                    after = before.clone();
+                    break;
+                case 1:
+                    after = before.clone();
+                    for (int cell = 0; cell < cells; cell++) {
+                        after[cell >>> 6] ^= 1L << cell;
+                    }
+                    break;
+                case 2:
+                    // A few flipped cells, like a player taking one step
+                    after = before.clone();
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        int cell = random.nextInt(cells);
+                        after[cell >>> 6] ^= 1L << cell;
+                    }
+                    break;
+                default:
+                    after = randomBits(random, cells, random.nextDouble());
+                    break;
+            }
+
+            int[] runs = FogDelta.encodeRuns(before, after, cells);
+            long[] applied = before.clone();
+            FogDelta.applyRuns(applied, runs);
+            check(Arrays.equals(after, applied), "trial " + trial + " with " + cells + " cells");
+            check(runs.length % 2 == 0, "runs end after a flipped run");
+            for (int i = 1; i < runs.length; i++) {
+                check(runs[i] > 0, "empty run " + i + " in trial " + trial);
+            }
+            if (Arrays.equals(before, after)) {
+                check(runs.length == 0, "no runs for an unchanged bitset");
+            }
+        }
+    }
+
+    private static long[] randomBits(Random random, int cells, double density) {
+        long[] bits = new long[(cells + 63) / 64];
+        for (int cell = 0; cell < cells; cell++) {
+            if (random.nextDouble() < density) {
+                bits[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return bits;
+    }
+}
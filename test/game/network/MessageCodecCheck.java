@@ -0,0 +1,186 @@
+package game.network;
+
+import game.map.Position;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Round-trips random state frames through one reused {@link StateFrameCodec}
+ * and {@link MessageCodec}, and serialized messages through the stream and
+ * byte-array entry points of {@link MessageCodec}. Truncated and mislabelled
+ * frames must be rejected with an {@link IOException}.
+ */
+public class MessageCodecCheck {
+    private static final String[] NAMES = {"Aria", "bob", "Zoë", "戦士", "", "x".repeat(300)};
+    private static final String[] TYPES = {"Goblin", "Orc", "Dragon", "Wall", "Potion", "Treasure"};
+
+    public static void run(Random random) throws IOException {
+        checkStateFrames(random);
+        checkSerializedMessages(random);
+        checkMalformedFrames();
+    }
+
+    private static void checkStateFrames(Random random) throws IOException {
+        StateFrameCodec codec = new StateFrameCodec();
+        for (int frame = 0; frame < 500; frame++) {
+            List<PlayerState> players = new ArrayList<>();
+            for (int i = random.nextInt(frame % 50 == 0 ? 300 : 8); i > 0; i--) {
+                players.add(new PlayerState(random.nextInt(), pick(random, NAMES), position(random),
+                    random.nextInt(200), random.nextInt(50), pick(random, TYPES),
+                    random.nextInt(5), random.nextInt(5), random.nextInt(1000)));
+            }
+            List<EnemyState> enemies = new ArrayList<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                enemies.add(new EnemyState(random.nextInt(), pick(random, TYPES), position(random),
+                    random.nextInt(100) - 10, random.nextBoolean()));
+            }
+            List<ItemState> items = new ArrayList<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                items.add(new ItemState(random.nextInt(), pick(random, TYPES), position(random), random.nextBoolean()));
+            }
+
+            codec.begin();
+            codec.startList();
+            players.forEach(codec::player);
+            codec.startList();
+            enemies.forEach(codec::enemy);
+            codec.startList();
+            items.forEach(codec::item);
+            byte[] bytes = codec.finish();
+
+            GameMessage decoded = MessageCodec.decode(bytes);
+            checkEquals(MessageType.FULL_STATE, decoded.getType(), "type");
+            checkEquals(players.size(), decoded.getPlayerStates().size(), "players");
+            for (int i = 0; i < players.size(); i++) {
+                checkPlayer(players.get(i), decoded.getPlayerStates().get(i));
+            }
+            checkEquals(enemies.size(), decoded.getEnemyStates().size(), "enemies");
+            for (int i = 0; i < enemies.size(); i++) {
+                EnemyState sent = enemies.get(i);
+                EnemyState got = decoded.getEnemyStates().get(i);
+                check(sent.getEnemyId() == got.getEnemyId() && sent.getType().equals(got.getType())
+                    && sent.getPosition().equals(got.getPosition()) && sent.getHealth() == got.getHealth()
+                    && sent.isVisible() == got.isVisible(), "enemy " + i + " of frame " + frame);
+            }
+            checkEquals(items.size(), decoded.getItemStates().size(), "items");
+            for (int i = 0; i < items.size(); i++) {
+                ItemState sent = items.get(i);
+                ItemState got = decoded.getItemStates().get(i);
+                check(sent.getItemId() == got.getItemId() && sent.getType().equals(got.getType())
+                    && sent.getPosition().equals(got.getPosition()) && sent.isVisible() == got.isVisible(),
+                    "item " + i + " of frame " + frame);
+            }
+
+            // The same frame read from a stream
+            byte[] again = MessageCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes)));
+            check(Arrays.equals(bytes, again), "readFrame");
+        }
+    }
+
+    private static void checkPlayer(PlayerState sent, PlayerState got) {
+        check(sent.getPlayerId() == got.getPlayerId() && sent.getName().equals(got.getName())
+            && sent.getPosition().equals(got.getPosition()) && sent.getHealth() == got.getHealth()
+            && sent.getPower() == got.getPower() && sent.getCharacterClass().equals(got.getCharacterClass())
+            && sent.getLifePotionCount() == got.getLifePotionCount()
+            && sent.getPowerPotionCount() == got.getPowerPotionCount()
+            && sent.getTreasurePoints() == got.getTreasurePoints(), "player " + sent.getPlayerId());
+    }
+
+    private static void checkSerializedMessages(Random random) throws IOException {
+        List<GameMessage> sent = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < 200; i++) {
+            GameMessage message = new GameMessage(MessageType.values()[random.nextInt(MessageType.values().length)]);
+            message.setPlayerId(random.nextInt());
+            message.setPlayerName(pick(random, NAMES));
+            message.setMessage(random.nextBoolean() ? null : pick(random, NAMES));
+            message.setPosition(position(random));
+            message.setHealth(random.nextInt());
+            if (i % 10 == 0) {
+                message.setFogDelta(new FogDelta(15, new int[]{3, 4}, new int[]{0, 225}));
+            }
+            sent.add(message);
+            MessageCodec.write(out, message);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (GameMessage expected : sent) {
+            GameMessage got = MessageCodec.read(in);
+            check(expected.getType() == got.getType() && expected.getPlayerId() == got.getPlayerId()
+                && expected.getPlayerName().equals(got.getPlayerName())
+                && Objects.equals(expected.getMessage(), got.getMessage())
+                && expected.getPosition().equals(got.getPosition()) && expected.getHealth() == got.getHealth(),
+                "serialized " + expected.getType());
+            if (expected.getFogDelta() != null) {
+                check(Arrays.equals(expected.getFogDelta().getExploredRuns(), got.getFogDelta().getExploredRuns()),
+                    "fog delta");
+            }
+            checkEquals(got.getType(), MessageCodec.decode(MessageCodec.encode(expected)).getType(), "decode");
+        }
+        try {
+            MessageCodec.read(in);
+            throw new AssertionError("read past the last frame");
+        } catch (EOFException expected) {
+            // The stream ended between frames
+        }
+    }
+
+    private static void checkMalformedFrames() throws IOException {
+        StateFrameCodec codec = new StateFrameCodec();
+        codec.begin();
+        codec.startList();
+        codec.player(new PlayerState(1, "a", new Position(1, 2), 100, 10, "Mage"));
+        codec.startList();
+        codec.startList();
+        byte[] frame = codec.finish();
+
+        for (int cut = 5; cut < frame.length; cut++) {
+            byte[] body = Arrays.copyOfRange(frame, 4, cut);
+            expectRejected(() -> StateFrameCodec.decode(body), "state frame cut at " + cut);
+        }
+        byte[] shortFrame = Arrays.copyOf(frame, frame.length - 1);
+        expectRejected(() -> MessageCodec.decode(shortFrame), "frame shorter than its length");
+        byte[] notState = Arrays.copyOfRange(frame, 4, frame.length);
+        notState[0] = 0x7F;
+        expectRejected(() -> StateFrameCodec.decode(notState), "wrong tag");
+        byte[] badLength = frame.clone();
+        badLength[0] = (byte) 0x80;
+        DataInputStream badLengthIn = new DataInputStream(new ByteArrayInputStream(badLength));
+        expectRejected(() -> MessageCodec.read(badLengthIn), "negative length");
+    }
+
+    private interface Decode {
+        void run() throws IOException;
+    }
+
+    private static void expectRejected(Decode decode, String what) {
+        try {
+            decode.run();
+        } catch (IOException expected) {
+            return;
+        }
+        throw new AssertionError("Accepted " + what);
+    }
+
+    private static Position position(Random random) {
+        return new Position(random.nextInt(1000), random.nextInt(1000));
+    }
+
+    private static String pick(Random random, String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+}
@@ -0,0 +1,227 @@
+package game.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Round-trips {@link WorldCheckpoint}s through their binary layout and through a
+ * {@link CheckpointFile}: reopening, falling back when the newest slot is torn,
+ * growing the slots, and replacing a file that is not a checkpoint file.
+ */
+public class CheckpointFileCheck {
+    private static final int FILE_HEADER = 16;
+    private static final int SLOT_HEADER = 16;
+    private static final int INITIAL_SLOT_SIZE = 64 * 1024;
+
+    public static void run(Random random) throws IOException {
+        checkLayout();
+        Path file = Files.createTempFile("checkpoint", ".bin");
+        try {
+            Files.delete(file);
+            checkFile(file);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+        }
+    }
+
+    private static void checkLayout() {
+        WorldCheckpoint checkpoint = make(42, 3, new long[]{7, -1, Long.MIN_VALUE}, List.of("p2é", "p0é"));
+        WorldCheckpoint copy = roundTrip(checkpoint);
+        checkSame(checkpoint, copy);
+        checkEquals(checkpoint.getSeed(), copy.getSeed(), "seed");
+        check(Arrays.equals(checkpoint.getRandomState(), copy.getRandomState()), "random state");
+        checkEquals(checkpoint.getOnline().size(), copy.getOnline().size(), "online");
+        for (int i = 0; i < checkpoint.getOnline().size(); i++) {
+            WorldCheckpoint.OnlineRecord e = checkpoint.getOnline().get(i);
+            WorldCheckpoint.OnlineRecord a = copy.getOnline().get(i);
+            check(e.getName().equals(a.getName()) && e.getPlayerId() == a.getPlayerId()
+                && e.getEffects().size() == a.getEffects().size(), "online " + i);
+            for (int j = 0; j < e.getEffects().size(); j++) {
+                WorldCheckpoint.EffectRecord ee = e.getEffects().get(j);
+                WorldCheckpoint.EffectRecord ae = a.getEffects().get(j);
+                check(ee.getType().equals(ae.getType()) && ee.getMagnitude() == ae.getMagnitude()
+                    && ee.getCharges() == ae.getCharges() && ee.getStartTick() == ae.getStartTick()
+                    && ee.getExpiryTick() == ae.getExpiryTick() && ee.getStacking().equals(ae.getStacking()),
+                    "effect " + j + " of online " + i);
+            }
+        }
+        check(Arrays.equals(checkpoint.getHandles(), copy.getHandles()), "handles");
+        checkEquals(checkpoint.getCombats().size(), copy.getCombats().size(), "combats");
+        for (int i = 0; i < checkpoint.getCombats().size(); i++) {
+            WorldCheckpoint.CombatRecord e = checkpoint.getCombats().get(i);
+            WorldCheckpoint.CombatRecord a = copy.getCombats().get(i);
+            check(e.getPlayerId() == a.getPlayerId() && e.getEnemyHandle() == a.getEnemyHandle()
+                && e.isPlayerTurn() == a.isPlayerTurn() && e.getNextTurnTick() == a.getNextTurnTick(),
+                "combat " + i);
+        }
+
+        byte[] otherVersion = encode(checkpoint);
+        otherVersion[0]++;
+        try {
+            WorldCheckpoint.readFrom(ByteBuffer.wrap(otherVersion));
+            throw new AssertionError("Read a checkpoint of another version");
+        } catch (IllegalArgumentException expected) {
+            // Unsupported version
+        }
+
+        byte[] full = encode(checkpoint);
+        for (int cut = 0; cut < full.length; cut++) {
+            try {
+                WorldCheckpoint.readFrom(ByteBuffer.wrap(full, 0, cut));
+                throw new AssertionError("Read a checkpoint cut at " + cut);
+            } catch (IllegalArgumentException expected) {
+                // Truncated
+            }
+        }
+    }
+
+    private static void checkFile(Path path) throws IOException {
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            check(file.readLatest() == null, "a new file has no checkpoint");
+            for (int tick = 1; tick <= 5; tick++) {
+                file.write(make(tick, 3, new long[]{tick}, List.of("p1é")));
+            }
+        }
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            WorldCheckpoint latest = file.readLatest();
+            checkSame(make(5, 3, new long[]{5}, List.of("p1é")), latest);
+            checkEquals(5, file.getSequence(), "sequence");
+        }
+
+        // A write that died halfway leaves a slot whose checksum does not match
+        tear(path, 5);
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            checkEquals(4, file.readLatest().getTick(), "fell back to the older slot");
+            // The next write goes over the torn slot, not the intact one
+            file.write(make(6, 3, new long[0], List.of()));
+            tear(path, file.getSequence());
+        }
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            checkEquals(4, file.readLatest().getTick(), "older slot kept");
+
+            // Outgrowing the slots rewrites the file and keeps the newest checkpoint
+            file.write(make(7, 5000, new long[0], List.of()));
+            check(Files.size(path) > FILE_HEADER + 2L * INITIAL_SLOT_SIZE, "slots grew");
+            checkEquals(7, file.readLatest().getTick(), "after growing");
+            file.write(make(8, 2, new long[0], List.of()));
+        }
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            checkEquals(8, file.readLatest().getTick(), "reopened after growing");
+            tear(path, file.getSequence());
+        }
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            checkSame(make(7, 5000, new long[0], List.of()), file.readLatest());
+        }
+
+        Files.write(path, new byte[100]);
+        try (CheckpointFile file = CheckpointFile.open(path)) {
+            check(file.readLatest() == null, "a file that is not a checkpoint file is replaced");
+        }
+    }
+
+    /**
+     * Overwrites part of the payload of the slot holding {@code sequence}.
+     */
+    private static void tear(Path path, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            channel.read(header, 0);
+            int slotSize = header.getInt(8);
+            for (int slot = 0; slot < 2; slot++) {
+                long at = FILE_HEADER + (long) slot * slotSize;
+                ByteBuffer slotHeader = ByteBuffer.allocate(SLOT_HEADER);
+                channel.read(slotHeader, at);
+                if (slotHeader.getLong(0) == sequence) {
+                    int length = slotHeader.getInt(8);
+                    channel.write(ByteBuffer.wrap(new byte[length / 2]), at + SLOT_HEADER + length / 2);
+                    return;
+                }
+            }
+        }
+        throw new AssertionError("No slot holds sequence " + sequence);
+    }
+
+    private static WorldCheckpoint roundTrip(WorldCheckpoint checkpoint) {
+        ByteBuffer in = ByteBuffer.wrap(encode(checkpoint));
+        WorldCheckpoint copy = WorldCheckpoint.readFrom(in);
+        checkEquals(0, in.remaining(), "bytes left over");
+        return copy;
+    }
+
+    private static byte[] encode(WorldCheckpoint checkpoint) {
+        ByteBuffer out = ByteBuffer.allocate(1 << 20);
+        checkpoint.writeTo(out);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private static WorldCheckpoint make(long tick, int players, long[] randomState, List<String> online) {
+        List<WorldCheckpoint.OnlineRecord> onlineRecords = new ArrayList<>();
+        for (int i = 0; i < online.size(); i++) {
+            List<WorldCheckpoint.EffectRecord> effects = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                effects.add(new WorldCheckpoint.EffectRecord("REGEN", 2, 0, tick - j, tick + 150, "STACK"));
+            }
+            onlineRecords.add(new WorldCheckpoint.OnlineRecord(online.get(i), (1 << 22) + i * 7, effects));
+        }
+        List<WorldCheckpoint.PlayerRecord> playerRecords = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            playerRecords.add(new WorldCheckpoint.PlayerRecord("p" + i + "é", "Mage", i % 15, i / 15, 90, 12,
+                i % 4, i * 10, new int[]{10 + i % 41}, i % 3 == 0 ? new int[0] : new int[]{5, 1}));
+        }
+        return new WorldCheckpoint(tick, 15, playerRecords,
+            List.of(new WorldCheckpoint.EnemyRecord("Orc", 3, 4, 20, 7, 33, 0.37, (2 << 20) | 5, (byte) 2, 9,
+                    tick + 3),
+                new WorldCheckpoint.EnemyRecord("Dragon", 14, 0, 1, 40, 500, 3, (1 << 20) | 1, (byte) 0, 14, tick)),
+            List.of(new WorldCheckpoint.ItemRecord(WorldCheckpoint.ITEM_TREASURE, (1 << 20) | 2, 5, 6, 77),
+                new WorldCheckpoint.ItemRecord(WorldCheckpoint.ITEM_WALL, (1 << 20) | 3, 0, 0, 0)),
+            tick * 31, randomState, onlineRecords, new int[]{6, 1, 1, 1, 1, 3, 2, 4},
+            List.of(new WorldCheckpoint.CombatRecord((1 << 22) + 7, (2 << 20) | 5, false, tick + 10)));
+    }
+
+    private static void checkSame(WorldCheckpoint expected, WorldCheckpoint actual) {
+        checkEquals(expected.getTick(), actual.getTick(), "tick");
+        checkEquals(expected.getBoardSize(), actual.getBoardSize(), "board size");
+        checkEquals(expected.getPlayers().size(), actual.getPlayers().size(), "players");
+        for (int i = 0; i < expected.getPlayers().size(); i++) {
+            WorldCheckpoint.PlayerRecord e = expected.getPlayers().get(i);
+            WorldCheckpoint.PlayerRecord a = actual.getPlayers().get(i);
+            check(e.getName().equals(a.getName()) && e.getCharacterClass().equals(a.getCharacterClass())
+                && e.getRow() == a.getRow() && e.getCol() == a.getCol() && e.getHealth() == a.getHealth()
+                && e.getPower() == a.getPower() && e.getTrait() == a.getTrait()
+                && e.getTreasure() == a.getTreasure()
+                && Arrays.equals(e.getLifePotions(), a.getLifePotions())
+                && Arrays.equals(e.getPowerPotions(), a.getPowerPotions()),
+                "player " + i);
+        }
+        checkEquals(expected.getEnemies().size(), actual.getEnemies().size(), "enemies");
+        for (int i = 0; i < expected.getEnemies().size(); i++) {
+            WorldCheckpoint.EnemyRecord e = expected.getEnemies().get(i);
+            WorldCheckpoint.EnemyRecord a = actual.getEnemies().get(i);
+            check(e.getType().equals(a.getType()) && e.getRow() == a.getRow() && e.getCol() == a.getCol()
+                && e.getHealth() == a.getHealth() && e.getPower() == a.getPower() && e.getLoot() == a.getLoot()
+                && e.getTrait() == a.getTrait() && e.getHandle() == a.getHandle()
+                && e.getAiState() == a.getAiState() && e.getInterval() == a.getInterval()
+                && e.getNextActionTick() == a.getNextActionTick(), "enemy " + i);
+        }
+        checkEquals(expected.getItems().size(), actual.getItems().size(), "items");
+        for (int i = 0; i < expected.getItems().size(); i++) {
+            WorldCheckpoint.ItemRecord e = expected.getItems().get(i);
+            WorldCheckpoint.ItemRecord a = actual.getItems().get(i);
+            check(e.getKind() == a.getKind() && e.getId() == a.getId()
+                && e.getRow() == a.getRow() && e.getCol() == a.getCol()
+                && e.getValue() == a.getValue(), "item " + i);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package game.persistence;
+
+import game.map.Position;
+import game.network.GameMessage;
+import game.network.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Writes commands through a {@link CommandJournal}, large enough to rotate
+ * segments, and checks what a restart recovers: every entry when the journal
+ * was closed cleanly, everything before a torn tail or a corrupt entry after a
+ * crash, and nothing of the segments a checkpoint made obsolete.
+ */
+public class CommandJournalCheck {
+    private static final int ENTRIES = 6000;
+
+    private static final class Sent {
+        final long tick;
+        final int clientId;
+        final String playerName;
+        final GameMessage message;
+
+        Sent(long tick, int clientId, String playerName, GameMessage message) {
+            this.tick = tick;
+            this.clientId = clientId;
+            this.playerName = playerName;
+            this.message = message;
+        }
+    }
+
+    public static void run(Random random) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            recover(directory);
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void recover(Path directory) throws IOException, InterruptedException {
+        List<Sent> sent = new ArrayList<>();
+        CommandJournal journal = new CommandJournal(directory);
+        check(journal.recover(-1).isEmpty(), "a new journal is empty");
+        journal.start();
+        for (int i = 0; i < ENTRIES; i++) {
+            append(journal, sent, new Sent(i / 10, i % 7, i % 3 == 0 ? null : "plé" + i % 5, message(i)));
+            if (i % 1000 == 0) {
+                // Let the flusher write several batches
+                Thread.sleep(2);
+            }
+        }
+        journal.close();
+        check(segments(directory).size() > 1, "segments rotated");
+
+        journal = new CommandJournal(directory);
+        checkRecovered(sent, journal.recover(-1));
+        checkRecovered(sent.subList(3010, ENTRIES), journal.recover(300));
+
+        // A crash in the middle of the last write
+        Path last = segments(directory).get(segments(directory).size() - 1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        sent.remove(sent.size() - 1);
+        journal = new CommandJournal(directory);
+        checkRecovered(sent, journal.recover(-1));
+
+        // The journal keeps going in a new segment after recovering
+        journal.start();
+        GameMessage attack = new GameMessage(MessageType.ATTACK_REQUEST);
+        attack.setPosition(new Position(1, 1));
+        append(journal, sent, new Sent(2000, 9, "amy", attack));
+        journal.close();
+        journal = new CommandJournal(directory);
+        checkRecovered(sent, journal.recover(-1));
+
+        // A corrupt entry ends its segment; the segments after it are still read
+        int inSegment = corruptEntry(last, 100);
+        List<Sent> expected = new ArrayList<>(sent.subList(0, sent.size() - 1 - inSegment + 100));
+        expected.add(sent.get(sent.size() - 1));
+        journal = new CommandJournal(directory);
+        checkRecovered(expected, journal.recover(-1));
+
+        // A checkpoint at tick 1999 covers every segment but the newest
+        journal.truncateThrough(1999);
+        checkEquals(1, segments(directory).size(), "segments after truncating");
+        journal.truncateThrough(2000);
+        checkEquals(0, segments(directory).size(), "segments after truncating all");
+        journal.close();
+    }
+
+    private static void append(CommandJournal journal, List<Sent> sent, Sent entry) {
+        journal.append(entry.tick, entry.clientId, entry.playerName, entry.message);
+        sent.add(entry);
+    }
+
+    private static GameMessage message(int i) {
+        switch (i % 10) {
+            case 0:
+                // Large enough that the entries fill more than one segment
+                GameMessage chat = new GameMessage(MessageType.CHAT_MESSAGE);
+                chat.setMessage("é".repeat(4000) + i);
+                return chat;
+            case 1:
+                GameMessage join = new GameMessage(MessageType.JOIN_GAME);
+                join.setPlayerName("plé" + i);
+                join.setMessage("Mage");
+                return join;
+            case 2:
+                GameMessage potion = new GameMessage(MessageType.USE_POTION);
+                potion.setMessage("life");
+                return potion;
+            default:
+                GameMessage move = new GameMessage(MessageType.MOVE_REQUEST);
+                move.setPosition(new Position(i % 15, -(i % 7)));
+                return move;
+        }
+    }
+
+    private static void checkRecovered(List<Sent> expected, List<CommandJournal.Entry> recovered) {
+        checkEquals(expected.size(), recovered.size(), "recovered entries");
+        for (int i = 0; i < expected.size(); i++) {
+            Sent e = expected.get(i);
+            CommandJournal.Entry r = recovered.get(i);
+            check(e.tick == r.getTick() && e.clientId == r.getClientId()
+                && Objects.equals(e.playerName, r.getPlayerName())
+                && e.message.getType() == r.getMessage().getType()
+                && Objects.equals(e.message.getPosition(), r.getMessage().getPosition())
+                && Objects.equals(e.message.getMessage(), r.getMessage().getMessage())
+                && Objects.equals(e.message.getPlayerName(), r.getMessage().getPlayerName()), "entry " + i);
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>();
+            files.sorted(Comparator.comparing(Path::toString)).forEach(segments::add);
+            return segments;
+        }
+    }
+
+    /**
+     * Flips a byte in the body of entry {@code index} of a segment.
+     *
+     * @return The number of whole entries the segment held
+     */
+    private static int corruptEntry(Path segment, int index) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        data.position(Integer.BYTES);
+        int entries = 0;
+        while (data.remaining() >= 8) {
+            int length = data.getInt(data.position());
+            if (length > data.remaining() - 8) break;
+            if (entries == index) {
+                int at = data.position() + 8 + length / 2;
+                data.put(at, (byte) ~data.get(at));
+            }
+            data.position(data.position() + 8 + length);
+            entries++;
+        }
+        check(entries > index, "segment has " + entries + " entries");
+        Files.write(segment, data.array());
+        return entries;
+    }
+}
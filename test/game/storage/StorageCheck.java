@@ -0,0 +1,141 @@
+package game.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Drives the heap and off-heap storage backends through the same random
+ * writes, row copies and resizes and checks that they hold the same values,
+ * write the same cell image, and read each other's images back. A mapped
+ * cell file must keep its contents across reopening.
+ */
+public class StorageCheck {
+    public static void run(Random random) throws IOException {
+        checkColumns(random);
+        checkCells(random);
+        checkMappedCells();
+    }
+
+    private static void checkColumns(Random random) {
+        try (ColumnStorage heap = StorageBackend.HEAP.newColumns(10, 4);
+             ColumnStorage offHeap = StorageBackend.OFF_HEAP.newColumns(10, 4)) {
+            for (int step = 0; step < 100_000; step++) {
+                int capacity = heap.capacity();
+                int row = random.nextInt(capacity);
+                switch (random.nextInt(10)) {
+                    case 0:
+                        int resized = capacity < 500 ? capacity * 2 : Math.max(1, capacity / 2);
+                        heap.resize(resized);
+                        offHeap.resize(resized);
+                        break;
+                    case 1:
+                        long wide = random.nextLong();
+                        heap.setLong(8, row, wide);
+                        offHeap.setLong(8, row, wide);
+                        break;
+                    case 2:
+                        int to = random.nextInt(capacity);
+                        heap.copyRow(row, to);
+                        offHeap.copyRow(row, to);
+                        break;
+                    default:
+                        int column = random.nextInt(8);
+                        int value = random.nextInt();
+                        heap.setInt(column, row, value);
+                        offHeap.setInt(column, row, value);
+                        break;
+                }
+            }
+            checkEquals(heap.capacity(), offHeap.capacity(), "capacity");
+            checkEquals(heap.byteSize(), offHeap.byteSize(), "byte size");
+            for (int row = 0; row < heap.capacity(); row++) {
+                for (int column = 0; column < heap.columnCount(); column++) {
+                    checkEquals(heap.getInt(column, row), offHeap.getInt(column, row), column + "/" + row);
+                }
+                checkEquals(heap.getLong(8, row), offHeap.getLong(8, row), "long of " + row);
+            }
+            for (ColumnStorage storage : new ColumnStorage[]{heap, offHeap}) {
+                try {
+                    storage.getInt(0, storage.capacity());
+                    throw new AssertionError(storage.getClass().getSimpleName() + " read past its last row");
+                } catch (IndexOutOfBoundsException expected) {
+                    // Bounds are checked
+                }
+            }
+        }
+    }
+
+    private static void checkCells(Random random) {
+        int cells = 1000;
+        try (CellStorage heap = StorageBackend.HEAP.newCells(cells);
+             CellStorage offHeap = StorageBackend.OFF_HEAP.newCells(cells)) {
+            for (int i = 0; i < 5000; i++) {
+                int cell = random.nextInt(cells);
+                int count = random.nextInt(9) - 1;
+                byte terrain = random.nextBoolean() ? CellStorage.TERRAIN_WALL : CellStorage.TERRAIN_FLOOR;
+                heap.setOccupancy(cell, count);
+                offHeap.setOccupancy(cell, count);
+                heap.setTerrain(cell, terrain);
+                offHeap.setTerrain(cell, terrain);
+            }
+
+            // Both write the same image, at any buffer position and into either kind of buffer
+            ByteBuffer heapImage = ByteBuffer.allocate((int) heap.byteSize() + 3);
+            ByteBuffer offHeapImage = ByteBuffer.allocateDirect((int) offHeap.byteSize() + 3);
+            heapImage.position(3);
+            offHeapImage.position(3);
+            heap.copyTo(heapImage);
+            offHeap.copyTo(offHeapImage);
+            check(!heapImage.hasRemaining() && !offHeapImage.hasRemaining(), "image size");
+            heapImage.flip();
+            offHeapImage.flip();
+            check(heapImage.equals(offHeapImage), "images differ");
+
+            try (CellStorage fromHeap = StorageBackend.OFF_HEAP.newCells(cells);
+                 CellStorage fromOffHeap = StorageBackend.HEAP.newCells(cells)) {
+                fromHeap.copyFrom(heapImage.position(3));
+                fromOffHeap.copyFrom(offHeapImage.position(3));
+                for (int cell = 0; cell < cells; cell++) {
+                    check(fromHeap.getOccupancy(cell) == heap.getOccupancy(cell)
+                        && fromHeap.getTerrain(cell) == heap.getTerrain(cell)
+                        && fromOffHeap.getOccupancy(cell) == heap.getOccupancy(cell)
+                        && fromOffHeap.getTerrain(cell) == heap.getTerrain(cell), "copied cell " + cell);
+                }
+            }
+
+            for (CellStorage storage : new CellStorage[]{heap, offHeap}) {
+                try {
+                    storage.getTerrain(cells);
+                    throw new AssertionError(storage.getClass().getSimpleName() + " read past its last cell");
+                } catch (IndexOutOfBoundsException expected) {
+                    // Bounds are checked
+                }
+                storage.clear();
+                check(storage.getOccupancy(0) == 0 && storage.getTerrain(cells - 1) == CellStorage.TERRAIN_FLOOR,
+                    "clear");
+            }
+        }
+    }
+
+    private static void checkMappedCells() throws IOException {
+        Path file = Files.createTempFile("cells", ".map");
+        try {
+            try (OffHeapCellStorage mapped = OffHeapCellStorage.map(file, 1000)) {
+                mapped.setOccupancy(7, 42);
+                mapped.setTerrain(999, CellStorage.TERRAIN_WALL);
+            }
+            try (OffHeapCellStorage mapped = OffHeapCellStorage.map(file, 1000)) {
+                check(mapped.getOccupancy(7) == 42 && mapped.getTerrain(999) == CellStorage.TERRAIN_WALL, "reopened");
+                checkEquals(mapped.byteSize(), Files.size(file), "file size");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package game.vision;
+
+import game.nav.NavGrid;
+
+import java.util.Random;
+
+import static game.Checks.check;
+import static game.Checks.checkEquals;
+
+/**
+ * Checks the field of view from {@link ShadowCaster}: on open ground it is
+ * exactly the cells within the Manhattan radius, as with the sight rule it
+ * replaced; with walls it stays inside that diamond, keeps the viewer and
+ * the walls it sees, hides what lies straight behind an adjacent wall, and
+ * never grows when a wall is added.
+ */
+public class ShadowCasterCheck {
+    private static final int[] DR = {1, -1, 0, 0};
+    private static final int[] DC = {0, 0, 1, -1};
+
+    public static void run(Random random) {
+        checkOpenGround(random);
+        checkWalls(random);
+    }
+
+    private static void checkOpenGround(Random random) {
+        for (int trial = 0; trial < 200; trial++) {
+            NavGrid grid = new NavGrid(1 + random.nextInt(30));
+            int origin = random.nextInt(grid.cellCount());
+            int radius = random.nextInt(12);
+            VisibilitySet visible = ShadowCaster.compute(grid, origin, radius);
+            for (int cell = 0; cell < grid.cellCount(); cell++) {
+                checkEquals(distance(grid, origin, cell) <= radius, visible.contains(cell),
+                    "cell " + cell + " from " + origin + " within " + radius);
+            }
+        }
+    }
+
+    private static void checkWalls(Random random) {
+        for (int trial = 0; trial < 500; trial++) {
+            int size = 5 + random.nextInt(25);
+            NavGrid grid = new NavGrid(size);
+            for (int cell = 0; cell < grid.cellCount(); cell++) {
+                if (random.nextInt(6) == 0) {
+                    grid.setWall(cell, true);
+                }
+            }
+            int origin = random.nextInt(grid.cellCount());
+            grid.setWall(origin, false);
+            int radius = 1 + random.nextInt(10);
+
+            VisibilitySet visible = ShadowCaster.compute(grid, origin, radius);
+            check(visible.contains(origin), "the viewer sees its own cell");
+            for (int cell = 0; cell < grid.cellCount(); cell++) {
+                if (visible.contains(cell)) {
+                    check(distance(grid, origin, cell) <= radius, "visible cell " + cell + " is out of range");
+                }
+            }
+
+            // Whatever is straight behind an adjacent wall is hidden
+            for (int d = 0; d < 4; d++) {
+                int row = grid.rowOf(origin) + DR[d];
+                int col = grid.colOf(origin) + DC[d];
+                if (!grid.inBounds(row, col) || grid.isWalkable(grid.cellOf(row, col))) continue;
+                check(visible.contains(grid.cellOf(row, col)), "adjacent wall is visible");
+                for (int step = 2; step <= radius; step++) {
+                    int r = grid.rowOf(origin) + DR[d] * step;
+                    int c = grid.colOf(origin) + DC[d] * step;
+                    if (!grid.inBounds(r, c)) break;
+                    check(!visible.contains(grid.cellOf(r, c)), "cell straight behind a wall is visible");
+                }
+            }
+
+            // A new wall can only take cells away, apart from itself
+            int added = random.nextInt(grid.cellCount());
+            if (added != origin && grid.isWalkable(added)) {
+                grid.setWall(added, true);
+                VisibilitySet after = ShadowCaster.compute(grid, origin, radius);
+                for (int cell = 0; cell < grid.cellCount(); cell++) {
+                    check(!after.contains(cell) || visible.contains(cell), "adding a wall revealed cell " + cell);
+                }
+            }
+        }
+    }
+
+    private static int distance(NavGrid grid, int from, int to) {
+        return Math.abs(grid.rowOf(from) - grid.rowOf(to)) + Math.abs(grid.colOf(from) - grid.colOf(to));
+    }
+}